@@ -41,7 +41,8 @@ import java.util.function.Function;
  */
 
 public abstract class InstanceJob extends ToolChainJobImpl<Instance> implements ToolChainJob<Instance> {
-    //todo store only Id and use Cache in projectspace manager instead -> allows for larger InstanceBuffer sizes.
+    // Instances are lightweight handles (ID + project). Data is loaded on demand via the caches of the project space
+    // manager, so jobs waiting in the InstanceBuffer do not keep feature data in memory.
     protected Instance input = null;
 
     public InstanceJob(JobSubmitter submitter) {
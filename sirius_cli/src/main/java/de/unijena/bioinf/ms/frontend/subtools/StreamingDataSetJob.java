@@ -0,0 +1,127 @@
+/*
+ *  This file is part of the SIRIUS Software for analyzing MS and MS/MS data
+ *
+ *  Copyright (C) 2013-2020 Kai Dührkop, Markus Fleischauer, Marcus Ludwig, Martin A. Hoffman, Fleming Kretschmer, Marvin Meusel and Sebastian Böcker,
+ *  Chair of Bioinformatics, Friedrich-Schiller University.
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Affero General Public License
+ *  as published by the Free Software Foundation; either
+ *  version 3 of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License along with SIRIUS.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>
+ */
+
+package de.unijena.bioinf.ms.frontend.subtools;
+
+import de.unijena.bioinf.ChemistryBase.jobs.SiriusJobs;
+import de.unijena.bioinf.jjobs.BasicJJob;
+import de.unijena.bioinf.jjobs.JJob;
+import de.unijena.bioinf.jjobs.JobSubmitter;
+import de.unijena.bioinf.projectspace.Instance;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * DataSetJob that does not load its input after all upstream tools have finished (the barrier) but consumes
+ * instances incrementally: As soon as the upstream tools are done with an instance, a compact summary of the data
+ * the dataset computation needs is extracted in the background. The dataset computation itself then only works
+ * on these summaries (keyed by instance id) instead of loading everything at once when all instances are done.
+ *
+ * @param <S> type of the per instance summary
+ */
+public abstract class StreamingDataSetJob<S> extends DataSetJob {
+    private final Map<String, S> summaries = new ConcurrentHashMap<>();
+    private final List<JJob<?>> summaryJobs = Collections.synchronizedList(new ArrayList<>());
+
+    public StreamingDataSetJob(@NotNull JobSubmitter submitter) {
+        super(submitter);
+    }
+
+    public StreamingDataSetJob(@NotNull JobSubmitter submitter, @NotNull ReqJobFailBehaviour failBehaviour) {
+        super(submitter, failBehaviour);
+    }
+
+    /**
+     * Extract the data needed by the dataset computation from the given instance. Is called as soon as all upstream
+     * tools have finished on the instance, so it must not depend on results of this tool.
+     * Summaries are kept until the dataset computation has finished, so they should only contain the data the
+     * computation actually reads and apply per instance filters up front.
+     *
+     * @return the summary or null if the instance should not be part of the dataset computation.
+     */
+    protected abstract @Nullable S summarize(@NotNull Instance instance) throws Exception;
+
+    /**
+     * @param instances valid input instances.
+     * @param summaries summaries of the valid input instances by instance id. Instances without summary are missing.
+     */
+    protected abstract void computeAndAnnotateResult(@NotNull List<Instance> instances, @NotNull Map<String, S> summaries) throws Exception;
+
+    @Override
+    public void handleFinishedRequiredJob(JJob required) {
+        super.handleFinishedRequiredJob(required);
+        if (required instanceof InstanceJob && required.result() instanceof Instance instance && isInstanceValid(instance)) {
+            // nothing to prepare if the results of this tool will be reused anyway
+            if (isAlreadyComputed(instance) && !instance.isRecompute())
+                return;
+            summaryJobs.add(SiriusJobs.getGlobalJobManager().submitJob(new BasicJJob<Void>(JobType.IO) {
+                @Override
+                protected Void compute() throws Exception {
+                    putSummary(instance);
+                    return null;
+                }
+            }));
+        }
+    }
+
+    private void putSummary(Instance instance) throws Exception {
+        S summary = summarize(instance);
+        if (summary != null)
+            summaries.put(instance.getId(), summary);
+    }
+
+    @Override
+    protected final void computeAndAnnotateResult(@NotNull List<Instance> instances) throws Exception {
+        final List<JJob<?>> jobs;
+        synchronized (summaryJobs) {
+            jobs = new ArrayList<>(summaryJobs);
+        }
+        for (JJob<?> job : jobs) {
+            checkForInterruption();
+            try {
+                job.awaitResult();
+            } catch (ExecutionException e) {
+                logWarn("Could not summarize input instance. Instance will be summarized again. Error: " + e.getMessage());
+            }
+        }
+
+        // summaries for instances that have been skipped during streaming or whose summary job failed.
+        for (Instance instance : instances) {
+            checkForInterruption();
+            if (!summaries.containsKey(instance.getId()))
+                putSummary(instance);
+        }
+
+        computeAndAnnotateResult(instances, summaries);
+    }
+
+    @Override
+    protected void cleanup() {
+        synchronized (summaryJobs) {
+            summaryJobs.forEach(JJob::cancel);
+            summaryJobs.clear();
+        }
+        summaries.clear();
+        super.cleanup();
+    }
+}
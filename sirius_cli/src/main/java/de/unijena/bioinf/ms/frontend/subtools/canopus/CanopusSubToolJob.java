@@ -19,7 +19,6 @@
 
 package de.unijena.bioinf.ms.frontend.subtools.canopus;
 
-import de.unijena.bioinf.ChemistryBase.ms.utils.Spectrums;
 import de.unijena.bioinf.canopus.CanopusResult;
 import de.unijena.bioinf.fingerid.FingerprintResult;
 import de.unijena.bioinf.jjobs.JobSubmitter;
@@ -75,7 +74,7 @@ public class CanopusSubToolJob extends InstanceJob {
         updateProgress(20);
         checkForInterruption();
         // spec has to count compounds
-        final int specHash = Spectrums.mergeSpectra(inst.getExperiment().getMs2Spectra()).hashCode();
+        final int specHash = inst.getMergedMs2SpectrumHash();
         updateProgress(25);
 
         // submit canopus jobs for Identification results that contain CSI:FingerID results
@@ -0,0 +1,369 @@
+/*
+ *  This file is part of the SIRIUS Software for analyzing MS and MS/MS data
+ *
+ *  Copyright (C) 2013-2020 Kai Dührkop, Markus Fleischauer, Marcus Ludwig, Martin A. Hoffman, Fleming Kretschmer, Marvin Meusel and Sebastian Böcker,
+ *  Chair of Bioinformatics, Friedrich-Schiller University.
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Affero General Public License
+ *  as published by the Free Software Foundation; either
+ *  version 3 of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License along with SIRIUS.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>
+ */
+
+package de.unijena.bioinf.ms.frontend.subtools.custom_db;
+
+import de.unijena.bioinf.ChemistryBase.chem.InChI;
+import de.unijena.bioinf.babelms.inputresource.InputResource;
+import de.unijena.bioinf.babelms.inputresource.PathInputResource;
+import de.unijena.bioinf.chemdb.custom.CustomDatabaseImporter;
+import de.unijena.bioinf.chemdb.custom.NoSQLCustomDatabase;
+import de.unijena.bioinf.jjobs.BasicMasterJJob;
+import de.unijena.bioinf.jjobs.JJob;
+import de.unijena.bioinf.ms.frontend.core.ApplicationCore;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.exception.InvalidSmilesException;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Imports spectrum and structure files into a {@link NoSQLCustomDatabase}.
+ * <p>
+ * Structure files are split into blocks of {@code blockSize} structures: SDF files at record boundaries ({@code $$$$})
+ * and CSV/TSV files by lines, where a header line is repeated in every block. Other structure files are imported
+ * as one block. Blocks and spectrum files are imported one after another by {@link CustomDatabaseImporter} jobs,
+ * since the database deduplicates compounds and updates its statistics while writing, which is not safe for
+ * concurrent importers. Each importer computes the fingerprints of its block in parallel on the global JobManager,
+ * while the next block is read. Every finished block is recorded in a checkpoint file, so an interrupted import
+ * skips all finished blocks when it is started again with the same input files.
+ * The checkpoint file is deleted after the import finished successfully.
+ */
+public class CustomDBImportJob extends BasicMasterJJob<Boolean> {
+    public static final int DEFAULT_BLOCK_SIZE = 10000;
+
+    private final List<InputResource<?>> spectrumFiles;
+    private final List<InputResource<?>> structureFiles;
+    private final NoSQLCustomDatabase<?, ?> database;
+    private final int writeBuffer;
+    private final int blockSize;
+    private final Path checkpointFile;
+
+    private final AtomicLong bytesImported = new AtomicLong(0);
+    private long totalBytes = 0;
+
+    /**
+     * @param blockSize      number of structures (records of a SDF file, lines of a CSV/TSV file) imported as one block
+     * @param checkpointFile file that stores the finished blocks. Null to disable resuming.
+     */
+    public CustomDBImportJob(@NotNull List<InputResource<?>> spectrumFiles, @NotNull List<InputResource<?>> structureFiles, @NotNull NoSQLCustomDatabase<?, ?> database,
+                             int writeBuffer, int blockSize, @Nullable Path checkpointFile) {
+        super(JobType.SCHEDULER);
+        this.spectrumFiles = spectrumFiles;
+        this.structureFiles = structureFiles;
+        this.database = database;
+        this.writeBuffer = writeBuffer;
+        this.blockSize = Math.max(1, blockSize);
+        this.checkpointFile = checkpointFile;
+    }
+
+    @Override
+    protected Boolean compute() throws Exception {
+        final Set<String> finished = readCheckpoint();
+        if (!finished.isEmpty())
+            logInfo("Resuming import. Skipping " + finished.size() + " already imported blocks.");
+
+        for (InputResource<?> file : spectrumFiles)
+            totalBytes += file.getSize();
+        for (InputResource<?> file : structureFiles)
+            totalBytes += file.getSize();
+
+        ImportBlock running = null;
+        try (BufferedWriter checkpoint = checkpointFile == null ? null
+                : Files.newBufferedWriter(checkpointFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+
+            for (InputResource<?> file : spectrumFiles)
+                running = submitBlock(running, checkpoint, finished, new ImportBlock(blockKey(file, -1), file.getSize(),
+                        List.of(file), List.of()));
+
+            for (InputResource<?> file : structureFiles) {
+                final StructureFormat format = StructureFormat.of(file.getFilename());
+                if (format == StructureFormat.OTHER) {
+                    running = submitBlock(running, checkpoint, finished, new ImportBlock(blockKey(file, -1), file.getSize(),
+                            List.of(), List.of(file)));
+                    continue;
+                }
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
+                    final Iterator<byte[]> blocks = splitStructures(reader, format, blockSize);
+                    for (int blockIndex = 0; blocks.hasNext(); ++blockIndex) {
+                        final byte[] data = blocks.next();
+                        running = submitBlock(running, checkpoint, finished, new ImportBlock(blockKey(file, blockIndex), data.length,
+                                List.of(), List.of(new StructureBlockResource(file, blockIndex, data))));
+                    }
+                }
+            }
+
+            if (running != null)
+                awaitBlock(running, checkpoint);
+            running = null;
+        } finally {
+            if (running != null)
+                running.job.cancel();
+        }
+
+        if (checkpointFile != null)
+            Files.deleteIfExists(checkpointFile);
+        return true;
+    }
+
+    /**
+     * Waits for the running block and starts the import of the given one, unless it has been finished before.
+     *
+     * @return the block that is running now
+     */
+    @Nullable
+    private ImportBlock submitBlock(@Nullable ImportBlock running, @Nullable BufferedWriter checkpoint, Set<String> finished, ImportBlock block) throws Exception {
+        checkForInterruption();
+        if (block.key != null && finished.contains(block.key)) {
+            addProgress(block.size);
+            return running;
+        }
+        if (running != null)
+            awaitBlock(running, checkpoint);
+
+        block.job = submitSubJob(CustomDatabaseImporter.makeImportToDatabaseJob(
+                block.spectra, block.structures, listener, database, ApplicationCore.WEB_API, writeBuffer));
+        return block;
+    }
+
+    private void awaitBlock(ImportBlock block, @Nullable BufferedWriter checkpoint) throws Exception {
+        block.job.awaitResult();
+        if (checkpoint != null && block.key != null) {
+            checkpoint.write(block.key);
+            checkpoint.newLine();
+            checkpoint.flush();
+        }
+        addProgress(block.size);
+    }
+
+    enum StructureFormat {
+        SDF, CSV, OTHER;
+
+        static StructureFormat of(@Nullable String filename) {
+            final String name = filename == null ? "" : filename.toLowerCase(Locale.ROOT);
+            if (name.endsWith(".sdf"))
+                return SDF;
+            if (name.endsWith(".csv") || name.endsWith(".tsv"))
+                return CSV;
+            return OTHER;
+        }
+    }
+
+    /**
+     * Splits a structure file into blocks of at most {@code blockSize} structures. SDF records are never split and
+     * a header line of a CSV/TSV file is repeated at the beginning of every block.
+     */
+    static Iterator<byte[]> splitStructures(BufferedReader reader, StructureFormat format, int blockSize) throws IOException {
+        final String firstLine = reader.readLine();
+        final String header = format == StructureFormat.CSV && firstLine != null && isHeader(firstLine) ? firstLine : null;
+        return new Iterator<>() {
+            private String pending = header != null ? null : firstLine;
+            private byte[] next = readBlock();
+
+            private byte[] readBlock() {
+                try {
+                    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    if (header != null)
+                        writeLine(buffer, header);
+                    int structures = 0;
+                    boolean inRecord = false;
+                    String line = pending != null ? pending : reader.readLine();
+                    pending = null;
+                    for (; line != null; line = reader.readLine()) {
+                        writeLine(buffer, line);
+                        if (format == StructureFormat.SDF) {
+                            if (line.startsWith("$$$$")) {
+                                inRecord = false;
+                                ++structures;
+                            } else if (!line.isBlank()) {
+                                inRecord = true;
+                            }
+                        } else if (!line.isBlank()) {
+                            ++structures;
+                        }
+                        if (structures == blockSize)
+                            break;
+                    }
+                    // trailing lines of an unterminated last SDF record
+                    if (inRecord)
+                        ++structures;
+                    return structures > 0 ? buffer.toByteArray() : null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public byte[] next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                final byte[] current = next;
+                next = readBlock();
+                return current;
+            }
+        };
+    }
+
+    /**
+     * A CSV/TSV line is a header if its first column is neither an InChI nor a parsable SMILES.
+     */
+    static boolean isHeader(String line) {
+        final String first = line.split("[\\t,]", 2)[0].trim();
+        if (first.isEmpty() || first.startsWith("InChI="))
+            return false;
+        try {
+            new SmilesParser(DefaultChemObjectBuilder.getInstance()).parseSmiles(first);
+            return false;
+        } catch (InvalidSmilesException e) {
+            return true;
+        }
+    }
+
+    private static void writeLine(ByteArrayOutputStream buffer, String line) {
+        buffer.writeBytes(line.getBytes(StandardCharsets.UTF_8));
+        buffer.write('\n');
+    }
+
+    private void addProgress(long bytes) {
+        updateProgress(0, totalBytes, bytesImported.addAndGet(bytes), "Importing Data...");
+    }
+
+    private final CustomDatabaseImporter.Listener listener = new CustomDatabaseImporter.Listener() {
+        @Override
+        public void newFingerprint(InChI inChI, int numOfBytes) {
+        }
+
+        @Override
+        public void bytesRead(int numOfBytes) {
+        }
+
+        @Override
+        public void newInChI(List<InChI> inChIs) {
+            progressInfo("Imported " + inChIs.size() + " Compounds.");
+        }
+    };
+
+    private Set<String> readCheckpoint() throws IOException {
+        if (checkpointFile == null || !Files.exists(checkpointFile))
+            return Set.of();
+        try (BufferedReader reader = Files.newBufferedReader(checkpointFile)) {
+            final Set<String> keys = new HashSet<>();
+            String line;
+            while ((line = reader.readLine()) != null)
+                if (!line.isBlank())
+                    keys.add(line);
+            return keys;
+        }
+    }
+
+    /**
+     * Identifies a block by file, file state and position, so changed input files or block sizes are never skipped.
+     * Only blocks of local files can be resumed, null for other resources (e.g. uploads).
+     */
+    @Nullable
+    private String blockKey(InputResource<?> resource, int blockIndex) throws IOException {
+        if (!(resource instanceof PathInputResource pathResource))
+            return null;
+        final Path file = pathResource.getResource();
+        return file.toAbsolutePath() + "\t" + Files.size(file) + "\t" + Files.getLastModifiedTime(file).toMillis()
+                + "\t" + (blockIndex < 0 ? "all" : blockSize + ":" + blockIndex);
+    }
+
+    private static class ImportBlock {
+        @Nullable
+        private final String key;
+        private final long size;
+        private final List<InputResource<?>> spectra;
+        private final List<InputResource<?>> structures;
+        private JJob<Boolean> job;
+
+        private ImportBlock(@Nullable String key, long size, List<InputResource<?>> spectra, List<InputResource<?>> structures) {
+            this.key = key;
+            this.size = size;
+            this.spectra = spectra;
+            this.structures = structures;
+        }
+    }
+
+    /**
+     * Block of a structure file held in memory. Keeps the file name of the source file so that the importer detects
+     * the same format.
+     */
+    private static class StructureBlockResource implements InputResource<byte[]> {
+        private final InputResource<?> source;
+        private final int blockIndex;
+        private final byte[] data;
+
+        private StructureBlockResource(InputResource<?> source, int blockIndex, byte[] data) {
+            this.source = source;
+            this.blockIndex = blockIndex;
+            this.data = data;
+        }
+
+        @Override
+        public byte[] getResource() {
+            return data;
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return data;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(data);
+        }
+
+        @Override
+        public String getFilename() {
+            return source.getFilename();
+        }
+
+        @Override
+        public URI toUri() {
+            final URI uri = source.toUri();
+            return uri == null ? null : URI.create(uri + "#block" + blockIndex);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return data.length == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return data.length;
+        }
+    }
+}
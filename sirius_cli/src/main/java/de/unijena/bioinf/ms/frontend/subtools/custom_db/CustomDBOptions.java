@@ -19,11 +19,11 @@
 
 package de.unijena.bioinf.ms.frontend.subtools.custom_db;
 
-import de.unijena.bioinf.ChemistryBase.chem.InChI;
 import de.unijena.bioinf.ChemistryBase.fp.CdkFingerprintVersion;
 import de.unijena.bioinf.ChemistryBase.jobs.SiriusJobs;
 import de.unijena.bioinf.ChemistryBase.utils.FileUtils;
 import de.unijena.bioinf.babelms.MsExperimentParser;
+import de.unijena.bioinf.babelms.inputresource.InputResource;
 import de.unijena.bioinf.babelms.inputresource.PathInputResource;
 import de.unijena.bioinf.chemdb.custom.*;
 import de.unijena.bioinf.jjobs.BasicMasterJJob;
@@ -45,7 +45,6 @@ import java.nio.file.Path;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
@@ -104,6 +103,12 @@ public class CustomDBOptions implements StandaloneTool<Workflow> {
                 order = 210)
         private int writeBuffer;
 
+        @Option(names = {"--block-size"}, defaultValue = "" + CustomDBImportJob.DEFAULT_BLOCK_SIZE,
+                description = {"Number of structures (records of .sdf files, lines of .csv/.tsv files) that are imported together as one block. Other structure files are imported as one block.",
+                        "Finished blocks are recorded in a checkpoint file next to the database, so an interrupted import resumes with the first unfinished block when started again with the same input."},
+                order = 211)
+        private int blockSize;
+
         @Option(names = {"--input", "-i"}, split = ",", description = {
                 "Files or directories to import into the database.",
                 "Supported formats: " + MsExperimentParser.DESCRIPTION,
@@ -204,41 +209,15 @@ public class CustomDBOptions implements StandaloneTool<Workflow> {
 
                 logInfo("Importing new structures to custom database '" + mode.importParas.location + "'...");
 
-                final AtomicLong totalBytesToRead = new AtomicLong(0);
-                for (Path file : structureFiles)
-                    totalBytesToRead.addAndGet(Files.size(file));
-                for (Path file : spectrumFiles)
-                    totalBytesToRead.addAndGet(Files.size(file));
-
-                totalBytesToRead.set((long) Math.ceil(totalBytesToRead.get() * 1.6)); //just some preloading to do last inserts
-
-
-                final AtomicLong bytesRead = new AtomicLong(0);
-                CustomDatabaseImporter.Listener listener = new CustomDatabaseImporter.Listener() {
-                    @Override
-                    public void newFingerprint(InChI inChI, int numOfBytes) {
-                        updateProgress(0, totalBytesToRead.addAndGet(numOfBytes), bytesRead.addAndGet(numOfBytes), "Added FP for " + inChI.key2D());
-                    }
-
-                    @Override
-                    public void bytesRead(int numOfBytes) {
-                        updateProgress(0, totalBytesToRead.get(), bytesRead.addAndGet(numOfBytes), "Reading Data...");
-                    }
-
-                    @Override
-                    public void newInChI(List<InChI> inChIs) {
-                        progressInfo("Imported " + inChIs.size() + " Compounds.");
-//                        updateProgress(0, totalBytesToRead.addAndGet(inChIs.size()), bytesRead.addAndGet(inChIs.size()), "Imported: " + inChIs.stream().map(InChI::key2D).collect(Collectors.joining(", ")));
-                    }
-                };
-
                 checkForInterruption();
 
-                dbjob = CustomDatabaseImporter.makeImportToDatabaseJob(
-                        spectrumFiles.stream().map(PathInputResource::new).collect(Collectors.toList()),
-                        structureFiles.stream().map(PathInputResource::new).collect(Collectors.toList()),
-                        listener,(NoSQLCustomDatabase<?, ?>) db, ApplicationCore.WEB_API, mode.importParas.writeBuffer
-                );
+                CustomDBImportJob importJob = new CustomDBImportJob(
+                        spectrumFiles.stream().<InputResource<?>>map(PathInputResource::new).toList(),
+                        structureFiles.stream().<InputResource<?>>map(PathInputResource::new).toList(),
+                        (NoSQLCustomDatabase<?, ?>) db, mode.importParas.writeBuffer, mode.importParas.blockSize,
+                        Path.of(mode.importParas.location + ".import-checkpoint"));
+                importJob.addJobProgressListener(evt -> updateProgress(evt.getMinValue(), evt.getMaxValue(), evt.getProgress()));
+                dbjob = importJob;
                 checkForInterruption();
                 submitJob(dbjob).awaitResult();
                 logInfo("...New structures imported to custom database '" + mode.importParas.location + "'. Database ID is: " + db.getSettings().getName());
@@ -73,6 +73,13 @@ public class DecompOptions implements StandaloneTool<DecompWorkflow> {
     @CommandLine.Option(names = {"--output", "-o"}, description = {"File to with output to."})
     Path out;
 
+    @CommandLine.Option(names = {"--stdin"}, description = {"Read masses (one per line) from standard input."})
+    boolean stdin;
+
+    @CommandLine.Option(names = {"--chunk-size"}, defaultValue = "500",
+            description = {"Number of masses that are decomposed together in one job. Chunks are decomposed in parallel."})
+    int chunkSize;
+
     @Override
     public DecompWorkflow makeWorkflow(RootOptions<?> rootOptions, ParameterConfig config) {
         return new DecompWorkflow(this, rootOptions.getInput());
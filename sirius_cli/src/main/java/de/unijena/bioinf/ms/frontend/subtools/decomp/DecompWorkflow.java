@@ -23,18 +23,21 @@ import de.unijena.bioinf.ChemistryBase.chem.*;
 import de.unijena.bioinf.ChemistryBase.ms.Deviation;
 import de.unijena.bioinf.MassDecomposer.*;
 import de.unijena.bioinf.MassDecomposer.Chemistry.MassToFormulaDecomposer;
+import de.unijena.bioinf.ChemistryBase.jobs.SiriusJobs;
+import de.unijena.bioinf.jjobs.BasicJJob;
+import de.unijena.bioinf.jjobs.JJob;
 import de.unijena.bioinf.ms.frontend.subtools.InputFilesOptions;
 import de.unijena.bioinf.ms.frontend.workflow.Workflow;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class DecompWorkflow implements Workflow {
@@ -81,7 +84,6 @@ public class DecompWorkflow implements Workflow {
         }
         final Deviation dev = new Deviation(options.ppm, options.absDeviation);
         final ChemicalAlphabet alphabet = options.alphabet.getAlphabet();
-        final MassToFormulaDecomposer decomposer = new MassToFormulaDecomposer(alphabet);
 
         Map<Element, Interval> boundary = options.alphabet.getBoundary();
         final String parentFormula = options.parentFormula;
@@ -98,68 +100,155 @@ public class DecompWorkflow implements Workflow {
             }
         }
 
-        // parse input massed
-        List<Double> masses = options.masses != null ? Arrays.stream(options.masses).boxed().collect(Collectors.toList()) : new ArrayList<>();
-        if (input != null && input.msInput != null && input.msInput.unknownFiles != null) {
-            for (Path path : input.msInput.unknownFiles.keySet().stream().sorted().collect(Collectors.toList())) {
-                try {
-                    masses.addAll(Files.readAllLines(path).stream().map(Double::valueOf).collect(Collectors.toList()));
-                } catch (IOException e) {
-                    LoggerFactory.getLogger(getClass()).error("Error when parsing masses from input file: '" + path.toString() + "'. Skipping this file!", e);
-                }
-            }
-        }
+        final String ion = options.ionization;
+        final PrecursorIonType ionization = ion == null ? null : PeriodicTable.getInstance().ionByNameOrNull(ion);
+        // decomposers cache intermediate results and are not thread safe
+        final ThreadLocal<MassToFormulaDecomposer> decomposers = ThreadLocal.withInitial(() -> new MassToFormulaDecomposer(alphabet));
+        final DecompositionValidator<Element> chemicalFilter = validator;
 
         final boolean printErrors = options.massErrors;
-        try (Writer ow = options.out != null ? Files.newBufferedWriter(options.out) : new OutputStreamWriter(System.out)) {
+        try (Writer ow = new BufferedWriter(options.out != null ? Files.newBufferedWriter(options.out) : new OutputStreamWriter(System.out))) {
             //write header
             ow.write("m/z\tdecompositions");
             if (printErrors)
                 ow.write("\tabsMassDev\trelMassDev");
             ow.write(System.lineSeparator());
 
-            for (double mz : masses) {
-                final double mass;
-                final String ion = options.ionization;
-                final PrecursorIonType ionization = ion == null ? null : PeriodicTable.getInstance().ionByNameOrNull(ion);
-                mass = ionization == null ? mz : ionization.precursorMassToNeutralMass(mz);
+            final OrderedChunkWriter chunks = new OrderedChunkWriter(ow, Math.max(1, options.chunkSize),
+                    masses -> decomposeChunk(masses, ionization, dev, boundary, alphabet, decomposers.get(), chemicalFilter, printErrors));
 
-                final List<int[]> compomers;
-                if (options.maxDecomps == null || options.maxDecomps <= 0) {
-                    compomers = decomposer.decompose(mass, dev, boundary);
-                } else {
-                    compomers = new ArrayList<>(options.maxDecomps);
-                    int count = options.maxDecomps;
-                    DecompIterator<Element> it = decomposer.decomposeIterator(mass, dev, boundary);
-                    while (it.next() && count > 0) {
-                        compomers.add(it.getCurrentCompomere().clone());
-                        count--;
+            // stream input masses
+            if (options.masses != null)
+                for (double mz : options.masses)
+                    chunks.add(mz);
+
+            if (input != null && input.msInput != null && input.msInput.unknownFiles != null) {
+                for (Path path : input.msInput.unknownFiles.keySet().stream().sorted().collect(Collectors.toList())) {
+                    try (BufferedReader reader = Files.newBufferedReader(path)) {
+                        readMasses(reader, path.toString(), chunks);
+                    } catch (IOException e) {
+                        LoggerFactory.getLogger(getClass()).error("Error when parsing masses from input file: '" + path.toString() + "'. Skipping this file!", e);
                     }
                 }
+            }
+
+            if (options.stdin)
+                readMasses(new BufferedReader(new InputStreamReader(System.in)), "stdin", chunks);
 
-                final List<MolecularFormula> formulas = new ArrayList<>(compomers.size());
-                for (int[] c : compomers) {
-                    if (validator == null || validator.validate(c, decomposer.getOrderedCharacterIds(), decomposer.getAlphabet()))
-                        formulas.add(alphabet.decompositionToFormula(c));
+            chunks.finish();
+        } catch (IOException e) {
+            LoggerFactory.getLogger(getClass()).error("could not write output! Canceling...", e);
+        }
+    }
+
+    private static void readMasses(BufferedReader reader, String source, OrderedChunkWriter chunks) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.strip();
+            if (line.isEmpty())
+                continue;
+            try {
+                chunks.add(Double.parseDouble(line));
+            } catch (NumberFormatException e) {
+                LoggerFactory.getLogger(DecompWorkflow.class).warn("Skipping invalid mass '" + line + "' in '" + source + "'.");
+            }
+        }
+    }
+
+    private String decomposeChunk(double[] masses, PrecursorIonType ionization, Deviation dev, Map<Element, Interval> boundary,
+                                  ChemicalAlphabet alphabet, MassToFormulaDecomposer decomposer, DecompositionValidator<Element> validator, boolean printErrors) {
+        final DecimalFormat formater = (DecimalFormat) NumberFormat.getInstance(Locale.ENGLISH);
+        formater.applyPattern("#.####");
+        final StringBuilder out = new StringBuilder(masses.length * 64);
+
+        for (double mz : masses) {
+            final double mass = ionization == null ? mz : ionization.precursorMassToNeutralMass(mz);
+
+            final List<int[]> compomers;
+            if (options.maxDecomps == null || options.maxDecomps <= 0) {
+                compomers = decomposer.decompose(mass, dev, boundary);
+            } else {
+                compomers = new ArrayList<>(options.maxDecomps);
+                int count = options.maxDecomps;
+                DecompIterator<Element> it = decomposer.decomposeIterator(mass, dev, boundary);
+                while (it.next() && count > 0) {
+                    compomers.add(it.getCurrentCompomere().clone());
+                    count--;
                 }
-                formulas.sort(Comparator.comparingDouble(o -> Math.abs(o.getMass() - mass)));
-
-
-                final DecimalFormat formater = (DecimalFormat) NumberFormat.getInstance(Locale.ENGLISH);
-                formater.applyPattern("#.####");
-                ow.write(formater.format(mz));
-                ow.write("\t");
-                ow.write(formulas.stream().map(MolecularFormula::toString).collect(Collectors.joining(",")));
-                if (printErrors) {
-                    ow.write("\t");
-                    ow.write(formulas.stream().map(f -> formater.format(mass - f.getMass())).collect(Collectors.joining(",")));
-                    ow.write("\t");
-                    ow.write(formulas.stream().map(f -> formater.format(((mass - f.getMass()) / mass) * 1e6)).collect(Collectors.joining(",")));
+            }
+
+            final List<MolecularFormula> formulas = new ArrayList<>(compomers.size());
+            for (int[] c : compomers) {
+                if (validator == null || validator.validate(c, decomposer.getOrderedCharacterIds(), decomposer.getAlphabet()))
+                    formulas.add(alphabet.decompositionToFormula(c));
+            }
+            formulas.sort(Comparator.comparingDouble(o -> Math.abs(o.getMass() - mass)));
+
+            out.append(formater.format(mz));
+            out.append("\t");
+            out.append(formulas.stream().map(MolecularFormula::toString).collect(Collectors.joining(",")));
+            if (printErrors) {
+                out.append("\t");
+                out.append(formulas.stream().map(f -> formater.format(mass - f.getMass())).collect(Collectors.joining(",")));
+                out.append("\t");
+                out.append(formulas.stream().map(f -> formater.format(((mass - f.getMass()) / mass) * 1e6)).collect(Collectors.joining(",")));
+            }
+            out.append(System.lineSeparator());
+        }
+        return out.toString();
+    }
+
+    /**
+     * Collects masses into chunks that are decomposed in parallel by the global job manager.
+     * Results are written in input order. The number of chunks in flight is bounded, so input and
+     * output are streamed instead of being held in memory.
+     */
+    private static class OrderedChunkWriter {
+        private final Writer writer;
+        private final Function<double[], String> decompose;
+        private final int maxChunksInFlight = 2 * SiriusJobs.getCPUThreads();
+        private final Deque<BasicJJob<String>> inFlight = new ArrayDeque<>();
+        private final double[] chunk;
+        private int size = 0;
+
+        private OrderedChunkWriter(Writer writer, int chunkSize, Function<double[], String> decompose) {
+            this.writer = writer;
+            this.decompose = decompose;
+            this.chunk = new double[chunkSize];
+        }
+
+        private void add(double mz) throws IOException {
+            chunk[size++] = mz;
+            if (size == chunk.length)
+                submitChunk();
+        }
+
+        private void submitChunk() throws IOException {
+            final double[] masses = Arrays.copyOf(chunk, size);
+            size = 0;
+            inFlight.add(SiriusJobs.getGlobalJobManager().submitJob(new BasicJJob<String>(JJob.JobType.CPU) {
+                @Override
+                protected String compute() {
+                    return decompose.apply(masses);
                 }
-                ow.write(System.lineSeparator());
+            }));
+            while (inFlight.size() >= maxChunksInFlight)
+                writeNext();
+        }
+
+        private void writeNext() throws IOException {
+            try {
+                writer.write(inFlight.poll().awaitResult());
+            } catch (ExecutionException e) {
+                throw new IOException("Error during mass decomposition.", e.getCause());
             }
-        } catch (IOException e) {
-            LoggerFactory.getLogger(getClass()).error("could not write output! Canceling...", e);
+        }
+
+        private void finish() throws IOException {
+            if (size > 0)
+                submitChunk();
+            while (!inFlight.isEmpty())
+                writeNext();
         }
     }
 }
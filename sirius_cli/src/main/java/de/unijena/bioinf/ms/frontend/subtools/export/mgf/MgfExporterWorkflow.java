@@ -28,42 +28,48 @@ import de.unijena.bioinf.ChemistryBase.ms.lcms.QuantificationTable;
 import de.unijena.bioinf.ChemistryBase.utils.FileUtils;
 import de.unijena.bioinf.ChemistryBase.utils.Utils;
 import de.unijena.bioinf.babelms.mgf.MgfWriter;
+import de.unijena.bioinf.jjobs.BasicJJob;
+import de.unijena.bioinf.jjobs.JJob;
 import de.unijena.bioinf.ms.frontend.subtools.PreprocessingJob;
 import de.unijena.bioinf.ms.frontend.workflow.Workflow;
 import de.unijena.bioinf.projectspace.Instance;
+import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.text.translate.CsvTranslators;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Standalone-Tool to export spectra to mgf format.
+ * <p>
+ * The project is read in a single pass. MGF blocks and quantification rows are created by parallel jobs and
+ * written in project order. If the provided feature ids turn out to be unusable (missing or duplicates) the export
+ * is restarted once with the SIRIUS internal ids.
  */
 public class MgfExporterWorkflow implements Workflow {
+    private static final int CHUNK_SIZE = 32;
+
     private final Path outputPath;
-    private final MgfWriter mgfWriter;
+    private final ThreadLocal<MgfWriter> mgfWriters;
     private final PreprocessingJob<?> ppj;
     private final Optional<Path> quantPath;
     private final boolean ignoreMs1Only;
-    private final AtomicBoolean useFeatureId;
+    private final boolean useFeatureId;
 
 
     public MgfExporterWorkflow(PreprocessingJob<?> ppj, MgfExporterOptions options) {
         outputPath = options.output;
         Deviation mergeMs2Deviation = new Deviation(options.ppmDev);
-        mgfWriter = new MgfWriter(options.writeMs1, options.mergeMs2, mergeMs2Deviation, true);
+        mgfWriters = ThreadLocal.withInitial(() -> new MgfWriter(options.writeMs1, options.mergeMs2, mergeMs2Deviation, true));
         this.ppj = ppj;
         this.quantPath = Optional.ofNullable(options.quantTable).map(File::toPath);
-        this.useFeatureId = new AtomicBoolean(options.featureId);
+        this.useFeatureId = options.featureId;
         this.ignoreMs1Only = options.ignoreMs1Only;
     }
 
@@ -72,141 +78,246 @@ public class MgfExporterWorkflow implements Workflow {
     public void run() {
         try {
             final Iterable<? extends Instance> ps = SiriusJobs.getGlobalJobManager().submitJob(ppj).awaitResult();
-            {
-                final AtomicInteger size = new AtomicInteger(0);
-                final Set<String> ids = new HashSet<>();
-
-                ps.forEach(i -> {
-                    size.incrementAndGet();
-                    if (useFeatureId.get())
-                        i.getExternalFeatureId().ifPresentOrElse(ids::add, (() -> useFeatureId.set(false)));
-                });
-
-                useFeatureId.set(ids.size() >= size.get());
-
-                LoggerFactory.getLogger(getClass()).info(useFeatureId.get()
-                        ? "Using provided feature ids."
-                        : "Using SIRIUS internal IDs as feature ids.");
-
+            if (useFeatureId && export(ps, true)) {
+                LoggerFactory.getLogger(getClass()).info("Used provided feature ids.");
+            } else {
+                LoggerFactory.getLogger(getClass()).info("Using SIRIUS internal IDs as feature ids.");
+                export(ps, false);
             }
+        } catch (ExecutionException e) {
+            LoggerFactory.getLogger(getClass()).error("Error when reading input project!", e);
+        } catch (IOException e) {
+            LoggerFactory.getLogger(getClass()).error("Error when writing the MGF file to: " + outputPath.toString(), e);
+        }
+    }
 
+    /**
+     * @return false if provided feature ids should be used, but they are missing or not unique. Nothing useful has
+     * been written in this case.
+     */
+    private boolean export(Iterable<? extends Instance> ps, boolean useFeatureIds) throws IOException, ExecutionException {
+        final Set<String> featureIds = new HashSet<>();
+        final Deque<BasicJJob<List<ExportBlock>>> inFlight = new ArrayDeque<>();
+        final int maxInFlight = 2 * SiriusJobs.getCPUThreads();
 
-            try (final BufferedWriter writer = Files.newBufferedWriter(outputPath)) {
-                for (Instance inst : ps) {
-                    try {
-                        MutableMs2Experiment exp = inst.getExperiment().mutate();
-                        if (ignoreMs1Only && (exp.getMs2Spectra() == null || exp.getMs2Spectra().isEmpty()))
-                            continue; //we ignore features without ms/ms only in mgf, in quant table they are still useful (e.g. for QIIME)
-                        //just to make sure that all the fields are compatible with gnps
-                        String fid = extractFid(inst);
-                        exp.setName(fid);
-                        mgfWriter.write(writer, exp, fid);
-                    } catch (IOException e) {
-                        throw e;
-                    } catch (Exception e) {
-                        LoggerFactory.getLogger(getClass()).warn("Invalid instance '{}'. Skipping this instance!", inst, e);
-                    } finally {
-                        inst.clearCompoundCache();
-                    }
+        try (final BufferedWriter writer = Files.newBufferedWriter(outputPath);
+             final QuantTableWriter quantWriter = quantPath.isPresent() ? new QuantTableWriter() : null) {
+            List<Instance> chunk = new ArrayList<>(CHUNK_SIZE);
+            for (Instance inst : ps) {
+                chunk.add(inst);
+                if (chunk.size() == CHUNK_SIZE) {
+                    inFlight.add(SiriusJobs.getGlobalJobManager().submitJob(makeExportJob(chunk, useFeatureIds)));
+                    chunk = new ArrayList<>(CHUNK_SIZE);
+                    while (inFlight.size() >= maxInFlight)
+                        if (!write(inFlight.poll().awaitResult(), writer, quantWriter, useFeatureIds, featureIds))
+                            return false;
                 }
             }
-            quantPath.ifPresent(path -> {
+            if (!chunk.isEmpty())
+                inFlight.add(SiriusJobs.getGlobalJobManager().submitJob(makeExportJob(chunk, useFeatureIds)));
+            while (!inFlight.isEmpty())
+                if (!write(inFlight.poll().awaitResult(), writer, quantWriter, useFeatureIds, featureIds))
+                    return false;
+
+            if (quantWriter != null) {
                 try {
-                    writeQuantifiactionTable(ps, path);
+                    quantWriter.writeTable(quantPath.get());
                 } catch (IOException e) {
                     LoggerFactory.getLogger(MgfExporterWorkflow.class).error(e.getMessage(), e);
                 }
-            });
-        } catch (ExecutionException e) {
-            LoggerFactory.getLogger(getClass()).error("Error when reading input project!", e);
-        } catch (IOException e) {
-            LoggerFactory.getLogger(getClass()).error("Error when writing the MGF file to: " + outputPath.toString(), e);
+            }
+            return true;
+        } finally {
+            inFlight.forEach(j -> j.cancel(true));
         }
     }
 
-    private String extractFid(Instance i) {
-        return useFeatureId.get() && i.getExternalFeatureId().map(StringUtils::isNumeric).orElse(false)
-                ? i.getExternalFeatureId().get()
-                : i.getId();
+    private boolean write(List<ExportBlock> blocks, BufferedWriter writer, @Nullable QuantTableWriter quantWriter, boolean useFeatureIds, Set<String> featureIds) throws IOException {
+        for (ExportBlock block : blocks) {
+            if (useFeatureIds && (block.externalFeatureId == null || !featureIds.add(block.externalFeatureId)))
+                return false;
+            if (block.mgf != null)
+                writer.write(block.mgf);
+            if (quantWriter != null && block.quantRow != null)
+                quantWriter.add(block.quantRow);
+        }
+        return true;
     }
 
-    private void writeQuantifiactionTable(Iterable<? extends Instance> ps, Path path) throws IOException {
-        final HashMap<String, QuantInfo> compounds = new HashMap<>();
-        final Set<String> sampleNames = new HashSet<>();
-
-        try (BufferedWriter bw = FileUtils.getWriter(path.toFile())) {
-            for (Instance i : ps) {
-                i.getQuantificationTable().ifPresent(quant -> {
-                    for (int j = 0; j < quant.length(); ++j) sampleNames.add(quant.getName(j));
-
-                    compounds.put(extractFid(i), new QuantInfo(i.getIonMass(),
-                            i.getRT()
-                                    .orElse(new RetentionTime(0d))
-                                    .getRetentionTimeInSeconds() / 60d, //use min
-                            quant
-                    ));
-                });
+    private BasicJJob<List<ExportBlock>> makeExportJob(List<Instance> chunk, boolean useFeatureIds) {
+        return new BasicJJob<>(JJob.JobType.CPU) {
+            @Override
+            protected List<ExportBlock> compute() {
+                final List<ExportBlock> blocks = new ArrayList<>(chunk.size());
+                for (Instance inst : chunk) {
+                    try {
+                        final String fid = extractFid(inst, useFeatureIds);
+                        blocks.add(new ExportBlock(inst.getExternalFeatureId().orElse(null), formatMgf(inst, fid), makeQuantRow(inst, fid)));
+                    } finally {
+                        inst.clearCompoundCache();
+                    }
+                }
+                return blocks;
             }
+        };
+    }
 
-            final String quatTypeSuffix = compounds.values().stream().findAny().map(QuantInfo::quants)
-                    .map(QuantificationTable::getMeasure).map(this::toQuantSuffix).orElse("");
-
-            // now write data
-            ArrayList<String> compoundNames = new ArrayList<>(compounds.keySet());
-            compoundNames.sort(Utils.ALPHANUMERIC_COMPARATOR);
-            ArrayList<String> sampleNameList = new ArrayList<>(sampleNames);
-            sampleNameList.sort(Utils.ALPHANUMERIC_COMPARATOR);
-            bw.write("row ID,row m/z,row retention time");
-            CsvTranslators.CsvEscaper escaper = new CsvTranslators.CsvEscaper();
-            for (String sample : sampleNameList) {
-                bw.write(",");
-                escaper.translate(sample + quatTypeSuffix, bw);
-            }
-            bw.newLine();
-            for (String compoundId : compoundNames) {
-                QuantInfo quantInfo = compounds.get(compoundId);
-                bw.write(escaper.translate(compoundId));
-                bw.write(",");
-                bw.write(String.valueOf(quantInfo.ionMass));
-                bw.write(",");
-                bw.write(String.valueOf(quantInfo.rt));
-                for (String sampleName : sampleNameList) {
-                    bw.write(',');
-                    bw.write(String.valueOf(quantInfo.quants.mayGetAbundance(sampleName).orElse(0d)));
-                }
-                bw.newLine();
+    @Nullable
+    private String formatMgf(Instance inst, String fid) {
+        try {
+            MutableMs2Experiment exp = inst.getExperiment().mutate();
+            if (ignoreMs1Only && (exp.getMs2Spectra() == null || exp.getMs2Spectra().isEmpty()))
+                return null; //we ignore features without ms/ms only in mgf, in quant table they are still useful (e.g. for QIIME)
+            //just to make sure that all the fields are compatible with gnps
+            exp.setName(fid);
+            final StringWriter out = new StringWriter();
+            try (BufferedWriter bw = new BufferedWriter(out)) {
+                mgfWriters.get().write(bw, exp, fid);
             }
+            return out.toString();
+        } catch (Exception e) {
+            LoggerFactory.getLogger(getClass()).warn("Invalid instance '{}'. Skipping this instance!", inst, e);
+            return null;
         }
     }
 
-    private String toQuantSuffix(QuantificationMeasure m) {
+    @Nullable
+    private QuantRow makeQuantRow(Instance inst, String fid) {
+        if (quantPath.isEmpty())
+            return null;
+        try {
+            return inst.getQuantificationTable().map(quant -> new QuantRow(fid, inst.getIonMass(),
+                    inst.getRT()
+                            .orElse(new RetentionTime(0d))
+                            .getRetentionTimeInSeconds() / 60d, //use min
+                    quant)).orElse(null);
+        } catch (Exception e) {
+            LoggerFactory.getLogger(getClass()).warn("Could not read quantification of instance '{}'. Skipping this instance!", inst, e);
+            return null;
+        }
+    }
+
+    private String extractFid(Instance i, boolean useFeatureIds) {
+        return useFeatureIds && i.getExternalFeatureId().map(StringUtils::isNumeric).orElse(false)
+                ? i.getExternalFeatureId().get()
+                : i.getId();
+    }
+
+    private static String toQuantSuffix(QuantificationMeasure m) {
         return switch (m) {
             case APEX -> " Peak height";
             case INTEGRAL, INTEGRAL_FWHMD -> " Peak area";
         };
     }
 
-    private static class QuantInfo {
+    private static class ExportBlock {
+        @Nullable
+        final String externalFeatureId;
+        @Nullable
+        final String mgf;
+        @Nullable
+        final QuantRow quantRow;
+
+        private ExportBlock(@Nullable String externalFeatureId, @Nullable String mgf, @Nullable QuantRow quantRow) {
+            this.externalFeatureId = externalFeatureId;
+            this.mgf = mgf;
+            this.quantRow = quantRow;
+        }
+    }
+
+    private static class QuantRow {
+        final String id;
         final double ionMass;
         final double rt;
         final QuantificationTable quants;
 
-        private QuantInfo(double ionMass, double rt, QuantificationTable quants) {
+        private QuantRow(String id, double ionMass, double rt, QuantificationTable quants) {
+            this.id = id;
             this.ionMass = ionMass;
             this.rt = rt;
             this.quants = quants;
         }
+    }
 
-        public double ionMass() {
-            return ionMass;
+    /**
+     * Streams quantification rows into a temporary file, since the sample columns are known only after all rows
+     * have been seen. Only the sample names are kept in memory.
+     */
+    private static class QuantTableWriter implements Closeable {
+        private final Path rowsFile;
+        private final DataOutputStream rows;
+        private final Set<String> sampleNames = new HashSet<>();
+        private String quantTypeSuffix = null;
+        private int numberOfRows = 0;
+
+        private QuantTableWriter() throws IOException {
+            rowsFile = Files.createTempFile("sirius-quant-rows-", ".bin");
+            rows = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(rowsFile)));
+        }
+
+        private void add(QuantRow row) throws IOException {
+            if (quantTypeSuffix == null)
+                quantTypeSuffix = toQuantSuffix(row.quants.getMeasure());
+            rows.writeUTF(row.id);
+            rows.writeDouble(row.ionMass);
+            rows.writeDouble(row.rt);
+            rows.writeInt(row.quants.length());
+            for (int j = 0; j < row.quants.length(); ++j) {
+                sampleNames.add(row.quants.getName(j));
+                rows.writeUTF(row.quants.getName(j));
+                rows.writeDouble(row.quants.getAbundance(j));
+            }
+            ++numberOfRows;
         }
 
-        public double rt() {
-            return rt;
+        private void writeTable(Path path) throws IOException {
+            rows.close();
+            ArrayList<String> sampleNameList = new ArrayList<>(sampleNames);
+            sampleNameList.sort(Utils.ALPHANUMERIC_COMPARATOR);
+
+            try (BufferedWriter bw = FileUtils.getWriter(path.toFile());
+                 DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(rowsFile)))) {
+                bw.write("row ID,row m/z,row retention time");
+                CsvTranslators.CsvEscaper escaper = new CsvTranslators.CsvEscaper();
+                for (String sample : sampleNameList) {
+                    bw.write(",");
+                    escaper.translate(sample + (quantTypeSuffix == null ? "" : quantTypeSuffix), bw);
+                }
+                bw.newLine();
+
+                final Object2DoubleOpenHashMap<String> abundances = new Object2DoubleOpenHashMap<>();
+                for (int r = 0; r < numberOfRows; ++r) {
+                    final String compoundId = in.readUTF();
+                    final double ionMass = in.readDouble();
+                    final double rt = in.readDouble();
+                    abundances.clear();
+                    for (int j = in.readInt(); j > 0; --j) {
+                        final String name = in.readUTF();
+                        final double abundance = in.readDouble();
+                        abundances.putIfAbsent(name, abundance);
+                    }
+
+                    bw.write(escaper.translate(compoundId));
+                    bw.write(",");
+                    bw.write(String.valueOf(ionMass));
+                    bw.write(",");
+                    bw.write(String.valueOf(rt));
+                    for (String sampleName : sampleNameList) {
+                        bw.write(',');
+                        bw.write(String.valueOf(abundances.getOrDefault(sampleName, 0d)));
+                    }
+                    bw.newLine();
+                }
+            }
         }
 
-        public QuantificationTable quants() {
-            return quants;
+        @Override
+        public void close() throws IOException {
+            try {
+                rows.close();
+            } finally {
+                Files.deleteIfExists(rowsFile);
+            }
         }
     }
 }
@@ -0,0 +1,125 @@
+/*
+ * This file is part of the SIRIUS library for analyzing MS and MS/MS data
+ *
+ * Copyright (C) 2013-2020 Kai Dührkop, Markus Fleischauer, Marcus Ludwig, Martin A. Hoffman and Sebastian Böcker,
+ * Chair of Bioinformatics, Friedrich-Schilller University.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with SIRIUS. If not, see <https://www.gnu.org/licenses/lgpl-3.0.txt>
+ */
+
+package de.unijena.bioinf.ms.frontend.subtools.export.tables;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads prediction tables written by the prediction-export in {@link ExportPredictionsOptions.Format#COLUMNAR} format.
+ * <p>
+ * Layout (big-endian, strings as modified UTF-8, see {@link DataOutputStream#writeUTF(String)}):
+ * <pre>
+ * header:
+ *   int32  magic (0x53505243, "SPRC")
+ *   int32  format version (1)
+ *   int32  number of prediction columns C
+ *   C x    UTF column name
+ * record batches, repeated:
+ *   int32  number of rows R (0 terminates the table)
+ *   R x    UTF id
+ *   R x    UTF name
+ *   R x    UTF molecularFormula
+ *   R x    UTF adduct
+ *   C x    R x float32 probabilities of one prediction column (NaN if not available)
+ * </pre>
+ * A table without terminating batch is incomplete (e.g. the export failed) and {@link #readBatch()} fails with an
+ * {@link EOFException} when reaching its end.
+ */
+public class ColumnarPredictionsReader implements Closeable {
+    private final DataInputStream in;
+    private final List<String> predictionColumns;
+    private boolean finished = false;
+
+    public ColumnarPredictionsReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        final int magic = this.in.readInt();
+        if (magic != ExportPredictionsOptions.ExportPredictionJJob.COLUMNAR_MAGIC)
+            throw new IOException("Not a columnar prediction table. Unexpected magic number: " + Integer.toHexString(magic));
+        final int version = this.in.readInt();
+        if (version != ExportPredictionsOptions.ExportPredictionJJob.COLUMNAR_VERSION)
+            throw new IOException("Unsupported columnar prediction table version: " + version);
+        final int numColumns = this.in.readInt();
+        final List<String> columns = new ArrayList<>(numColumns);
+        for (int i = 0; i < numColumns; i++)
+            columns.add(this.in.readUTF());
+        this.predictionColumns = Collections.unmodifiableList(columns);
+    }
+
+    public List<String> getPredictionColumns() {
+        return predictionColumns;
+    }
+
+    /**
+     * @return the next record batch or null if the end of the table has been reached.
+     * @throws EOFException if the table is incomplete.
+     */
+    public Batch readBatch() throws IOException {
+        if (finished)
+            return null;
+        final int rows = in.readInt();
+        if (rows == 0) {
+            finished = true;
+            return null;
+        }
+        if (rows < 0)
+            throw new IOException("Invalid number of rows in record batch: " + rows);
+
+        final Batch batch = new Batch(rows, predictionColumns.size());
+        for (int r = 0; r < rows; r++) batch.ids[r] = in.readUTF();
+        for (int r = 0; r < rows; r++) batch.names[r] = in.readUTF();
+        for (int r = 0; r < rows; r++) batch.molecularFormulas[r] = in.readUTF();
+        for (int r = 0; r < rows; r++) batch.adducts[r] = in.readUTF();
+        for (float[] column : batch.predictions)
+            for (int r = 0; r < rows; r++)
+                column[r] = in.readFloat();
+        return batch;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Rows of one record batch. Predictions are stored column wise: {@code predictions[column][row]}.
+     */
+    public static class Batch {
+        public final String[] ids;
+        public final String[] names;
+        public final String[] molecularFormulas;
+        public final String[] adducts;
+        public final float[][] predictions;
+
+        private Batch(int rows, int columns) {
+            ids = new String[rows];
+            names = new String[rows];
+            molecularFormulas = new String[rows];
+            adducts = new String[rows];
+            predictions = new float[columns][rows];
+        }
+
+        public int size() {
+            return ids.length;
+        }
+    }
+}
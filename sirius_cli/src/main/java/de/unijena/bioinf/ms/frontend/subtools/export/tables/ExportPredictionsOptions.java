@@ -36,14 +36,12 @@ import de.unijena.bioinf.projectspace.Instance;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 
-import java.io.BufferedWriter;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 import java.util.concurrent.ExecutionException;
 
 @CommandLine.Command(name = "prediction-export", aliases = {"EPR"}, description = "<STANDALONE> Exports predictions from CSI:FingerID and CANOPUS.", versionProvider = Provide.Versions.class, mixinStandardHelpOptions = true, sortOptions = false)
@@ -59,6 +57,9 @@ public class ExportPredictionsOptions implements StandaloneTool<ExportPrediction
         output = Paths.get(outputPath);
     }
 
+    @CommandLine.Option(names = {"--format"}, defaultValue = "TSV", description = "Output format. TSV: tab separated text table. COLUMNAR: binary table with float32 prediction columns, much smaller and faster to write and load for large projects (see ColumnarPredictionsReader for layout and reader).")
+    protected Format format;
+
     @CommandLine.ArgGroup(exclusive = false)
     protected PredictionsOptions predictionsOptions;
 
@@ -67,12 +68,31 @@ public class ExportPredictionsOptions implements StandaloneTool<ExportPrediction
         return new ExportPredictionWorkflow(rootOptions.makeDefaultPreprocessingJob(), this, config);
     }
 
+    public enum Format {
+        /**
+         * Tab separated text table, one row per instance.
+         */
+        TSV,
+        /**
+         * Columnar binary table (big-endian). Header: int32 magic, int32 format version, int32 number of prediction
+         * columns followed by their names (modified UTF-8). Then record batches, each starting with the int32 number
+         * of rows followed by the id, name, molecularFormula and adduct columns (modified UTF-8, one value per row) and
+         * all prediction columns as contiguous float32 values (NaN for N/A). A batch with zero rows terminates the table,
+         * it is only written if the export finished successfully. Use {@link ColumnarPredictionsReader} to read it.
+         */
+        COLUMNAR
+    }
+
     public static class ExportPredictionJJob extends BasicJJob<Boolean> {
+        public static final int COLUMNAR_MAGIC = 0x53505243; // SPRC
+        public static final int COLUMNAR_VERSION = 1;
+        private static final int CHUNK_SIZE = 64;
+
         private enum X {
             CLASSYFIRE, NPC, FP, PUBCHEM, MACCS;
         }
 
-        private final IOFunctions.IOSupplier<BufferedWriter> outputProvider;
+        private final IOFunctions.IOSupplier<PredictionWriter> outputProvider;
         private int polarity = 0;
         private final PredictionsOptions options;
         private final Iterable<? extends Instance> instances;
@@ -80,6 +100,17 @@ public class ExportPredictionsOptions implements StandaloneTool<ExportPrediction
         MaskedFingerprintVersion[] versions;
 
         public ExportPredictionJJob(PredictionsOptions options, int polarity, Iterable<? extends Instance> inputInstances, IOFunctions.IOSupplier<BufferedWriter> outputProvider) {
+            this(options, () -> new TsvPredictionWriter(outputProvider.get(), options), polarity, inputInstances);
+        }
+
+        public ExportPredictionJJob(PredictionsOptions options, int polarity, Iterable<? extends Instance> inputInstances, Format format, IOFunctions.IOSupplier<OutputStream> outputProvider) {
+            this(options, () -> format == Format.COLUMNAR
+                    ? new ColumnarPredictionWriter(outputProvider.get())
+                    : new TsvPredictionWriter(new BufferedWriter(new OutputStreamWriter(outputProvider.get(), StandardCharsets.UTF_8)), options),
+                    polarity, inputInstances);
+        }
+
+        private ExportPredictionJJob(PredictionsOptions options, IOFunctions.IOSupplier<PredictionWriter> outputProvider, int polarity, Iterable<? extends Instance> inputInstances) {
             super(JobType.SCHEDULER);
             this.options = options;
             this.polarity = polarity;
@@ -91,49 +122,86 @@ public class ExportPredictionsOptions implements StandaloneTool<ExportPrediction
         @Override
         protected Boolean compute() throws Exception {
             updateProgress(0, -1, -1, "Collecting instances for prediction export...");
-            boolean headerWritten = false;
-            List<Instance> filtered = new ArrayList<>();
-            for (Instance inst : instances) {
-                final int pol = inst.getIonType().getCharge();
-                if (polarity == 0) {
-                    polarity = pol;
-                }
-                if (polarity == pol) {
-                    filtered.add(inst);
-                }
-            }
-            if (filtered.isEmpty()) {
-                updateProgress(0, 1, 1, "No instances to export!");
-                return Boolean.FALSE;
-            }
+            final int maxInFlight = 2 * SiriusJobs.getCPUThreads();
+            final int max = instances instanceof Collection ? ((Collection<?>) instances).size() : -1;
+            // rows are built in parallel chunks and written in input order by this job.
+            final Deque<BasicJJob<List<PredictionRow>>> inFlight = new ArrayDeque<>();
+            PredictionWriter writer = null;
+            int progress = 0;
+            String message = null;
+            try {
+                List<Instance> chunk = new ArrayList<>(CHUNK_SIZE);
+                for (Instance inst : instances) {
+                    checkForInterruption();
+                    final int pol = inst.getIonType().getCharge();
+                    if (polarity == 0) {
+                        polarity = pol;
+                    }
+                    if (polarity != pol)
+                        continue;
 
-            try (final BufferedWriter writer = outputProvider.get()) {
-                String message = "Writing " + (polarity < 0 ? "negative" : "positive") + " ion mode data predictions...";
-                int progress = 0;
-                updateProgress(0, filtered.size(), progress, message);
-                for (Instance inst : filtered) {
-
-                    loadVersions(inst, polarity);
-                    if (!headerWritten) {
-                        writeHeader(writer, versions);
-                        writer.newLine();
-                        headerWritten = true;
+                    if (writer == null) {
+                        loadVersions(inst, polarity);
+                        writer = outputProvider.get();
+                        writer.writeHeader(columnNames());
+                        message = "Writing " + (polarity < 0 ? "negative" : "positive") + " ion mode data predictions...";
                     }
-                    try {
-                        write(writer, inst);
-                    } catch (IOException e) {
-                        throw e;
-                    } catch (Exception e) {
-                        LoggerFactory.getLogger(getClass()).warn("Invalid instance '" + inst + "'. Skipping this instance!", e);
-                    } finally {
-                        inst.clearCompoundCache();
+
+                    chunk.add(inst);
+                    if (chunk.size() == CHUNK_SIZE) {
+                        inFlight.add(submitSubJob(makeRowsJob(chunk)));
+                        chunk = new ArrayList<>(CHUNK_SIZE);
+                        while (inFlight.size() >= maxInFlight) {
+                            progress += writeRows(writer, inFlight.poll().awaitResult());
+                            updateProgress(0, max, progress, message);
+                        }
                     }
-                    updateProgress(0, filtered.size(), ++progress, message);
                 }
+
+                if (writer == null) {
+                    updateProgress(0, 1, 1, "No instances to export!");
+                    return Boolean.FALSE;
+                }
+
+                if (!chunk.isEmpty())
+                    inFlight.add(submitSubJob(makeRowsJob(chunk)));
+                while (!inFlight.isEmpty()) {
+                    progress += writeRows(writer, inFlight.poll().awaitResult());
+                    updateProgress(0, max, progress, message);
+                }
+                writer.finish();
+            } finally {
+                inFlight.forEach(j -> j.cancel(true));
+                if (writer != null)
+                    writer.close();
             }
             return Boolean.TRUE;
         }
 
+        private int writeRows(PredictionWriter writer, List<PredictionRow> rows) throws IOException {
+            writer.writeRows(rows);
+            return rows.size();
+        }
+
+        private BasicJJob<List<PredictionRow>> makeRowsJob(List<Instance> chunk) {
+            return new BasicJJob<>(JobType.CPU) {
+                @Override
+                protected List<PredictionRow> compute() {
+                    final List<PredictionRow> rows = new ArrayList<>(chunk.size());
+                    for (Instance inst : chunk) {
+                        try {
+                            toRow(inst).ifPresent(rows::add);
+                        } catch (Exception e) {
+                            LoggerFactory.getLogger(getClass()).warn("Invalid instance '" + inst + "'. Skipping this instance!", e);
+                        } finally {
+                            inst.clearCompoundCache();
+                        }
+                    }
+                    return rows;
+                }
+            };
+        }
+
         private void loadVersions(Instance inst, int polarity) {
             if (versions[X.CLASSYFIRE.ordinal()] == null) {
                 versions[X.CLASSYFIRE.ordinal()] = inst.getProjectSpaceManager().getCanopusCfData(polarity)
@@ -153,47 +221,78 @@ public class ExportPredictionsOptions implements StandaloneTool<ExportPrediction
             }
         }
 
-        private void write(BufferedWriter writer, Instance inst) throws IOException {
+        private Optional<PredictionRow> toRow(Instance inst) {
             Optional<FCandidate<?>> fid = inst.getTopPredictions();
-//            Optional<FormulaResult> fid = inst.loadTopFormulaResult(components);
-            if (fid.isPresent()) {
-                writer.write(inst.getId());
-                writer.write('\t');
-                writer.write(inst.getName());
-                writer.write('\t');
-                writer.write(fid.get().getMolecularFormula().toString());
-                writer.write('\t');
-                writer.write(fid.get().getAdduct().toString());
-                if (options.classyfire) {
-                    write(writer, versions[X.CLASSYFIRE.ordinal()], fid.flatMap(f -> f.getAnnotation(CanopusResult.class)).map(CanopusResult::getCanopusFingerprint));
-                }
-                if (options.npc) {
-                    write(writer, versions[X.NPC.ordinal()], fid.flatMap(f -> f.getAnnotation(CanopusResult.class)).flatMap(CanopusResult::getNpcFingerprint));
-                }
-                if (options.fingerprints) {
-                    write(writer, versions[X.FP.ordinal()], fid.flatMap(f -> f.getAnnotation(FingerprintResult.class)).map(x -> x.fingerprint));
-                }
-                if (options.pubchem) {
-                    write(writer, versions[X.PUBCHEM.ordinal()], fid.flatMap(f -> f.getAnnotation(FingerprintResult.class)).map(x -> versions[X.PUBCHEM.ordinal()].mask(x.fingerprint)));
-                }
-                if (options.maccs) {
-                    write(writer, versions[X.MACCS.ordinal()], fid.flatMap(f -> f.getAnnotation(FingerprintResult.class)).map(x -> versions[X.MACCS.ordinal()].mask(x.fingerprint)));
-                }
+            if (fid.isEmpty())
+                return Optional.empty();
 
-                writer.newLine();
+            // one entry per selected prediction type that has data, null if the instance has no prediction of that type
+            final List<MaskedFingerprintVersion> selected = selectedVersions();
+            final float[][] values = new float[selected.size()][];
+            int k = 0;
+            if (isSelected(options.classyfire, X.CLASSYFIRE)) {
+                values[k++] = fid.flatMap(f -> f.getAnnotation(CanopusResult.class)).map(CanopusResult::getCanopusFingerprint)
+                        .map(ExportPredictionJJob::toFloatArray).orElse(null);
+            }
+            if (isSelected(options.npc, X.NPC)) {
+                values[k++] = fid.flatMap(f -> f.getAnnotation(CanopusResult.class)).flatMap(CanopusResult::getNpcFingerprint)
+                        .map(ExportPredictionJJob::toFloatArray).orElse(null);
             }
+            if (isSelected(options.fingerprints, X.FP)) {
+                values[k++] = fid.flatMap(f -> f.getAnnotation(FingerprintResult.class)).map(x -> x.fingerprint)
+                        .map(ExportPredictionJJob::toFloatArray).orElse(null);
+            }
+            if (isSelected(options.pubchem, X.PUBCHEM)) {
+                values[k++] = fid.flatMap(f -> f.getAnnotation(FingerprintResult.class)).map(x -> versions[X.PUBCHEM.ordinal()].mask(x.fingerprint))
+                        .map(ExportPredictionJJob::toFloatArray).orElse(null);
+            }
+            if (isSelected(options.maccs, X.MACCS)) {
+                values[k++] = fid.flatMap(f -> f.getAnnotation(FingerprintResult.class)).map(x -> versions[X.MACCS.ordinal()].mask(x.fingerprint))
+                        .map(ExportPredictionJJob::toFloatArray).orElse(null);
+            }
+            // fill missing predictions with NaN so that every row has the same number of values
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) {
+                    values[i] = new float[selected.get(i).size()];
+                    Arrays.fill(values[i], Float.NaN);
+                }
+            }
+
+            return Optional.of(new PredictionRow(inst.getId(), inst.getName(),
+                    fid.get().getMolecularFormula().toString(), fid.get().getAdduct().toString(), values));
         }
 
-        private void writeHeader(BufferedWriter writer, MaskedFingerprintVersion[] versions) throws IOException {
-            writer.write("id\tname\tmolecularFormula\tadduct");
+        // predictions are probabilities, single precision is sufficient and halves the memory of the buffered rows
+        private static float[] toFloatArray(ProbabilityFingerprint fp) {
+            final double[] probabilities = fp.toProbabilityArray();
+            final float[] values = new float[probabilities.length];
+            for (int i = 0; i < probabilities.length; i++)
+                values[i] = (float) probabilities[i];
+            return values;
+        }
+
+        private boolean isSelected(boolean option, X type) {
+            return option && versions[type.ordinal()] != null;
+        }
+
+        private List<MaskedFingerprintVersion> selectedVersions() {
+            final List<MaskedFingerprintVersion> selected = new ArrayList<>(X.values().length);
+            if (isSelected(options.classyfire, X.CLASSYFIRE)) selected.add(versions[X.CLASSYFIRE.ordinal()]);
+            if (isSelected(options.npc, X.NPC)) selected.add(versions[X.NPC.ordinal()]);
+            if (isSelected(options.fingerprints, X.FP)) selected.add(versions[X.FP.ordinal()]);
+            if (isSelected(options.pubchem, X.PUBCHEM)) selected.add(versions[X.PUBCHEM.ordinal()]);
+            if (isSelected(options.maccs, X.MACCS)) selected.add(versions[X.MACCS.ordinal()]);
+            return selected;
+        }
+
+        private List<String> columnNames() {
+            final List<String> columns = new ArrayList<>();
             if (options.classyfire) {
                 final MaskedFingerprintVersion version = versions[X.CLASSYFIRE.ordinal()];
                 if (version != null) {
                     for (int absi : version.allowedIndizes()) {
                         MolecularProperty prop = version.getMolecularProperty(absi);
-                        writer.write('\t');
-                        writer.write("ClassyFire#");
-                        writer.write(((ClassyfireProperty) prop).getName());
+                        columns.add("ClassyFire#" + ((ClassyfireProperty) prop).getName());
                     }
                 } else {
                     logWarn("No CLASSYFIRE prediction data found. Maybe because no results exist. Skipping export.");
@@ -205,9 +304,7 @@ public class ExportPredictionsOptions implements StandaloneTool<ExportPrediction
                 if (version != null) {
                     for (int absi : version.allowedIndizes()) {
                         MolecularProperty prop = version.getMolecularProperty(absi);
-                        writer.write('\t');
-                        writer.write("NPC#");
-                        writer.write(((NPCFingerprintVersion.NPCProperty) prop).getName());
+                        columns.add("NPC#" + ((NPCFingerprintVersion.NPCProperty) prop).getName());
                     }
                 } else {
                     logWarn("No NPC prediction data found. Maybe because no results exist. Skipping export.");
@@ -217,10 +314,8 @@ public class ExportPredictionsOptions implements StandaloneTool<ExportPrediction
             if (options.fingerprints) {
                 final MaskedFingerprintVersion version = versions[X.FP.ordinal()];
                 if (version != null) {
-                    for (int absi : version.allowedIndizes()) {
-                        writer.write('\t');
-                        writer.write(String.valueOf(absi));
-                    }
+                    for (int absi : version.allowedIndizes())
+                        columns.add(String.valueOf(absi));
                 } else {
                     logWarn("No SIRIUS Fingerprint data found. Maybe because no results exist. Skipping export.");
                 }
@@ -230,11 +325,8 @@ public class ExportPredictionsOptions implements StandaloneTool<ExportPrediction
                 final MaskedFingerprintVersion version = versions[X.PUBCHEM.ordinal()];
                 if (version != null) {
                     int pubchemOffset = CdkFingerprintVersion.getComplete().getOffsetFor(CdkFingerprintVersion.USED_FINGERPRINTS.PUBCHEM);
-                    for (int absi : version.allowedIndizes()) {
-                        writer.write('\t');
-                        writer.write("PubChem#");
-                        writer.write(String.valueOf(absi - pubchemOffset));
-                    }
+                    for (int absi : version.allowedIndizes())
+                        columns.add("PubChem#" + (absi - pubchemOffset));
                 } else {
                     logWarn("No PUBCHEM Fingerprint data found. Maybe because no results exist. Skipping export.");
                 }
@@ -242,32 +334,145 @@ public class ExportPredictionsOptions implements StandaloneTool<ExportPrediction
             if (options.maccs) {
                 final MaskedFingerprintVersion version = versions[X.MACCS.ordinal()];
                 if (version != null) {
-                    int pubchemOffset = CdkFingerprintVersion.getComplete().getOffsetFor(CdkFingerprintVersion.USED_FINGERPRINTS.MACCS);
-                    for (int absi : version.allowedIndizes()) {
-                        writer.write('\t');
-                        writer.write("MACCS#");
-                        writer.write(String.valueOf(absi - pubchemOffset));
-                    }
+                    int maccsOffset = CdkFingerprintVersion.getComplete().getOffsetFor(CdkFingerprintVersion.USED_FINGERPRINTS.MACCS);
+                    for (int absi : version.allowedIndizes())
+                        columns.add("MACCS#" + (absi - maccsOffset));
                 } else {
                     logWarn("No MACCS Fingerprint data found. Maybe because no results exist. Skipping export.");
                 }
             }
+            return columns;
+        }
+    }
+
+    static class PredictionRow {
+        private final String id;
+        private final String name;
+        private final String molecularFormula;
+        private final String adduct;
+        private final float[][] values;
+
+        PredictionRow(String id, String name, String molecularFormula, String adduct, float[][] values) {
+            this.id = id;
+            this.name = name;
+            this.molecularFormula = molecularFormula;
+            this.adduct = adduct;
+            this.values = values;
         }
+    }
 
-        private void write(BufferedWriter writer, MaskedFingerprintVersion version, Optional<ProbabilityFingerprint> fp) throws IOException {
-            if (version != null) {
-                if (fp.isPresent()) {
-                    for (FPIter x : fp.get()) {
+    interface PredictionWriter extends Closeable {
+        void writeHeader(List<String> predictionColumns) throws IOException;
+
+        void writeRows(List<PredictionRow> rows) throws IOException;
+
+        /**
+         * Marks the table as complete. Not called if the export fails, so incomplete tables can be detected.
+         */
+        void finish() throws IOException;
+    }
+
+    private static class TsvPredictionWriter implements PredictionWriter {
+        private final BufferedWriter writer;
+        private final PredictionsOptions options;
+
+        private TsvPredictionWriter(BufferedWriter writer, PredictionsOptions options) {
+            this.writer = writer;
+            this.options = options;
+        }
+
+        @Override
+        public void writeHeader(List<String> predictionColumns) throws IOException {
+            writer.write("id\tname\tmolecularFormula\tadduct");
+            for (String column : predictionColumns) {
+                writer.write('\t');
+                writer.write(column);
+            }
+            writer.newLine();
+        }
+
+        @Override
+        public void writeRows(List<PredictionRow> rows) throws IOException {
+            for (PredictionRow row : rows) {
+                writer.write(row.id);
+                writer.write('\t');
+                writer.write(row.name);
+                writer.write('\t');
+                writer.write(row.molecularFormula);
+                writer.write('\t');
+                writer.write(row.adduct);
+                for (float[] block : row.values) {
+                    for (float value : block) {
                         writer.write('\t');
-                        writer.write(options.float2string(x.getProbability()));
-                    }
-                } else {
-                    for (int i = 0; i < version.size(); ++i) {
-                        writer.write("\tN/A");
+                        writer.write(Float.isNaN(value) ? "N/A" : options.float2string(value));
                     }
                 }
+                writer.newLine();
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    static class ColumnarPredictionWriter implements PredictionWriter {
+        private final DataOutputStream out;
+        private int numColumns;
+
+        ColumnarPredictionWriter(OutputStream out) {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        }
+
+        @Override
+        public void writeHeader(List<String> predictionColumns) throws IOException {
+            numColumns = predictionColumns.size();
+            out.writeInt(ExportPredictionJJob.COLUMNAR_MAGIC);
+            out.writeInt(ExportPredictionJJob.COLUMNAR_VERSION);
+            out.writeInt(numColumns);
+            for (String column : predictionColumns)
+                out.writeUTF(column);
+        }
+
+        @Override
+        public void writeRows(List<PredictionRow> rows) throws IOException {
+            if (rows.isEmpty())
+                return; // zero rows mark the end of the table
+            out.writeInt(rows.size());
+            for (PredictionRow row : rows) out.writeUTF(row.id);
+            for (PredictionRow row : rows) out.writeUTF(row.name);
+            for (PredictionRow row : rows) out.writeUTF(row.molecularFormula);
+            for (PredictionRow row : rows) out.writeUTF(row.adduct);
+
+            // transpose the row blocks into float32 columns
+            int block = 0, offset = 0;
+            for (int column = 0; column < numColumns; column++) {
+                while (offset >= rows.get(0).values[block].length) {
+                    ++block;
+                    offset = 0;
+                }
+                for (PredictionRow row : rows)
+                    out.writeFloat(row.values[block][offset]);
+                ++offset;
             }
         }
+
+        @Override
+        public void finish() throws IOException {
+            out.writeInt(0);
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
     }
 
     public static class ExportPredictionWorkflow implements Workflow {
@@ -285,9 +490,14 @@ public class ExportPredictionsOptions implements StandaloneTool<ExportPrediction
             try {
                 final Iterable<? extends Instance> ps = SiriusJobs.getGlobalJobManager().submitJob(job).awaitResult();
                 try {
-                    SiriusJobs.getGlobalJobManager().submitJob(new ExportPredictionJJob(options.predictionsOptions, options.polarity, ps, () -> Files.newBufferedWriter(options.output))).awaitResult();
+                    SiriusJobs.getGlobalJobManager().submitJob(new ExportPredictionJJob(options.predictionsOptions, options.polarity, ps, options.format, () -> Files.newOutputStream(options.output))).awaitResult();
                 } catch (ExecutionException e) {
                     LoggerFactory.getLogger(getClass()).error("Error when writing the table file to: " + options.output.toString(), e);
+                    try {
+                        Files.deleteIfExists(options.output);
+                    } catch (IOException ex) {
+                        LoggerFactory.getLogger(getClass()).warn("Could not delete incomplete table file: " + options.output.toString(), ex);
+                    }
                 }
             } catch (ExecutionException e) {
                 LoggerFactory.getLogger(getClass()).error("Error when reading input project!", e);
@@ -22,6 +22,7 @@ package de.unijena.bioinf.ms.frontend.subtools.fingerprint;
 import de.unijena.bioinf.ChemistryBase.algorithm.scoring.FormulaScore;
 import de.unijena.bioinf.ChemistryBase.algorithm.scoring.SScored;
 import de.unijena.bioinf.ChemistryBase.chem.MolecularFormula;
+import de.unijena.bioinf.ChemistryBase.ms.Ms2Experiment;
 import de.unijena.bioinf.ChemistryBase.ms.ft.FTree;
 import de.unijena.bioinf.fingerid.*;
 import de.unijena.bioinf.jjobs.JobSubmitter;
@@ -94,8 +95,9 @@ public class FingerprintSubToolJob extends InstanceJob {
         checkForInterruption();
 
         updateProgress(20);
+        final Ms2Experiment exp = inst.getExperiment();
         //apply soft thresholding to select list of formula to compute
-        final FingerprintPreprocessingJJob fpPreproJob = new FingerprintPreprocessingJJob(inst.getExperiment(), formulaResults, enforcedFormulas);
+        final FingerprintPreprocessingJJob fpPreproJob = new FingerprintPreprocessingJJob(exp, formulaResults, enforcedFormulas);
 
         // do computation and await results
         @NotNull List<SScored<FTree, FormulaScore>> filteredResults = submitSubJob(fpPreproJob).awaitResult();
@@ -104,7 +106,7 @@ public class FingerprintSubToolJob extends InstanceJob {
         checkForInterruption();
 
         // prediction jobs: predict fingerprints via webservice
-        final FingerprintJJob fpPredictJob = submitSubJob(FingerprintJJob.of(csi, ApplicationCore.WEB_API, inst.getExperiment(), filteredResults.stream().map(SScored::getCandidate)));
+        final FingerprintJJob fpPredictJob = submitSubJob(FingerprintJJob.of(csi, ApplicationCore.WEB_API, exp, filteredResults.stream().map(SScored::getCandidate)));
 
         updateProgress(35);
         List<FingerIdResult> result = fpPredictJob.awaitResult();
@@ -40,11 +40,17 @@ public class FingerprinterOptions implements StandaloneTool<FingerprinterWorkflo
     @CommandLine.Option(names = {"--version", "-v"}, description = "Specify file to write fingerprint version information to", required = false)
     private Path version;
 
-    @CommandLine.Option(names = {"--bufferSize", "-b"}, description = "Specify buffer size to adjust memory usage. If not given buffer size is set to 5x CPU threads.", required = false)
+    @CommandLine.Option(names = {"--bufferSize", "-b"}, description = "Specify buffer size (number of chunks in memory) to adjust memory usage. If not given buffer size is set to 2x CPU threads.", required = false)
     private int bufferSize;
 
+    @CommandLine.Option(names = {"--chunk-size"}, description = "Number of SMILES that are fingerprinted together in one job.", defaultValue = "250")
+    private int chunkSize;
+
+    @CommandLine.Option(names = {"--format"}, description = "Output format. TSV: smiles and comma separated fingerprint per line. BINARY: compact binary with relative indices of set bits.", defaultValue = "TSV")
+    private FingerprinterWorkflow.OutputFormat format;
+
     @Override
     public FingerprinterWorkflow makeWorkflow(RootOptions<?> rootOptions, ParameterConfig config) {
-        return new FingerprinterWorkflow(rootOptions, outputPath,charge,version, bufferSize);
+        return new FingerprinterWorkflow(rootOptions, outputPath, charge, version, bufferSize, chunkSize, format);
     }
 }
@@ -27,6 +27,7 @@ import de.unijena.bioinf.ChemistryBase.jobs.SiriusJobs;
 import de.unijena.bioinf.fingerid.fingerprints.FixedFingerprinter;
 import de.unijena.bioinf.fingerid.predictor_types.PredictorType;
 import de.unijena.bioinf.jjobs.BasicJJob;
+import de.unijena.bioinf.jjobs.JJob;
 import de.unijena.bioinf.ms.frontend.core.ApplicationCore;
 import de.unijena.bioinf.ms.frontend.subtools.RootOptions;
 import de.unijena.bioinf.ms.frontend.workflow.Workflow;
@@ -34,32 +35,63 @@ import de.unijena.bioinf.ms.rest.model.fingerid.FingerIdData;
 import de.unijena.bioinf.webapi.WebAPI;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+
 public class FingerprinterWorkflow implements Workflow {
+    /**
+     * Magic number ("SFPT") at the beginning of the binary output format.
+     */
+    public static final int BINARY_MAGIC = 0x53465054;
+
+    public enum OutputFormat {
+        /**
+         * One line per structure: SMILES, tab, comma separated masked fingerprint.
+         */
+        TSV,
+        /**
+         * Big-endian binary: int32 magic, int32 masked fingerprint length, then per structure: int32 number of bytes
+         * and UTF-8 bytes of the SMILES, int32 number of set bits and the set bits as uint16 RELATIVE (masked) indices.
+         */
+        BINARY
+    }
+
     private final Path outputFile;
     private final RootOptions<?> rootOptions;
     private final Path versionFile;
     private final int charge;
-    private final BlockingSet<BasicJJob<Void>> jobs;
+    private final int maxChunksInFlight;
+    private final int chunkSize;
+    private final OutputFormat outputFormat;
     private FingerIdData fdata;
     private MaskedFingerprintVersion mask;
     private CdkFingerprintVersion cdkVersion;
     private final Map<String, Exception> failedComputations = new ConcurrentHashMap<>();
+    // fingerprinters are not thread safe but expensive to create, so every worker thread reuses its own.
+    private final ThreadLocal<FixedFingerprinter> fingerprinters = ThreadLocal.withInitial(() -> new FixedFingerprinter(cdkVersion));
 
     public FingerprinterWorkflow(RootOptions<?> rootOptions, Path outputFile, int charge, Path versionFile, int bufferSize) {
+        this(rootOptions, outputFile, charge, versionFile, bufferSize, 250, OutputFormat.TSV);
+    }
+
+    /**
+     * @param bufferSize   max number of chunks that are computed or wait for being written. 0 for 2x CPU threads.
+     * @param chunkSize    number of SMILES that are fingerprinted together in one job.
+     * @param outputFormat format of the output file.
+     */
+    public FingerprinterWorkflow(RootOptions<?> rootOptions, Path outputFile, int charge, Path versionFile, int bufferSize, int chunkSize, OutputFormat outputFormat) {
         this.outputFile = outputFile;
         this.rootOptions = rootOptions;
         this.charge = charge;
         this.versionFile = versionFile;
-        int bufferSizeInit = bufferSize == 0 ? (5 * SiriusJobs.getCPUThreads()) : bufferSize;
-        this.jobs = new BlockingSet<>(bufferSizeInit);
+        this.maxChunksInFlight = bufferSize <= 0 ? (2 * SiriusJobs.getCPUThreads()) : bufferSize;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.outputFormat = outputFormat;
     }
 
     @Override
@@ -73,12 +105,27 @@ public class FingerprinterWorkflow implements Workflow {
 
         loadFingerprintVersionData();
 
-        try (BufferedWriter bw = Files.newBufferedWriter(outputFile)) {
+        try (BufferedReader br = Files.newBufferedReader(inputFile); FingerprintWriter writer = openWriter()) {
+            // read smiles in chunks, compute chunks in parallel and write results in input order
+            final Deque<BasicJJob<List<SmilesFpt>>> inFlight = new ArrayDeque<>();
+            List<String> chunk = new ArrayList<>(chunkSize);
+            String smiles;
+            while ((smiles = br.readLine()) != null) {
+                if (smiles.length() > 0) {
+                    chunk.add(smiles);
+                    if (chunk.size() == chunkSize) {
+                        inFlight.add(SiriusJobs.getGlobalJobManager().submitJob(buildWorker(chunk)));
+                        chunk = new ArrayList<>(chunkSize);
+                        while (inFlight.size() >= maxChunksInFlight)
+                            writer.write(inFlight.poll().awaitResult());
+                    }
+                }
+            }
+            if (!chunk.isEmpty())
+                inFlight.add(SiriusJobs.getGlobalJobManager().submitJob(buildWorker(chunk)));
+            while (!inFlight.isEmpty())
+                writer.write(inFlight.poll().awaitResult());
 
-            // Creating producer job that reads smiles, build worker jobs adds them to a fixed blocking set
-            BasicJJob<Void> producer = buildProducer(inputFile, bw);
-            SiriusJobs.getGlobalJobManager().submitJob(producer);
-            producer.awaitResult();
             LoggerFactory.getLogger(getClass()).info("DONE!");
 
         } catch (IOException | ExecutionException e) {
@@ -115,88 +162,94 @@ public class FingerprinterWorkflow implements Workflow {
         }
     }
 
-    public BasicJJob<Void> buildProducer(Path inputFile, BufferedWriter bw) {
-        return new BasicJJob<>() {
+    public BasicJJob<List<SmilesFpt>> buildWorker(List<String> smilesChunk) {
+        return new BasicJJob<>(JJob.JobType.CPU) {
             @Override
-            protected Void compute() {
-                try (BufferedReader br = Files.newBufferedReader(inputFile)) {
-                    String smiles;
-                    while ((smiles = br.readLine()) != null) {
-                        if (smiles.length() > 0) {
-                            BasicJJob<Void> worker = buildWorker(smiles, bw);
-                            jobs.add(worker);
-                            SiriusJobs.getGlobalJobManager().submitJob(worker);
-                        }
+            protected List<SmilesFpt> compute() throws Exception {
+                final FixedFingerprinter printer = fingerprinters.get();
+                final List<SmilesFpt> results = new ArrayList<>(smilesChunk.size());
+                for (String smiles : smilesChunk) {
+                    checkForInterruption();
+                    try {
+                        // computing fingerprint
+                        results.add(new SmilesFpt(smiles, mask.mask(printer.computeFingerprintFromSMILES(smiles).toIndizesArray())));
+                    } catch (RuntimeException e) {
+                        // if an error occurs, skip this smiles
+                        failedComputations.put(smiles, e);
                     }
-                    jobs.waitForEmpty();
-                } catch (IOException | InterruptedException e) {
-                    throw new RuntimeException(e);
                 }
-                return null;
+                return results;
             }
         };
     }
 
-    public BasicJJob<Void> buildWorker(String smiles, BufferedWriter bw) {
-        return new BasicJJob<>() {
-            @Override
-            protected Void compute() {
-                FixedFingerprinter printer = new FixedFingerprinter(cdkVersion);
-                try {
-                    // computing fingerprint
-                    SmilesFpt smilesFpt = new SmilesFpt(smiles, mask.mask(printer.computeFingerprintFromSMILES(smiles).toIndizesArray()));
-                    bw.write(smilesFpt.smiles + "\t" + smilesFpt.fpt.toCommaSeparatedString() + System.lineSeparator());
-                } catch (IOException | RuntimeException e) {
-                    // if an error occurs, skip this smiles
-                    failedComputations.put(smiles, e);
-                }
-                jobs.remove(this);
-                return null;
-            }
-
-        };
+    private FingerprintWriter openWriter() throws IOException {
+        if (outputFormat == OutputFormat.BINARY)
+            return new BinaryFingerprintWriter(outputFile, mask);
+        return new TsvFingerprintWriter(outputFile);
     }
-}
 
-class SmilesFpt {
-    public String smiles;
-    public Fingerprint fpt;
+    private interface FingerprintWriter extends Closeable {
+        void write(SmilesFpt smilesFpt) throws IOException;
 
-    protected SmilesFpt(String smiles, Fingerprint fpt) {
-        this.fpt = fpt;
-        this.smiles = smiles;
+        default void write(List<SmilesFpt> chunk) throws IOException {
+            for (SmilesFpt smilesFpt : chunk)
+                write(smilesFpt);
+        }
     }
-}
 
-class BlockingSet<E> {
-    private final Set<E> set = new HashSet<>();
-    private final int bufferSize;
+    private static class TsvFingerprintWriter implements FingerprintWriter {
+        private final BufferedWriter bw;
 
-    protected BlockingSet(int bufferSize) {
-        this.bufferSize = bufferSize;
-    }
+        private TsvFingerprintWriter(Path outputFile) throws IOException {
+            this.bw = Files.newBufferedWriter(outputFile);
+        }
 
-    protected synchronized void add(E element) throws InterruptedException {
-        while (set.size() >= bufferSize) {
-            wait();
+        @Override
+        public void write(SmilesFpt smilesFpt) throws IOException {
+            bw.write(smilesFpt.smiles + "\t" + smilesFpt.fpt.toCommaSeparatedString() + System.lineSeparator());
         }
-        set.add(element);
-    }
 
-    protected synchronized boolean remove(E element) {
-        boolean success = set.remove(element);
-        if (success)
-            notify();
-        return success;
+        @Override
+        public void close() throws IOException {
+            bw.close();
+        }
     }
 
-    protected synchronized int size() {
-        return set.size();
-    }
+    private static class BinaryFingerprintWriter implements FingerprintWriter {
+        private final DataOutputStream out;
+
+        private BinaryFingerprintWriter(Path outputFile, MaskedFingerprintVersion mask) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(outputFile), 1 << 16));
+            out.writeInt(BINARY_MAGIC);
+            out.writeInt(mask.size());
+        }
+
+        @Override
+        public void write(SmilesFpt smilesFpt) throws IOException {
+            final byte[] smiles = smilesFpt.smiles.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(smiles.length);
+            out.write(smiles);
+
+            final short[] absIdx = smilesFpt.fpt.toIndizesArray();
+            out.writeInt(absIdx.length);
+            for (short idx : absIdx)
+                out.writeShort(smilesFpt.fpt.getFingerprintVersion().getRelativeIndexOf(idx));
+        }
 
-    protected synchronized void waitForEmpty() throws InterruptedException {
-        while (!set.isEmpty()) {
-            wait();
+        @Override
+        public void close() throws IOException {
+            out.close();
         }
     }
 }
+
+class SmilesFpt {
+    public String smiles;
+    public Fingerprint fpt;
+
+    protected SmilesFpt(String smiles, Fingerprint fpt) {
+        this.fpt = fpt;
+        this.smiles = smiles;
+    }
+}
@@ -55,6 +55,12 @@ public class LcmsAlignOptions implements PreprocessingTool<PreprocessingJob<Proj
         return workflow;
     }
 
+    public static final double DEFAULT_SAMPLE_HEAP_FRACTION = 0.5;
+
+    @CommandLine.Option(names = {"--sample-heap-fraction"}, defaultValue = "0.5",
+            description = {"Fraction of the max heap that LC-MS runs processed in parallel may occupy (estimated from the file sizes). Lower it to align many large runs with a small heap."})
+    public double sampleHeapFraction = DEFAULT_SAMPLE_HEAP_FRACTION;
+
     @CommandLine.Option(names={"--statistics"}, required = false, hidden = true)
     public File statistics;
 
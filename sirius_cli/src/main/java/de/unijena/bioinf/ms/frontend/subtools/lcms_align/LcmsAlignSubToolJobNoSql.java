@@ -26,6 +26,7 @@ import de.unijena.bioinf.ChemistryBase.ms.utils.SimpleMutableSpectrum;
 import de.unijena.bioinf.ChemistryBase.ms.utils.SimpleSpectrum;
 import de.unijena.bioinf.ChemistryBase.utils.DataQuality;
 import de.unijena.bioinf.jjobs.BasicJJob;
+import de.unijena.bioinf.jjobs.JJob;
 import de.unijena.bioinf.lcms.LCMSProcessing;
 import de.unijena.bioinf.lcms.adducts.AdductManager;
 import de.unijena.bioinf.lcms.adducts.AdductNetwork;
@@ -63,8 +64,12 @@ import org.apache.commons.io.function.IOSupplier;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class LcmsAlignSubToolJobNoSql extends PreprocessingJob<ProjectSpaceManager> {
@@ -76,16 +81,31 @@ public class LcmsAlignSubToolJobNoSql extends PreprocessingJob<ProjectSpaceManag
 
     private final Set<PrecursorIonType> ionTypes ;
 
+    /**
+     * Rough estimate of the heap (in bytes) needed to process one byte of an input file.
+     */
+    private static final double HEAP_BYTES_PER_FILE_BYTE = 3d;
+
+    /**
+     * Fraction of the max heap that samples being processed concurrently may occupy.
+     */
+    private final double sampleHeapFraction;
+
 
     public LcmsAlignSubToolJobNoSql(InputFilesOptions input, @NotNull IOSupplier<? extends NoSQLProjectSpaceManager> projectSupplier, LcmsAlignOptions options, Set<PrecursorIonType> ionTypes) {
-        this(input.msInput.msParserfiles.keySet().stream().sorted().collect(Collectors.toList()), projectSupplier, ionTypes);
+        this(input.msInput.msParserfiles.keySet().stream().sorted().collect(Collectors.toList()), projectSupplier, ionTypes, options.sampleHeapFraction);
     }
 
     public LcmsAlignSubToolJobNoSql(@NotNull List<Path> inputFiles, @NotNull IOSupplier<? extends NoSQLProjectSpaceManager> projectSupplier, Set<PrecursorIonType> ionTypes) {
+        this(inputFiles, projectSupplier, ionTypes, LcmsAlignOptions.DEFAULT_SAMPLE_HEAP_FRACTION);
+    }
+
+    public LcmsAlignSubToolJobNoSql(@NotNull List<Path> inputFiles, @NotNull IOSupplier<? extends NoSQLProjectSpaceManager> projectSupplier, Set<PrecursorIonType> ionTypes, double sampleHeapFraction) {
         super();
         this.inputFiles = inputFiles;
         this.projectSupplier = projectSupplier;
         this.ionTypes = ionTypes;
+        this.sampleHeapFraction = sampleHeapFraction;
     }
 
     @Override
@@ -97,33 +117,7 @@ public class LcmsAlignSubToolJobNoSql extends PreprocessingJob<ProjectSpaceManag
 
         LCMSProcessing processing = new LCMSProcessing(new SiriusProjectDocumentDbAdapter(ps));
 
-        {
-
-            List<BasicJJob<de.unijena.bioinf.lcms.trace.ProcessedSample>> jobs = new ArrayList<>();
-            int atmost = Integer.MAX_VALUE;
-            for (Path f : inputFiles) {
-                if (--atmost < 0) break;
-                jobs.add(SiriusJobs.getGlobalJobManager().submitJob(new BasicJJob<de.unijena.bioinf.lcms.trace.ProcessedSample>() {
-                    @Override
-                    protected de.unijena.bioinf.lcms.trace.ProcessedSample compute() throws Exception {
-                        ProcessedSample sample = processing.processSample(f);
-                        int hasIsotopes = 0, hasNoIsotopes = 0;
-                        for (MoI m : sample.getStorage().getAlignmentStorage()) {
-                            if (m.hasIsotopes()) ++hasIsotopes;
-                            else ++hasNoIsotopes;
-                        }
-                        sample.inactive();
-                        System.out.println(sample.getUid() + " with " + hasIsotopes + " / " + (hasIsotopes + hasNoIsotopes) + " isotope features");
-                        return sample;
-                    }
-                }));
-            }
-
-            int count = 0;
-            for (BasicJJob<ProcessedSample> job : jobs) {
-                System.out.println(job.takeResult().getUid() + " (" + ++count + " / " + jobs.size() + ")");
-            }
-        }
+        processSamples(processing);
 
         AlignmentBackbone bac = processing.align();
         ProcessedSample merged = processing.merge(bac);
@@ -252,6 +246,104 @@ public class LcmsAlignSubToolJobNoSql extends PreprocessingJob<ProjectSpaceManag
         return space;
     }
 
+    /**
+     * Processes all input files but only as many at the same time as fit into the heap budget
+     * (estimated from the file sizes). Each sample is set inactive (moved to its disk backed storage) as soon as it
+     * has been processed, so the number of input files does not affect the peak memory.
+     */
+    private void processSamples(LCMSProcessing processing) throws InterruptedException {
+        final long heapBudget = (long) (Runtime.getRuntime().maxMemory() * sampleHeapFraction);
+        final int maxParallel = Math.max(1, SiriusJobs.getCPUThreads());
+        final BlockingQueue<ProcessSampleJJob> finished = new LinkedBlockingQueue<>();
+        final Deque<Path> pending = new ArrayDeque<>(inputFiles);
+        final List<ProcessSampleJJob> running = new ArrayList<>();
+        long reservedHeap = 0;
+        int count = 0;
+        long processedBytes = 0;
+        final long start = System.currentTimeMillis();
+
+        try {
+            while (!pending.isEmpty() || !running.isEmpty()) {
+                checkForInterruption();
+                // always allow one sample, otherwise files larger than the budget would never be processed
+                while (!pending.isEmpty() && running.size() < maxParallel
+                        && (running.isEmpty() || reservedHeap + estimateHeapCost(pending.peek()) <= heapBudget)) {
+                    ProcessSampleJJob job = new ProcessSampleJJob(processing, pending.poll(), finished);
+                    reservedHeap += job.heapCost;
+                    running.add(job);
+                    SiriusJobs.getGlobalJobManager().submitJob(job);
+                }
+
+                ProcessSampleJJob job = finished.poll(100, TimeUnit.MILLISECONDS);
+                if (job == null)
+                    continue;
+                running.remove(job);
+                reservedHeap -= job.heapCost;
+
+                ProcessedSample sample = job.takeResult();
+                processedBytes += job.fileSize;
+                double seconds = Math.max(1, job.runtime) / 1000d;
+                System.out.printf("%s (%d / %d) processed in %.1fs (%.1f MB/s), %d samples running with estimated %d MB heap%n",
+                        sample.getUid(), ++count, inputFiles.size(), seconds, job.fileSize / 1e6 / seconds,
+                        running.size(), reservedHeap / 1_000_000);
+            }
+        } finally {
+            running.forEach(j -> j.cancel(false));
+        }
+
+        double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000d;
+        System.out.printf("Processed %d samples (%.1f MB) in %.1fs (%.2f samples/s)%n", count, processedBytes / 1e6, seconds, count / seconds);
+    }
+
+    private static long fileSize(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long estimateHeapCost(Path file) {
+        return (long) (fileSize(file) * HEAP_BYTES_PER_FILE_BYTE);
+    }
+
+    private static class ProcessSampleJJob extends BasicJJob<ProcessedSample> {
+        private final LCMSProcessing processing;
+        private final Path file;
+        private final BlockingQueue<ProcessSampleJJob> finished;
+        private final long fileSize;
+        private final long heapCost;
+        private long runtime;
+
+        private ProcessSampleJJob(LCMSProcessing processing, Path file, BlockingQueue<ProcessSampleJJob> finished) {
+            super(JJob.JobType.CPU);
+            this.processing = processing;
+            this.file = file;
+            this.finished = finished;
+            this.fileSize = fileSize(file);
+            this.heapCost = (long) (fileSize * HEAP_BYTES_PER_FILE_BYTE);
+        }
+
+        @Override
+        protected ProcessedSample compute() throws Exception {
+            final long start = System.currentTimeMillis();
+            try {
+                ProcessedSample sample = processing.processSample(file);
+                int hasIsotopes = 0, hasNoIsotopes = 0;
+                for (MoI m : sample.getStorage().getAlignmentStorage()) {
+                    if (m.hasIsotopes()) ++hasIsotopes;
+                    else ++hasNoIsotopes;
+                }
+                sample.inactive();
+                System.out.println(sample.getUid() + " with " + hasIsotopes + " / " + (hasIsotopes + hasNoIsotopes) + " isotope features");
+                return sample;
+            } finally {
+                runtime = System.currentTimeMillis() - start;
+                finished.add(this);
+            }
+        }
+    }
+
     private static void groupFeaturesToCompound(Database<?> ps, Compound compound) throws IOException {
         ps.insert(compound);
         for (CorrelatedIonPair pair : compound.getCorrelatedIonPairs().get()) {
@@ -24,7 +24,6 @@ import de.unijena.bioinf.ChemistryBase.fp.ProbabilityFingerprint;
 import de.unijena.bioinf.ChemistryBase.fp.Tanimoto;
 import de.unijena.bioinf.ChemistryBase.jobs.SiriusJobs;
 import de.unijena.bioinf.ChemistryBase.ms.ft.FTree;
-import de.unijena.bioinf.ChemistryBase.ms.utils.Spectrums;
 import de.unijena.bioinf.chemdb.FingerprintCandidate;
 import de.unijena.bioinf.fingerid.*;
 import de.unijena.bioinf.jjobs.BasicJJob;
@@ -89,7 +88,7 @@ public class MsNovelistSubToolJob extends InstanceJob {
         updateProgress(10);
         checkForInterruption();
 
-        final int specHash = Spectrums.mergeSpectra(inst.getExperiment().getMs2Spectra()).hashCode();
+        final int specHash = inst.getMergedMs2SpectrumHash();
 
         updateProgress(15);
         checkForInterruption();
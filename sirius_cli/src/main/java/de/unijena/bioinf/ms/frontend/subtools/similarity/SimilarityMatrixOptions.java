@@ -69,6 +69,14 @@ public class SimilarityMatrixOptions implements StandaloneTool<SimilarityMatrixW
             description = "Write as tab separated file with a comment line containing the row/col names (numpy compatible). Otherwise, write as tab separated file with row and column names.")
     public boolean numpy;
 
+    @CommandLine.Option(names = {"--binary"},
+            description = "Write as raw row major float32 (little endian) binary matrix (e.g. for numpy.memmap) with an additional '.labels.tsv' file containing the row/col names. Recommended for large datasets.")
+    public boolean binary;
+
+    @CommandLine.Option(names = {"--tile-size"}, defaultValue = "256", hidden = true,
+            description = "Number of rows/cols of the tiles the matrix is computed in. Memory consumption scales with tile-size * number of features.")
+    protected int tileSize;
+
     private final ProjectSpaceManagerFactory<?> projectSpaceManagerFactory;
 
     public SimilarityMatrixOptions(ProjectSpaceManagerFactory<?> projectSpaceManagerFactory) {
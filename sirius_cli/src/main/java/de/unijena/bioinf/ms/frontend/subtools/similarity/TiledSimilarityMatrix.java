@@ -0,0 +1,273 @@
+/*
+ *  This file is part of the SIRIUS Software for analyzing MS and MS/MS data
+ *
+ *  Copyright (C) 2013-2020 Kai Dührkop, Markus Fleischauer, Marcus Ludwig, Martin A. Hoffman, Fleming Kretschmer, Marvin Meusel and Sebastian Böcker,
+ *  Chair of Bioinformatics, Friedrich-Schiller University.
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Affero General Public License
+ *  as published by the Free Software Foundation; either
+ *  version 3 of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License along with SIRIUS.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>
+ */
+
+
+package de.unijena.bioinf.ms.frontend.subtools.similarity;
+
+import de.unijena.bioinf.jjobs.BasicJJob;
+import de.unijena.bioinf.jjobs.JJob;
+import de.unijena.bioinf.jjobs.JobManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes an all-vs-all similarity matrix in square tiles on the given {@link JobManager}.
+ * The matrix is never held in memory as a whole. Tiles are computed band by band (a band is a block of
+ * {@code tileSize} consecutive rows) and each finished band is streamed to a {@link RowSink}.
+ * The similarity has to be symmetric. Only tiles on and above the diagonal are computed. Their transposed values
+ * are spilled to a temporary file from which the lower triangle of later bands is read. Hence, memory consumption
+ * is {@code tileSize * n} values for the current band instead of {@code n * n}.
+ */
+class TiledSimilarityMatrix {
+    public static final int DEFAULT_TILE_SIZE = 256;
+    private static final long MAX_MAPPING_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Symmetric similarity between two entries, i.e. {@code compute(i, j) == compute(j, i)}.
+     */
+    @FunctionalInterface
+    interface Similarity {
+        double compute(int i, int j);
+    }
+
+    /**
+     * Receives the rows of the matrix in ascending order.
+     */
+    interface RowSink extends Closeable {
+        void writeRow(int row, double[] values) throws IOException;
+    }
+
+    private final int size;
+    private final int tileSize;
+
+    TiledSimilarityMatrix(int size) {
+        this(size, DEFAULT_TILE_SIZE);
+    }
+
+    TiledSimilarityMatrix(int size, int tileSize) {
+        if (tileSize < 1)
+            throw new IllegalArgumentException("Tile size must be positive but was: " + tileSize);
+        this.size = size;
+        this.tileSize = tileSize;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void compute(@NotNull JobManager jobManager, @NotNull Similarity similarity, @NotNull RowSink sink) throws IOException {
+        final int bands = (size + tileSize - 1) / tileSize;
+        final double[][] band = new double[Math.min(tileSize, size)][size];
+        // lower triangle spill file: for every band b the columns [0, b * tileSize) of its rows, row major.
+        // Not needed if everything fits into a single band.
+        try (FileChannel spill = bands <= 1 ? null : FileChannel.open(Files.createTempFile("similarity-matrix", ".tmp"),
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+            for (int rowBand = 0; rowBand < bands; ++rowBand) {
+                final int r0 = rowBand * tileSize, r1 = Math.min(size, r0 + tileSize);
+                computeBand(jobManager, similarity, band, rowBand, bands, spill);
+
+                // fill lower triangle from the diagonal tile and from the tiles spilled by previous bands
+                final ByteBuffer buffer = rowBand > 0 ? ByteBuffer.allocate(r0 * Double.BYTES).order(ByteOrder.nativeOrder()) : null;
+                for (int i = r0; i < r1; ++i) {
+                    final double[] row = band[i - r0];
+                    for (int j = r0; j < i; ++j)
+                        row[j] = band[j - r0][i];
+                    if (buffer != null) {
+                        buffer.clear();
+                        readFully(spill, buffer, spillOffset(rowBand, i - r0));
+                        buffer.flip();
+                        buffer.asDoubleBuffer().get(row, 0, r0);
+                    }
+                }
+
+                for (int i = r0; i < r1; ++i)
+                    sink.writeRow(i, band[i - r0]);
+            }
+        }
+    }
+
+    /**
+     * Computes all tiles of the given row band on and above the diagonal. The transposed off-diagonal tiles are
+     * written to the spill file.
+     */
+    private void computeBand(JobManager jobManager, Similarity similarity, double[][] band, int rowBand, int bands, FileChannel spill) {
+        final int r0 = rowBand * tileSize, r1 = Math.min(size, r0 + tileSize);
+        final List<BasicJJob<Void>> tileJobs = new ArrayList<>(bands - rowBand);
+        for (int colBand = rowBand; colBand < bands; ++colBand) {
+            final int cb = colBand;
+            final int c0 = colBand * tileSize, c1 = Math.min(size, c0 + tileSize);
+            tileJobs.add(jobManager.submitJob(new BasicJJob<Void>(JJob.JobType.CPU) {
+                @Override
+                protected Void compute() throws IOException {
+                    if (cb == rowBand) {
+                        // diagonal tile: compute upper triangle only and mirror inside the tile
+                        for (int i = r0; i < r1; ++i)
+                            for (int j = i; j < c1; ++j)
+                                band[i - r0][j] = similarity.compute(i, j);
+                        return null;
+                    }
+
+                    for (int i = r0; i < r1; ++i)
+                        for (int j = c0; j < c1; ++j)
+                            band[i - r0][j] = similarity.compute(i, j);
+                    // row j of band cb gets the columns [r0, r1) of this tile
+                    final ByteBuffer buffer = ByteBuffer.allocate((r1 - r0) * Double.BYTES).order(ByteOrder.nativeOrder());
+                    for (int j = c0; j < c1; ++j) {
+                        buffer.clear();
+                        for (int i = r0; i < r1; ++i)
+                            buffer.putDouble(band[i - r0][j]);
+                        buffer.flip();
+                        final long position = spillOffset(cb, j - c0) + (long) r0 * Double.BYTES;
+                        while (buffer.hasRemaining())
+                            spill.write(buffer, position + buffer.position());
+                    }
+                    return null;
+                }
+            }));
+        }
+        tileJobs.forEach(JJob::takeResult);
+    }
+
+    /**
+     * Byte offset of the lower triangle part of the given row of band {@code rowBand} in the spill file.
+     * All bands before {@code rowBand} are complete, so band k occupies {@code tileSize * k * tileSize} values.
+     */
+    private long spillOffset(int rowBand, int rowInBand) {
+        final long bandStart = (long) tileSize * tileSize * rowBand * (rowBand - 1) / 2;
+        return (bandStart + (long) rowInBand * rowBand * tileSize) * Double.BYTES;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of similarity matrix spill file.");
+        }
+    }
+
+    /**
+     * Tab separated matrix with row and column names.
+     */
+    static RowSink tsvSink(@NotNull Path file, @NotNull String[] header, int digits) throws IOException {
+        final BufferedWriter bw = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        bw.write("FeatureName");
+        for (String h : header) {
+            bw.write('\t');
+            bw.write(h);
+        }
+        bw.newLine();
+        return new RowSink() {
+            @Override
+            public void writeRow(int row, double[] values) throws IOException {
+                bw.write(header[row]);
+                for (double value : values) {
+                    bw.write('\t');
+                    writeValue(bw, value, digits);
+                }
+                bw.newLine();
+            }
+
+            @Override
+            public void close() throws IOException {
+                bw.close();
+            }
+        };
+    }
+
+    /**
+     * Tab separated matrix with a comment line containing the row/col names (numpy compatible).
+     */
+    static RowSink numpySink(@NotNull Path file, @NotNull String[] header, int digits) throws IOException {
+        final BufferedWriter bw = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        bw.write('#');
+        bw.write(String.join("\t", header));
+        bw.newLine();
+        return new RowSink() {
+            @Override
+            public void writeRow(int row, double[] values) throws IOException {
+                for (int j = 0; j < values.length; ++j) {
+                    if (j > 0)
+                        bw.write('\t');
+                    writeValue(bw, values[j], digits);
+                }
+                bw.newLine();
+            }
+
+            @Override
+            public void close() throws IOException {
+                bw.close();
+            }
+        };
+    }
+
+    /**
+     * Raw row major float32 (little endian) matrix without header that is written via memory mapped row bands.
+     * Can be loaded e.g. with {@code numpy.memmap(file, dtype='<f4', shape=(n, n))}.
+     */
+    static RowSink binarySink(@NotNull Path file, int size) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        final long rowBytes = (long) size * Float.BYTES;
+        final int rowsPerMapping = (int) Math.max(1, Math.min(size, MAX_MAPPING_BYTES / Math.max(1, rowBytes)));
+        return new RowSink() {
+            private FloatBuffer mapped = null;
+            private int mappedUntil = 0;
+
+            @Override
+            public void writeRow(int row, double[] values) throws IOException {
+                if (mapped == null || row >= mappedUntil) {
+                    final int rows = Math.min(rowsPerMapping, size - row);
+                    mapped = channel.map(FileChannel.MapMode.READ_WRITE, row * rowBytes, rows * rowBytes)
+                            .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+                    mappedUntil = row + rows;
+                }
+                for (double value : values)
+                    mapped.put((float) value);
+            }
+
+            @Override
+            public void close() throws IOException {
+                mapped = null;
+                channel.force(false);
+                channel.close();
+            }
+        };
+    }
+
+    private static void writeValue(BufferedWriter bw, double value, int digits) throws IOException {
+        if (digits >= 0 && Double.isFinite(value))
+            bw.write(BigDecimal.valueOf(value).setScale(digits, RoundingMode.HALF_UP).toString());
+        else
+            bw.write(String.valueOf(value));
+    }
+}
@@ -78,9 +78,19 @@ public class SpectraSearchOptions implements ToolChainOptions<SpectraSearchSubto
         return List.of(SiriusOptions.class);
     }
 
+    @CommandLine.Option(names = "--library-cache-size", defaultValue = "100000", hidden = true,
+            description = "Max number of reference spectra that are cached in memory and shared between all queries of a run. Set to 0 to disable the cache.")
+    protected int libraryCacheSize = 100000;
+
+    @CommandLine.Option(names = "--library-cache-window", defaultValue = "1.0", hidden = true,
+            description = "Width (in m/z) of the precursor windows in which reference spectra are loaded into the cache.")
+    protected double libraryCacheWindow = 1d;
+
     @Override
     public InstanceJob.Factory<SpectraSearchSubtoolJob> call() throws Exception {
-        return new InstanceJob.Factory<>(SpectraSearchSubtoolJob::new, getInvalidator());
+        // one cache per run, shared by all instance jobs.
+        final SpectralLibraryCache cache = libraryCacheSize > 0 ? new SpectralLibraryCache(libraryCacheWindow, libraryCacheSize) : null;
+        return new InstanceJob.Factory<>(js -> new SpectraSearchSubtoolJob(js, cache), getInvalidator());
     }
 
 }
@@ -34,6 +34,7 @@ import de.unijena.bioinf.spectraldb.SpectralMatchingMassDeviation;
 import de.unijena.bioinf.spectraldb.SpectralSearchResult;
 import de.unijena.bioinf.spectraldb.entities.Ms2ReferenceSpectrum;
 import de.unijena.bionf.spectral_alignment.SpectralSimilarity;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
@@ -48,8 +49,16 @@ public class SpectraSearchSubtoolJob extends InstanceJob {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    @Nullable
+    private final SpectralLibraryCache libraryCache;
+
     public SpectraSearchSubtoolJob(JobSubmitter jobSubmitter) {
+        this(jobSubmitter, null);
+    }
+
+    public SpectraSearchSubtoolJob(JobSubmitter jobSubmitter, @Nullable SpectralLibraryCache libraryCache) {
         super(jobSubmitter);
+        this.libraryCache = libraryCache;
     }
 
     public static String getQueryName(MutableMs2Spectrum query, int queryIndex) {
@@ -88,8 +97,12 @@ public class SpectraSearchSubtoolJob extends InstanceJob {
         Deviation precursorDev = exp.getAnnotationOrDefault(SpectralMatchingMassDeviation.class).allowedPrecursorDeviation;
         double precursorMz = exp.getIonMass();
 
-        final List<Ms2ReferenceSpectrum> references = NetUtils.tryAndWait(() -> ApplicationCore.WEB_API.getChemDB()
-                .lookupSpectra(precursorMz, precursorDev, true, exp.getAnnotationOrDefault(SpectralSearchDB.class).searchDBs), this::checkForInterruption);
+        final SpectralSearchDB searchDB = exp.getAnnotationOrDefault(SpectralSearchDB.class);
+        final List<Ms2ReferenceSpectrum> references = libraryCache != null
+                ? libraryCache.lookupSpectra(searchDB.searchDBs, precursorMz, precursorDev, (mz, dev) -> NetUtils.tryAndWait(() -> ApplicationCore.WEB_API.getChemDB()
+                .lookupSpectra(mz, dev, true, searchDB.searchDBs), this::checkForInterruption))
+                : NetUtils.tryAndWait(() -> ApplicationCore.WEB_API.getChemDB()
+                .lookupSpectra(precursorMz, precursorDev, true, searchDB.searchDBs), this::checkForInterruption);
         SpectraMatchingJJob job = new SpectraMatchingJJob(references, exp);
         job.addJobProgressListener(evt -> updateProgress(evt.getMinValue(), evt.getMaxValue(), evt.getProgress()));
         SpectralSearchResult result = submitJob(job).awaitResult();
@@ -114,6 +127,7 @@ public class SpectraSearchSubtoolJob extends InstanceJob {
         builder.append("\nExperiment: ").append(exp.getName());
 
         List<MutableMs2Spectrum> queries = exp.getMs2Spectra();
+        Long2ObjectMap<Ms2ReferenceSpectrum> referencesByUuid = SpectralLibraryCache.byUuid(references);
         Map<Integer, List<SpectralSearchResult.SearchResult>> resultMap = StreamSupport.stream(result.spliterator(), false).collect(Collectors.groupingBy(SpectralSearchResult.SearchResult::getQuerySpectrumIndex));
         for (Integer queryIndex : resultMap.keySet()) {
             MutableMs2Spectrum query = queries.get(queryIndex);
@@ -124,7 +138,9 @@ public class SpectraSearchSubtoolJob extends InstanceJob {
                 SpectralSimilarity similarity = r.getSimilarity();
 
                 try {
-                    Ms2ReferenceSpectrum reference = ApplicationCore.WEB_API.getChemDB().getReferenceSpectrum(CustomDataSources.getSourceFromName(r.getDbName()), r.getUuid());
+                    Ms2ReferenceSpectrum reference = referencesByUuid.get(r.getUuid());
+                    if (reference == null)
+                        reference = ApplicationCore.WEB_API.getChemDB().getReferenceSpectrum(CustomDataSources.getSourceFromName(r.getDbName()), r.getUuid());
                     builder.append(String.format("\n%10.3e | %5d | %9s | %9.3f | %2d | %5s | %10s | %s | %s | %s  | %s | %s | %s",
                             similarity.similarity,
                             similarity.sharedPeaks,
@@ -0,0 +1,159 @@
+/*
+ *  This file is part of the SIRIUS Software for analyzing MS and MS/MS data
+ *
+ *  Copyright (C) 2013-2020 Kai Dührkop, Markus Fleischauer, Marcus Ludwig, Martin A. Hoffman, Fleming Kretschmer, Marvin Meusel and Sebastian Böcker,
+ *  Chair of Bioinformatics, Friedrich-Schiller University.
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Affero General Public License
+ *  as published by the Free Software Foundation; either
+ *  version 3 of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Affero General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Affero General Public License along with SIRIUS.  If not, see <https://www.gnu.org/licenses/agpl-3.0.txt>
+ */
+
+package de.unijena.bioinf.ms.frontend.subtools.spectra_search;
+
+import de.unijena.bioinf.ChemistryBase.ms.Deviation;
+import de.unijena.bioinf.spectraldb.entities.Ms2ReferenceSpectrum;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Bounded, precursor m/z indexed cache of reference spectra that is shared by all {@link SpectraSearchSubtoolJob}s
+ * of one run. Reference spectra are loaded in fixed m/z windows with a single range query per window, so instances
+ * with overlapping precursor windows do not re-read the same reference spectra from the database.
+ * Windows are evicted in least recently used order as soon as the number of cached spectra exceeds the given bound.
+ */
+public class SpectralLibraryCache {
+
+    @FunctionalInterface
+    public interface RangeLoader {
+        List<Ms2ReferenceSpectrum> lookupSpectra(double precursorMz, Deviation deviation) throws Exception;
+    }
+
+    private record WindowKey(Object databases, long window) {
+    }
+
+    private final double windowWidth;
+    private final int maxCachedSpectra;
+
+    private final LinkedHashMap<WindowKey, CompletableFuture<List<Ms2ReferenceSpectrum>>> windows = new LinkedHashMap<>(16, 0.75f, true);
+    private int cachedSpectra = 0;
+
+    /**
+     * @param windowWidth      width of the m/z windows that are loaded with a single range query.
+     * @param maxCachedSpectra max number of reference spectra that are kept in memory.
+     */
+    public SpectralLibraryCache(double windowWidth, int maxCachedSpectra) {
+        if (windowWidth <= 0)
+            throw new IllegalArgumentException("Window width must be positive but was: " + windowWidth);
+        this.windowWidth = windowWidth;
+        this.maxCachedSpectra = maxCachedSpectra;
+    }
+
+    /**
+     * Returns all reference spectra of the given databases whose precursor m/z is within the given deviation of the
+     * query precursor m/z. Spectra are taken from the cache or loaded via the given loader.
+     *
+     * @param databases key that identifies the set of databases that is searched by the given loader.
+     */
+    public List<Ms2ReferenceSpectrum> lookupSpectra(@NotNull Object databases, double precursorMz, @NotNull Deviation precursorDev, @NotNull RangeLoader loader) throws Exception {
+        final double dev = precursorDev.absoluteFor(precursorMz);
+        final long fromWindow = window(precursorMz - dev);
+        final long toWindow = window(precursorMz + dev);
+
+        final List<Ms2ReferenceSpectrum> result = new ArrayList<>();
+        for (long w = fromWindow; w <= toWindow; w++) {
+            for (Ms2ReferenceSpectrum ref : getWindow(new WindowKey(databases, w), loader)) {
+                if (precursorDev.inErrorWindow(precursorMz, ref.getPrecursorMz()))
+                    result.add(ref);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Maps reference spectra by their uuid. Used to resolve search results without re-reading references.
+     * UUIDs that are not unique within the given references are omitted.
+     */
+    public static Long2ObjectMap<Ms2ReferenceSpectrum> byUuid(@NotNull Collection<Ms2ReferenceSpectrum> references) {
+        Long2ObjectMap<Ms2ReferenceSpectrum> map = new Long2ObjectOpenHashMap<>(references.size());
+        Set<Long> duplicates = new HashSet<>();
+        for (Ms2ReferenceSpectrum ref : references) {
+            if (map.put(ref.getUuid(), ref) != null)
+                duplicates.add(ref.getUuid());
+        }
+        duplicates.forEach(map::remove);
+        return map;
+    }
+
+    private long window(double mz) {
+        return (long) Math.floor(mz / windowWidth);
+    }
+
+    private List<Ms2ReferenceSpectrum> getWindow(WindowKey key, RangeLoader loader) throws Exception {
+        final CompletableFuture<List<Ms2ReferenceSpectrum>> future;
+        final boolean load;
+        synchronized (windows) {
+            CompletableFuture<List<Ms2ReferenceSpectrum>> existing = windows.get(key);
+            load = existing == null;
+            future = load ? new CompletableFuture<>() : existing;
+            if (load)
+                windows.put(key, future);
+        }
+
+        if (load) {
+            try {
+                final double from = key.window() * windowWidth;
+                final double center = from + windowWidth / 2d;
+                final List<Ms2ReferenceSpectrum> spectra = loader.lookupSpectra(center, new Deviation(0, windowWidth / 2d)).stream()
+                        .filter(ref -> window(ref.getPrecursorMz()) == key.window())
+                        .toList();
+                future.complete(spectra);
+                addAndEvict(key, spectra.size());
+            } catch (Exception e) {
+                synchronized (windows) {
+                    windows.remove(key, future);
+                }
+                future.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception ex)
+                throw ex;
+            throw e;
+        }
+    }
+
+    private void addAndEvict(WindowKey added, int numOfSpectra) {
+        synchronized (windows) {
+            if (!windows.containsKey(added))
+                return;
+            cachedSpectra += numOfSpectra;
+            Iterator<Map.Entry<WindowKey, CompletableFuture<List<Ms2ReferenceSpectrum>>>> it = windows.entrySet().iterator();
+            while (cachedSpectra > maxCachedSpectra && it.hasNext()) {
+                Map.Entry<WindowKey, CompletableFuture<List<Ms2ReferenceSpectrum>>> e = it.next();
+                // never evict the window that has just been added or windows that are still loading.
+                if (e.getKey().equals(added) || !e.getValue().isDone() || e.getValue().isCompletedExceptionally())
+                    continue;
+                cachedSpectra -= e.getValue().join().size();
+                it.remove();
+            }
+        }
+    }
+}
@@ -26,6 +26,7 @@ import de.unijena.bioinf.ChemistryBase.ms.MutableMs2Spectrum;
 import de.unijena.bioinf.ChemistryBase.ms.ft.FTree;
 import de.unijena.bioinf.chemdb.ChemicalDatabaseException;
 import de.unijena.bioinf.chemdb.custom.CustomDataSources;
+import de.unijena.bioinf.jjobs.BasicJJob;
 import de.unijena.bioinf.ms.frontend.core.ApplicationCore;
 import de.unijena.bioinf.ms.frontend.subtools.PostprocessingJob;
 import de.unijena.bioinf.ms.frontend.subtools.PreprocessingJob;
@@ -51,9 +52,13 @@ import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
 
 public class NoSqlSummarySubToolJob extends PostprocessingJob<Boolean> implements Workflow {
+    private static final int FEATURES_PER_CHUNK = 32;
+
     private final SummaryOptions options;
 
     private @Nullable PreprocessingJob<?> preprocessingJob;
@@ -109,210 +114,35 @@ public class NoSqlSummarySubToolJob extends PostprocessingJob<Boolean> implement
                 location = Path.of(project.getLocation()).getParent().resolve(project.getName());
 
             Files.createDirectories(location);
-            try (
-                    NoSqlFormulaSummaryWriter formulaTopHit = options.topHitSummary
-                            ? initFormulaSummaryWriter(location, "formula_identifications.tsv") : null;
-                    NoSqlFormulaSummaryWriter formulaTopHitAdducts = options.topHitWithAdductsSummary
-                            ? initFormulaSummaryWriter(location, "formula_identifications_adducts.tsv") : null;
-                    NoSqlFormulaSummaryWriter formulaAll = options.fullSummary
-                            ? initFormulaSummaryWriter(location, "formula_identifications_all.tsv") : null;
-                    NoSqlFormulaSummaryWriter formulaTopK = options.topK > 1
-                            ? initFormulaSummaryWriter(location, "formula_identifications_top-" + options.topK + ".tsv") : null;
-
-                    NoSqlStructureSummaryWriter structureTopHit = options.topHitSummary
-                            ? initStructureSummaryWriter(location, "structure_identifications.tsv") : null;
-                    NoSqlStructureSummaryWriter structureAll = options.fullSummary
-                            ? initStructureSummaryWriter(location, "structure_identifications_all.tsv") : null;
-                    NoSqlStructureSummaryWriter structureTopK = options.topK > 1
-                            ? initStructureSummaryWriter(location, "structure_identifications_top-" + options.topK + ".tsv") : null;
-
-                    NoSqlDeNovoSummaryWriter deNovoTopHit = options.topHitSummary
-                            ? initDeNovoSummaryWriter(location, "denovo_structure_identifications.tsv") : null;
-                    NoSqlDeNovoSummaryWriter deNovoAll = options.fullSummary
-                            ? initDeNovoSummaryWriter(location, "denovo_structure_identifications_all.tsv") : null;
-                    NoSqlDeNovoSummaryWriter deNovoTopK = options.topK > 1
-                            ? initDeNovoSummaryWriter(location, "denovo_structure_identifications_top-" + options.topK + ".tsv") : null;
-
-                    NoSqlCanopusSummaryWriter canopusFormula = options.topHitSummary
-                            ? initCanopusSummaryWriter(location, "canopus_formula_summary.tsv") : null;
-                    NoSqlCanopusSummaryWriter canopusStructure = options.topHitSummary
-                            ? initCanopusSummaryWriter(location, "canopus_structure_summary.tsv") : null;
-
-                    NoSqlSpectrumSummaryWriter refSpectrum = options.topHitSummary
-                            ? initSpectrumSummaryWriter(location, "spectral_matches.tsv") : null;
-                    NoSqlSpectrumSummaryWriter refSpectrumAll = options.fullSummary
-                            ? initSpectrumSummaryWriter(location, "spectral_matches_all.tsv") : null;
-                    NoSqlSpectrumSummaryWriter refSpectrumTopK = options.topK > 0
-                            ? initSpectrumSummaryWriter(location, "spectral_matches_top-" + options.topK + ".tsv") : null;
-
-            ) {
+            final Path finalLocation = location;
+            try (NoSqlSummaryWriters writers = NoSqlSummaryWriters.toFiles(options, filename -> makeFileWriter(finalLocation, filename))) {
                 //we load all data on demand from project db without manual caching or re-usage.
-                //if this turns out to be too slow we can cache e.g. the formula candidates.
-                //However, without caching we ensure that the memory consumption is always the same no matter how large the dataset or the results are.
-                int instanceCounter = 1;
+                //Features are processed in chunks on worker threads that write their rows into in memory buffers.
+                //Buffers are appended to the summary files in feature order, so the output is deterministic.
+                //The number of chunks in flight is bounded so that memory consumption does not depend on the size of the dataset.
+                final int maxChunksInFlight = 2 * SiriusJobs.getCPUThreads();
+                final ArrayDeque<BasicJJob<NoSqlSummaryWriters>> chunkJobs = new ArrayDeque<>(maxChunksInFlight);
+                int instanceCounter = 0;
+                List<Instance> chunk = new ArrayList<>(FEATURES_PER_CHUNK);
                 for (Instance inst : project) {
-                    updateProgress(maxProgress, instanceCounter++, "Writing Feature '" + inst.getExternalFeatureId().orElseGet(inst::getName) + "'...");
-                    AlignedFeatures f = ((NoSQLInstance) inst).getAlignedFeatures();
-
-                    { //formula summary
-                        boolean first = true;
-                        MolecularFormula lastPrecursorFormula = null;
-                        //we use the formula rank for search because its index, and we do not know whether siriusScore or zodiacScore was used for ranking.
-                        for (FormulaCandidate fc : project.getProject().findByFeatureId(f.getAlignedFeatureId(), FormulaCandidate.class, "formulaRank", Database.SortOrder.ASCENDING)) {
-                            boolean nothingWritten = true;
-
-                            MolecularFormula currentPrecursorFormula = fc.getAdduct()
-                                    .neutralMoleculeToMeasuredNeutralMolecule(fc.getMolecularFormula());
-
-                            FTree ftree = project.getProject().getStorage().getByPrimaryKey(fc.getFormulaId(), FTreeResult.class)
-                                    .map(FTreeResult::getFTree)
-                                    .orElseThrow();
-
-                            if (formulaTopHit != null && first) {
-                                formulaTopHit.writeFormulaCandidate(f, fc, ftree);
-                                nothingWritten = false;
-                            }
-                            if (canopusFormula != null && first) {
-                                CanopusPrediction cp = project.getProject().findByFormulaIdStr(fc.getFormulaId(), CanopusPrediction.class).findFirst().orElse(null);
-                                if (cp != null)
-                                    canopusFormula.writeCanopusPredictions(f, fc, cp);
-                                nothingWritten = false;
-                            }
-                            if (formulaTopHitAdducts != null && (first || currentPrecursorFormula.equals(lastPrecursorFormula))) {
-                                formulaTopHitAdducts.writeFormulaCandidate(f, fc, ftree);
-                                lastPrecursorFormula = currentPrecursorFormula;
-                                nothingWritten = false;
-                            }
-                            if (formulaTopK != null && fc.getFormulaRank() <= options.getTopK()) {
-                                formulaTopK.writeFormulaCandidate(f, fc, ftree);
-                                nothingWritten = false;
-                            }
-                            if (formulaAll != null) {
-                                formulaAll.writeFormulaCandidate(f, fc, ftree);
-                                nothingWritten = false;
-                            }
-                            if (nothingWritten)
-                                break;
-
-                            //iterating
-                            first = false;
-
-                        }
-                    }
-
-                    {// structure summary
-                        CsiStructureSearchResult ssr = project.getProject().findByFeatureIdStr(f.getAlignedFeatureId(), CsiStructureSearchResult.class).findFirst().orElse(null);
-                        if (ssr != null) {
-                            boolean first = true;
-                            int rank = 1;
-                            FormulaCandidate lastFc = null;
-                            for (CsiStructureMatch sc : project.getProject().findByFeatureId(f.getAlignedFeatureId(), CsiStructureMatch.class, "structureRank", Database.SortOrder.ASCENDING)) {
-                                project.getProject().fetchFingerprintCandidate(sc, false);
-                                boolean nothingWritten = true;
-                                FormulaCandidate fc = (lastFc != null && lastFc.getFormulaId() == sc.getFormulaId())
-                                        ? lastFc : project.getProject().findByFormulaIdStr(sc.getFormulaId(), FormulaCandidate.class).findFirst().orElseThrow();
-
-                                if (structureTopHit != null && first) {
-                                    structureTopHit.writeStructureCandidate(f, fc, sc, ssr);
-                                    nothingWritten = false;
-                                }
-                                if (canopusStructure != null && first) {
-                                    CanopusPrediction cp = project.getProject().findByFormulaIdStr(fc.getFormulaId(), CanopusPrediction.class).findFirst().orElse(null);
-                                    if (cp != null)
-                                        canopusStructure.writeCanopusPredictions(f, fc, cp);
-                                    nothingWritten = false;
-                                }
-                                if (formulaTopK != null && rank <= options.getTopK()) {
-                                    structureTopK.writeStructureCandidate(f, fc, sc, ssr);
-                                    nothingWritten = false;
-                                }
-                                if (structureAll != null) {
-                                    structureAll.writeStructureCandidate(f, fc, sc, ssr);
-                                    nothingWritten = false;
-                                }
-                                if (nothingWritten)
-                                    break;
-
-                                //iterating
-                                lastFc = fc;
-                                rank++;
-                                first = false;
-                            }
-                        }
+                    chunk.add(inst);
+                    if (chunk.size() >= FEATURES_PER_CHUNK) {
+                        chunkJobs.add(submitChunkJob(project, chunk));
+                        chunk = new ArrayList<>(FEATURES_PER_CHUNK);
                     }
-                    {// Denovo summary
-                        boolean first = true;
-                        int rank = 1;
-                        FormulaCandidate lastFc = null;
-                        for (DenovoStructureMatch sc : project.getProject().findByFeatureId(f.getAlignedFeatureId(), DenovoStructureMatch.class, "structureRank", Database.SortOrder.ASCENDING)) {
-                            project.getProject().fetchFingerprintCandidate(sc, false);
-                            boolean nothingWritten = true;
-                            FormulaCandidate fc = (lastFc != null && lastFc.getFormulaId() == sc.getFormulaId())
-                                    ? lastFc : project.getProject().findByFormulaIdStr(sc.getFormulaId(), FormulaCandidate.class).findFirst().orElseThrow();
-
-                            if (deNovoTopHit != null && first) {
-                                deNovoTopHit.writeStructureCandidate(f, fc, sc);
-                                nothingWritten = false;
-                            }
-
-                            if (formulaTopK != null && rank <= options.getTopK()) {
-                                deNovoTopK.writeStructureCandidate(f, fc, sc);
-                                nothingWritten = false;
-                            }
-                            if (deNovoAll != null) {
-                                deNovoAll.writeStructureCandidate(f, fc, sc);
-                                nothingWritten = false;
-                            }
-                            if (nothingWritten)
-                                break;
-
-                            //iterating
-                            lastFc = fc;
-                            rank++;
-                            first = false;
-                        }
+                    while (chunkJobs.size() >= maxChunksInFlight) {
+                        instanceCounter = Math.min(maxProgress, instanceCounter + writeChunk(chunkJobs.poll(), writers));
+                        updateProgress(maxProgress, instanceCounter, "Writing Feature '" + inst.getExternalFeatureId().orElseGet(inst::getName) + "'...");
                     }
+                }
+                if (!chunk.isEmpty())
+                    chunkJobs.add(submitChunkJob(project, chunk));
 
-                    if (options.topK > 0 || options.fullSummary) {// spectral match summary
-                        List<MutableMs2Spectrum> queries = inst.getExperiment().getMs2Spectra();
-                        int rank = 1;
-                        for (SpectraMatch match : project.getProject().getStorage().find(Filter.where("alignedFeatureId").eq(f.getAlignedFeatureId()), SpectraMatch.class, new String[]{"searchResult.similarity.similarity", "searchResult.similarity.sharedPeaks"}, new Database.SortOrder[]{Database.SortOrder.DESCENDING, Database.SortOrder.DESCENDING})) {
-
-                            if (match.getQuerySpectrumIndex() >= queries.size())
-                                continue;
-
-                            MutableMs2Spectrum query = queries.get(match.getQuerySpectrumIndex());
-                            Ms2ReferenceSpectrum reference;
-                            try {
-                                reference = ApplicationCore.WEB_API.getChemDB().getReferenceSpectrum(CustomDataSources.getSourceFromName(match.getDbName()), match.getUuid());
-                            } catch (ChemicalDatabaseException e) {
-                                break;
-                            }
-
-                            boolean nothingWritten = true;
-
-                            if (refSpectrum != null && rank == 1) {
-                                refSpectrum.writeSpectralMatch(f, match, query, reference);
-                                nothingWritten = false;
-                            }
-
-                            if (refSpectrumAll != null) {
-                                refSpectrumAll.writeSpectralMatch(f, match, query, reference);
-                                nothingWritten  = false;
-                            }
-
-                            if (refSpectrumTopK != null && rank <= options.getTopK()) {
-                                refSpectrumTopK.writeSpectralMatch(f, match, query, reference);
-                                nothingWritten = false;
-                            }
-
-                            if (nothingWritten)
-                                break;
-
-                            rank++;
-                        }
-                    }
+                while (!chunkJobs.isEmpty()) {
+                    instanceCounter = Math.min(maxProgress, instanceCounter + writeChunk(chunkJobs.poll(), writers));
+                    updateProgress(maxProgress, instanceCounter, "Writing summaries...");
                 }
+
                 w.stop();
                 updateProgress(maxProgress, maxProgress, "Summaries written in: " + w);
                 return true;
@@ -323,34 +153,189 @@ public class NoSqlSummarySubToolJob extends PostprocessingJob<Boolean> implement
         }
     }
 
-    NoSqlFormulaSummaryWriter initFormulaSummaryWriter(Path location, String filename) throws IOException {
-        NoSqlFormulaSummaryWriter formulaSummaryWriter = new NoSqlFormulaSummaryWriter(makeFileWriter(location, filename));
-        formulaSummaryWriter.writeHeader();
-        return formulaSummaryWriter;
+    private BasicJJob<NoSqlSummaryWriters> submitChunkJob(final NoSQLProjectSpaceManager project, final List<Instance> chunk) {
+        return SiriusJobs.getGlobalJobManager().submitJob(new BasicJJob<>() {
+            @Override
+            protected NoSqlSummaryWriters compute() throws Exception {
+                NoSqlSummaryWriters buffers = NoSqlSummaryWriters.toBuffers(options);
+                for (Instance inst : chunk) {
+                    checkForInterruption();
+                    writeFeature(project, inst, buffers);
+                }
+                return buffers;
+            }
+        });
     }
 
-    NoSqlCanopusSummaryWriter initCanopusSummaryWriter(Path location, String filename) throws IOException {
-        NoSqlCanopusSummaryWriter canopusSummaryWriter = new NoSqlCanopusSummaryWriter(makeFileWriter(location, filename));
-        canopusSummaryWriter.writeHeader();
-        return canopusSummaryWriter;
+    private int writeChunk(BasicJJob<NoSqlSummaryWriters> chunkJob, NoSqlSummaryWriters target) throws Exception {
+        checkForInterruption();
+        try (NoSqlSummaryWriters buffers = chunkJob.awaitResult()) {
+            buffers.flushBuffersTo(target);
+        }
+        return FEATURES_PER_CHUNK;
     }
 
-    NoSqlStructureSummaryWriter initStructureSummaryWriter(Path location, String filename) throws IOException {
-        NoSqlStructureSummaryWriter structureSummaryWriter = new NoSqlStructureSummaryWriter(makeFileWriter(location, filename));
-        structureSummaryWriter.writeHeader();
-        return structureSummaryWriter;
-    }
+    private void writeFeature(NoSQLProjectSpaceManager project, Instance inst, NoSqlSummaryWriters w) throws Exception {
+        AlignedFeatures f = ((NoSQLInstance) inst).getAlignedFeatures();
 
-    NoSqlDeNovoSummaryWriter initDeNovoSummaryWriter(Path location, String filename) throws IOException {
-        NoSqlDeNovoSummaryWriter denovoSummaryWriter = new NoSqlDeNovoSummaryWriter(makeFileWriter(location, filename));
-        denovoSummaryWriter.writeHeader();
-        return denovoSummaryWriter;
-    }
+        { //formula summary
+            boolean first = true;
+            MolecularFormula lastPrecursorFormula = null;
+            //we use the formula rank for search because its index, and we do not know whether siriusScore or zodiacScore was used for ranking.
+            for (FormulaCandidate fc : project.getProject().findByFeatureId(f.getAlignedFeatureId(), FormulaCandidate.class, "formulaRank", Database.SortOrder.ASCENDING)) {
+                boolean nothingWritten = true;
+
+                MolecularFormula currentPrecursorFormula = fc.getAdduct()
+                        .neutralMoleculeToMeasuredNeutralMolecule(fc.getMolecularFormula());
+
+                FTree ftree = project.getProject().getStorage().getByPrimaryKey(fc.getFormulaId(), FTreeResult.class)
+                        .map(FTreeResult::getFTree)
+                        .orElseThrow();
+
+                if (w.formulaTopHit != null && first) {
+                    w.formulaTopHit.writeFormulaCandidate(f, fc, ftree);
+                    nothingWritten = false;
+                }
+                if (w.canopusFormula != null && first) {
+                    CanopusPrediction cp = project.getProject().findByFormulaIdStr(fc.getFormulaId(), CanopusPrediction.class).findFirst().orElse(null);
+                    if (cp != null)
+                        w.canopusFormula.writeCanopusPredictions(f, fc, cp);
+                    nothingWritten = false;
+                }
+                if (w.formulaTopHitAdducts != null && (first || currentPrecursorFormula.equals(lastPrecursorFormula))) {
+                    w.formulaTopHitAdducts.writeFormulaCandidate(f, fc, ftree);
+                    lastPrecursorFormula = currentPrecursorFormula;
+                    nothingWritten = false;
+                }
+                if (w.formulaTopK != null && fc.getFormulaRank() <= options.getTopK()) {
+                    w.formulaTopK.writeFormulaCandidate(f, fc, ftree);
+                    nothingWritten = false;
+                }
+                if (w.formulaAll != null) {
+                    w.formulaAll.writeFormulaCandidate(f, fc, ftree);
+                    nothingWritten = false;
+                }
+                if (nothingWritten)
+                    break;
+
+                //iterating
+                first = false;
+
+            }
+        }
 
-    NoSqlSpectrumSummaryWriter initSpectrumSummaryWriter(Path location, String filename) throws IOException {
-        NoSqlSpectrumSummaryWriter spectrumSummaryWriter = new NoSqlSpectrumSummaryWriter(makeFileWriter(location, filename));
-        spectrumSummaryWriter.writeHeader();
-        return spectrumSummaryWriter;
+        {// structure summary
+            CsiStructureSearchResult ssr = project.getProject().findByFeatureIdStr(f.getAlignedFeatureId(), CsiStructureSearchResult.class).findFirst().orElse(null);
+            if (ssr != null) {
+                boolean first = true;
+                int rank = 1;
+                FormulaCandidate lastFc = null;
+                for (CsiStructureMatch sc : project.getProject().findByFeatureId(f.getAlignedFeatureId(), CsiStructureMatch.class, "structureRank", Database.SortOrder.ASCENDING)) {
+                    project.getProject().fetchFingerprintCandidate(sc, false);
+                    boolean nothingWritten = true;
+                    FormulaCandidate fc = (lastFc != null && lastFc.getFormulaId() == sc.getFormulaId())
+                            ? lastFc : project.getProject().findByFormulaIdStr(sc.getFormulaId(), FormulaCandidate.class).findFirst().orElseThrow();
+
+                    if (w.structureTopHit != null && first) {
+                        w.structureTopHit.writeStructureCandidate(f, fc, sc, ssr);
+                        nothingWritten = false;
+                    }
+                    if (w.canopusStructure != null && first) {
+                        CanopusPrediction cp = project.getProject().findByFormulaIdStr(fc.getFormulaId(), CanopusPrediction.class).findFirst().orElse(null);
+                        if (cp != null)
+                            w.canopusStructure.writeCanopusPredictions(f, fc, cp);
+                        nothingWritten = false;
+                    }
+                    if (w.formulaTopK != null && rank <= options.getTopK()) {
+                        w.structureTopK.writeStructureCandidate(f, fc, sc, ssr);
+                        nothingWritten = false;
+                    }
+                    if (w.structureAll != null) {
+                        w.structureAll.writeStructureCandidate(f, fc, sc, ssr);
+                        nothingWritten = false;
+                    }
+                    if (nothingWritten)
+                        break;
+
+                    //iterating
+                    lastFc = fc;
+                    rank++;
+                    first = false;
+                }
+            }
+        }
+        {// Denovo summary
+            boolean first = true;
+            int rank = 1;
+            FormulaCandidate lastFc = null;
+            for (DenovoStructureMatch sc : project.getProject().findByFeatureId(f.getAlignedFeatureId(), DenovoStructureMatch.class, "structureRank", Database.SortOrder.ASCENDING)) {
+                project.getProject().fetchFingerprintCandidate(sc, false);
+                boolean nothingWritten = true;
+                FormulaCandidate fc = (lastFc != null && lastFc.getFormulaId() == sc.getFormulaId())
+                        ? lastFc : project.getProject().findByFormulaIdStr(sc.getFormulaId(), FormulaCandidate.class).findFirst().orElseThrow();
+
+                if (w.deNovoTopHit != null && first) {
+                    w.deNovoTopHit.writeStructureCandidate(f, fc, sc);
+                    nothingWritten = false;
+                }
+
+                if (w.formulaTopK != null && rank <= options.getTopK()) {
+                    w.deNovoTopK.writeStructureCandidate(f, fc, sc);
+                    nothingWritten = false;
+                }
+                if (w.deNovoAll != null) {
+                    w.deNovoAll.writeStructureCandidate(f, fc, sc);
+                    nothingWritten = false;
+                }
+                if (nothingWritten)
+                    break;
+
+                //iterating
+                lastFc = fc;
+                rank++;
+                first = false;
+            }
+        }
+
+        if (options.topK > 0 || options.fullSummary) {// spectral match summary
+            List<MutableMs2Spectrum> queries = inst.getExperiment().getMs2Spectra();
+            int rank = 1;
+            for (SpectraMatch match : project.getProject().getStorage().find(Filter.where("alignedFeatureId").eq(f.getAlignedFeatureId()), SpectraMatch.class, new String[]{"searchResult.similarity.similarity", "searchResult.similarity.sharedPeaks"}, new Database.SortOrder[]{Database.SortOrder.DESCENDING, Database.SortOrder.DESCENDING})) {
+
+                if (match.getQuerySpectrumIndex() >= queries.size())
+                    continue;
+
+                MutableMs2Spectrum query = queries.get(match.getQuerySpectrumIndex());
+                Ms2ReferenceSpectrum reference;
+                try {
+                    reference = ApplicationCore.WEB_API.getChemDB().getReferenceSpectrum(CustomDataSources.getSourceFromName(match.getDbName()), match.getUuid());
+                } catch (ChemicalDatabaseException e) {
+                    break;
+                }
+
+                boolean nothingWritten = true;
+
+                if (w.refSpectrum != null && rank == 1) {
+                    w.refSpectrum.writeSpectralMatch(f, match, query, reference);
+                    nothingWritten = false;
+                }
+
+                if (w.refSpectrumAll != null) {
+                    w.refSpectrumAll.writeSpectralMatch(f, match, query, reference);
+                    nothingWritten  = false;
+                }
+
+                if (w.refSpectrumTopK != null && rank <= options.getTopK()) {
+                    w.refSpectrumTopK.writeSpectralMatch(f, match, query, reference);
+                    nothingWritten = false;
+                }
+
+                if (nothingWritten)
+                    break;
+
+                rank++;
+            }
+        }
     }
 
     private BufferedWriter makeFileWriter(Path location, String filename) throws IOException {
@@ -0,0 +1,174 @@
+/*
+ *
+ *  This file is part of the SIRIUS library for analyzing MS and MS/MS data
+ *
+ *  Copyright (C) 2013-2020 Kai Dührkop, Markus Fleischauer, Marcus Ludwig, Martin A. Hoffman, Fleming Kretschmer and Sebastian Böcker,
+ *  Chair of Bioinformatics, Friedrich-Schilller University.
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 3 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License along with SIRIUS. If not, see <https://www.gnu.org/licenses/lgpl-3.0.txt>
+ */
+
+package de.unijena.bioinf.ms.frontend.subtools.summaries;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bundles all summary writers that are enabled by the given {@link SummaryOptions}.
+ * Writers either write to the summary files of the target location or into in memory row buffers
+ * that are created by worker threads and later appended to the summary files in feature order.
+ */
+class NoSqlSummaryWriters implements AutoCloseable {
+    @FunctionalInterface
+    interface WriterFactory {
+        BufferedWriter make(String filename) throws IOException;
+    }
+
+    private final Map<String, BufferedWriter> outputs = new LinkedHashMap<>();
+    private final Map<String, StringWriter> buffers;
+
+    final NoSqlFormulaSummaryWriter formulaTopHit;
+    final NoSqlFormulaSummaryWriter formulaTopHitAdducts;
+    final NoSqlFormulaSummaryWriter formulaAll;
+    final NoSqlFormulaSummaryWriter formulaTopK;
+
+    final NoSqlStructureSummaryWriter structureTopHit;
+    final NoSqlStructureSummaryWriter structureAll;
+    final NoSqlStructureSummaryWriter structureTopK;
+
+    final NoSqlDeNovoSummaryWriter deNovoTopHit;
+    final NoSqlDeNovoSummaryWriter deNovoAll;
+    final NoSqlDeNovoSummaryWriter deNovoTopK;
+
+    final NoSqlCanopusSummaryWriter canopusFormula;
+    final NoSqlCanopusSummaryWriter canopusStructure;
+
+    final NoSqlSpectrumSummaryWriter refSpectrum;
+    final NoSqlSpectrumSummaryWriter refSpectrumAll;
+    final NoSqlSpectrumSummaryWriter refSpectrumTopK;
+
+    /**
+     * Creates writers for the summary files with headers.
+     */
+    static NoSqlSummaryWriters toFiles(@NotNull SummaryOptions options, @NotNull WriterFactory fileWriterFactory) throws IOException {
+        return new NoSqlSummaryWriters(options, fileWriterFactory, null);
+    }
+
+    /**
+     * Creates writers that write rows (without headers) into in memory buffers, see {@link #flushBuffersTo(NoSqlSummaryWriters)}.
+     */
+    static NoSqlSummaryWriters toBuffers(@NotNull SummaryOptions options) throws IOException {
+        return new NoSqlSummaryWriters(options, null, new LinkedHashMap<>());
+    }
+
+    private NoSqlSummaryWriters(@NotNull SummaryOptions options, WriterFactory fileWriterFactory, Map<String, StringWriter> buffers) throws IOException {
+        this.buffers = buffers;
+        final boolean header = buffers == null;
+        final WriterFactory factory = buffers == null ? fileWriterFactory : filename -> {
+            StringWriter sw = new StringWriter();
+            buffers.put(filename, sw);
+            return new BufferedWriter(sw);
+        };
+
+        formulaTopHit = options.topHitSummary
+                ? new NoSqlFormulaSummaryWriter(open(factory, "formula_identifications.tsv")) : null;
+        formulaTopHitAdducts = options.topHitWithAdductsSummary
+                ? new NoSqlFormulaSummaryWriter(open(factory, "formula_identifications_adducts.tsv")) : null;
+        formulaAll = options.fullSummary
+                ? new NoSqlFormulaSummaryWriter(open(factory, "formula_identifications_all.tsv")) : null;
+        formulaTopK = options.topK > 1
+                ? new NoSqlFormulaSummaryWriter(open(factory, "formula_identifications_top-" + options.topK + ".tsv")) : null;
+
+        structureTopHit = options.topHitSummary
+                ? new NoSqlStructureSummaryWriter(open(factory, "structure_identifications.tsv")) : null;
+        structureAll = options.fullSummary
+                ? new NoSqlStructureSummaryWriter(open(factory, "structure_identifications_all.tsv")) : null;
+        structureTopK = options.topK > 1
+                ? new NoSqlStructureSummaryWriter(open(factory, "structure_identifications_top-" + options.topK + ".tsv")) : null;
+
+        deNovoTopHit = options.topHitSummary
+                ? new NoSqlDeNovoSummaryWriter(open(factory, "denovo_structure_identifications.tsv")) : null;
+        deNovoAll = options.fullSummary
+                ? new NoSqlDeNovoSummaryWriter(open(factory, "denovo_structure_identifications_all.tsv")) : null;
+        deNovoTopK = options.topK > 1
+                ? new NoSqlDeNovoSummaryWriter(open(factory, "denovo_structure_identifications_top-" + options.topK + ".tsv")) : null;
+
+        canopusFormula = options.topHitSummary
+                ? new NoSqlCanopusSummaryWriter(open(factory, "canopus_formula_summary.tsv")) : null;
+        canopusStructure = options.topHitSummary
+                ? new NoSqlCanopusSummaryWriter(open(factory, "canopus_structure_summary.tsv")) : null;
+
+        refSpectrum = options.topHitSummary
+                ? new NoSqlSpectrumSummaryWriter(open(factory, "spectral_matches.tsv")) : null;
+        refSpectrumAll = options.fullSummary
+                ? new NoSqlSpectrumSummaryWriter(open(factory, "spectral_matches_all.tsv")) : null;
+        refSpectrumTopK = options.topK > 0
+                ? new NoSqlSpectrumSummaryWriter(open(factory, "spectral_matches_top-" + options.topK + ".tsv")) : null;
+
+        if (header) {
+            for (NoSqlFormulaSummaryWriter w : new NoSqlFormulaSummaryWriter[]{formulaTopHit, formulaTopHitAdducts, formulaAll, formulaTopK})
+                if (w != null) w.writeHeader();
+            for (NoSqlStructureSummaryWriter w : new NoSqlStructureSummaryWriter[]{structureTopHit, structureAll, structureTopK})
+                if (w != null) w.writeHeader();
+            for (NoSqlDeNovoSummaryWriter w : new NoSqlDeNovoSummaryWriter[]{deNovoTopHit, deNovoAll, deNovoTopK})
+                if (w != null) w.writeHeader();
+            for (NoSqlCanopusSummaryWriter w : new NoSqlCanopusSummaryWriter[]{canopusFormula, canopusStructure})
+                if (w != null) w.writeHeader();
+            for (NoSqlSpectrumSummaryWriter w : new NoSqlSpectrumSummaryWriter[]{refSpectrum, refSpectrumAll, refSpectrumTopK})
+                if (w != null) w.writeHeader();
+        }
+    }
+
+    private BufferedWriter open(WriterFactory factory, String filename) throws IOException {
+        BufferedWriter w = factory.make(filename);
+        outputs.put(filename, w);
+        return w;
+    }
+
+    /**
+     * Appends the rows buffered by this (buffer based) instance to the files of the given (file based) instance.
+     * Buffers are cleared afterwards.
+     */
+    void flushBuffersTo(@NotNull NoSqlSummaryWriters target) throws IOException {
+        if (buffers == null)
+            throw new IllegalStateException("Writers do not write to buffers!");
+        for (Map.Entry<String, BufferedWriter> e : outputs.entrySet()) {
+            e.getValue().flush();
+            StringBuffer rows = buffers.get(e.getKey()).getBuffer();
+            if (!rows.isEmpty()) {
+                target.outputs.get(e.getKey()).append(rows);
+                rows.setLength(0);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException ex = null;
+        for (BufferedWriter w : outputs.values()) {
+            try {
+                w.close();
+            } catch (IOException e) {
+                if (ex == null) ex = e;
+                else ex.addSuppressed(e);
+            }
+        }
+        if (ex != null)
+            throw ex;
+    }
+}
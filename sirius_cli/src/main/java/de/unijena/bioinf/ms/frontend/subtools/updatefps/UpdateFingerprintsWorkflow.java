@@ -23,19 +23,12 @@ package de.unijena.bioinf.ms.frontend.subtools.updatefps;
 import de.unijena.bioinf.ChemistryBase.jobs.SiriusJobs;
 import de.unijena.bioinf.jjobs.BasicMasterJJob;
 import de.unijena.bioinf.ms.frontend.subtools.PreprocessingJob;
-import de.unijena.bioinf.ms.frontend.subtools.canopus.CanopusOptions;
-import de.unijena.bioinf.ms.frontend.subtools.fingerblast.FingerblastOptions;
-import de.unijena.bioinf.ms.frontend.subtools.fingerprint.FingerprintOptions;
 import de.unijena.bioinf.ms.frontend.workflow.Workflow;
 import de.unijena.bioinf.projectspace.Instance;
 import de.unijena.bioinf.projectspace.ProjectSpaceManager;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Consumer;
 
 public class UpdateFingerprintsWorkflow extends BasicMasterJJob<Boolean> implements Workflow {
 
@@ -51,22 +44,15 @@ public class UpdateFingerprintsWorkflow extends BasicMasterJJob<Boolean> impleme
         Iterable<? extends Instance> instances = SiriusJobs.getGlobalJobManager().submitJob(preprocessingJob).awaitResult();
         ProjectSpaceManager projectSpace = instances.iterator().next().getProjectSpaceManager(); // todo Hacky: implement real multi project solution?!
 
-        List<Consumer<Instance>> invalidators = new ArrayList<>();
-        invalidators.add(new FingerprintOptions(null).getInvalidator());
-        invalidators.add(new FingerblastOptions(null).getInvalidator());
-        invalidators.add(new CanopusOptions(null).getInvalidator());
-        final AtomicInteger progress = new AtomicInteger(0);
-        final int max = projectSpace.size() * invalidators.size() + 3;
-        updateProgress(0, max, progress.getAndIncrement(), "Starting Update...");
-        // remove fingerprint related results
-        projectSpace.forEach(i -> invalidators.forEach(inv -> {
-            updateProgress(0, max, progress.getAndIncrement(), "Deleting results for '" + i.getName() + "'...");
-            inv.accept(i);
-        }));
+        final int max = 3;
+        updateProgress(0, max, 0, "Starting Update...");
+        // remove fingerprint related results of all instances at once
+        updateProgress(0, max, 1, "Deleting CSI:FingerID, structure search and CANOPUS results...");
+        projectSpace.deleteFingerprintDependentResults();
         //remove Fingerprint data
-        updateProgress(0, max, progress.getAndIncrement(), "delete CSI:FinerID and CANOPUS fingerprint Data");
+        updateProgress(0, max, 2, "delete CSI:FinerID and CANOPUS fingerprint Data");
         projectSpace.deleteFingerprintData();
-        updateProgress(0, max, progress.get(), "DONE!");
+        updateProgress(0, max, max, "DONE!");
         return true;
     }
 
@@ -22,8 +22,10 @@ package de.unijena.bioinf.ms.frontend.subtools.zodiac;
 import de.unijena.bioinf.ChemistryBase.chem.Ionization;
 import de.unijena.bioinf.ChemistryBase.chem.MolecularFormula;
 import de.unijena.bioinf.ChemistryBase.chem.PrecursorIonType;
+import de.unijena.bioinf.ChemistryBase.jobs.SiriusJobs;
 import de.unijena.bioinf.ChemistryBase.ms.CompoundQuality;
 import de.unijena.bioinf.ChemistryBase.ms.Ms2Experiment;
+import de.unijena.bioinf.ChemistryBase.ms.MutableMs2Experiment;
 import de.unijena.bioinf.ChemistryBase.ms.ft.FTree;
 import de.unijena.bioinf.ChemistryBase.ms.ft.Fragment;
 import de.unijena.bioinf.ChemistryBase.ms.ft.Loss;
@@ -38,7 +40,7 @@ import de.unijena.bioinf.GibbsSampling.model.scorer.CommonFragmentAndLossScorer;
 import de.unijena.bioinf.GibbsSampling.model.scorer.CommonFragmentAndLossScorerNoiseIntensityWeighted;
 import de.unijena.bioinf.GibbsSampling.properties.*;
 import de.unijena.bioinf.jjobs.JobSubmitter;
-import de.unijena.bioinf.ms.frontend.subtools.DataSetJob;
+import de.unijena.bioinf.ms.frontend.subtools.StreamingDataSetJob;
 import de.unijena.bioinf.ms.frontend.utils.PicoUtils;
 import de.unijena.bioinf.projectspace.FCandidate;
 import de.unijena.bioinf.projectspace.Instance;
@@ -51,7 +53,7 @@ import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
 
-public class ZodiacSubToolJob extends DataSetJob {
+public class ZodiacSubToolJob extends StreamingDataSetJob<ZodiacSubToolJob.ZodiacInput> {
     //todo This job needs to be cleaned! ;-)
     // The Subtooljobs are SCHEDULER jobs, which means, that they are intended to
     // submit CPU intensive tasks and organize their dependencies
@@ -60,10 +62,6 @@ public class ZodiacSubToolJob extends DataSetJob {
     // the computation class.
     protected final ZodiacOptions cliOptions;
 
-    int maxCandidatesAt300;
-    int maxCandidatesAt800;
-    double forcedCandidatesPerIonizationRatio;
-
     public ZodiacSubToolJob(ZodiacOptions cliOptions, @NotNull JobSubmitter jobSubmitter) {
         super(jobSubmitter); //check whether the compound has formula results or not
         this.cliOptions = cliOptions;
@@ -79,8 +77,53 @@ public class ZodiacSubToolJob extends DataSetJob {
         return inst.hasZodiacResult();
     }
 
+    /**
+     * Zodiac input of a single instance: a stripped down experiment with only the fields ZODIAC reads and
+     * the formula candidates (with trees) that remain after the candidate threshold.
+     */
+    protected record ZodiacInput(Ms2Experiment experiment, List<FCandidate<?>> candidates) {
+    }
+
+    @Override
+    protected ZodiacInput summarize(@NotNull Instance instance) throws Exception {
+        // loaded while the upstream tools are still running on other instances
+        List<FCandidate<?>> inputData = instance.getFTrees().stream()
+                .filter(fc -> fc.hasAnnotation(FTree.class)).toList();
+        if (inputData.isEmpty())
+            return null;
+
+        final Ms2Experiment experiment = instance.getExperiment();
+        final List<FTree> allTrees = inputData.stream().map(fc -> fc.getAnnotationOrThrow(FTree.class)).toList();
+
+        //annotate compound quality based on all candidates
+        CompoundQuality quality = experiment.getAnnotationOrNull(CompoundQuality.class);
+        boolean isPoorlyExplained = SiriusJobs.getGlobalJobManager().submitJob(
+                new TreeQualityEvaluator(0.8, 5).makeIsAllCandidatesPoorlyExplainSpectrumJob(allTrees)).awaitResult();
+        if (isPoorlyExplained) {
+            if (quality == null)
+                quality = new CompoundQuality(CompoundQuality.CompoundQualityFlag.PoorlyExplained);
+            else if (quality.isNot(CompoundQuality.CompoundQualityFlag.PoorlyExplained))
+                quality = quality.updateQuality(CompoundQuality.CompoundQualityFlag.PoorlyExplained);
+        }
+
+        //limit number of candidates, only the remaining ones are kept until ZODIAC runs
+        final Set<FTree> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        kept.addAll(applyMaxCandidateThreshold(experiment, allTrees));
+        final List<FCandidate<?>> candidates = inputData.stream()
+                .filter(fc -> kept.contains(fc.getAnnotationOrThrow(FTree.class))).toList();
+
+        final MutableMs2Experiment compact = new MutableMs2Experiment();
+        compact.setName(experiment.getName());
+        compact.setIonMass(experiment.getIonMass());
+        compact.setPrecursorIonType(experiment.getPrecursorIonType());
+        if (quality != null)
+            compact.setAnnotation(CompoundQuality.class, quality);
+
+        return new ZodiacInput(compact, candidates);
+    }
+
     @Override
-    protected void computeAndAnnotateResult(@NotNull List<Instance> instances) throws Exception {
+    protected void computeAndAnnotateResult(@NotNull List<Instance> instances, @NotNull Map<String, ZodiacInput> inputs) throws Exception {
         logInfo("START ZODIAC JOB");
 
         //this is the zodiac input
@@ -91,18 +134,18 @@ public class ZodiacSubToolJob extends DataSetJob {
         final Map<FTree, FCandidate<?>> treeToId = new HashMap<>();
         {
             for (Instance instance : instances) {
-                List<FCandidate<?>> inputData = instance.getFTrees().stream()
-                        .filter(fc -> fc.hasAnnotation(FTree.class)).toList();
-                if (!inputData.isEmpty()) {
-                    Ms2Experiment exp = instance.getExperiment();
+                ZodiacInput input = inputs.get(instance.getId());
+                if (input != null) {
+                    Ms2Experiment exp = input.experiment();
                     ms2ExperimentToInstance.put(exp, instance);
-                    ms2ExperimentToTreeCandidates.put(exp, inputData.stream().map(sc -> sc.getAnnotationOrThrow(FTree.class)).collect(Collectors.toList()));
-                    inputData.forEach(p -> treeToId.put(p.getAnnotationOrThrow(FTree.class), p));
+                    ms2ExperimentToTreeCandidates.put(exp, input.candidates().stream().map(sc -> sc.getAnnotationOrThrow(FTree.class)).collect(Collectors.toList()));
+                    input.candidates().forEach(p -> treeToId.put(p.getAnnotationOrThrow(FTree.class), p));
                 }
             }
         }
 
 
+        // summaries do not contain the parameters, so they are taken from the experiment of the first instance
         Ms2Experiment settings = instances.get(0).getExperiment();
         //TODO CHEEEEEECK REOMPUTE
 //        if (instances.stream().anyMatch(it -> isRecompute(it) || (treeToId.containsKey(it.getExperiment()) && !input.get(it.getExperiment()).get(0).getAnnotationOrThrow(FormulaScoring.class).hasAnnotation(ZodiacScore.class)))) {
@@ -134,36 +177,9 @@ public class ZodiacSubToolJob extends DataSetJob {
 
         updateProgress(Math.round(.03 * maxProgress), "Caching done.");
 
-        maxCandidatesAt300 = settings.getAnnotationOrThrow(ZodiacNumberOfConsideredCandidatesAt300Mz.class).value;
-        maxCandidatesAt800 = settings.getAnnotationOrThrow(ZodiacNumberOfConsideredCandidatesAt800Mz.class).value;
-        forcedCandidatesPerIonizationRatio = settings.getAnnotationOrThrow(ZodiacRatioOfConsideredCandidatesPerIonization.class).value;
-
-        //annotate compound quality at limit number of candidates
+        //compound quality and candidate threshold have already been applied per instance, see summarize
         logInfo("TREES LOADED.");
 
-        TreeQualityEvaluator treeQualityEvaluator = new TreeQualityEvaluator(0.8, 5);
-        for (Map.Entry<Ms2Experiment, List<FTree>> ms2ExperimentListEntry : ms2ExperimentToTreeCandidates.entrySet()) {
-            checkForInterruption();
-            Ms2Experiment experiment = ms2ExperimentListEntry.getKey();
-            List<FTree> treeCandidates = ms2ExperimentListEntry.getValue();
-            boolean isPoorlyExplained = submitSubJob(treeQualityEvaluator.makeIsAllCandidatesPoorlyExplainSpectrumJob(treeCandidates)).awaitResult();
-            if (isPoorlyExplained) {
-                //update if poorly explained
-                CompoundQuality quality = experiment.getAnnotationOrNull(CompoundQuality.class);
-                if (quality == null) {
-                    quality = new CompoundQuality(CompoundQuality.CompoundQualityFlag.PoorlyExplained);
-                } else if (quality.isNot(CompoundQuality.CompoundQualityFlag.PoorlyExplained)) {
-                    quality = quality.updateQuality(CompoundQuality.CompoundQualityFlag.PoorlyExplained);
-                    experiment.removeAnnotation(CompoundQuality.class);
-                }
-                //todo what do we want todo if annotation is present? override or not?
-                experiment.setAnnotation(CompoundQuality.class, quality);
-            }
-            //limit number of candidates
-            treeCandidates = applyMaxCandidateThreshold(experiment, treeCandidates);
-            ms2ExperimentListEntry.setValue(treeCandidates);
-        }
-
         updateProgress(Math.round(.04 * maxProgress));
 
 
@@ -281,7 +297,11 @@ public class ZodiacSubToolJob extends DataSetJob {
     }
 
     private List<FTree> applyMaxCandidateThreshold(Ms2Experiment experiment, List<FTree> trees) {
-        int numCandidates = numberOfCandidates(experiment.getIonMass());
+        int maxCandidatesAt300 = experiment.getAnnotationOrThrow(ZodiacNumberOfConsideredCandidatesAt300Mz.class).value;
+        int maxCandidatesAt800 = experiment.getAnnotationOrThrow(ZodiacNumberOfConsideredCandidatesAt800Mz.class).value;
+        double forcedCandidatesPerIonizationRatio = experiment.getAnnotationOrThrow(ZodiacRatioOfConsideredCandidatesPerIonization.class).value;
+
+        int numCandidates = numberOfCandidates(experiment.getIonMass(), maxCandidatesAt300, maxCandidatesAt800);
         if (numCandidates < 0 || numCandidates >= trees.size()) return trees;
 
         int numCandidatesPerIonization = (int) Math.ceil(numCandidates * forcedCandidatesPerIonizationRatio);
@@ -325,7 +345,7 @@ public class ZodiacSubToolJob extends DataSetJob {
         return returnList;
     }
 
-    private int numberOfCandidates(double mz) {
+    private static int numberOfCandidates(double mz, int maxCandidatesAt300, int maxCandidatesAt800) {
         if (maxCandidatesAt300 < 0 || maxCandidatesAt800 < 0) return -1;
         if (mz <= 300) return maxCandidatesAt300;
         if (mz >= 800) return maxCandidatesAt800;
@@ -23,6 +23,7 @@ import de.unijena.bioinf.ChemistryBase.jobs.SiriusJobs;
 import de.unijena.bioinf.jjobs.*;
 import de.unijena.bioinf.ms.frontend.subtools.DataSetJob;
 import de.unijena.bioinf.ms.frontend.subtools.InstanceJob;
+import de.unijena.bioinf.ms.properties.PropertyManager;
 import de.unijena.bioinf.projectspace.Instance;
 import org.apache.commons.lang3.time.StopWatch;
 import org.jetbrains.annotations.NotNull;
@@ -32,6 +33,7 @@ import org.slf4j.LoggerFactory;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
@@ -48,7 +50,16 @@ public class SimpleInstanceBuffer implements InstanceBuffer, JobSubmitter {
 
     final Lock lock = new ReentrantLock();
     final Condition isFull = lock.newCondition();
+    /**
+     * Number of instances that are always allowed to be in flight.
+     */
     private final int bufferSize;
+    /**
+     * Upper bound of instances in flight. Between bufferSize and this bound, new instances are only
+     * submitted while the heap has enough headroom left.
+     */
+    private final int maxBufferSize;
+    private final double minFreeHeapFraction;
     private final AtomicBoolean isCanceled = new AtomicBoolean(false);
 
     private final JobProgressMerger progressSupport;
@@ -58,6 +69,9 @@ public class SimpleInstanceBuffer implements InstanceBuffer, JobSubmitter {
 
     public SimpleInstanceBuffer(int bufferSize, @NotNull Iterator<? extends Instance> instances, @NotNull List<InstanceJob.Factory<?>> tasks, @Nullable DataSetJob.Factory<?> dependJobFactory, @NotNull JobProgressMerger progressSupport, JobSubmitter jobSubmitter) {
         this.bufferSize = bufferSize < 1 ? Integer.MAX_VALUE : bufferSize;
+        this.maxBufferSize = Math.max(this.bufferSize, PropertyManager.getInteger("de.unijena.bioinf.sirius.instanceBuffer.max",
+                this.bufferSize == Integer.MAX_VALUE ? Integer.MAX_VALUE : 10 * this.bufferSize));
+        this.minFreeHeapFraction = PropertyManager.getDouble("de.unijena.bioinf.sirius.instanceBuffer.minFreeHeap", 0.25);
         this.jobSubmitter = jobSubmitter;
         this.instances = instances;
         this.tasks = tasks;
@@ -94,18 +108,12 @@ public class SimpleInstanceBuffer implements InstanceBuffer, JobSubmitter {
                     }
                 }
 
-                { //gc hint
-                    if (instanceComputed.get() % bufferSize == 0) {
-                        System.gc(); //hint for the gc to collect som trash after computations
-                        System.runFinalization();
-                    }
-                }
-
                 lock.lock();
                 try {
-                    //wait for free slot in buffer if it is full
-                    while (runningInstances.size() >= bufferSize) {
-                        isFull.await();
+                    //wait for free slot in buffer if it is full. Re-check regularly since the heap headroom may change
+                    //without any instance being finished.
+                    while (!hasFreeSlot()) {
+                        isFull.await(HEAP_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
                         checkForCancellation();
                     }
 
@@ -170,6 +178,24 @@ public class SimpleInstanceBuffer implements InstanceBuffer, JobSubmitter {
         System.out.println("########################################");
     }
 
+    private static final long HEAP_CHECK_INTERVAL_MS = 500;
+
+    /**
+     * Adaptive buffer size: always allow bufferSize instances, more (up to maxBufferSize) only if the heap has
+     * enough headroom. The used heap includes not yet collected garbage, so this is a conservative estimate
+     * that does not require forcing a GC.
+     */
+    private boolean hasFreeSlot() {
+        final int running = runningInstances.size();
+        if (running < bufferSize)
+            return true;
+        if (running >= maxBufferSize)
+            return false;
+        final Runtime rt = Runtime.getRuntime();
+        final long used = rt.totalMemory() - rt.freeMemory();
+        return (rt.maxMemory() - used) >= minFreeHeapFraction * rt.maxMemory();
+    }
+
     @Override
     public void cancel() {
         lock.lock();
@@ -218,6 +244,8 @@ public class SimpleInstanceBuffer implements InstanceBuffer, JobSubmitter {
         protected void cleanup() {
             // this should always run because we ignore failing of reqiured jobs
             //this runs if all jobs of the instance are finished
+            // the instance leaves the buffer, so its cached experiment data is not needed anymore
+            instance.clearExperimentCache();
             lock.lock();
             try {
                 runningInstances.remove(this);
@@ -85,7 +85,9 @@ public class ToolChainWorkflow implements Workflow, ProgressSupport {
             throw new InterruptedException("Workflow was canceled");
     }
 
-    //todo allow dataset jobs that do not have to put all exps into memory
+    // DataSetJobs are a barrier for the tool chain. To not keep all instances in memory until then, dataset jobs
+    // should extend StreamingDataSetJob which consumes instances (IDs plus compact summaries) while upstream
+    // tools are still running.
     @Override
     public void run() {
         try {
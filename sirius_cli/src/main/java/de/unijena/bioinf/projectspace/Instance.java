@@ -26,6 +26,8 @@ import de.unijena.bioinf.ChemistryBase.ms.DetectedAdducts;
 import de.unijena.bioinf.ChemistryBase.ms.Ms2Experiment;
 import de.unijena.bioinf.ChemistryBase.ms.ft.FTree;
 import de.unijena.bioinf.ChemistryBase.ms.lcms.QuantificationTable;
+import de.unijena.bioinf.ChemistryBase.ms.utils.SimpleSpectrum;
+import de.unijena.bioinf.ChemistryBase.ms.utils.Spectrums;
 import de.unijena.bioinf.ms.properties.ParameterConfig;
 import de.unijena.bioinf.passatutto.Decoy;
 import de.unijena.bioinf.spectraldb.SpectralSearchResult;
@@ -65,6 +67,20 @@ public interface Instance {
 
     Ms2Experiment getExperiment();
 
+    /**
+     * @return All MS/MS spectra of the experiment merged into a single spectrum.
+     */
+    default SimpleSpectrum getMergedMs2Spectrum() {
+        return Spectrums.mergeSpectra(getExperiment().getMs2Spectra());
+    }
+
+    /**
+     * @return hash of {@link #getMergedMs2Spectrum()}, used to check whether stored results belong to the current input data.
+     */
+    default int getMergedMs2SpectrumHash() {
+        return getMergedMs2Spectrum().hashCode();
+    }
+
     boolean hasMs1();
     boolean hasMsMs();
 
@@ -91,6 +107,13 @@ public interface Instance {
 
     //region state
     void clearCompoundCache();
+
+    /**
+     * Evict experiment data that is cached while the instance is processed by the tool chain.
+     */
+    default void clearExperimentCache() {
+    }
+
     boolean isRecompute();
     default void enableRecompute() {
         setRecompute(true);
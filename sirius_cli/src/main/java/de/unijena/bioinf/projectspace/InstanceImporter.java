@@ -34,14 +34,16 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -80,6 +82,9 @@ public class InstanceImporter {
     }
 
     public class ImportInstancesJJob extends BasicJJob<List<Instance>> {
+        private static final int IMPORT_BATCH_SIZE = 256;
+        private static final int PARSE_QUEUE_CAPACITY = 256;
+
         private @Nullable Collection<InputResource<?>> msInput = null;
 
         boolean ignoreFormulas, allowMs1Only;
@@ -113,7 +118,7 @@ public class InstanceImporter {
         }
 
 
-        private List<Instance> importMultipleSources() {
+        private List<Instance> importMultipleSources() throws InterruptedException {
             List<Instance> list = new ArrayList<>();
 
             if (msInput != null) {
@@ -143,26 +148,107 @@ public class InstanceImporter {
             return ll;
         }
 
-        private List<Instance> importMsParserInput(@Nullable Collection<InputResource<?>> files) {
+        /**
+         * Staged import: input files are parsed, filtered and validated in parallel (one job per file, at most
+         * one per CPU thread). Each parse job feeds a bounded queue which is drained in input file order and
+         * imported in batches, so import order stays deterministic and memory is bounded.
+         */
+        private List<Instance> importMsParserInput(@Nullable Collection<InputResource<?>> files) throws InterruptedException {
             if (files == null || files.isEmpty())
                 return List.of();
 
-            try (final MS2ExpInputIterator iit = new MS2ExpInputIterator(files, expFilter, ignoreFormulas, allowMs1Only, prog)) {
-                InstanceImportIteratorMS2Exp it = iit.asInstanceIterator(importTarget);
-                final List<Instance> ll = new ArrayList<>();
-
+            synchronized (prog) {
                 if (prog.isDone())
                     prog.indeterminateProgress(); // just to show something in case only one small file
-                while (it.hasNext()) {
-                    Instance id = it.next();
+            }
+
+            final Iterator<InputResource<?>> fileIt = files.iterator();
+            final ArrayDeque<ParseInputJJob> parseJobs = new ArrayDeque<>();
+            final int maxParallelFiles = Math.max(1, SiriusJobs.getCPUThreads());
+            final List<Instance> ll = new ArrayList<>();
+            final List<Ms2Experiment> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+
+            try {
+                while (fileIt.hasNext() && parseJobs.size() < maxParallelFiles)
+                    parseJobs.add(SiriusJobs.getGlobalJobManager().submitJob(new ParseInputJJob(fileIt.next())));
+
+                while (!parseJobs.isEmpty()) {
+                    final ParseInputJJob job = parseJobs.poll();
+                    Ms2Experiment exp;
+                    while ((exp = job.take()) != null) {
+                        batch.add(exp);
+                        if (batch.size() >= IMPORT_BATCH_SIZE)
+                            importBatch(batch, ll);
+                    }
+                    job.takeResult(); // rethrow parsing errors
+                    if (fileIt.hasNext())
+                        parseJobs.add(SiriusJobs.getGlobalJobManager().submitJob(new ParseInputJJob(fileIt.next())));
+                }
+                importBatch(batch, ll);
+                return ll;
+            } finally {
+                parseJobs.forEach(j -> j.cancel(true));
+            }
+        }
+
+        private void importBatch(List<Ms2Experiment> batch, List<Instance> importedInstances) {
+            if (batch.isEmpty())
+                return;
+            for (Instance id : importTarget.importInstancesWithUniqueId(batch)) {
+                synchronized (prog) {
                     if (prog.isDone())
                         prog.indeterminateProgress(id.getName());
                     else
                         prog.progressMessage(id.getName());
-                    ll.add(id);
                 }
+                importedInstances.add(id);
+            }
+            batch.clear();
+        }
 
-                return ll;
+        private class ParseInputJJob extends BasicJJob<Boolean> {
+            private final InputResource<?> resource;
+            private final BlockingQueue<Ms2Experiment> parsed = new ArrayBlockingQueue<>(PARSE_QUEUE_CAPACITY);
+            private volatile boolean finished = false;
+
+            private ParseInputJJob(InputResource<?> resource) {
+                super(JobType.CPU);
+                this.resource = resource;
+            }
+
+            @Override
+            protected Boolean compute() throws Exception {
+                // parse jobs report from their own threads, so all access to the shared merger is serialized
+                final PropertyChangeListener progress = evt -> {
+                    synchronized (prog) {
+                        prog.propertyChange(evt);
+                    }
+                };
+                try (final MS2ExpInputIterator it = new MS2ExpInputIterator(List.of(resource), expFilter, ignoreFormulas, allowMs1Only, progress)) {
+                    while (it.hasNext()) {
+                        final Ms2Experiment exp = it.next();
+                        while (!parsed.offer(exp, 100, TimeUnit.MILLISECONDS))
+                            checkForInterruption();
+                    }
+                    return true;
+                } finally {
+                    finished = true;
+                }
+            }
+
+            /**
+             * @return next parsed experiment of this file or null if the file is completely consumed.
+             */
+            @Nullable
+            private Ms2Experiment take() throws InterruptedException {
+                while (true) {
+                    final Ms2Experiment exp = parsed.poll(100, TimeUnit.MILLISECONDS);
+                    if (exp != null)
+                        return exp;
+                    if (finished)
+                        return parsed.poll();
+                    ImportInstancesJJob.this.checkForInterruption();
+                }
             }
         }
     }
@@ -30,7 +30,6 @@ import de.unijena.bioinf.babelms.CloseableIterator;
 import de.unijena.bioinf.babelms.GenericParser;
 import de.unijena.bioinf.babelms.MsExperimentParser;
 import de.unijena.bioinf.babelms.inputresource.InputResource;
-import de.unijena.bioinf.jjobs.JobProgressMerger;
 import de.unijena.bioinf.jjobs.ProgressInputStream;
 import de.unijena.bioinf.sirius.Sirius;
 import de.unijena.bioinf.sirius.validation.Ms1Validator;
@@ -39,6 +38,7 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.beans.PropertyChangeListener;
 import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.Collection;
@@ -60,7 +60,7 @@ public class MS2ExpInputIterator implements InstIterProvider, CloseableIterator<
     private final boolean allowMS1Only;
 
     @Nullable
-    private final JobProgressMerger progress;
+    private final PropertyChangeListener progress;
 
     InputResource<?> currentResource;
     CloseableIterator<Ms2Experiment> currentExperimentIterator;
@@ -69,7 +69,7 @@ public class MS2ExpInputIterator implements InstIterProvider, CloseableIterator<
         this(input, (exp) -> exp.getIonMass() <= maxMz, ignoreFormula, allowMS1Only, null);
     }
 
-    public MS2ExpInputIterator(Collection<InputResource<?>> input, Predicate<Ms2Experiment> filter, boolean ignoreFormula, boolean allowMS1Only, @Nullable JobProgressMerger progress) {
+    public MS2ExpInputIterator(Collection<InputResource<?>> input, Predicate<Ms2Experiment> filter, boolean ignoreFormula, boolean allowMS1Only, @Nullable PropertyChangeListener progress) {
         this.progress = progress;
         this.resourceIter = input.iterator();
         this.filter = filter;
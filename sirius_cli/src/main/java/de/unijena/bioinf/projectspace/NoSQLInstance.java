@@ -20,15 +20,17 @@
 
 package de.unijena.bioinf.projectspace;
 
-import com.googlecode.concurentlocks.ReentrantReadWriteUpdateLock;
 import de.unijena.bioinf.ChemistryBase.algorithm.scoring.Scored;
 import de.unijena.bioinf.ChemistryBase.chem.PrecursorIonType;
 import de.unijena.bioinf.ChemistryBase.chem.RetentionTime;
 import de.unijena.bioinf.ChemistryBase.ms.DetectedAdducts;
 import de.unijena.bioinf.ChemistryBase.ms.Ms2Experiment;
+import de.unijena.bioinf.ChemistryBase.ms.MutableMs2Experiment;
 import de.unijena.bioinf.ChemistryBase.ms.ft.FTree;
 import de.unijena.bioinf.ChemistryBase.ms.lcms.QuantificationMeasure;
 import de.unijena.bioinf.ChemistryBase.ms.lcms.QuantificationTable;
+import de.unijena.bioinf.ChemistryBase.ms.utils.SimpleSpectrum;
+import de.unijena.bioinf.ChemistryBase.ms.utils.Spectrums;
 import de.unijena.bioinf.GibbsSampling.ZodiacScore;
 import de.unijena.bioinf.canopus.CanopusResult;
 import de.unijena.bioinf.chemdb.FingerprintCandidate;
@@ -37,9 +39,9 @@ import de.unijena.bioinf.fingerid.FingerprintResult;
 import de.unijena.bioinf.fingerid.MsNovelistFingerblastResult;
 import de.unijena.bioinf.fingerid.StructureSearchResult;
 import de.unijena.bioinf.fingerid.blast.FingerblastResult;
+import de.unijena.bioinf.ms.annotations.DataAnnotation;
 import de.unijena.bioinf.ms.persistence.model.core.feature.AlignedFeatures;
 import de.unijena.bioinf.ms.persistence.model.core.feature.Feature;
-import de.unijena.bioinf.ms.persistence.model.core.run.LCMSRun;
 import de.unijena.bioinf.ms.persistence.model.core.spectrum.MSData;
 import de.unijena.bioinf.ms.persistence.model.sirius.*;
 import de.unijena.bioinf.ms.persistence.storage.SiriusProjectDocumentDatabase;
@@ -54,6 +56,8 @@ import de.unijena.bioinf.storage.db.nosql.Filter;
 import it.unimi.dsi.fastutil.Pair;
 import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import lombok.SneakyThrows;
@@ -65,6 +69,8 @@ import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -72,21 +78,35 @@ import java.util.stream.Stream;
 public class NoSQLInstance implements Instance {
     private final NoSQLProjectSpaceManager manager;
     private final long id;
-    private AlignedFeatures alignedFeatures;
-    private final ReentrantReadWriteUpdateLock alignedFeaturesLock = new ReentrantReadWriteUpdateLock();
+    // feature data is not kept by the instance but loaded on demand via the project level cache of the manager.
+    // Instances created by a full scan keep the (small and immutable) metadata they have been created with instead.
+    private volatile NoSQLProjectSpaceManager.FeatureMetadata metadata;
 
     private final AtomicBoolean recompute = new AtomicBoolean(false);
 
+    // Experiment data is rebuilt from MSData and configs, which is expensive and needed by every tool of the chain.
+    // It is kept until the instance leaves the instance buffer (see clearExperimentCache), so it is bounded by the
+    // number of instances in flight.
+    private final Object experimentCacheLock = new Object();
+    private Ms2Experiment cachedExperiment = null;
+    private SimpleSpectrum cachedMergedMs2 = null;
+    private int cachedMergedMs2Hash;
+
     @SneakyThrows
     public NoSQLInstance(long id, NoSQLProjectSpaceManager manager) {
         this.id = id;
         this.manager = manager;
     }
 
+    NoSQLInstance(long id, NoSQLProjectSpaceManager.FeatureMetadata metadata, NoSQLProjectSpaceManager manager) {
+        this(id, manager);
+        this.metadata = metadata;
+    }
+
     @SneakyThrows
     public NoSQLInstance(AlignedFeatures alignedFeatures, NoSQLProjectSpaceManager manager) {
         this(alignedFeatures.getAlignedFeatureId(), manager);
-        this.alignedFeatures = alignedFeatures;
+        manager.cacheAlignedFeatures(alignedFeatures);
     }
 
     @Override
@@ -109,20 +129,20 @@ public class NoSQLInstance implements Instance {
 
     @Override
     public Optional<String> getCompoundId() {
-        return Optional.ofNullable(getAlignedFeatures().getCompoundId()).map(String::valueOf);
+        return Optional.ofNullable(getMetadata().compoundId()).map(String::valueOf);
     }
 
     @Override
     public Optional<String> getExternalFeatureId() {
-        return Optional.ofNullable(getAlignedFeatures().getExternalFeatureId());
+        return Optional.ofNullable(getMetadata().externalFeatureId());
     }
 
     @Override
     public String getName() {
-        AlignedFeatures f = getAlignedFeatures();
-        String r = f.getName();
+        NoSQLProjectSpaceManager.FeatureMetadata f = getMetadata();
+        String r = f.name();
         if (r == null || r.isBlank())
-            r = f.getExternalFeatureId();
+            r = f.externalFeatureId();
         if (r == null || r.isBlank())
             r = getId();
         return r;
@@ -139,45 +159,75 @@ public class NoSQLInstance implements Instance {
 
     @Override
     public Optional<RetentionTime> getRT() {
-        return Optional.ofNullable(getAlignedFeatures().getRetentionTime());
+        return Optional.ofNullable(getMetadata().retentionTime());
     }
 
     @Override
     public double getIonMass() {
-        return getAlignedFeatures().getAverageMass();
+        return getMetadata().averageMass();
     }
 
     @Override
     public PrecursorIonType getIonType() {
-        AlignedFeatures f = getAlignedFeatures();
-        List<PrecursorIonType> allAdducts = f.getDetectedAdducts().getAllAdducts();
-        if (allAdducts.size() == 1) return allAdducts.get(0);
-        else return PrecursorIonType.unknown(f.getCharge());
+        return getMetadata().ionType();
     }
 
-    @SneakyThrows
+    private NoSQLProjectSpaceManager.FeatureMetadata getMetadata() {
+        NoSQLProjectSpaceManager.FeatureMetadata m = metadata;
+        if (m != null)
+            return m;
+        return manager.getFeatureMetadata(id)
+                .orElseThrow(() -> new IllegalStateException("Could not find feature data of this instance. This should not be possible. Project might have been externally modified."));
+    }
+
+    /**
+     * @return feature data freshly loaded from the project. Not cached, so it may be modified (e.g. by attaching
+     * MS data) without affecting other instances.
+     */
     public AlignedFeatures getAlignedFeatures() {
-        alignedFeaturesLock.updateLock().lock();
-        try {
-            if (alignedFeatures == null) {
-                alignedFeaturesLock.writeLock().lock();
-                try {
-                    if (alignedFeatures == null)
-                        alignedFeatures = manager.getProject().getStorage().getByPrimaryKey(id, AlignedFeatures.class)
-                                .orElseThrow(() -> new IllegalStateException("Could not find feature data of this instance. This should not be possible. Project might have been externally modified."));
-                } finally {
-                    alignedFeaturesLock.writeLock().unlock();
-                }
-            }
-            return alignedFeatures;
-        } finally {
-            alignedFeaturesLock.updateLock().unlock();
+        return manager.getAlignedFeatures(id)
+                .orElseThrow(() -> new IllegalStateException("Could not find feature data of this instance. This should not be possible. Project might have been externally modified."));
+    }
+
+    private Ms2Experiment getCachedExperiment() {
+        synchronized (experimentCacheLock) {
+            if (cachedExperiment == null)
+                cachedExperiment = project().fetchMsDataAndConfigsAsMsExperiment(getAlignedFeatures()).orElseThrow();
+            return cachedExperiment;
         }
     }
 
     @Override
     public Ms2Experiment getExperiment() {
-        return project().fetchMsDataAndConfigsAsMsExperiment(getAlignedFeatures()).orElseThrow();
+        // hand out a copy since callers are allowed to modify the experiment.
+        return new MutableMs2Experiment(getCachedExperiment());
+    }
+
+    @Override
+    public SimpleSpectrum getMergedMs2Spectrum() {
+        synchronized (experimentCacheLock) {
+            if (cachedMergedMs2 == null) {
+                cachedMergedMs2 = Spectrums.mergeSpectra(getCachedExperiment().getMs2Spectra());
+                cachedMergedMs2Hash = cachedMergedMs2.hashCode();
+            }
+            return cachedMergedMs2;
+        }
+    }
+
+    @Override
+    public int getMergedMs2SpectrumHash() {
+        synchronized (experimentCacheLock) {
+            getMergedMs2Spectrum();
+            return cachedMergedMs2Hash;
+        }
+    }
+
+    @Override
+    public void clearExperimentCache() {
+        synchronized (experimentCacheLock) {
+            cachedExperiment = null;
+            cachedMergedMs2 = null;
+        }
     }
 
     @Override
@@ -188,7 +238,7 @@ public class NoSQLInstance implements Instance {
 
     @Override
     public boolean hasMsMs() {
-        return getAlignedFeatures().getMSData()
+        return getMSData()
                 .map(ms -> ms.getMergedMSnSpectrum() != null || (ms.getMsnSpectra() != null && !ms.getMsnSpectra().isEmpty()))
                 .orElse(false);
     }
@@ -209,15 +259,9 @@ public class NoSQLInstance implements Instance {
         storage.fetchAllChildren(feature, "alignedFeatureId", "features", Feature.class);
         // only use features with LC/MS information
         List<Feature> features = feature.getFeatures().stream().flatMap(List::stream).filter(x -> x.getApexIntensity() != null).toList();
-        List<LCMSRun> samples = new ArrayList<>();
-        for (Feature value : features) {
-            samples.add(storage.getByPrimaryKey(value.getRunId(), LCMSRun.class).orElse(null));
-        }
-
         QuantTableImpl table = new QuantTableImpl(QuantificationMeasure.APEX);
-        String[] sampleNames = samples.stream().map(x -> x.getName() == null ? "unknown" : x.getName()).toArray(String[]::new);
-        for (int k = 0; k < features.size(); ++k)
-            table.add(sampleNames[k], features.get(k).getApexIntensity());
+        for (Feature value : features)
+            table.add(manager.getRunName(value.getRunId()), value.getApexIntensity());
         return Optional.of(table);
     }
 
@@ -245,9 +289,8 @@ public class NoSQLInstance implements Instance {
     }
 
     public Stream<FCandidate<?>> getFTreesStr() {
-        return getFormulaCandidatesStr().peek(it -> it.annotate(
-                project().findByFormulaIdStr((long) it.getId(), FTreeResult.class).map(FTreeResult::getFTree).findFirst().orElse(null))
-        );
+        return annotateByFormulaId(getFormulaCandidatesStr(),
+                FTreeResult.class, FTreeResult::getFormulaId, FTreeResult::getFTree);
     }
 
     @Override
@@ -256,11 +299,8 @@ public class NoSQLInstance implements Instance {
     }
 
     public Stream<FCandidate<?>> getCanopusInputStr() {
-        return getFormulaCandidatesStr()
-                .peek(it -> it.annotate(
-                        project().findByFormulaIdStr((long) it.getId(), CsiPrediction.class)
-                                .map(CsiPrediction::getFingerprint)
-                                .map(FingerprintResult::new).findFirst().orElse(null)));
+        return annotateByFormulaId(getFormulaCandidatesStr(),
+                CsiPrediction.class, CsiPrediction::getFormulaId, cp -> new FingerprintResult(cp.getFingerprint()));
     }
 
     @Override
@@ -269,11 +309,8 @@ public class NoSQLInstance implements Instance {
     }
 
     public Stream<FCandidate<?>> getMsNovelistInputStr() {
-        return getFTreesStr()
-                .peek(it -> it.annotate(
-                        project().findByFormulaIdStr((long) it.getId(), CsiPrediction.class)
-                                .map(CsiPrediction::getFingerprint)
-                                .map(FingerprintResult::new).findFirst().orElse(null)));
+        return annotateByFormulaId(getFTreesStr(),
+                CsiPrediction.class, CsiPrediction::getFormulaId, cp -> new FingerprintResult(cp.getFingerprint()));
     }
 
     @Override
@@ -282,11 +319,27 @@ public class NoSQLInstance implements Instance {
     }
 
     public Stream<FCandidate<?>> getFingerblastInputStr() {
-        return getMsNovelistInputStr()
-                .peek(it -> it.annotate(
-                        project().findByFormulaIdStr((long) it.getId(), CanopusPrediction.class)
-                                .map(cp -> new CanopusResult(cp.getCfFingerprint(), cp.getNpcFingerprint()))
-                                .findFirst().orElse(null)));
+        return annotateByFormulaId(getMsNovelistInputStr(),
+                CanopusPrediction.class, CanopusPrediction::getFormulaId, cp -> new CanopusResult(cp.getCfFingerprint(), cp.getNpcFingerprint()));
+    }
+
+    /**
+     * Loads all documents of the given type that belong to this feature with a single query and joins them
+     * in memory with the given formula candidates via their formulaId. Replaces one lookup per formula candidate.
+     */
+    private <D> Stream<FCandidate<?>> annotateByFormulaId(
+            @NotNull Stream<FCandidate<?>> candidates, @NotNull Class<D> docType,
+            @NotNull ToLongFunction<D> formulaIdGetter, @NotNull Function<D, ? extends DataAnnotation> annotationGetter
+    ) {
+        final Long2ObjectMap<D> docsByFormulaId = new Long2ObjectOpenHashMap<>();
+        project().findByFeatureIdStr(id, docType)
+                .forEach(doc -> docsByFormulaId.putIfAbsent(formulaIdGetter.applyAsLong(doc), doc));
+
+        return candidates.peek(it -> {
+            D doc = docsByFormulaId.get((long) it.getId());
+            if (doc != null)
+                it.annotate(annotationGetter.apply(doc));
+        });
     }
 
     @Override
@@ -319,16 +372,14 @@ public class NoSQLInstance implements Instance {
     public void updateProjectConfig(@NotNull ParameterConfig config) {
         //write full config stack to be used as base config when rerunning computations
         project().upsertConfig(id, ConfigType.PROJECT, config, false);
+        clearExperimentCache();
     }
 
     @Override
     public void clearCompoundCache() {
-        alignedFeaturesLock.writeLock().lock();
-        try {
-            alignedFeatures = null;
-        } finally {
-            alignedFeaturesLock.writeLock().unlock();
-        }
+        metadata = null;
+        manager.evictAlignedFeatures(id);
+        clearExperimentCache();
     }
 
     //region state
@@ -346,7 +397,7 @@ public class NoSQLInstance implements Instance {
 
     @Override
     public boolean hasDetectedAdducts() {
-        return getAlignedFeatures().getDetectedAdducts() != null;
+        return getMetadata().hasDetectedAdducts();
     }
 
     @Override
@@ -355,16 +406,12 @@ public class NoSQLInstance implements Instance {
         saveDetectedAdducts(adducts);
     }
 
-    @SneakyThrows
     @Override
     public void saveDetectedAdducts(de.unijena.bioinf.ms.persistence.model.core.feature.DetectedAdducts detectedAdducts) {
-        alignedFeaturesLock.writeLock().lock();
-        try {
-            alignedFeatures.setDetectedAdducts(detectedAdducts);
-            project().getStorage().upsert(alignedFeatures);
-        } finally {
-            alignedFeaturesLock.writeLock().unlock();
-        }
+        manager.updateAlignedFeatures(id, alignedFeatures -> alignedFeatures.setDetectedAdducts(detectedAdducts));
+        // use the updated metadata of the manager from now on
+        metadata = null;
+        clearExperimentCache();
     }
 
     @Override
@@ -20,36 +20,144 @@
 
 package de.unijena.bioinf.projectspace;
 
+import de.unijena.bioinf.ChemistryBase.chem.PrecursorIonType;
+import de.unijena.bioinf.ChemistryBase.chem.RetentionTime;
 import de.unijena.bioinf.ChemistryBase.ms.Ms2Experiment;
 import de.unijena.bioinf.ms.persistence.model.core.Compound;
 import de.unijena.bioinf.ms.persistence.model.core.feature.AlignedFeatures;
+import de.unijena.bioinf.ms.persistence.model.core.run.LCMSRun;
+import de.unijena.bioinf.ms.persistence.model.sirius.*;
 import de.unijena.bioinf.ms.persistence.storage.SiriusProjectDatabaseImpl;
 import de.unijena.bioinf.ms.persistence.storage.SiriusProjectDocumentDatabase;
+import de.unijena.bioinf.ms.persistence.storage.StorageUtils;
 import de.unijena.bioinf.ms.rest.model.canopus.CanopusCfData;
 import de.unijena.bioinf.ms.rest.model.canopus.CanopusNpcData;
 import de.unijena.bioinf.ms.rest.model.fingerid.FingerIdData;
 import de.unijena.bioinf.rest.NetUtils;
 import de.unijena.bioinf.storage.db.nosql.Database;
 import de.unijena.bioinf.storage.db.nosql.Filter;
+import de.unijena.bioinf.ms.properties.PropertyManager;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.SneakyThrows;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.nio.file.Files;
-import java.util.Iterator;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 @Getter
 public class NoSQLProjectSpaceManager extends AbstractProjectSpaceManager {
 
     private final SiriusProjectDatabaseImpl<? extends Database<?>> project;
 
+    /**
+     * Project level LRU cache of feature metadata. Instances only carry their ID and load the metadata on demand
+     * from here, so many instances can be in flight without keeping all their data in memory.
+     * Only immutable {@link FeatureMetadata} is cached, so cached entries are never modified by callers and never
+     * reference MS data.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Map<Long, FeatureMetadata> alignedFeatureCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, FeatureMetadata> eldest) {
+            return size() > ALIGNED_FEATURE_CACHE_SIZE;
+        }
+    });
+
+    @Getter(AccessLevel.NONE)
+    private final Map<Long, String> runNameCache = new ConcurrentHashMap<>();
+
+    // striped locks to serialize read-modify-write cycles of the same feature across instances
+    @Getter(AccessLevel.NONE)
+    private final Object[] alignedFeatureLocks = new Object[64];
+
+    private static final int ALIGNED_FEATURE_CACHE_SIZE = PropertyManager.getInteger("de.unijena.bioinf.sirius.project.alignedFeatureCache", 2000);
+
     public NoSQLProjectSpaceManager(SiriusProjectDatabaseImpl<? extends Database<?>> project) {
         this.project = project;
+        Arrays.setAll(alignedFeatureLocks, i -> new Object());
+    }
+
+
+    /**
+     * Immutable subset of the feature data that is needed by the instance methods of most tools.
+     */
+    record FeatureMetadata(long alignedFeatureId, Long compoundId, String externalFeatureId, String name,
+                           RetentionTime retentionTime, double averageMass, boolean hasDetectedAdducts,
+                           PrecursorIonType ionType) {
+        static FeatureMetadata of(@NotNull AlignedFeatures f) {
+            final PrecursorIonType ionType;
+            List<PrecursorIonType> allAdducts = f.getDetectedAdducts() == null ? List.of() : f.getDetectedAdducts().getAllAdducts();
+            if (allAdducts.size() == 1) ionType = allAdducts.get(0);
+            else ionType = PrecursorIonType.unknown(f.getCharge());
+            return new FeatureMetadata(f.getAlignedFeatureId(), f.getCompoundId(), f.getExternalFeatureId(), f.getName(),
+                    f.getRetentionTime(), f.getAverageMass(), f.getDetectedAdducts() != null, ionType);
+        }
     }
 
+    /**
+     * @return metadata of the given feature, from the cache if available.
+     */
+    @SneakyThrows
+    Optional<FeatureMetadata> getFeatureMetadata(long alignedFeatureId) {
+        FeatureMetadata cached = alignedFeatureCache.get(alignedFeatureId);
+        if (cached != null)
+            return Optional.of(cached);
+        Optional<FeatureMetadata> loaded = getAlignedFeatures(alignedFeatureId).map(FeatureMetadata::of);
+        loaded.ifPresent(m -> alignedFeatureCache.putIfAbsent(alignedFeatureId, m));
+        return loaded;
+    }
+
+    /**
+     * @return feature data of the given ID freshly loaded from the storage. The returned object is not shared and
+     * may be modified by the caller.
+     */
+    @SneakyThrows
+    public Optional<AlignedFeatures> getAlignedFeatures(long alignedFeatureId) {
+        return getProject().getStorage().getByPrimaryKey(alignedFeatureId, AlignedFeatures.class);
+    }
+
+    /**
+     * @return name of the LC/MS run with the given ID. Names are cached since all features of a run share them.
+     */
+    @SneakyThrows
+    String getRunName(long runId) {
+        String name = runNameCache.get(runId);
+        if (name == null) {
+            name = getProject().getStorage().getByPrimaryKey(runId, LCMSRun.class)
+                    .map(LCMSRun::getName).orElse("unknown");
+            runNameCache.put(runId, name);
+        }
+        return name;
+    }
+
+    /**
+     * Applies the given modification to the stored feature data and writes it back. The data is re-read from the
+     * storage under a per feature lock, so concurrent updates of the same feature (e.g. by different instance
+     * objects) do not overwrite each other with stale copies.
+     */
+    @SneakyThrows
+    void updateAlignedFeatures(long alignedFeatureId, @NotNull Consumer<AlignedFeatures> modifier) {
+        synchronized (alignedFeatureLocks[Long.hashCode(alignedFeatureId) & (alignedFeatureLocks.length - 1)]) {
+            AlignedFeatures alignedFeatures = getProject().getStorage().getByPrimaryKey(alignedFeatureId, AlignedFeatures.class)
+                    .orElseThrow(() -> new IllegalStateException("Could not find feature data of id " + alignedFeatureId + ". Project might have been externally modified."));
+            modifier.accept(alignedFeatures);
+            getProject().getStorage().upsert(alignedFeatures);
+            cacheAlignedFeatures(alignedFeatures);
+        }
+    }
+
+    void cacheAlignedFeatures(@NotNull AlignedFeatures alignedFeatures) {
+        alignedFeatureCache.put(alignedFeatures.getAlignedFeatureId(), FeatureMetadata.of(alignedFeatures));
+    }
+
+    void evictAlignedFeatures(long alignedFeatureId) {
+        alignedFeatureCache.remove(alignedFeatureId);
+    }
 
     @SneakyThrows
     @Override
@@ -58,7 +166,30 @@ public class NoSQLProjectSpaceManager extends AbstractProjectSpaceManager {
         return new NoSQLInstance(alignedFeature, this);
     }
 
+    /**
+     * Converts the experiments into single feature compounds and writes them together with their feature and
+     * MS data in one bulk import, instead of one write per experiment.
+     */
+    @SneakyThrows
+    @Override
+    public @NotNull List<NoSQLInstance> importInstancesWithUniqueId(@NotNull List<Ms2Experiment> inputExperiments) {
+        if (inputExperiments.isEmpty())
+            return List.of();
+        final List<AlignedFeatures> alignedFeatures = inputExperiments.stream().map(StorageUtils::fromMs2Experiment).toList();
+        getProject().importCompounds(alignedFeatures.stream().map(NoSQLProjectSpaceManager::singletonCompound).toList());
+        return alignedFeatures.stream().map(af -> new NoSQLInstance(af, this)).toList();
+    }
 
+    private static Compound singletonCompound(AlignedFeatures alignedFeatures) {
+        Compound.CompoundBuilder builder = Compound.builder()
+                .name(alignedFeatures.getName())
+                .adductFeatures(List.of(alignedFeatures))
+                .neutralMass(alignedFeatures.getAverageMass());
+        RetentionTime rt = alignedFeatures.getRetentionTime();
+        if (rt != null)
+            builder.rt(rt);
+        return builder.build();
+    }
 
     @SneakyThrows
     @Override
@@ -103,6 +234,33 @@ public class NoSQLProjectSpaceManager extends AbstractProjectSpaceManager {
         getProject().getStorage().removeAll(SiriusProjectDocumentDatabase.FP_DATA_COLLECTION, (Filter) null);
     }
 
+    /**
+     * Removes all fingerprint, structure search and CANOPUS results with collection wide deletes and resets the
+     * corresponding computed flags of all features, all in one write transaction.
+     */
+    @Override
+    @SneakyThrows
+    public void deleteFingerprintDependentResults() {
+        final Database<?> storage = getProject().getStorage();
+        storage.write(() -> {
+            storage.removeAll((Filter) null, CsiPrediction.class);
+            storage.removeAll((Filter) null, CsiStructureSearchResult.class);
+            storage.removeAll((Filter) null, CsiStructureMatch.class);
+            storage.removeAll((Filter) null, CanopusPrediction.class);
+
+            List<ComputedSubtools> computed = new ArrayList<>();
+            for (ComputedSubtools cs : storage.findAll(ComputedSubtools.class)) {
+                if (cs.isFingerprint() || cs.isStructureSearch() || cs.isCanopus()) {
+                    cs.setFingerprint(false);
+                    cs.setStructureSearch(false);
+                    cs.setCanopus(false);
+                    computed.add(cs);
+                }
+            }
+            storage.upsertAll(computed);
+        });
+    }
+
     @Override
     public @NotNull Optional<CanopusCfData> getCanopusCfData(int charge) {
         return getProject().findFingerprintData(CanopusCfData.class, charge);
@@ -116,7 +274,10 @@ public class NoSQLProjectSpaceManager extends AbstractProjectSpaceManager {
     @SneakyThrows
     @Override
     public @NotNull Iterator<Instance> iterator() {
-        return getProject().getAllAlignedFeatures().map(af -> (Instance) new NoSQLInstance(af, this)).iterator();
+        // bulk iteration bypasses the cache, so a full scan does not evict the hot entries. Instances keep the
+        // metadata of the already loaded feature, so it does not need to be read a second time.
+        return getProject().getAllAlignedFeatures()
+                .map(af -> (Instance) new NoSQLInstance(af.getAlignedFeatureId(), FeatureMetadata.of(af), this)).iterator();
     }
 
     @SneakyThrows
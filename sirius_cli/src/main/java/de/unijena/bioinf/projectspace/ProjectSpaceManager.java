@@ -31,12 +31,23 @@ import org.jetbrains.annotations.NotNull;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.TimeoutException;
 
 public interface ProjectSpaceManager extends IterableWithSize<Instance> {
     @NotNull Instance importInstanceWithUniqueId(Ms2Experiment inputExperiment);
 
+    /**
+     * Imports the given experiments. The default implementation imports them one by one, implementations
+     * with bulk write support (see {@link NoSQLProjectSpaceManager}) write the whole batch at once.
+     *
+     * @return imported instances in the same order as the input experiments
+     */
+    default @NotNull List<? extends Instance> importInstancesWithUniqueId(@NotNull List<Ms2Experiment> inputExperiments) {
+        return inputExperiments.stream().map(this::importInstanceWithUniqueId).toList();
+    }
+
     @NotNull Optional<? extends Instance> findInstance(Object id);
 
     void writeFingerIdData(@NotNull FingerIdData pos, @NotNull FingerIdData neg);
@@ -49,6 +60,19 @@ public interface ProjectSpaceManager extends IterableWithSize<Instance> {
     void writeCanopusData(@NotNull CanopusCfData cfPos, @NotNull CanopusCfData cfNeg, @NotNull CanopusNpcData npcPos, @NotNull CanopusNpcData npcNeg);
     void deleteFingerprintData();
 
+    /**
+     * Deletes the fingerprint, structure search and CANOPUS results of all instances, e.g. before updating the
+     * fingerprint version. Implementations may do this with bulk deletes, which is much faster than invalidating
+     * the instances one by one.
+     */
+    default void deleteFingerprintDependentResults() {
+        forEach(instance -> {
+            instance.deleteFingerprintResult();
+            instance.deleteStructureSearchResult();
+            instance.deleteCanopusResult();
+        });
+    }
+
     @NotNull Optional<CanopusCfData> getCanopusCfData(int charge);
     default boolean hasCanopusCfData(int charge){
         return getCanopusCfData(charge).isPresent();
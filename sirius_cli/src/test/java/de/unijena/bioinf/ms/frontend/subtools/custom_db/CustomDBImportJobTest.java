@@ -0,0 +1,77 @@
+package de.unijena.bioinf.ms.frontend.subtools.custom_db;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CustomDBImportJobTest {
+
+    private static List<String> split(String content, CustomDBImportJob.StructureFormat format, int blockSize) throws IOException {
+        final List<String> blocks = new ArrayList<>();
+        final Iterator<byte[]> it = CustomDBImportJob.splitStructures(new BufferedReader(new StringReader(content)), format, blockSize);
+        while (it.hasNext())
+            blocks.add(new String(it.next(), StandardCharsets.UTF_8));
+        return blocks;
+    }
+
+    private static String sdfRecord(int i) {
+        return "mol" + i + "\n  CDK\n\n"
+                + "  1  0  0  0  0  0  0  0  0  0999 V2000\n"
+                + "    0.0000    0.0000    0.0000 C   0  0  0  0  0  0  0  0  0  0  0  0\n"
+                + "M  END\n"
+                + "> <ID>\nid" + i + "\n\n"
+                + "$$$$\n";
+    }
+
+    @Test
+    public void splitSdfAtRecordBoundaries() throws IOException {
+        final StringBuilder sdf = new StringBuilder();
+        for (int i = 0; i < 7; i++)
+            sdf.append(sdfRecord(i));
+
+        final List<String> blocks = split(sdf.toString(), CustomDBImportJob.StructureFormat.SDF, 3);
+        assertEquals(3, blocks.size());
+        assertEquals(sdfRecord(0) + sdfRecord(1) + sdfRecord(2), blocks.get(0));
+        assertEquals(sdfRecord(3) + sdfRecord(4) + sdfRecord(5), blocks.get(1));
+        assertEquals(sdfRecord(6), blocks.get(2));
+        assertEquals(sdf.toString(), String.join("", blocks));
+    }
+
+    @Test
+    public void keepUnterminatedLastSdfRecord() throws IOException {
+        final String sdf = sdfRecord(0) + sdfRecord(1) + sdfRecord(2).replace("$$$$\n", "");
+        final List<String> blocks = split(sdf + "\n", CustomDBImportJob.StructureFormat.SDF, 2);
+        assertEquals(2, blocks.size());
+        assertEquals(sdfRecord(2).replace("$$$$\n", "") + "\n", blocks.get(1));
+    }
+
+    @Test
+    public void repeatCsvHeaderInEveryBlock() throws IOException {
+        final List<String> blocks = split("SMILES\tid\tname\nCCO\t1\tethanol\nCO\t2\tmethanol\nC\t3\tmethane\n",
+                CustomDBImportJob.StructureFormat.CSV, 2);
+        assertEquals(List.of("SMILES\tid\tname\nCCO\t1\tethanol\nCO\t2\tmethanol\n", "SMILES\tid\tname\nC\t3\tmethane\n"), blocks);
+    }
+
+    @Test
+    public void doNotRepeatFirstStructureOfHeaderlessTsv() throws IOException {
+        final List<String> blocks = split("CCO\t1\nCO\t2\nC\t3\n", CustomDBImportJob.StructureFormat.CSV, 2);
+        assertEquals(List.of("CCO\t1\nCO\t2\n", "C\t3\n"), blocks);
+    }
+
+    @Test
+    public void detectFormat() {
+        assertEquals(CustomDBImportJob.StructureFormat.SDF, CustomDBImportJob.StructureFormat.of("structures.SDF"));
+        assertEquals(CustomDBImportJob.StructureFormat.CSV, CustomDBImportJob.StructureFormat.of("structures.tsv"));
+        assertEquals(CustomDBImportJob.StructureFormat.CSV, CustomDBImportJob.StructureFormat.of("structures.csv"));
+        assertEquals(CustomDBImportJob.StructureFormat.OTHER, CustomDBImportJob.StructureFormat.of("structures.smi"));
+        assertEquals(CustomDBImportJob.StructureFormat.OTHER, CustomDBImportJob.StructureFormat.of(null));
+    }
+}
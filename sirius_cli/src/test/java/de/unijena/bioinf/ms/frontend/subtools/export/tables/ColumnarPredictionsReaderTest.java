@@ -0,0 +1,70 @@
+package de.unijena.bioinf.ms.frontend.subtools.export.tables;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ColumnarPredictionsReaderTest {
+
+    private static ExportPredictionsOptions.PredictionRow row(String id, float... values) {
+        // two prediction blocks, e.g. ClassyFire and NPC
+        return new ExportPredictionsOptions.PredictionRow(id, "name" + id, "C6H12O6", "[M+H]+",
+                new float[][]{{values[0], values[1]}, {values[2]}});
+    }
+
+    private static byte[] write(boolean finish) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ExportPredictionsOptions.ColumnarPredictionWriter writer = new ExportPredictionsOptions.ColumnarPredictionWriter(bytes)) {
+            writer.writeHeader(List.of("ClassyFire#a", "ClassyFire#b", "NPC#c"));
+            writer.writeRows(List.of(row("1", 0.1f, 0.2f, 0.3f), row("2", Float.NaN, 1, 0)));
+            writer.writeRows(List.of());
+            writer.writeRows(List.of(row("3", 0.5f, 0.25f, 0.125f)));
+            if (finish)
+                writer.finish();
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void readWrittenTable() throws IOException {
+        try (ColumnarPredictionsReader reader = new ColumnarPredictionsReader(new ByteArrayInputStream(write(true)))) {
+            assertEquals(List.of("ClassyFire#a", "ClassyFire#b", "NPC#c"), reader.getPredictionColumns());
+
+            ColumnarPredictionsReader.Batch batch = reader.readBatch();
+            assertEquals(2, batch.size());
+            assertArrayEquals(new String[]{"1", "2"}, batch.ids);
+            assertArrayEquals(new String[]{"name1", "name2"}, batch.names);
+            assertArrayEquals(new String[]{"C6H12O6", "C6H12O6"}, batch.molecularFormulas);
+            assertArrayEquals(new String[]{"[M+H]+", "[M+H]+"}, batch.adducts);
+            assertArrayEquals(new float[]{0.1f, Float.NaN}, batch.predictions[0], 0f);
+            assertArrayEquals(new float[]{0.2f, 1f}, batch.predictions[1], 0f);
+            assertArrayEquals(new float[]{0.3f, 0f}, batch.predictions[2], 0f);
+
+            batch = reader.readBatch();
+            assertEquals(1, batch.size());
+            assertEquals("3", batch.ids[0]);
+            assertArrayEquals(new float[]{0.125f}, batch.predictions[2], 0f);
+
+            assertNull(reader.readBatch());
+            assertNull(reader.readBatch());
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void detectIncompleteTable() throws IOException {
+        try (ColumnarPredictionsReader reader = new ColumnarPredictionsReader(new ByteArrayInputStream(write(false)))) {
+            while (reader.readBatch() != null) ;
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectOtherFormats() throws IOException {
+        new ColumnarPredictionsReader(new ByteArrayInputStream("id\tname\tmolecularFormula\n".getBytes()));
+    }
+}
@@ -0,0 +1,78 @@
+package de.unijena.bioinf.ms.frontend.subtools.similarity;
+
+import de.unijena.bioinf.ChemistryBase.jobs.SiriusJobs;
+import de.unijena.bioinf.ChemistryBase.math.MatrixUtils;
+import de.unijena.bioinf.jjobs.JobManager;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TiledSimilarityMatrixTest {
+
+    @Test
+    public void sizeBelowTileSize() throws IOException {
+        assertSameAsSymmetricComputation(5, 8);
+    }
+
+    @Test
+    public void sizeEqualsTileSize() throws IOException {
+        assertSameAsSymmetricComputation(8, 8);
+    }
+
+    @Test
+    public void sizeMultipleOfTileSize() throws IOException {
+        assertSameAsSymmetricComputation(24, 8);
+    }
+
+    @Test
+    public void sizeNotMultipleOfTileSize() throws IOException {
+        assertSameAsSymmetricComputation(29, 8);
+        assertSameAsSymmetricComputation(17, 3);
+        assertSameAsSymmetricComputation(10, 1);
+    }
+
+    private static void assertSameAsSymmetricComputation(int n, int tileSize) throws IOException {
+        final JobManager jobManager = SiriusJobs.getGlobalJobManager();
+        final double[][] values = randomSymmetricMatrix(n, n * 31L + tileSize);
+
+        final double[][] expected = new double[n][n];
+        jobManager.submitJob(MatrixUtils.parallelizeSymmetricMatrixComputation(expected, (i, j) -> values[i][j])).takeResult();
+
+        final AtomicInteger calls = new AtomicInteger();
+        final double[][] tiled = new double[n][];
+        final AtomicInteger nextRow = new AtomicInteger();
+        new TiledSimilarityMatrix(n, tileSize).compute(jobManager, (i, j) -> {
+            calls.incrementAndGet();
+            return values[i][j];
+        }, new TiledSimilarityMatrix.RowSink() {
+            @Override
+            public void writeRow(int row, double[] rowValues) {
+                assertEquals("Rows must be written in ascending order", nextRow.getAndIncrement(), row);
+                tiled[row] = rowValues.clone();
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        assertEquals(n, nextRow.get());
+        for (int i = 0; i < n; ++i)
+            assertArrayEquals("Row " + i + " differs for n=" + n + " and tile size " + tileSize, expected[i], tiled[i], 0d);
+        assertEquals("Only the upper triangle should be computed", n * (n + 1) / 2, calls.get());
+    }
+
+    private static double[][] randomSymmetricMatrix(int n, long seed) {
+        final Random random = new Random(seed);
+        final double[][] m = new double[n][n];
+        for (int i = 0; i < n; ++i)
+            for (int j = i; j < n; ++j)
+                m[i][j] = m[j][i] = random.nextDouble();
+        return m;
+    }
+}
@@ -86,7 +86,10 @@ public class CompoundList {
 
         //additional filter based on specific parameters
         compoundFilterModel = new CompoundFilterModel();
-        listOfFilters.add(new CompoundFilterMatcherEditor(new CompoundFilterMatcher(gui.getProperties(), compoundFilterModel)));
+        final CompoundFilterMatcher compoundFilterMatcher = new CompoundFilterMatcher(gui.getProperties(), compoundFilterModel);
+        // server side filter results are outdated as soon as features or their results change
+        gui.getProjectManager().addFeaturesChangedListener(evt -> compoundFilterMatcher.resetCache());
+        listOfFilters.add(new CompoundFilterMatcherEditor(compoundFilterMatcher));
         //combined filters
         CompositeMatcherEditor<InstanceBean> compositeMatcherEditor = new CompositeMatcherEditor<>(listOfFilters);
         compositeMatcherEditor.setMode(CompositeMatcherEditor.AND);
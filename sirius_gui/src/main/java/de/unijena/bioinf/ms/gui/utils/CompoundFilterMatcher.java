@@ -19,26 +19,20 @@ package de.unijena.bioinf.ms.gui.utils;/*
  */
 
 import ca.odell.glazedlists.matchers.Matcher;
-import de.unijena.bioinf.ChemistryBase.chem.FormulaConstraints;
 import de.unijena.bioinf.ChemistryBase.chem.RetentionTime;
-import de.unijena.bioinf.ChemistryBase.ms.MS1MassDeviation;
-import de.unijena.bioinf.ChemistryBase.ms.utils.Spectrums;
-import de.unijena.bioinf.ChemistryBase.ms.utils.WrapperSpectrum;
 import de.unijena.bioinf.ms.gui.properties.GuiProperties;
-import de.unijena.bioinf.ms.nightsky.sdk.model.*;
-import de.unijena.bioinf.ms.properties.PropertyManager;
-import de.unijena.bioinf.projectspace.FormulaResultBean;
+import de.unijena.bioinf.ms.nightsky.sdk.model.AlignedFeatureFilter;
+import de.unijena.bioinf.ms.nightsky.sdk.model.SearchableDatabase;
 import de.unijena.bioinf.projectspace.InstanceBean;
-import org.jetbrains.annotations.NotNull;
 
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.Set;
 
 public class CompoundFilterMatcher implements Matcher<InstanceBean> {
     final CompoundFilterModel filterModel;
     private final GuiProperties properties;
+    private Set<String> ioIntenseMatches = null;
 
     public CompoundFilterMatcher(GuiProperties properties, CompoundFilterModel filterModel) {
         this.filterModel = filterModel;
@@ -91,90 +85,66 @@ public class CompoundFilterMatcher implements Matcher<InstanceBean> {
         return anyIOIntenseFilterMatches(item, filterModel);
     }
 
-    private boolean anyIOIntenseFilterMatches(InstanceBean item, CompoundFilterModel filterModel) {
-        if (filterModel.getIoQualityFilters().stream().anyMatch(CompoundFilterModel.QualityFilter::isEnabled)) {
-            AlignedFeatureQuality qualityReport = item.getQualityReport();
-            Map<String, Category> categories = qualityReport.getCategories();
-            for (CompoundFilterModel.QualityFilter filter : filterModel.getIoQualityFilters()) {
-                if (filter.isEnabled()) {
-                    Category q = categories.get(filter.getName());
-                    if (q != null && !filter.isQualitySelected(q.getOverallQuality()))
-                        return false;
-                }
-            }
-        }
-
-        if (filterModel.isElementFilterEnabled())
-            if (!matchesElementFilter(item, filterModel)) return false;
-
-        if (filterModel.isMinIsotopePeaksFilterEnabled())
-            if (!filterByMinIsotopePeaks(item, filterModel)) return false;
-
-        if (filterModel.isLipidFilterEnabled())
-            if (!matchesLipidFilter(item, filterModel)) return false;
-
-        if (filterModel.isDbFilterEnabled())
-            if (!matchesDBFilter(item, filterModel)) return false;
-
-        return true;
+    /**
+     * Invalidates the cached server side filter result. Has to be called whenever the filter model has changed
+     * and whenever features or their results have been created, updated or deleted.
+     */
+    public synchronized void resetCache() {
+        ioIntenseMatches = null;
     }
 
-
-    //todo maybe add directly to feature
-    private boolean filterByMinIsotopePeaks(InstanceBean item, CompoundFilterModel filterModel) {
-        return Optional.ofNullable(item.getMsData())
-                .map(MsData::getMergedMs1)
-                .map(ms1 -> WrapperSpectrum.of(ms1.getPeaks(), SimplePeak::getMz, SimplePeak::getIntensity))
-                .map(s -> Spectrums.extractIsotopePattern(s,
-                        PropertyManager.DEFAULTS.createInstanceWithDefaults(MS1MassDeviation.class),
-                        item.getIonMass(), item.getIonType().getCharge(), true))
-                .map(s -> s.size() >= filterModel.getCurrentMinIsotopePeaks())
-                .orElse(false);
-        //todo nightsky: -> add isotope pattern to MS/MS data to make such things easier?.
+    private boolean anyIOIntenseFilterMatches(InstanceBean item, CompoundFilterModel filterModel) {
+        final AlignedFeatureFilter filter = makeIOIntenseFilter(filterModel);
+        if (filter == null)
+            return true;
+        return getIOIntenseMatches(item, filter).contains(item.getFeatureId());
     }
 
-    private boolean matchesLipidFilter(InstanceBean item, CompoundFilterModel filterModel) {
-        boolean hasAnyLipidHit = item.getFormulaCandidates().stream().anyMatch(FormulaResultBean::isLipid);
-        return (filterModel.getLipidFilter() == CompoundFilterModel.LipidFilter.ANY_LIPID_CLASS_DETECTED && hasAnyLipidHit)
-                || (filterModel.getLipidFilter() == CompoundFilterModel.LipidFilter.NO_LIPID_CLASS_DETECTED && !hasAnyLipidHit);
+    /**
+     * Criteria that need data beyond the source feature (quality report, ms data, formula and structure candidates)
+     * are evaluated by a single server side query for the whole project instead of requesting the data of each feature.
+     */
+    private synchronized Set<String> getIOIntenseMatches(InstanceBean item, AlignedFeatureFilter filter) {
+        if (ioIntenseMatches == null)
+            ioIntenseMatches = new HashSet<>(item.getClient().features().filterAlignedFeatureIds(item.getProjectId(), filter));
+        return ioIntenseMatches;
     }
 
-    private boolean matchesDBFilter(InstanceBean item, CompoundFilterModel filterModel) {
-        final int k;
-        List<String> filterDbs;
-        if (filterModel.isDbFilterEnabled()) {
-            k = filterModel.getDbFilter().getNumOfCandidates();
-            filterDbs = filterModel.getDbFilter().getDbs().stream().map(SearchableDatabase::getDatabaseId).toList();
-        } else {
-            k = 1;
-            filterDbs = null;
-        }
+    private static AlignedFeatureFilter makeIOIntenseFilter(CompoundFilterModel filterModel) {
+        boolean active = false;
+        AlignedFeatureFilter filter = new AlignedFeatureFilter();
 
-        if (k == 0)
-            return false;
+        for (CompoundFilterModel.QualityFilter qf : filterModel.getIoQualityFilters()) {
+            if (qf.isEnabled()) {
+                filter.putCategoryQualitiesItem(qf.getName(), List.copyOf(qf.getSelectedQualities()));
+                active = true;
+            }
+        }
 
-        final PageStructureCandidateFormula candidates = item.getStructureCandidatesPage(k, false);
+        if (filterModel.isElementFilterEnabled()) {
+            CompoundFilterModel.ElementFilter ef = filterModel.getElementFilter();
+            filter.elementConstraints(ef.getConstraints().toString())
+                    .matchFormula(ef.isMatchFormula())
+                    .matchPrecursorFormula(ef.isMatchPrecursorFormula());
+            active = true;
+        }
 
-        if (candidates == null || candidates.getContent() == null || candidates.getContent().isEmpty())
-            return false;
+        if (filterModel.isMinIsotopePeaksFilterEnabled()) {
+            filter.minIsotopePeaks(filterModel.getCurrentMinIsotopePeaks());
+            active = true;
+        }
 
-        if (filterDbs == null)
-            return true;
+        if (filterModel.isLipidFilterEnabled()) {
+            filter.lipidDetected(filterModel.getLipidFilter() == CompoundFilterModel.LipidFilter.ANY_LIPID_CLASS_DETECTED);
+            active = true;
+        }
 
-        return candidates.getContent().stream()
-                .map(StructureCandidateFormula::getDbLinks)
-                .filter(Objects::nonNull).flatMap(List::stream)
-                .map(DBLink::getName).distinct()
-                .filter(Objects::nonNull)
-                .anyMatch(filterDbs::contains);
-    }
+        if (filterModel.isDbFilterEnabled()) {
+            filter.databases(filterModel.getDbFilter().getDbs().stream().map(SearchableDatabase::getDatabaseId).toList())
+                    .numOfDbCandidates(filterModel.getDbFilter().getNumOfCandidates());
+            active = true;
+        }
 
-    private boolean matchesElementFilter(InstanceBean item, CompoundFilterModel filterModel) {
-        CompoundFilterModel.ElementFilter filter = filterModel.getElementFilter();
-        @NotNull FormulaConstraints constraints = filter.constraints;
-        return item.getFormulaAnnotationAsBean().map(fc ->
-                (filter.matchFormula && constraints.isSatisfied(fc.getMolecularFormulaObj(), fc.getAdductObj().getIonization()))
-                        || (filter.matchPrecursorFormula && constraints.isSatisfied(fc.getAdductObj().neutralMoleculeToMeasuredNeutralMolecule(fc.getMolecularFormulaObj()), fc.getAdductObj().getIonization()))
-        ).orElse(false);
+        return active ? filter : null;
     }
 }
@@ -34,7 +34,9 @@ public class CompoundFilterMatcherEditor extends AbstractMatcherEditor<InstanceB
 
     @Override
     public void propertyChange(PropertyChangeEvent evt) {
-        if (evt.getSource() == matchter.filterModel)
+        if (evt.getSource() == matchter.filterModel) {
+            matchter.resetCache();
             fireChanged(matchter);
+        }
     }
 }
@@ -464,6 +464,10 @@ public class CompoundFilterModel implements SiriusPCS {
             return dataQualities.contains(quality);
         }
 
+        public Set<DataQuality> getSelectedQualities() {
+            return Collections.unmodifiableSet(dataQualities);
+        }
+
         public boolean setQualitySelected(int publicIndex, boolean selected){
             if (selected)
                 return addQuality(publicIndex);
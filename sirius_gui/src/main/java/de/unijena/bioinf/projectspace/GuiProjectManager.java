@@ -96,10 +96,14 @@ public class GuiProjectManager implements Closeable {
                 .ifPresent(pce -> {
                     if (pce.getEventType() != null) {
                         switch (pce.getEventType()) {
-                            case FEATURE_CREATED, FEATURE_DELETED -> addRemoveDebounced(pce);
-
-                            case FEATURE_UPDATED, RESULT_CREATED, RESULT_UPDATED, RESULT_DELETED ->
-                                    pcs.firePropertyChange("project.updateInstance." + pce.getFeaturedId(), null, pce);
+                            case FEATURE_CREATED, FEATURE_DELETED -> {
+                                pcs.firePropertyChange("project.featuresChanged", null, pce);
+                                addRemoveDebounced(pce);
+                            }
+                            case FEATURE_UPDATED, RESULT_CREATED, RESULT_UPDATED, RESULT_DELETED -> {
+                                pcs.firePropertyChange("project.featuresChanged", null, pce);
+                                pcs.firePropertyChange("project.updateInstance." + pce.getFeaturedId(), null, pce);
+                            }
                         }
                     }
                 });
@@ -122,6 +126,18 @@ public class GuiProjectManager implements Closeable {
         siriusClient.addEventListener(computeListener, projectId, DataEventType.BACKGROUND_COMPUTATIONS_STATE);
     }
 
+    /**
+     * Listener is notified whenever a feature or one of its results is created, updated or deleted.
+     * The event value is the corresponding {@link ProjectChangeEvent}.
+     */
+    public void addFeaturesChangedListener(PropertyChangeListener listener) {
+        pcs.addPropertyChangeListener("project.featuresChanged", listener);
+    }
+
+    public void removeFeaturesChangedListener(PropertyChangeListener listener) {
+        pcs.removePropertyChangeListener("project.featuresChanged", listener);
+    }
+
     public void disableProjectListener() {
         synchronized (projectListener) {
             siriusClient.removeEventListener(projectListener);
@@ -134,6 +150,7 @@ public class GuiProjectManager implements Closeable {
         }
     }
 
+    private static final int FEATURE_FETCH_CHUNK_SIZE = 1000;
     private final BlockingQueue<ProjectChangeEvent> events = new LinkedBlockingDeque<>();
     private JJob<Boolean> debounceExec;
 
@@ -161,13 +178,17 @@ public class GuiProjectManager implements Closeable {
     private List<Pair<InstanceBean, Boolean>> processEvents(List<ProjectChangeEvent> toProcess) {
         //collect existing
         Map<String, InstanceBean> instances = INSTANCE_LIST.stream().collect(Collectors.toMap(InstanceBean::getFeatureId, Function.identity()));
-        //collect created
-        toProcess.stream().filter(evt -> evt.getEventType() == FEATURE_CREATED).map(ProjectChangeEvent::getFeaturedId).filter(Objects::nonNull)
-                .forEach(fid -> instances.put(fid, new InstanceBean(getFeature(fid, List.of(AlignedFeatureOptField.TOPANNOTATIONS)), GuiProjectManager.this)));
-        //todo getting features in bulk could improve speed
+        //collect created, fetched in bulk
+        List<String> createdIds = toProcess.stream().filter(evt -> evt.getEventType() == FEATURE_CREATED)
+                .map(ProjectChangeEvent::getFeaturedId).filter(Objects::nonNull).distinct().toList();
+        for (int i = 0; i < createdIds.size(); i += FEATURE_FETCH_CHUNK_SIZE) {
+            getFeatures(createdIds.subList(i, Math.min(i + FEATURE_FETCH_CHUNK_SIZE, createdIds.size())), List.of(AlignedFeatureOptField.TOPANNOTATIONS))
+                    .forEach(f -> instances.put(f.getAlignedFeatureId(), new InstanceBean(f, GuiProjectManager.this)));
+        }
         //map deletion by keeping event order
+        //features that have already been deleted before they could be fetched are skipped.
         return toProcess.stream().filter(evt -> evt.getEventType() == FEATURE_CREATED || evt.getEventType() == FEATURE_DELETED)
-                .filter(evt -> evt.getFeaturedId() != null)
+                .filter(evt -> evt.getFeaturedId() != null && instances.containsKey(evt.getFeaturedId()))
                 .map(evt -> Pair.of(instances.get(evt.getFeaturedId()), evt.getEventType() == FEATURE_CREATED))
                 .toList();
 
@@ -185,6 +206,10 @@ public class GuiProjectManager implements Closeable {
         return siriusClient.features().getAlignedFeature(projectId, featureId, optFields);
     }
 
+    protected List<AlignedFeature> getFeatures(@NotNull List<String> featureIds, @NotNull List<AlignedFeatureOptField> optFields) {
+        return siriusClient.features().getAlignedFeaturesByIds(projectId, featureIds, optFields);
+    }
+
     public String getProjectId() {
         return projectId;
     }
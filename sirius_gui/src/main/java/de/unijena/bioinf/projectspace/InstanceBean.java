@@ -36,6 +36,7 @@ import de.unijena.bioinf.ms.gui.fingerid.FingerprintCandidateBean;
 import de.unijena.bioinf.ms.gui.properties.ConfidenceDisplayMode;
 import de.unijena.bioinf.ms.gui.spectral_matching.SpectralMatchBean;
 import de.unijena.bioinf.ms.gui.spectral_matching.SpectralMatchingCache;
+import de.unijena.bioinf.ms.nightsky.sdk.BinaryFormulaPredictions;
 import de.unijena.bioinf.ms.nightsky.sdk.NightSkyClient;
 import de.unijena.bioinf.ms.nightsky.sdk.model.*;
 import org.jetbrains.annotations.NotNull;
@@ -394,15 +395,24 @@ public class InstanceBean implements SiriusPCS {
         MaskedFingerprintVersion fpVersion = getProjectManager().getFingerIdData(getIonType().getCharge())
                 .getFingerprintVersion();
 
-        Map<String, ProbabilityFingerprint> fps = page.getContent().stream()
-                .map(StructureCandidateFormula::getFormulaId).distinct()
-                .collect(Collectors.toMap(fcid -> fcid, fcid -> new ProbabilityFingerprint(
-                        fpVersion,
-                        (List<Double>) withIds((pid, fid) -> getClient().features().getFingerprintPrediction(pid, fid, fcid))
-                )));
+        List<String> formulaIds = page.getContent().stream()
+                .map(StructureCandidateFormula::getFormulaId).distinct().toList();
+
+        // fetch all fingerprints of the page with a single binary request instead of one JSON request per formula
+        Map<String, ProbabilityFingerprint> fps = BinaryFormulaPredictions.decode(
+                        withIds((pid, fid) -> getClient().features().getFormulaPredictionsBinary(pid, fid, formulaIds)))
+                .stream().filter(p -> p.getFingerprint() != null)
+                .collect(Collectors.toMap(BinaryFormulaPredictions::getFormulaId, p -> toProbabilityFingerprint(fpVersion, p.getFingerprint())));
         return page.getContent().stream().map(c -> new FingerprintCandidateBean(c, isDatabase, isDeNovo, fps.get(c.getFormulaId()), this)).toList();
     }
 
+    private static ProbabilityFingerprint toProbabilityFingerprint(MaskedFingerprintVersion fpVersion, float[] probabilities) {
+        final double[] fp = new double[probabilities.length];
+        for (int i = 0; i < probabilities.length; i++)
+            fp[i] = probabilities[i];
+        return new ProbabilityFingerprint(fpVersion, fp);
+    }
+
     public List<SpectralMatchBean> getTopSpectralMatches() {
         return withSpectralMatchingCache(cache -> cache.getPageFiltered(0));
     }
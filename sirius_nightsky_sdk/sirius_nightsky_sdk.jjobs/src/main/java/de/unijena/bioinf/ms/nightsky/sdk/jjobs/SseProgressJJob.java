@@ -68,6 +68,8 @@ public class SseProgressJJob extends WaiterJJob<Job> {
                 Job j = siriusClient.jobs().getJob(projectId, jobId, List.of(JobOptField.PROGRESS));
                 if (updateAndCheckIfDone(j))
                     siriusClient.removeEventListener(this);
+                else
+                    subscription.request(Long.MAX_VALUE);
             }
 
             @Override
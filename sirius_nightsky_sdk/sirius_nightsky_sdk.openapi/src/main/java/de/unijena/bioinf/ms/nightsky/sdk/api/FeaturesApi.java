@@ -3,6 +3,7 @@ package de.unijena.bioinf.ms.nightsky.sdk.api;
 import de.unijena.bioinf.ms.nightsky.sdk.client.ApiClient;
 
 import de.unijena.bioinf.ms.nightsky.sdk.model.AlignedFeature;
+import de.unijena.bioinf.ms.nightsky.sdk.model.AlignedFeatureFilter;
 import de.unijena.bioinf.ms.nightsky.sdk.model.AlignedFeatureOptField;
 import de.unijena.bioinf.ms.nightsky.sdk.model.AlignedFeatureQuality;
 import de.unijena.bioinf.ms.nightsky.sdk.model.AnnotatedMsMsData;
@@ -12,6 +13,7 @@ import de.unijena.bioinf.ms.nightsky.sdk.model.CompoundClasses;
 import de.unijena.bioinf.ms.nightsky.sdk.model.FeatureImport;
 import de.unijena.bioinf.ms.nightsky.sdk.model.FormulaCandidate;
 import de.unijena.bioinf.ms.nightsky.sdk.model.FormulaCandidateOptField;
+import de.unijena.bioinf.ms.nightsky.sdk.model.FormulaPredictions;
 import de.unijena.bioinf.ms.nightsky.sdk.model.FragmentationTree;
 import de.unijena.bioinf.ms.nightsky.sdk.model.IsotopePatternAnnotation;
 import de.unijena.bioinf.ms.nightsky.sdk.model.LipidAnnotation;
@@ -319,6 +321,90 @@ public class FeaturesApi {
     public ResponseSpec deleteAlignedFeaturesWithResponseSpec(String projectId, List<String> requestBody) throws WebClientResponseException {
         return deleteAlignedFeaturesRequestCreation(projectId, requestBody);
     }
+    /**
+     * Get the ids of all features (aligned over runs) in the given project-space that match the given filter criteria.
+     * Get the ids of all features (aligned over runs) in the given project-space that match the given filter criteria.  The filter is evaluated inside the project, so clients do not need to request the data of each feature to filter it.
+     * <p><b>200</b> - ids of the matching features (aligned over runs).
+     * @param projectId project-space to read from.
+     * @param alignedFeatureFilter criteria a feature has to satisfy. Unset criteria are ignored.
+     * @return List&lt;String&gt;
+     * @throws WebClientResponseException if an error occurs while attempting to invoke the API
+     */
+    private ResponseSpec filterAlignedFeatureIdsRequestCreation(String projectId, AlignedFeatureFilter alignedFeatureFilter) throws WebClientResponseException {
+        Object postBody = alignedFeatureFilter;
+        // verify the required parameter 'projectId' is set
+        if (projectId == null) {
+            throw new WebClientResponseException("Missing the required parameter 'projectId' when calling filterAlignedFeatureIds", HttpStatus.BAD_REQUEST.value(), HttpStatus.BAD_REQUEST.getReasonPhrase(), null, null, null);
+        }
+        // verify the required parameter 'alignedFeatureFilter' is set
+        if (alignedFeatureFilter == null) {
+            throw new WebClientResponseException("Missing the required parameter 'alignedFeatureFilter' when calling filterAlignedFeatureIds", HttpStatus.BAD_REQUEST.value(), HttpStatus.BAD_REQUEST.getReasonPhrase(), null, null, null);
+        }
+        // create path and map variables
+        final Map<String, Object> pathParams = new HashMap<String, Object>();
+
+        pathParams.put("projectId", projectId);
+
+        final MultiValueMap<String, String> queryParams = new LinkedMultiValueMap<String, String>();
+        final HttpHeaders headerParams = new HttpHeaders();
+        final MultiValueMap<String, String> cookieParams = new LinkedMultiValueMap<String, String>();
+        final MultiValueMap<String, Object> formParams = new LinkedMultiValueMap<String, Object>();
+
+        final String[] localVarAccepts = { 
+            "application/json"
+        };
+        final List<MediaType> localVarAccept = apiClient.selectHeaderAccept(localVarAccepts);
+        final String[] localVarContentTypes = { 
+            "application/json"
+        };
+        final MediaType localVarContentType = apiClient.selectHeaderContentType(localVarContentTypes);
+
+        String[] localVarAuthNames = new String[] {  };
+
+        ParameterizedTypeReference<String> localVarReturnType = new ParameterizedTypeReference<String>() {};
+        return apiClient.invokeAPI("/api/projects/{projectId}/aligned-features/filter", HttpMethod.POST, pathParams, queryParams, postBody, headerParams, cookieParams, formParams, localVarAccept, localVarContentType, localVarAuthNames, localVarReturnType);
+    }
+
+    /**
+     * Get the ids of all features (aligned over runs) in the given project-space that match the given filter criteria.
+     * Get the ids of all features (aligned over runs) in the given project-space that match the given filter criteria.  The filter is evaluated inside the project, so clients do not need to request the data of each feature to filter it.
+     * <p><b>200</b> - ids of the matching features (aligned over runs).
+     * @param projectId project-space to read from.
+     * @param alignedFeatureFilter criteria a feature has to satisfy. Unset criteria are ignored.
+     * @return List&lt;String&gt;
+     * @throws WebClientResponseException if an error occurs while attempting to invoke the API
+     */
+    public List<String> filterAlignedFeatureIds(String projectId, AlignedFeatureFilter alignedFeatureFilter) throws WebClientResponseException {
+        ParameterizedTypeReference<String> localVarReturnType = new ParameterizedTypeReference<String>() {};
+        return filterAlignedFeatureIdsRequestCreation(projectId, alignedFeatureFilter).bodyToFlux(localVarReturnType).collectList().block();
+    }
+
+    /**
+     * Get the ids of all features (aligned over runs) in the given project-space that match the given filter criteria.
+     * Get the ids of all features (aligned over runs) in the given project-space that match the given filter criteria.  The filter is evaluated inside the project, so clients do not need to request the data of each feature to filter it.
+     * <p><b>200</b> - ids of the matching features (aligned over runs).
+     * @param projectId project-space to read from.
+     * @param alignedFeatureFilter criteria a feature has to satisfy. Unset criteria are ignored.
+     * @return ResponseEntity&lt;List&lt;String&gt;&gt;
+     * @throws WebClientResponseException if an error occurs while attempting to invoke the API
+     */
+    public ResponseEntity<List<String>> filterAlignedFeatureIdsWithHttpInfo(String projectId, AlignedFeatureFilter alignedFeatureFilter) throws WebClientResponseException {
+        ParameterizedTypeReference<String> localVarReturnType = new ParameterizedTypeReference<String>() {};
+        return filterAlignedFeatureIdsRequestCreation(projectId, alignedFeatureFilter).toEntityList(localVarReturnType).block();
+    }
+
+    /**
+     * Get the ids of all features (aligned over runs) in the given project-space that match the given filter criteria.
+     * Get the ids of all features (aligned over runs) in the given project-space that match the given filter criteria.  The filter is evaluated inside the project, so clients do not need to request the data of each feature to filter it.
+     * <p><b>200</b> - ids of the matching features (aligned over runs).
+     * @param projectId project-space to read from.
+     * @param alignedFeatureFilter criteria a feature has to satisfy. Unset criteria are ignored.
+     * @return ResponseSpec
+     * @throws WebClientResponseException if an error occurs while attempting to invoke the API
+     */
+    public ResponseSpec filterAlignedFeatureIdsWithResponseSpec(String projectId, AlignedFeatureFilter alignedFeatureFilter) throws WebClientResponseException {
+        return filterAlignedFeatureIdsRequestCreation(projectId, alignedFeatureFilter);
+    }
     /**
      * Get feature (aligned over runs) with the given identifier from the specified project-space.
      * Get feature (aligned over runs) with the given identifier from the specified project-space.
@@ -488,6 +574,96 @@ public class FeaturesApi {
     public ResponseSpec getAlignedFeaturesWithResponseSpec(String projectId, List<AlignedFeatureOptField> optFields) throws WebClientResponseException {
         return getAlignedFeaturesRequestCreation(projectId, optFields);
     }
+    /**
+     * Get the features (aligned over runs) with the given identifiers from the specified project-space in a single request.
+     * Get the features (aligned over runs) with the given identifiers from the specified project-space in a single request.  Identifiers that do not exist in the project are skipped.
+     * <p><b>200</b> - AlignedFeatures with additional annotations and MS/MS data (if specified) in the order of the given identifiers.
+     * @param projectId project-space to read from.
+     * @param requestBody identifiers of the features (aligned over runs) to access.
+     * @param optFields set of optional fields to be included. Use &#39;none&#39; only to override defaults.
+     * @return List&lt;AlignedFeature&gt;
+     * @throws WebClientResponseException if an error occurs while attempting to invoke the API
+     */
+    private ResponseSpec getAlignedFeaturesByIdsRequestCreation(String projectId, List<String> requestBody, List<AlignedFeatureOptField> optFields) throws WebClientResponseException {
+        Object postBody = requestBody;
+        // verify the required parameter 'projectId' is set
+        if (projectId == null) {
+            throw new WebClientResponseException("Missing the required parameter 'projectId' when calling getAlignedFeaturesByIds", HttpStatus.BAD_REQUEST.value(), HttpStatus.BAD_REQUEST.getReasonPhrase(), null, null, null);
+        }
+        // verify the required parameter 'requestBody' is set
+        if (requestBody == null) {
+            throw new WebClientResponseException("Missing the required parameter 'requestBody' when calling getAlignedFeaturesByIds", HttpStatus.BAD_REQUEST.value(), HttpStatus.BAD_REQUEST.getReasonPhrase(), null, null, null);
+        }
+        // create path and map variables
+        final Map<String, Object> pathParams = new HashMap<String, Object>();
+
+        pathParams.put("projectId", projectId);
+
+        final MultiValueMap<String, String> queryParams = new LinkedMultiValueMap<String, String>();
+        final HttpHeaders headerParams = new HttpHeaders();
+        final MultiValueMap<String, String> cookieParams = new LinkedMultiValueMap<String, String>();
+        final MultiValueMap<String, Object> formParams = new LinkedMultiValueMap<String, Object>();
+
+        queryParams.putAll(apiClient.parameterToMultiValueMap(ApiClient.CollectionFormat.valueOf("multi".toUpperCase(Locale.ROOT)), "optFields", optFields));
+
+        final String[] localVarAccepts = { 
+            "application/json"
+        };
+        final List<MediaType> localVarAccept = apiClient.selectHeaderAccept(localVarAccepts);
+        final String[] localVarContentTypes = { 
+            "application/json"
+        };
+        final MediaType localVarContentType = apiClient.selectHeaderContentType(localVarContentTypes);
+
+        String[] localVarAuthNames = new String[] {  };
+
+        ParameterizedTypeReference<AlignedFeature> localVarReturnType = new ParameterizedTypeReference<AlignedFeature>() {};
+        return apiClient.invokeAPI("/api/projects/{projectId}/aligned-features/by-ids", HttpMethod.POST, pathParams, queryParams, postBody, headerParams, cookieParams, formParams, localVarAccept, localVarContentType, localVarAuthNames, localVarReturnType);
+    }
+
+    /**
+     * Get the features (aligned over runs) with the given identifiers from the specified project-space in a single request.
+     * Get the features (aligned over runs) with the given identifiers from the specified project-space in a single request.  Identifiers that do not exist in the project are skipped.
+     * <p><b>200</b> - AlignedFeatures with additional annotations and MS/MS data (if specified) in the order of the given identifiers.
+     * @param projectId project-space to read from.
+     * @param requestBody identifiers of the features (aligned over runs) to access.
+     * @param optFields set of optional fields to be included. Use &#39;none&#39; only to override defaults.
+     * @return List&lt;AlignedFeature&gt;
+     * @throws WebClientResponseException if an error occurs while attempting to invoke the API
+     */
+    public List<AlignedFeature> getAlignedFeaturesByIds(String projectId, List<String> requestBody, List<AlignedFeatureOptField> optFields) throws WebClientResponseException {
+        ParameterizedTypeReference<AlignedFeature> localVarReturnType = new ParameterizedTypeReference<AlignedFeature>() {};
+        return getAlignedFeaturesByIdsRequestCreation(projectId, requestBody, optFields).bodyToFlux(localVarReturnType).collectList().block();
+    }
+
+    /**
+     * Get the features (aligned over runs) with the given identifiers from the specified project-space in a single request.
+     * Get the features (aligned over runs) with the given identifiers from the specified project-space in a single request.  Identifiers that do not exist in the project are skipped.
+     * <p><b>200</b> - AlignedFeatures with additional annotations and MS/MS data (if specified) in the order of the given identifiers.
+     * @param projectId project-space to read from.
+     * @param requestBody identifiers of the features (aligned over runs) to access.
+     * @param optFields set of optional fields to be included. Use &#39;none&#39; only to override defaults.
+     * @return ResponseEntity&lt;List&lt;AlignedFeature&gt;&gt;
+     * @throws WebClientResponseException if an error occurs while attempting to invoke the API
+     */
+    public ResponseEntity<List<AlignedFeature>> getAlignedFeaturesByIdsWithHttpInfo(String projectId, List<String> requestBody, List<AlignedFeatureOptField> optFields) throws WebClientResponseException {
+        ParameterizedTypeReference<AlignedFeature> localVarReturnType = new ParameterizedTypeReference<AlignedFeature>() {};
+        return getAlignedFeaturesByIdsRequestCreation(projectId, requestBody, optFields).toEntityList(localVarReturnType).block();
+    }
+
+    /**
+     * Get the features (aligned over runs) with the given identifiers from the specified project-space in a single request.
+     * Get the features (aligned over runs) with the given identifiers from the specified project-space in a single request.  Identifiers that do not exist in the project are skipped.
+     * <p><b>200</b> - AlignedFeatures with additional annotations and MS/MS data (if specified) in the order of the given identifiers.
+     * @param projectId project-space to read from.
+     * @param requestBody identifiers of the features (aligned over runs) to access.
+     * @param optFields set of optional fields to be included. Use &#39;none&#39; only to override defaults.
+     * @return ResponseSpec
+     * @throws WebClientResponseException if an error occurs while attempting to invoke the API
+     */
+    public ResponseSpec getAlignedFeaturesByIdsWithResponseSpec(String projectId, List<String> requestBody, List<AlignedFeatureOptField> optFields) throws WebClientResponseException {
+        return getAlignedFeaturesByIdsRequestCreation(projectId, requestBody, optFields);
+    }
     /**
      * Get all available features (aligned over runs) in the given project-space.
      * Get all available features (aligned over runs) in the given project-space.
@@ -1827,6 +2003,184 @@ public class FeaturesApi {
     public ResponseSpec getFormulaCandidatesPagedWithResponseSpec(String projectId, String alignedFeatureId, Integer page, Integer size, List<String> sort, List<FormulaCandidateOptField> optFields) throws WebClientResponseException {
         return getFormulaCandidatesPagedRequestCreation(projectId, alignedFeatureId, page, size, sort, optFields);
     }
+    /**
+     * Predicted fingerprints (CSI:FingerID) and compound class probabilities (CANOPUS) of multiple formula results  of the given feature in a single request.
+     * Predicted fingerprints (CSI:FingerID) and compound class probabilities (CANOPUS) of multiple formula results  of the given feature in a single request.  Formula results without predictions are skipped.
+     * <p><b>200</b> - predictions in the order of the given identifiers
+     * @param projectId project-space to read from.
+     * @param alignedFeatureId feature (aligned over runs) the formula results belong to.
+     * @param requestBody identifiers of the requested formula results. If empty, predictions of all formula results are returned.
+     * @return List&lt;FormulaPredictions&gt;
+     * @throws WebClientResponseException if an error occurs while attempting to invoke the API
+     */
+    private ResponseSpec getFormulaPredictionsRequestCreation(String projectId, String alignedFeatureId, List<String> requestBody) throws WebClientResponseException {
+        Object postBody = requestBody;
+        // verify the required parameter 'projectId' is set
+        if (projectId == null) {
+            throw new WebClientResponseException("Missing the required parameter 'projectId' when calling getFormulaPredictions", HttpStatus.BAD_REQUEST.value(), HttpStatus.BAD_REQUEST.getReasonPhrase(), null, null, null);
+        }
+        // verify the required parameter 'alignedFeatureId' is set
+        if (alignedFeatureId == null) {
+            throw new WebClientResponseException("Missing the required parameter 'alignedFeatureId' when calling getFormulaPredictions", HttpStatus.BAD_REQUEST.value(), HttpStatus.BAD_REQUEST.getReasonPhrase(), null, null, null);
+        }
+        // create path and map variables
+        final Map<String, Object> pathParams = new HashMap<String, Object>();
+
+        pathParams.put("projectId", projectId);
+        pathParams.put("alignedFeatureId", alignedFeatureId);
+
+        final MultiValueMap<String, String> queryParams = new LinkedMultiValueMap<String, String>();
+        final HttpHeaders headerParams = new HttpHeaders();
+        final MultiValueMap<String, String> cookieParams = new LinkedMultiValueMap<String, String>();
+        final MultiValueMap<String, Object> formParams = new LinkedMultiValueMap<String, Object>();
+
+        final String[] localVarAccepts = { 
+            "application/json"
+        };
+        final List<MediaType> localVarAccept = apiClient.selectHeaderAccept(localVarAccepts);
+        final String[] localVarContentTypes = { 
+            "application/json"
+        };
+        final MediaType localVarContentType = apiClient.selectHeaderContentType(localVarContentTypes);
+
+        String[] localVarAuthNames = new String[] {  };
+
+        ParameterizedTypeReference<FormulaPredictions> localVarReturnType = new ParameterizedTypeReference<FormulaPredictions>() {};
+        return apiClient.invokeAPI("/api/projects/{projectId}/aligned-features/{alignedFeatureId}/formulas/predictions", HttpMethod.POST, pathParams, queryParams, postBody, headerParams, cookieParams, formParams, localVarAccept, localVarContentType, localVarAuthNames, localVarReturnType);
+    }
+
+    /**
+     * Predicted fingerprints (CSI:FingerID) and compound class probabilities (CANOPUS) of multiple formula results  of the given feature in a single request.
+     * Predicted fingerprints (CSI:FingerID) and compound class probabilities (CANOPUS) of multiple formula results  of the given feature in a single request.  Formula results without predictions are skipped.
+     * <p><b>200</b> - predictions in the order of the given identifiers
+     * @param projectId project-space to read from.
+     * @param alignedFeatureId feature (aligned over runs) the formula results belong to.
+     * @param requestBody identifiers of the requested formula results. If empty, predictions of all formula results are returned.
+     * @return List&lt;FormulaPredictions&gt;
+     * @throws WebClientResponseException if an error occurs while attempting to invoke the API
+     */
+    public List<FormulaPredictions> getFormulaPredictions(String projectId, String alignedFeatureId, List<String> requestBody) throws WebClientResponseException {
+        ParameterizedTypeReference<FormulaPredictions> localVarReturnType = new ParameterizedTypeReference<FormulaPredictions>() {};
+        return getFormulaPredictionsRequestCreation(projectId, alignedFeatureId, requestBody).bodyToFlux(localVarReturnType).collectList().block();
+    }
+
+    /**
+     * Predicted fingerprints (CSI:FingerID) and compound class probabilities (CANOPUS) of multiple formula results  of the given feature in a single request.
+     * Predicted fingerprints (CSI:FingerID) and compound class probabilities (CANOPUS) of multiple formula results  of the given feature in a single request.  Formula results without predictions are skipped.
+     * <p><b>200</b> - predictions in the order of the given identifiers
+     * @param projectId project-space to read from.
+     * @param alignedFeatureId feature (aligned over runs) the formula results belong to.
+     * @param requestBody identifiers of the requested formula results. If empty, predictions of all formula results are returned.
+     * @return ResponseEntity&lt;List&lt;FormulaPredictions&gt;&gt;
+     * @throws WebClientResponseException if an error occurs while attempting to invoke the API
+     */
+    public ResponseEntity<List<FormulaPredictions>> getFormulaPredictionsWithHttpInfo(String projectId, String alignedFeatureId, List<String> requestBody) throws WebClientResponseException {
+        ParameterizedTypeReference<FormulaPredictions> localVarReturnType = new ParameterizedTypeReference<FormulaPredictions>() {};
+        return getFormulaPredictionsRequestCreation(projectId, alignedFeatureId, requestBody).toEntityList(localVarReturnType).block();
+    }
+
+    /**
+     * Predicted fingerprints (CSI:FingerID) and compound class probabilities (CANOPUS) of multiple formula results  of the given feature in a single request.
+     * Predicted fingerprints (CSI:FingerID) and compound class probabilities (CANOPUS) of multiple formula results  of the given feature in a single request.  Formula results without predictions are skipped.
+     * <p><b>200</b> - predictions in the order of the given identifiers
+     * @param projectId project-space to read from.
+     * @param alignedFeatureId feature (aligned over runs) the formula results belong to.
+     * @param requestBody identifiers of the requested formula results. If empty, predictions of all formula results are returned.
+     * @return ResponseSpec
+     * @throws WebClientResponseException if an error occurs while attempting to invoke the API
+     */
+    public ResponseSpec getFormulaPredictionsWithResponseSpec(String projectId, String alignedFeatureId, List<String> requestBody) throws WebClientResponseException {
+        return getFormulaPredictionsRequestCreation(projectId, alignedFeatureId, requestBody);
+    }
+    /**
+     * Same as getFormulaPredictions but in a compact binary encoding that transfers the probabilities as float32 arrays.
+     * Same as getFormulaPredictions but in a compact binary encoding that transfers the probabilities as float32 arrays.  Layout (big-endian): int32 number of results; per result: modified UTF-8 formulaId followed by fingerprint,  ClassyFire and NPC probabilities, each as int32 length (-1 if not available) and length float32 values.
+     * <p><b>200</b> - binary encoded predictions in the order of the given identifiers
+     * @param projectId project-space to read from.
+     * @param alignedFeatureId feature (aligned over runs) the formula results belong to.
+     * @param requestBody identifiers of the requested formula results. If empty, predictions of all formula results are returned.
+     * @return byte[]
+     * @throws WebClientResponseException if an error occurs while attempting to invoke the API
+     */
+    private ResponseSpec getFormulaPredictionsBinaryRequestCreation(String projectId, String alignedFeatureId, List<String> requestBody) throws WebClientResponseException {
+        Object postBody = requestBody;
+        // verify the required parameter 'projectId' is set
+        if (projectId == null) {
+            throw new WebClientResponseException("Missing the required parameter 'projectId' when calling getFormulaPredictionsBinary", HttpStatus.BAD_REQUEST.value(), HttpStatus.BAD_REQUEST.getReasonPhrase(), null, null, null);
+        }
+        // verify the required parameter 'alignedFeatureId' is set
+        if (alignedFeatureId == null) {
+            throw new WebClientResponseException("Missing the required parameter 'alignedFeatureId' when calling getFormulaPredictionsBinary", HttpStatus.BAD_REQUEST.value(), HttpStatus.BAD_REQUEST.getReasonPhrase(), null, null, null);
+        }
+        // create path and map variables
+        final Map<String, Object> pathParams = new HashMap<String, Object>();
+
+        pathParams.put("projectId", projectId);
+        pathParams.put("alignedFeatureId", alignedFeatureId);
+
+        final MultiValueMap<String, String> queryParams = new LinkedMultiValueMap<String, String>();
+        final HttpHeaders headerParams = new HttpHeaders();
+        final MultiValueMap<String, String> cookieParams = new LinkedMultiValueMap<String, String>();
+        final MultiValueMap<String, Object> formParams = new LinkedMultiValueMap<String, Object>();
+
+        final String[] localVarAccepts = { 
+            "application/octet-stream"
+        };
+        final List<MediaType> localVarAccept = apiClient.selectHeaderAccept(localVarAccepts);
+        final String[] localVarContentTypes = { 
+            "application/json"
+        };
+        final MediaType localVarContentType = apiClient.selectHeaderContentType(localVarContentTypes);
+
+        String[] localVarAuthNames = new String[] {  };
+
+        ParameterizedTypeReference<byte[]> localVarReturnType = new ParameterizedTypeReference<byte[]>() {};
+        return apiClient.invokeAPI("/api/projects/{projectId}/aligned-features/{alignedFeatureId}/formulas/predictions", HttpMethod.POST, pathParams, queryParams, postBody, headerParams, cookieParams, formParams, localVarAccept, localVarContentType, localVarAuthNames, localVarReturnType);
+    }
+
+    /**
+     * Same as getFormulaPredictions but in a compact binary encoding that transfers the probabilities as float32 arrays.
+     * Same as getFormulaPredictions but in a compact binary encoding that transfers the probabilities as float32 arrays.  Layout (big-endian): int32 number of results; per result: modified UTF-8 formulaId followed by fingerprint,  ClassyFire and NPC probabilities, each as int32 length (-1 if not available) and length float32 values.
+     * <p><b>200</b> - binary encoded predictions in the order of the given identifiers
+     * @param projectId project-space to read from.
+     * @param alignedFeatureId feature (aligned over runs) the formula results belong to.
+     * @param requestBody identifiers of the requested formula results. If empty, predictions of all formula results are returned.
+     * @return byte[]
+     * @throws WebClientResponseException if an error occurs while attempting to invoke the API
+     */
+    public byte[] getFormulaPredictionsBinary(String projectId, String alignedFeatureId, List<String> requestBody) throws WebClientResponseException {
+        ParameterizedTypeReference<byte[]> localVarReturnType = new ParameterizedTypeReference<byte[]>() {};
+        return getFormulaPredictionsBinaryRequestCreation(projectId, alignedFeatureId, requestBody).bodyToMono(localVarReturnType).block();
+    }
+
+    /**
+     * Same as getFormulaPredictions but in a compact binary encoding that transfers the probabilities as float32 arrays.
+     * Same as getFormulaPredictions but in a compact binary encoding that transfers the probabilities as float32 arrays.  Layout (big-endian): int32 number of results; per result: modified UTF-8 formulaId followed by fingerprint,  ClassyFire and NPC probabilities, each as int32 length (-1 if not available) and length float32 values.
+     * <p><b>200</b> - binary encoded predictions in the order of the given identifiers
+     * @param projectId project-space to read from.
+     * @param alignedFeatureId feature (aligned over runs) the formula results belong to.
+     * @param requestBody identifiers of the requested formula results. If empty, predictions of all formula results are returned.
+     * @return ResponseEntity&lt;byte[]&gt;
+     * @throws WebClientResponseException if an error occurs while attempting to invoke the API
+     */
+    public ResponseEntity<byte[]> getFormulaPredictionsBinaryWithHttpInfo(String projectId, String alignedFeatureId, List<String> requestBody) throws WebClientResponseException {
+        ParameterizedTypeReference<byte[]> localVarReturnType = new ParameterizedTypeReference<byte[]>() {};
+        return getFormulaPredictionsBinaryRequestCreation(projectId, alignedFeatureId, requestBody).toEntity(localVarReturnType).block();
+    }
+
+    /**
+     * Same as getFormulaPredictions but in a compact binary encoding that transfers the probabilities as float32 arrays.
+     * Same as getFormulaPredictions but in a compact binary encoding that transfers the probabilities as float32 arrays.  Layout (big-endian): int32 number of results; per result: modified UTF-8 formulaId followed by fingerprint,  ClassyFire and NPC probabilities, each as int32 length (-1 if not available) and length float32 values.
+     * <p><b>200</b> - binary encoded predictions in the order of the given identifiers
+     * @param projectId project-space to read from.
+     * @param alignedFeatureId feature (aligned over runs) the formula results belong to.
+     * @param requestBody identifiers of the requested formula results. If empty, predictions of all formula results are returned.
+     * @return ResponseSpec
+     * @throws WebClientResponseException if an error occurs while attempting to invoke the API
+     */
+    public ResponseSpec getFormulaPredictionsBinaryWithResponseSpec(String projectId, String alignedFeatureId, List<String> requestBody) throws WebClientResponseException {
+        return getFormulaPredictionsBinaryRequestCreation(projectId, alignedFeatureId, requestBody);
+    }
     /**
      * Returns fragmentation tree (SIRIUS) for the given formula result identifier  This tree is used to rank formula candidates (treeScore).
      * Returns fragmentation tree (SIRIUS) for the given formula result identifier  This tree is used to rank formula candidates (treeScore).
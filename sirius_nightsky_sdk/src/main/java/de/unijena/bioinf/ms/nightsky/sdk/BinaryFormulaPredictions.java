@@ -0,0 +1,90 @@
+/*
+ *
+ *  This file is part of the SIRIUS library for analyzing MS and MS/MS data
+ *
+ *  Copyright (C) 2013-2020 Kai Dührkop, Markus Fleischauer, Marcus Ludwig, Martin A. Hoffman, Fleming Kretschmer and Sebastian Böcker,
+ *  Chair of Bioinformatics, Friedrich-Schilller University.
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 3 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License along with SIRIUS. If not, see <https://www.gnu.org/licenses/lgpl-3.0.txt>
+ */
+
+package de.unijena.bioinf.ms.nightsky.sdk;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decoded result of {@link de.unijena.bioinf.ms.nightsky.sdk.api.FeaturesApi#getFormulaPredictionsBinary}.
+ * Keeps the probabilities as primitive float arrays, so no boxing is necessary for large fingerprints.
+ * Arrays are null if the respective prediction is not available.
+ */
+public class BinaryFormulaPredictions {
+    public final String formulaId;
+    public final float[] fingerprint;
+    public final float[] classyFireProbabilities;
+    public final float[] npcProbabilities;
+
+    public BinaryFormulaPredictions(String formulaId, float[] fingerprint, float[] classyFireProbabilities, float[] npcProbabilities) {
+        this.formulaId = formulaId;
+        this.fingerprint = fingerprint;
+        this.classyFireProbabilities = classyFireProbabilities;
+        this.npcProbabilities = npcProbabilities;
+    }
+
+    public String getFormulaId() {
+        return formulaId;
+    }
+
+    public float[] getFingerprint() {
+        return fingerprint;
+    }
+
+    public float[] getClassyFireProbabilities() {
+        return classyFireProbabilities;
+    }
+
+    public float[] getNpcProbabilities() {
+        return npcProbabilities;
+    }
+
+    /**
+     * Decodes the binary response body (big-endian): int32 number of results; per result modified UTF-8 formulaId
+     * followed by fingerprint, ClassyFire and NPC probabilities, each as int32 length (-1 if not available) and
+     * length float32 values.
+     */
+    public static List<BinaryFormulaPredictions> decode(byte[] body) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            final int size = in.readInt();
+            final List<BinaryFormulaPredictions> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+                result.add(new BinaryFormulaPredictions(in.readUTF(), readFloats(in), readFloats(in), readFloats(in)));
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed binary formula predictions.", e);
+        }
+    }
+
+    private static float[] readFloats(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0)
+            return null;
+        final float[] values = new float[length];
+        for (int i = 0; i < length; i++)
+            values[i] = in.readFloat();
+        return values;
+    }
+}
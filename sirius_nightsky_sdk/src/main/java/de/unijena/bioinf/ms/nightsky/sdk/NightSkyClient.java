@@ -42,12 +42,9 @@ import reactor.core.scheduler.Schedulers;
 
 import java.beans.PropertyChangeListener;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.EnumSet;
-import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Flow;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
 
 import static de.unijena.bioinf.ms.nightsky.sdk.client.ApiClient.*;
 import static de.unijena.bioinf.ms.nightsky.sdk.model.JobOptField.*;
@@ -55,6 +52,10 @@ import static de.unijena.bioinf.ms.nightsky.sdk.model.JobOptField.*;
 
 public class NightSkyClient implements AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(NightSkyClient.class);
+    public static final Duration JOB_POLL_MIN_DELAY = Duration.ofMillis(50);
+    public static final Duration JOB_POLL_MAX_DELAY = Duration.ofSeconds(5);
+    public static final Duration JOB_SAFETY_POLL_MIN_DELAY = Duration.ofSeconds(1);
+
     protected final ApiClient apiClient;
     protected final String basePath;
 
@@ -114,38 +115,47 @@ public class NightSkyClient implements AutoCloseable {
         infos = new InfoApi(apiClient);
     }
 
-    public Job awaitAndDeleteJob(String pid, String jobId, int waitTimeInSec, Integer timeoutInSec,
+    public Job awaitAndDeleteJob(String pid, String jobId, int checkIntervalInMs, Integer timeoutInSec,
                                  boolean includeCommand, boolean includeAffectedIds, InterruptionCheck interruptionCheck) throws InterruptedException {
-        Job job = awaitJob(pid, jobId, waitTimeInSec, timeoutInSec, includeCommand, includeAffectedIds, interruptionCheck);
+        Job job = awaitJob(pid, jobId, checkIntervalInMs, timeoutInSec, includeCommand, includeAffectedIds, interruptionCheck);
         jobs.deleteJob(pid, job.getId(), false, false);
         return job;
     }
 
-    public Job awaitJob(String pid, String jobId, int waitTimeInSec, Integer timeoutInSec,
+    /**
+     * Blocks until the given job is finished (DONE, FAILED or CANCELED). Uses {@link #awaitJobAsync(String, String)}
+     * so the job is tracked via SSE if event listening is enabled and via exponential-backoff polling otherwise.
+     *
+     * @param checkIntervalInMs interval in milliseconds in which the interruptionCheck is executed while waiting.
+     * @param timeoutInSec      max time to wait. The current job state is returned if the timeout is reached. Null to wait forever.
+     * @param interruptionCheck check that may abort waiting by throwing an {@link InterruptedException}.
+     */
+    public Job awaitJob(String pid, String jobId, int checkIntervalInMs, Integer timeoutInSec,
                         boolean includeCommand, boolean includeAffectedIds, InterruptionCheck interruptionCheck) throws InterruptedException {
-        //todo use sse if available
-
-        long start = System.currentTimeMillis();
-        Job jobUpdate = jobs.getJob(pid, jobId, List.of(PROGRESS));
-
-        if (interruptionCheck != null)
-            interruptionCheck.check();
-
-
-        while (jobUpdate.getProgress().getState().ordinal() <= JobProgress.StateEnum.RUNNING.ordinal()) {
-            try {
-                Thread.sleep(waitTimeInSec); //todo do not busy wait
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            jobUpdate = jobs.getJob(pid, jobUpdate.getId(), List.of(NONE));
-
-            if (interruptionCheck != null)
-                interruptionCheck.check();
-
-            if (timeoutInSec != null && System.currentTimeMillis() - start > timeoutInSec * 1000) {
-                return jobUpdate;
+        final long start = System.currentTimeMillis();
+        final CompletableFuture<Job> future = awaitJobAsync(pid, jobId);
+        Job jobUpdate;
+        try {
+            while (true) {
+                if (interruptionCheck != null)
+                    interruptionCheck.check();
+                try {
+                    jobUpdate = future.get(Math.max(1, checkIntervalInMs), TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    if (timeoutInSec != null && System.currentTimeMillis() - start > timeoutInSec * 1000L) {
+                        future.cancel(false);
+                        return jobs.getJob(pid, jobId, List.of(PROGRESS));
+                    }
+                }
             }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re)
+                throw re;
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            throw e;
         }
 
         if (includeCommand || includeAffectedIds) {
@@ -162,6 +172,125 @@ public class NightSkyClient implements AutoCloseable {
         return jobUpdate;
     }
 
+    /**
+     * Non-blocking wait for multiple jobs. Completes when all jobs are finished (DONE, FAILED or CANCELED)
+     * or exceptionally as soon as one of the jobs cannot be tracked anymore (e.g. because it has been deleted).
+     *
+     * @return future containing the finished jobs (with progress info) in the order of the given job ids.
+     */
+    public CompletableFuture<List<Job>> awaitJobsAsync(String pid, Collection<String> jobIds) {
+        final List<CompletableFuture<Job>> futures = jobIds.stream().map(jobId -> awaitJobAsync(pid, jobId)).toList();
+        final CompletableFuture<List<Job>> all = CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .thenApply(v -> futures.stream().map(CompletableFuture::join).toList());
+        // propagate cancellation to free listeners and pollers of the single jobs
+        all.whenComplete((r, e) -> {
+            if (all.isCancelled())
+                futures.forEach(f -> f.cancel(false));
+        });
+        return all;
+    }
+
+    /**
+     * Non-blocking wait for a job. Completes with the finished job (with progress info) when it is DONE, FAILED or CANCELED.
+     * <p>
+     * If job event listening is enabled (see {@link #enableEventListening(DataEventType...)}) the future is completed
+     * by the SSE job events, so no thread is blocked and no poll-interval latency is added. Since single events may
+     * still get lost (e.g. dropped by the server for a slow client), a slow poll (from {@link #JOB_SAFETY_POLL_MIN_DELAY}
+     * up to {@link #JOB_POLL_MAX_DELAY}) keeps running alongside the subscription. Otherwise, or if the
+     * event stream terminates, the job is polled without blocking using an exponential backoff
+     * (from {@link #JOB_POLL_MIN_DELAY} up to {@link #JOB_POLL_MAX_DELAY}).
+     * Cancelling the returned future stops tracking the job, but does not cancel the job itself.
+     */
+    public CompletableFuture<Job> awaitJobAsync(String pid, String jobId) {
+        final CompletableFuture<Job> future = new CompletableFuture<>();
+        if (!isJobEventListeningEnabled()) {
+            pollJobAsync(pid, jobId, future);
+            return future;
+        }
+
+        final Flow.Subscriber<DataObjectEvent<?>> subscriber = new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(DataObjectEvent<?> event) {
+                if (event.getData() instanceof Job job && isFinished(job))
+                    future.complete(job);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                LOG.warn("SSE connection failed while waiting for job '{}'. Falling back to polling.", jobId);
+                pollJobAsync(pid, jobId, future);
+            }
+
+            @Override
+            public void onComplete() {
+                if (!future.isDone())
+                    pollJobAsync(pid, jobId, future);
+            }
+        };
+
+        addJobEventListener(subscriber, jobId, pid);
+        future.whenComplete((j, e) -> removeEventListener(subscriber));
+
+        // the job might have finished before we started listening
+        final Disposable initialFetch = fetchJob(pid, jobId).subscribe(job -> {
+            if (isFinished(job))
+                future.complete(job);
+        }, future::completeExceptionally);
+        future.whenComplete((j, e) -> initialFetch.dispose());
+
+        // safety net in case the finishing event gets lost
+        pollJobAsync(pid, jobId, future, JOB_SAFETY_POLL_MIN_DELAY);
+
+        return future;
+    }
+
+    private void pollJobAsync(String pid, String jobId, CompletableFuture<Job> future) {
+        if (future.isDone())
+            return;
+        Disposable polling = pollJobUntilFinished(pid, jobId, JOB_POLL_MIN_DELAY)
+                .subscribe(future::complete, future::completeExceptionally);
+        future.whenComplete((j, e) -> polling.dispose());
+    }
+
+    private void pollJobAsync(String pid, String jobId, CompletableFuture<Job> future, Duration initialDelay) {
+        if (future.isDone())
+            return;
+        Disposable polling = Mono.delay(initialDelay)
+                .then(Mono.defer(() -> pollJobUntilFinished(pid, jobId, nextPollDelay(initialDelay))))
+                .subscribe(future::complete, future::completeExceptionally);
+        future.whenComplete((j, e) -> polling.dispose());
+    }
+
+    private Mono<Job> pollJobUntilFinished(String pid, String jobId, Duration delay) {
+        return fetchJob(pid, jobId).flatMap(job -> isFinished(job)
+                ? Mono.just(job)
+                : Mono.delay(delay).then(Mono.defer(() -> pollJobUntilFinished(pid, jobId, nextPollDelay(delay)))));
+    }
+
+    private static Duration nextPollDelay(Duration delay) {
+        Duration next = delay.multipliedBy(2);
+        return next.compareTo(JOB_POLL_MAX_DELAY) > 0 ? JOB_POLL_MAX_DELAY : next;
+    }
+
+    private Mono<Job> fetchJob(String pid, String jobId) {
+        return jobs.getJobWithResponseSpec(pid, jobId, List.of(PROGRESS)).bodyToMono(Job.class);
+    }
+
+    private static boolean isFinished(Job job) {
+        return job.getProgress() != null && job.getProgress().getState() != null
+                && job.getProgress().getState().ordinal() > JobProgress.StateEnum.RUNNING.ordinal();
+    }
+
+    private synchronized boolean isJobEventListeningEnabled() {
+        return sseConnection != null && !sseConnection.isDisposed() && sseBroadcast != null
+                && sseEventsToListenOn != null && sseEventsToListenOn.contains(DataEventType.JOB);
+    }
+
     public void enableEventListening() {
         enableEventListening(DataEventType.JOB, DataEventType.PROJECT);
     }
@@ -171,6 +300,14 @@ public class NightSkyClient implements AutoCloseable {
     }
 
     public void enableEventListening(EnumSet<DataEventType> events) {
+        enableEventListening(events, FluxToFlowBroadcast.DEFAULT_BUFFER_SIZE, FluxToFlowBroadcast.OverflowPolicy.COALESCE_BY_KEY);
+    }
+
+    /**
+     * @param bufferSize     max number of undelivered events per listener.
+     * @param overflowPolicy how to handle events for listeners that are too slow to keep up with the event stream.
+     */
+    public void enableEventListening(EnumSet<DataEventType> events, int bufferSize, FluxToFlowBroadcast.OverflowPolicy overflowPolicy) {
         if (events == null || events.isEmpty())
             throw new IllegalArgumentException("At least one event type needs to be specified!");
 
@@ -189,7 +326,7 @@ public class NightSkyClient implements AutoCloseable {
                 .doOnError(t -> LOG.error("Error in SSE Stream", t))
                 .onErrorResume(e -> Mono.empty());
 
-        sseBroadcast = new FluxToFlowBroadcast(apiClient.getObjectMapper());
+        sseBroadcast = new FluxToFlowBroadcast(apiClient.getObjectMapper(), asyncExecutor, bufferSize, overflowPolicy);
         sseConnection = eventStream
                 .publishOn(asyncExecutor == null ? Schedulers.single() : Schedulers.fromExecutor(asyncExecutor))
                 .subscribe(
@@ -21,6 +21,8 @@
 package de.unijena.bioinf.sse;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import de.unijena.bioinf.ms.nightsky.sdk.model.Job;
+import de.unijena.bioinf.ms.nightsky.sdk.model.ProjectChangeEvent;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.LoggerFactory;
@@ -28,20 +30,73 @@ import org.springframework.http.codec.ServerSentEvent;
 
 import java.io.Closeable;
 import java.util.*;
-import java.util.concurrent.Flow;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Broadcasts SSE events to {@link Flow.Subscriber}s.
+ * <p>
+ * Every subscriber gets its own bounded buffer and is served asynchronously on the delivery executor, so a slow
+ * subscriber does not block the event stream or other subscribers. Events are only delivered as requested via
+ * {@link Flow.Subscription#request(long)}. If the buffer of a subscriber is full, events are discarded according to
+ * the {@link OverflowPolicy}.
+ */
 public class FluxToFlowBroadcast implements Closeable {
+    public static final int DEFAULT_BUFFER_SIZE = 10000;
+
+    public enum OverflowPolicy {
+        /**
+         * Discard the oldest buffered event if the buffer is full.
+         */
+        DROP_OLDEST,
+        /**
+         * Replace a buffered event that describes the same object (e.g. an older state of the same job)
+         * by the new one. Discard the oldest buffered event if the buffer is still full.
+         */
+        COALESCE_BY_KEY
+    }
 
-    private final Map<String, List<Flow.Subscriber<DataObjectEvent<?>>>> subscribers = new HashMap<>();
+    // routing key -> channels
+    private final Map<String, Set<Channel>> subscribers = new ConcurrentHashMap<>();
+    private final Map<Flow.Subscriber<DataObjectEvent<?>>, Channel> channels = new ConcurrentHashMap<>();
 
     private final ObjectMapper objectMapper;
+    private final Executor deliveryExecutor;
+    private final boolean ownsExecutor;
+    private final int bufferSize;
+    private final OverflowPolicy overflowPolicy;
 
     public FluxToFlowBroadcast(ObjectMapper objectMapper) {
+        this(objectMapper, null, DEFAULT_BUFFER_SIZE, OverflowPolicy.COALESCE_BY_KEY);
+    }
+
+    /**
+     * @param deliveryExecutor executor used to deliver events to the subscribers. If null, an internal cached daemon
+     *                         thread pool is used and shut down on {@link #close()}.
+     * @param bufferSize       max number of undelivered events per subscriber.
+     * @param overflowPolicy   how to handle events for subscribers with a full buffer.
+     */
+    public FluxToFlowBroadcast(ObjectMapper objectMapper, @Nullable Executor deliveryExecutor, int bufferSize, @NotNull OverflowPolicy overflowPolicy) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("Buffer size must be > 0");
         this.objectMapper = objectMapper;
+        this.ownsExecutor = deliveryExecutor == null;
+        this.deliveryExecutor = deliveryExecutor != null ? deliveryExecutor : Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "sse-event-delivery");
+            t.setDaemon(true);
+            return t;
+        });
+        this.bufferSize = bufferSize;
+        this.overflowPolicy = overflowPolicy;
     }
 
     public synchronized void unSubscribe(Flow.Subscriber<DataObjectEvent<?>> subscriber) {
-        subscribers.values().forEach(v -> v.remove(subscriber));
+        Channel channel = channels.remove(subscriber);
+        if (channel != null) {
+            channel.cancelled = true;
+            removeRoutes(channel);
+        }
     }
 
     public void subscribe(Flow.Subscriber<DataObjectEvent<?>> subscriber, @NotNull EnumSet<DataEventType> eventsToListenOn) {
@@ -56,36 +111,39 @@ public class FluxToFlowBroadcast implements Closeable {
         subscribe(subscriber, jobId, projectId, EnumSet.of(DataEventType.JOB));
     }
 
-    private synchronized void subscribe(Flow.Subscriber<DataObjectEvent<?>> subscriber, @Nullable String jobId, @Nullable String projectId, @NotNull EnumSet<DataEventType> eventsToListenOn) {
+    private void subscribe(Flow.Subscriber<DataObjectEvent<?>> subscriber, @Nullable String jobId, @Nullable String projectId, @NotNull EnumSet<DataEventType> eventsToListenOn) {
         if (eventsToListenOn.isEmpty())
             throw new IllegalArgumentException("events to listen on must not be empty");
 
-        if (projectId != null)
-            // filter by specific project
-            eventsToListenOn.forEach(e -> {
-                StringBuilder b = new StringBuilder().append(projectId).append(".").append(e.name());
-                // filter by specific job
-                if (jobId != null && !jobId.isBlank() && e == DataEventType.JOB)
-                    b.append(".").append(jobId);
-                subscribers.computeIfAbsent(b.toString(), k -> new ArrayList<>()).add(subscriber);
-            });
-        else
-            // listen to events from all projects
-            eventsToListenOn.forEach(e -> subscribers.computeIfAbsent(e.name(), k -> new ArrayList<>()).add(subscriber));
-
+        final Channel channel;
+        final boolean newChannel;
+        synchronized (this) {
+            Channel existing = channels.get(subscriber);
+            newChannel = existing == null || existing.cancelled;
+            channel = newChannel ? new Channel(subscriber) : existing;
+            if (newChannel)
+                channels.put(subscriber, channel);
 
-        subscriber.onSubscribe(new Flow.Subscription() {
-            @Override
-            public void request(long n) {
-            }
+            if (projectId != null)
+                // filter by specific project
+                eventsToListenOn.forEach(e -> {
+                    StringBuilder b = new StringBuilder().append(projectId).append(".").append(e.name());
+                    // filter by specific job
+                    if (jobId != null && !jobId.isBlank() && e == DataEventType.JOB)
+                        b.append(".").append(jobId);
+                    subscribers.computeIfAbsent(b.toString(), k -> new CopyOnWriteArraySet<>()).add(channel);
+                });
+            else
+                // listen to events from all projects
+                eventsToListenOn.forEach(e -> subscribers.computeIfAbsent(e.name(), k -> new CopyOnWriteArraySet<>()).add(channel));
+        }
 
-            @Override
-            public void cancel() {
-            }
-        });
+        // the same subscriber may listen on multiple routes but is subscribed only once
+        if (newChannel)
+            channel.start();
     }
 
-    public synchronized void onNext(@NotNull ServerSentEvent<String> sse) {
+    public void onNext(@NotNull ServerSentEvent<String> sse) {
         final String[] evtSplit = Optional.ofNullable(sse.event()).map(s -> s.split("[.]")).filter(a -> a.length > 1).orElse(null);
         if (evtSplit == null || !DataObjectEvents.isKnownObjectDataType(evtSplit[1])) {
             LoggerFactory.getLogger(getClass()).warn("Skipping unknown sse event! {}", Arrays.toString(evtSplit));
@@ -93,48 +151,205 @@ public class FluxToFlowBroadcast implements Closeable {
         }
 
         final String evtType = evtSplit[1];
-        DataObjectEvent<?> event = DataObjectEvents.fromJsonData(evtType, sse.data(), objectMapper);
+        final DataObjectEvent<?> event = DataObjectEvents.fromJsonData(evtType, sse.data(), objectMapper);
 
+        // collect channels first, so that a subscriber listening on multiple matching routes gets the event only once.
+        final Set<Channel> receivers = new LinkedHashSet<>();
         //broadcast with project.type.job filter or project.type filter
-        subscribers.getOrDefault(sse.event(), List.of()).stream().toList().forEach(e -> {
-            if (e instanceof PropertyChangeSubscriber)
-                ((PropertyChangeSubscriber) e).onNext(evtType, event);
-            else
-                e.onNext(event);
-        });
-
-        if (evtSplit.length > 2 || event.dataType == DataEventType.JOB) {
+        receivers.addAll(subscribers.getOrDefault(sse.event(), Set.of()));
+        if (evtSplit.length > 2 || event.dataType == DataEventType.JOB)
             //broadcast with project filter only if event is a job event
-            subscribers.getOrDefault(evtSplit[0] + "." + evtSplit[1], List.of()).stream().toList().forEach(e -> {
-                if (e instanceof PropertyChangeSubscriber)
-                    ((PropertyChangeSubscriber) e).onNext(evtType, event);
-                else
-                    e.onNext(event);
-            });
-        }
-
+            receivers.addAll(subscribers.getOrDefault(evtSplit[0] + "." + evtSplit[1], Set.of()));
         //broadcast without additional filter, just by type
-        subscribers.getOrDefault(evtType, List.of()).stream().toList().forEach(e -> {
-            if (e instanceof PropertyChangeSubscriber)
-                ((PropertyChangeSubscriber) e).onNext(evtType, event);
-            else
-                e.onNext(event);
-        });
+        receivers.addAll(subscribers.getOrDefault(evtType, Set.of()));
 
+        if (receivers.isEmpty())
+            return;
 
+        final Object key = overflowPolicy == OverflowPolicy.COALESCE_BY_KEY ? coalesceKey(evtSplit[0], event) : null;
+        receivers.forEach(c -> c.offer(new Item(evtType, event), key));
     }
 
-    public synchronized void onError(Throwable throwable) {
-        subscribers.values().stream().flatMap(Collection::stream).toList().forEach(e -> e.onError(throwable));
+    public void onError(Throwable throwable) {
+        List.copyOf(channels.values()).forEach(c -> c.terminate(throwable));
     }
 
-    public synchronized void onComplete() {
-        subscribers.values().stream().flatMap(Collection::stream).toList().forEach((Flow.Subscriber::onComplete));
+    public void onComplete() {
+        List.copyOf(channels.values()).forEach(c -> c.terminate(null));
     }
 
     @Override
     public synchronized void close() {
         onComplete();
         subscribers.clear();
+        channels.clear();
+        if (ownsExecutor)
+            ((ExecutorService) deliveryExecutor).shutdown();
+    }
+
+    private synchronized void removeRoutes(Channel channel) {
+        subscribers.values().forEach(v -> v.remove(channel));
+        subscribers.values().removeIf(Set::isEmpty);
+    }
+
+    /**
+     * Events with the same key describe the same object, so only the latest one needs to be delivered.
+     * Null for events that must never be coalesced.
+     */
+    @Nullable
+    private static Object coalesceKey(String projectId, DataObjectEvent<?> event) {
+        if (event.getData() instanceof Job job && job.getId() != null)
+            return List.of(projectId, DataEventType.JOB, job.getId());
+        if (event.getData() instanceof ProjectChangeEvent pce)
+            // identical change notifications are redundant
+            return Arrays.asList(projectId, DataEventType.PROJECT, pce.getEventType(), pce.getCompoundId(),
+                    pce.getFeaturedId(), pce.getFormulaId(), pce.getStructureInChIKey());
+        return null;
+    }
+
+    private record Item(String evtType, DataObjectEvent<?> event) {
+    }
+
+    /**
+     * Bounded per subscriber buffer that serializes all signals to the subscriber and honors its demand.
+     */
+    private final class Channel implements Flow.Subscription {
+        private final Flow.Subscriber<DataObjectEvent<?>> subscriber;
+        // insertion ordered, keys are the coalesce keys or unique objects for events that cannot be coalesced
+        private final LinkedHashMap<Object, Item> buffer = new LinkedHashMap<>();
+        private final AtomicLong requested = new AtomicLong();
+        // starts at 1 to keep events from being delivered before onSubscribe has been called.
+        private final AtomicInteger wip = new AtomicInteger(1);
+        private volatile boolean cancelled = false;
+        private volatile boolean terminated = false;
+        private volatile Throwable error = null;
+        private long dropped = 0;
+
+        private Channel(Flow.Subscriber<DataObjectEvent<?>> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        private void start() {
+            deliveryExecutor.execute(() -> {
+                try {
+                    subscriber.onSubscribe(this);
+                } catch (Throwable t) {
+                    LoggerFactory.getLogger(FluxToFlowBroadcast.class).error("Error when subscribing to SSE events.", t);
+                    cancel();
+                }
+                drainLoop();
+            });
+        }
+
+        private void offer(Item item, @Nullable Object key) {
+            if (cancelled || terminated)
+                return;
+            synchronized (buffer) {
+                buffer.put(key != null ? key : new Object(), item);
+                if (buffer.size() > bufferSize) {
+                    Iterator<Item> it = buffer.values().iterator();
+                    it.next();
+                    it.remove();
+                    if (dropped++ % 1000 == 0)
+                        LoggerFactory.getLogger(FluxToFlowBroadcast.class).warn("SSE subscriber '{}' is too slow. Dropped {} events so far.", subscriber, dropped);
+                }
+            }
+            drain();
+        }
+
+        private void terminate(@Nullable Throwable throwable) {
+            if (terminated)
+                return;
+            error = throwable;
+            terminated = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Requested number of events must be > 0 but was " + n));
+                return;
+            }
+            requested.getAndAccumulate(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            synchronized (buffer) {
+                buffer.clear();
+            }
+            detach();
+        }
+
+        private void detach() {
+            synchronized (FluxToFlowBroadcast.this) {
+                if (channels.remove(subscriber, this))
+                    removeRoutes(this);
+            }
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() == 0)
+                deliveryExecutor.execute(this::drainLoop);
+        }
+
+        private void drainLoop() {
+            int missed = 1;
+            while (true) {
+                if (cancelled)
+                    return;
+
+                while (requested.get() > 0) {
+                    final Item item;
+                    synchronized (buffer) {
+                        if (buffer.isEmpty())
+                            break;
+                        Iterator<Item> it = buffer.values().iterator();
+                        item = it.next();
+                        it.remove();
+                    }
+                    if (requested.get() != Long.MAX_VALUE)
+                        requested.decrementAndGet();
+                    deliver(item);
+                    if (cancelled)
+                        return;
+                }
+
+                if (terminated && (error != null || isBufferEmpty())) {
+                    cancelled = true;
+                    detach();
+                    if (error != null)
+                        subscriber.onError(error);
+                    else
+                        subscriber.onComplete();
+                    return;
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0)
+                    return;
+            }
+        }
+
+        private boolean isBufferEmpty() {
+            synchronized (buffer) {
+                return buffer.isEmpty();
+            }
+        }
+
+        private void deliver(Item item) {
+            try {
+                if (subscriber instanceof PropertyChangeSubscriber pcs)
+                    pcs.onNext(item.evtType(), item.event());
+                else
+                    subscriber.onNext(item.event());
+            } catch (Throwable t) {
+                LoggerFactory.getLogger(FluxToFlowBroadcast.class).error("Error when delivering SSE event to subscriber.", t);
+            }
+        }
     }
 }
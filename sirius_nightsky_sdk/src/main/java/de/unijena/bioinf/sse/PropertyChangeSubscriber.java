@@ -37,7 +37,8 @@ public class PropertyChangeSubscriber implements Flow.Subscriber<DataObjectEvent
 
     @Override
     public void onSubscribe(Flow.Subscription subscription) {
-
+        // listeners cannot signal demand, events are buffered and dropped by the broadcast if the listener is too slow.
+        subscription.request(Long.MAX_VALUE);
     }
 
     public void onNext(@Nullable String propertyName, DataObjectEvent<?> item) {
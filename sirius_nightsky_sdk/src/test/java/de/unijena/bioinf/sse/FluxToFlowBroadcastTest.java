@@ -0,0 +1,158 @@
+/*
+ *
+ *  This file is part of the SIRIUS library for analyzing MS and MS/MS data
+ *
+ *  Copyright (C) 2013-2020 Kai Dührkop, Markus Fleischauer, Marcus Ludwig, Martin A. Hoffman, Fleming Kretschmer and Sebastian Böcker,
+ *  Chair of Bioinformatics, Friedrich-Schiller University.
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 3 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License along with SIRIUS. If not, see <https://www.gnu.org/licenses/lgpl-3.0.txt>
+ */
+
+package de.unijena.bioinf.sse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.unijena.bioinf.ms.nightsky.sdk.model.Job;
+import de.unijena.bioinf.ms.nightsky.sdk.model.JobProgress;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.codec.ServerSentEvent;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class FluxToFlowBroadcastTest {
+    private static final int BUFFER_SIZE = 5;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static ServerSentEvent<String> jobEvent(String jobId, String state, int progress) {
+        return ServerSentEvent.builder("{\"dataType\":\"JOB\",\"data\":{\"id\":\"" + jobId + "\",\"progress\":{\"state\":\""
+                        + state + "\",\"currentProgress\":" + progress + "}}}")
+                .event("p1.JOB." + jobId).build();
+    }
+
+    /**
+     * Subscriber that blocks on the first event until released, to simulate a slow consumer.
+     */
+    private static class SlowSubscriber implements Flow.Subscriber<DataObjectEvent<?>> {
+        final CountDownLatch firstEventReceived = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(1);
+        final List<Job> received = new CopyOnWriteArrayList<>();
+        volatile boolean completedAfterLastEvent = false;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(DataObjectEvent<?> item) {
+            received.add((Job) item.getData());
+            firstEventReceived.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completedAfterLastEvent = true;
+            completed.countDown();
+        }
+    }
+
+    private void floodSlowSubscriber(FluxToFlowBroadcast.OverflowPolicy policy, boolean sameJob) throws InterruptedException {
+        final FluxToFlowBroadcast broadcast = new FluxToFlowBroadcast(new ObjectMapper(), executor, BUFFER_SIZE, policy);
+        final SlowSubscriber subscriber = new SlowSubscriber();
+        broadcast.subscribe(subscriber, "p1", EnumSet.of(DataEventType.JOB));
+
+        broadcast.onNext(jobEvent("j0", "RUNNING", 0));
+        Assert.assertTrue(subscriber.firstEventReceived.await(10, TimeUnit.SECONDS));
+
+        // subscriber is blocked now, so everything has to be buffered
+        for (int i = 1; i <= 1000; i++)
+            broadcast.onNext(jobEvent(sameJob ? "j1" : "j" + i, "RUNNING", i));
+        broadcast.onNext(jobEvent(sameJob ? "j1" : "jLast", "DONE", 1001));
+        broadcast.onComplete();
+
+        subscriber.release.countDown();
+        Assert.assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(subscriber.completedAfterLastEvent);
+
+        // first (blocking) event plus at most one full buffer
+        Assert.assertTrue("Buffer not bounded: " + subscriber.received.size(), subscriber.received.size() <= BUFFER_SIZE + 1);
+        final Job last = subscriber.received.get(subscriber.received.size() - 1);
+        Assert.assertEquals(JobProgress.StateEnum.DONE, last.getProgress().getState());
+        Assert.assertEquals(sameJob ? "j1" : "jLast", last.getId());
+    }
+
+    @Test
+    public void testSlowSubscriberDropOldest() throws InterruptedException {
+        floodSlowSubscriber(FluxToFlowBroadcast.OverflowPolicy.DROP_OLDEST, false);
+    }
+
+    @Test
+    public void testSlowSubscriberCoalesceByKey() throws InterruptedException {
+        floodSlowSubscriber(FluxToFlowBroadcast.OverflowPolicy.COALESCE_BY_KEY, true);
+    }
+
+    @Test
+    public void testCoalesceKeepsLatestStatePerJob() throws InterruptedException {
+        final FluxToFlowBroadcast broadcast = new FluxToFlowBroadcast(new ObjectMapper(), executor, BUFFER_SIZE,
+                FluxToFlowBroadcast.OverflowPolicy.COALESCE_BY_KEY);
+        final SlowSubscriber subscriber = new SlowSubscriber();
+        broadcast.subscribe(subscriber, "p1", EnumSet.of(DataEventType.JOB));
+
+        broadcast.onNext(jobEvent("j0", "RUNNING", 0));
+        Assert.assertTrue(subscriber.firstEventReceived.await(10, TimeUnit.SECONDS));
+
+        // two interleaved jobs fit into the buffer, so no job must get lost
+        for (int i = 1; i <= 100; i++) {
+            broadcast.onNext(jobEvent("j1", "RUNNING", i));
+            broadcast.onNext(jobEvent("j2", "RUNNING", i));
+        }
+        broadcast.onNext(jobEvent("j1", "DONE", 101));
+        broadcast.onNext(jobEvent("j2", "FAILED", 101));
+        broadcast.onComplete();
+
+        subscriber.release.countDown();
+        Assert.assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+
+        Assert.assertEquals(3, subscriber.received.size());
+        Assert.assertEquals("j1", subscriber.received.get(1).getId());
+        Assert.assertEquals(JobProgress.StateEnum.DONE, subscriber.received.get(1).getProgress().getState());
+        Assert.assertEquals("j2", subscriber.received.get(2).getId());
+        Assert.assertEquals(JobProgress.StateEnum.FAILED, subscriber.received.get(2).getProgress().getState());
+    }
+}
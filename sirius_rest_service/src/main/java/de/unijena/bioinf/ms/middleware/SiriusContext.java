@@ -19,6 +19,7 @@
 
 package de.unijena.bioinf.ms.middleware;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import de.unijena.bioinf.ChemistryBase.jobs.SiriusJobs;
 import de.unijena.bioinf.jjobs.JJob;
 import de.unijena.bioinf.jjobs.JobManager;
@@ -55,8 +56,11 @@ public class SiriusContext{
     private String apiVersion;
 
     @Bean
-    public EventService<?> eventService(@Value("${de.unijena.bioinf.siriusNightsky.sse.timeout:#{120000}}") long emitterTimeout){
-        return new SseEventService(emitterTimeout);
+    public EventService<?> eventService(@Value("${de.unijena.bioinf.siriusNightsky.sse.timeout:#{120000}}") long emitterTimeout,
+                                        @Value("${de.unijena.bioinf.siriusNightsky.sse.jobEventWindow:#{250}}") long jobEventWindow,
+                                        @Value("${de.unijena.bioinf.siriusNightsky.sse.maxQueuedEvents:#{1000}}") int maxQueuedEvents,
+                                        ObjectMapper objectMapper){
+        return new SseEventService(emitterTimeout, jobEventWindow, maxQueuedEvents, objectMapper);
     }
 
     @Bean
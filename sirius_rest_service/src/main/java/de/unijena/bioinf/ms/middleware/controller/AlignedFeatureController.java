@@ -19,6 +19,7 @@
 
 package de.unijena.bioinf.ms.middleware.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import de.unijena.bioinf.chemdb.ChemicalDatabaseException;
 import de.unijena.bioinf.chemdb.custom.CustomDataSources;
 import de.unijena.bioinf.ms.middleware.configuration.GlobalConfig;
@@ -27,10 +28,12 @@ import de.unijena.bioinf.ms.middleware.model.features.*;
 import de.unijena.bioinf.ms.middleware.model.spectra.AnnotatedSpectrum;
 import de.unijena.bioinf.ms.middleware.model.spectra.Spectrums;
 import de.unijena.bioinf.ms.middleware.service.databases.ChemDbService;
+import de.unijena.bioinf.ms.middleware.service.projects.Project;
 import de.unijena.bioinf.ms.middleware.service.projects.ProjectsProvider;
 import de.unijena.bioinf.spectraldb.entities.Ms2ReferenceSpectrum;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import lombok.SneakyThrows;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.LoggerFactory;
 import org.springdoc.core.annotations.ParameterObject;
@@ -39,13 +42,17 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
 
+import static de.unijena.bioinf.ms.middleware.controller.NdJsonStreams.ndjson;
+import static de.unijena.bioinf.ms.middleware.controller.NdJsonStreams.requireValidId;
 import static de.unijena.bioinf.ms.middleware.service.annotations.AnnotationUtils.removeNone;
 
 @RestController
@@ -57,12 +64,14 @@ public class AlignedFeatureController {
     private final ProjectsProvider<?> projectsProvider;
     private final ChemDbService chemDbService;
     private final GlobalConfig globalConfig;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public AlignedFeatureController(ProjectsProvider<?> projectsProvider, ChemDbService chemDbService, GlobalConfig globalConfig) {
+    public AlignedFeatureController(ProjectsProvider<?> projectsProvider, ChemDbService chemDbService, GlobalConfig globalConfig, ObjectMapper objectMapper) {
         this.projectsProvider = projectsProvider;
         this.chemDbService = chemDbService;
         this.globalConfig = globalConfig;
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -96,6 +105,61 @@ public class AlignedFeatureController {
                 .getContent();
     }
 
+    /**
+     * Stream features (aligned over runs) of the given project-space as newline delimited JSON (one feature per line),
+     * ordered by their identifier. Features are written directly from the project, so even large projects can be
+     * transferred without loading them into memory at once.
+     * To continue reading, request the next chunk with the identifier of the last received feature as 'after' parameter.
+     *
+     * @param projectId project-space to read from.
+     * @param after     identifier of the last feature of the previous chunk. Omit to start with the first feature.
+     * @param limit     max number of features to be returned. Values &lt;= 0 return all remaining features.
+     * @param optFields set of optional fields to be included. Use 'none' only to override defaults.
+     * @return AlignedFeatures with additional annotations and MS/MS data (if specified) as NDJSON.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getAlignedFeaturesStream(
+            @PathVariable String projectId,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "0") int limit,
+            @RequestParam(defaultValue = "") EnumSet<AlignedFeature.OptField> optFields
+    ) {
+        requireValidId("after", after, true);
+        Project<?> project = projectsProvider.getProjectOrThrow(projectId);
+        EnumSet<AlignedFeature.OptField> fields = removeNone(optFields);
+        return ndjson(objectMapper, () -> project.streamAlignedFeatures(after, limit, fields));
+    }
+
+    /**
+     * Get the features (aligned over runs) with the given identifiers from the specified project-space in a single request.
+     * Identifiers that do not exist in the project are skipped.
+     *
+     * @param projectId         project-space to read from.
+     * @param alignedFeatureIds identifiers of the features (aligned over runs) to access.
+     * @param optFields         set of optional fields to be included. Use 'none' only to override defaults.
+     * @return AlignedFeatures with additional annotations and MS/MS data (if specified) in the order of the given identifiers.
+     */
+    @PostMapping(value = "/by-ids", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<AlignedFeature> getAlignedFeaturesByIds(
+            @PathVariable String projectId, @RequestBody List<String> alignedFeatureIds,
+            @RequestParam(defaultValue = "") EnumSet<AlignedFeature.OptField> optFields
+    ) {
+        return projectsProvider.getProjectOrThrow(projectId).findAlignedFeaturesByIds(alignedFeatureIds, removeNone(optFields));
+    }
+
+    /**
+     * Get the ids of all features (aligned over runs) in the given project-space that match the given filter criteria.
+     * The filter is evaluated inside the project, so clients do not need to request the data of each feature to filter it.
+     *
+     * @param projectId project-space to read from.
+     * @param filter    criteria a feature has to satisfy. Unset criteria are ignored.
+     * @return ids of the matching features (aligned over runs).
+     */
+    @PostMapping(value = "/filter", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<String> filterAlignedFeatureIds(@PathVariable String projectId, @RequestBody AlignedFeatureFilter filter) {
+        return projectsProvider.getProjectOrThrow(projectId).findAlignedFeatureIdsByFilter(filter);
+    }
+
     /**
      * Delete feature (aligned over runs) with the given identifier from the specified project-space.
      *
@@ -395,6 +459,31 @@ public class AlignedFeatureController {
         return getFormulaCandidatesPaged(projectId, alignedFeatureId, globalConfig.unpaged(), optFields).stream().toList();
     }
 
+    /**
+     * Stream the FormulaCandidates of this feature as newline delimited JSON (one candidate per line), ordered by rank.
+     * To continue reading, request the next chunk with the rank of the last received candidate as 'afterRank' parameter.
+     *
+     * @param projectId        project-space to read from.
+     * @param alignedFeatureId feature (aligned over runs) the formula result belongs to.
+     * @param afterRank        rank of the last candidate of the previous chunk. Omit to start with the top candidate.
+     * @param limit            max number of candidates to be returned. Values &lt;= 0 return all remaining candidates.
+     * @param optFields        set of optional fields to be included. Use 'none' only to override defaults.
+     * @return FormulaCandidates of this feature as NDJSON.
+     */
+    @GetMapping(value = "/{alignedFeatureId}/formulas/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getFormulaCandidatesStream(
+            @PathVariable String projectId, @PathVariable String alignedFeatureId,
+            @RequestParam(required = false) Integer afterRank,
+            @RequestParam(defaultValue = "0") int limit,
+            @RequestParam(defaultValue = "") EnumSet<FormulaCandidate.OptField> optFields
+    ) {
+        requireValidId("alignedFeatureId", alignedFeatureId, false);
+        Project<?> project = projectsProvider.getProjectOrThrow(projectId);
+        project.findAlignedFeaturesById(alignedFeatureId, EnumSet.noneOf(AlignedFeature.OptField.class)); //404 if feature does not exist
+        EnumSet<FormulaCandidate.OptField> fields = removeNone(optFields);
+        return ndjson(objectMapper, () -> project.streamFormulaCandidatesByFeatureId(alignedFeatureId, afterRank, limit, fields));
+    }
+
     /**
      * FormulaResultContainers for the given 'formulaId' with minimal information.
      * Can be enriched with an optional results overview and formula candidate information.
@@ -712,6 +801,40 @@ public class AlignedFeatureController {
         return res;
     }
 
+    /**
+     * Predicted fingerprints (CSI:FingerID) and compound class probabilities (CANOPUS) of multiple formula results
+     * of the given feature in a single request.
+     * Formula results without predictions are skipped.
+     *
+     * @param projectId        project-space to read from.
+     * @param alignedFeatureId feature (aligned over runs) the formula results belong to.
+     * @param formulaIds       identifiers of the requested formula results. If empty, predictions of all formula results are returned.
+     * @return predictions in the order of the given identifiers
+     */
+    @PostMapping(value = "/{alignedFeatureId}/formulas/predictions", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<FormulaPredictions> getFormulaPredictions(@PathVariable String projectId, @PathVariable String alignedFeatureId,
+                                                          @RequestBody(required = false) List<String> formulaIds) {
+        return projectsProvider.getProjectOrThrow(projectId)
+                .findFormulaPredictionsByFeatureId(alignedFeatureId, formulaIds == null || formulaIds.isEmpty() ? null : formulaIds);
+    }
+
+    /**
+     * Same as getFormulaPredictions but in a compact binary encoding that transfers the probabilities as float32 arrays.
+     * Layout (big-endian): int32 number of results; per result: modified UTF-8 formulaId followed by fingerprint,
+     * ClassyFire and NPC probabilities, each as int32 length (-1 if not available) and length float32 values.
+     *
+     * @param projectId        project-space to read from.
+     * @param alignedFeatureId feature (aligned over runs) the formula results belong to.
+     * @param formulaIds       identifiers of the requested formula results. If empty, predictions of all formula results are returned.
+     * @return binary encoded predictions in the order of the given identifiers
+     */
+    @SneakyThrows
+    @PostMapping(value = "/{alignedFeatureId}/formulas/predictions", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public byte[] getFormulaPredictionsBinary(@PathVariable String projectId, @PathVariable String alignedFeatureId,
+                                              @RequestBody(required = false) List<String> formulaIds) {
+        return FormulaPredictionsBinary.encode(getFormulaPredictions(projectId, alignedFeatureId, formulaIds));
+    }
+
     /**
      * Best matching compound classes,
      * Set of the highest scoring compound classes (CANOPUS) on each hierarchy level of  the ClassyFire and NPC ontology,
@@ -20,11 +20,13 @@
 
 package de.unijena.bioinf.ms.middleware.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import de.unijena.bioinf.ms.middleware.configuration.GlobalConfig;
 import de.unijena.bioinf.ms.middleware.model.compounds.Compound;
 import de.unijena.bioinf.ms.middleware.model.compounds.CompoundImport;
 import de.unijena.bioinf.ms.middleware.model.features.AlignedFeature;
 import de.unijena.bioinf.ms.middleware.model.features.TraceSet;
+import de.unijena.bioinf.ms.middleware.service.projects.Project;
 import de.unijena.bioinf.ms.middleware.service.projects.ProjectsProvider;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springdoc.core.annotations.ParameterObject;
@@ -33,15 +35,19 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.validation.Valid;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
 
+import static de.unijena.bioinf.ms.middleware.controller.NdJsonStreams.ndjson;
+import static de.unijena.bioinf.ms.middleware.controller.NdJsonStreams.requireValidId;
 import static de.unijena.bioinf.ms.middleware.service.annotations.AnnotationUtils.removeNone;
 
 @RestController
@@ -54,11 +60,13 @@ public class CompoundController {
 
     private final ProjectsProvider<?> projectsProvider;
     private final GlobalConfig globalConfig;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public CompoundController(ProjectsProvider<?> projectsProvider, GlobalConfig globalConfig) {
+    public CompoundController(ProjectsProvider<?> projectsProvider, GlobalConfig globalConfig, ObjectMapper objectMapper) {
         this.projectsProvider = projectsProvider;
         this.globalConfig = globalConfig;
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -92,6 +100,30 @@ public class CompoundController {
                 .stream().toList();
     }
 
+    /**
+     * Stream compounds (group of ion identities) of the given project-space as newline delimited JSON
+     * (one compound per line), ordered by their identifier.
+     * To continue reading, request the next chunk with the identifier of the last received compound as 'after' parameter.
+     *
+     * @param projectId project-space to read from.
+     * @param after     identifier of the last compound of the previous chunk. Omit to start with the first compound.
+     * @param limit     max number of compounds to be returned. Values &lt;= 0 return all remaining compounds.
+     * @param optFields set of optional fields to be included. Use 'none' only to override defaults.
+     * @return Compounds with additional optional fields (if specified) as NDJSON.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getCompoundsStream(@PathVariable String projectId,
+                                                                    @RequestParam(required = false) String after,
+                                                                    @RequestParam(defaultValue = "0") int limit,
+                                                                    @RequestParam(defaultValue = "") EnumSet<Compound.OptField> optFields,
+                                                                    @RequestParam(defaultValue = "") EnumSet<AlignedFeature.OptField> optFieldsFeatures) {
+        requireValidId("after", after, true);
+        Project<?> project = projectsProvider.getProjectOrThrow(projectId);
+        EnumSet<Compound.OptField> fields = removeNone(optFields);
+        EnumSet<AlignedFeature.OptField> featureFields = removeNone(optFieldsFeatures);
+        return ndjson(objectMapper, () -> project.streamCompounds(after, limit, fields, featureFields));
+    }
+
     /**
      * Import Compounds and its contained features. Compounds and Features must not exist in the project.
      * Otherwise, they will exist twice.
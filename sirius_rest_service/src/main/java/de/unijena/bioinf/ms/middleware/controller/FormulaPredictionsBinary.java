@@ -0,0 +1,79 @@
+/*
+ *
+ *  This file is part of the SIRIUS library for analyzing MS and MS/MS data
+ *
+ *  Copyright (C) 2013-2020 Kai Dührkop, Markus Fleischauer, Marcus Ludwig, Martin A. Hoffman, Fleming Kretschmer and Sebastian Böcker,
+ *  Chair of Bioinformatics, Friedrich-Schiller University.
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 3 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License along with SIRIUS. If not, see <https://www.gnu.org/licenses/lgpl-3.0.txt>
+ */
+
+package de.unijena.bioinf.ms.middleware.controller;
+
+import de.unijena.bioinf.ms.middleware.model.annotations.FormulaPredictions;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Compact binary encoding of {@link FormulaPredictions} to avoid the JSON overhead for thousands of probabilities
+ * per formula candidate. All values are written in big-endian (network) byte order:
+ * <pre>
+ * int32 numberOfCandidates
+ * per candidate:
+ *   modified UTF-8 formulaId (see {@link DataOutputStream#writeUTF(String)})
+ *   int32 length, length x float32   fingerprint
+ *   int32 length, length x float32   ClassyFire probabilities
+ *   int32 length, length x float32   NPC probabilities
+ * </pre>
+ * A length of -1 denotes that the respective prediction is not available.
+ */
+final class FormulaPredictionsBinary {
+    private FormulaPredictionsBinary() {
+    }
+
+    static byte[] encode(List<FormulaPredictions> predictions) throws IOException {
+        int size = 4;
+        for (FormulaPredictions p : predictions)
+            size += 2 + p.getFormulaId().length() + 12 + 4 * (length(p.getFingerprint()) + length(p.getClassyFireProbabilities()) + length(p.getNpcProbabilities()));
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(size);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(predictions.size());
+            for (FormulaPredictions p : predictions) {
+                out.writeUTF(p.getFormulaId());
+                writeFloats(out, p.getFingerprint());
+                writeFloats(out, p.getClassyFireProbabilities());
+                writeFloats(out, p.getNpcProbabilities());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int length(@Nullable float[] values) {
+        return values == null ? 0 : values.length;
+    }
+
+    private static void writeFloats(DataOutputStream out, @Nullable float[] values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.length);
+        for (float v : values)
+            out.writeFloat(v);
+    }
+}
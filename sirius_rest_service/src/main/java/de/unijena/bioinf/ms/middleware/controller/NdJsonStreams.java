@@ -0,0 +1,93 @@
+/*
+ *
+ *  This file is part of the SIRIUS library for analyzing MS and MS/MS data
+ *
+ *  Copyright (C) 2013-2020 Kai Dührkop, Markus Fleischauer, Marcus Ludwig, Martin A. Hoffman, Fleming Kretschmer and Sebastian Böcker,
+ *  Chair of Bioinformatics, Friedrich-Schiller University.
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 3 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License along with SIRIUS. If not, see <https://www.gnu.org/licenses/lgpl-3.0.txt>
+ */
+package de.unijena.bioinf.ms.middleware.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Writes a {@link Stream} of objects as newline delimited JSON (NDJSON) directly to the HTTP response,
+ * without collecting it into a list first.
+ * <p>
+ * The status code is sent before the body is written, so all arguments have to be validated and the project
+ * has to be resolved before calling {@link #ndjson(ObjectMapper, Supplier)}.
+ */
+final class NdJsonStreams {
+    private static final int FLUSH_EVERY = 100;
+
+    private NdJsonStreams() {
+    }
+
+    /**
+     * Ensures that the given identifier is a valid (numeric) id, to fail with 400 before the response is committed.
+     *
+     * @param paramName name of the request parameter for the error message
+     * @param id        identifier to check
+     * @param optional  true if null or blank values are valid
+     */
+    static void requireValidId(String paramName, @Nullable String id, boolean optional) {
+        if (id == null || id.isBlank()) {
+            if (optional)
+                return;
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Parameter '" + paramName + "' is required.");
+        }
+        try {
+            Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Illegal " + paramName + " '" + id + "'! Hint: Ids are integer numbers.", e);
+        }
+    }
+
+    /**
+     * @param objectMapper mapper to serialize the elements
+     * @param source       supplier of the stream to write. Is called when the response is written and the stream
+     *                     is closed afterwards, so it can be backed by an open database cursor.
+     */
+    static <T> ResponseEntity<StreamingResponseBody> ndjson(ObjectMapper objectMapper, Supplier<Stream<T>> source) {
+        final ObjectWriter writer = objectMapper.writer();
+        StreamingResponseBody body = (OutputStream out) -> {
+            try (Stream<T> stream = source.get()) {
+                final OutputStream bout = new BufferedOutputStream(out);
+                int count = 0;
+                Iterator<T> it = stream.iterator();
+                while (it.hasNext()) {
+                    bout.write(writer.writeValueAsBytes(it.next()));
+                    bout.write('\n');
+                    if (++count % FLUSH_EVERY == 0)
+                        bout.flush();
+                }
+                bout.flush();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ *
+ *  This file is part of the SIRIUS library for analyzing MS and MS/MS data
+ *
+ *  Copyright (C) 2013-2020 Kai Dührkop, Markus Fleischauer, Marcus Ludwig, Martin A. Hoffman, Fleming Kretschmer and Sebastian Böcker,
+ *  Chair of Bioinformatics, Friedrich-Schilller University.
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 3 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License along with SIRIUS. If not, see <https://www.gnu.org/licenses/lgpl-3.0.txt>
+ */
+
+package de.unijena.bioinf.ms.middleware.model.annotations;
+
+import de.unijena.bioinf.ChemistryBase.fp.ProbabilityFingerprint;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Predicted fingerprint (CSI:FingerID) and compound class probabilities (CANOPUS) of a single formula candidate.
+ * Probabilities are stored as single precision floats in the same (masked) order as the corresponding fingerprint versions.
+ * This is a compact container to retrieve the predictions of many formula candidates at once.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FormulaPredictions {
+    /**
+     * Identifier of the formula candidate these predictions belong to.
+     */
+    @Schema(requiredMode = Schema.RequiredMode.REQUIRED)
+    String formulaId;
+    /**
+     * Probabilistic fingerprint predicted by CSI:FingerID. Null if not available.
+     */
+    @Schema(nullable = true)
+    float[] fingerprint;
+    /**
+     * Probabilities of all ClassyFire classes predicted by CANOPUS. Null if not available.
+     */
+    @Schema(nullable = true)
+    float[] classyFireProbabilities;
+    /**
+     * Probabilities of all NPC classes predicted by CANOPUS. Null if not available.
+     */
+    @Schema(nullable = true)
+    float[] npcProbabilities;
+
+    @Nullable
+    public static float[] toFloatArray(@Nullable ProbabilityFingerprint fp) {
+        if (fp == null)
+            return null;
+        final double[] probs = fp.toProbabilityArray();
+        final float[] res = new float[probs.length];
+        for (int i = 0; i < probs.length; i++)
+            res[i] = (float) probs[i];
+        return res;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ *
+ *  This file is part of the SIRIUS library for analyzing MS and MS/MS data
+ *
+ *  Copyright (C) 2013-2020 Kai Dührkop, Markus Fleischauer, Marcus Ludwig, Martin A. Hoffman, Fleming Kretschmer and Sebastian Böcker,
+ *  Chair of Bioinformatics, Friedrich-Schiller University.
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 3 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License along with SIRIUS. If not, see <https://www.gnu.org/licenses/lgpl-3.0.txt>
+ */
+
+package de.unijena.bioinf.ms.middleware.model.features;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import de.unijena.bioinf.ChemistryBase.utils.DataQuality;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.jackson.Jacksonized;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Filter criteria to select features (aligned over runs) of a project. All criteria are optional,
+ * null values (or empty lists) mean that the criterion is not applied. A feature matches if it satisfies all
+ * given criteria.
+ */
+@Getter
+@Setter
+@Builder
+@Jacksonized
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class AlignedFeatureFilter {
+    @Schema(nullable = true)
+    private Double minMz;
+    @Schema(nullable = true)
+    private Double maxMz;
+
+    /**
+     * Features without retention time are never filtered by retention time.
+     */
+    @Schema(nullable = true)
+    private Double minRtSeconds;
+    @Schema(nullable = true)
+    private Double maxRtSeconds;
+
+    /**
+     * Features without confidence score are removed if a minimum confidence is given.
+     */
+    @Schema(nullable = true)
+    private Double minConfidence;
+    @Schema(nullable = true)
+    private Double maxConfidence;
+    /**
+     * Use approximate instead of exact confidence score for confidence filtering.
+     */
+    @Schema(nullable = true)
+    private Boolean approximateConfidence;
+
+    @Schema(nullable = true)
+    private Boolean hasMs1;
+    @Schema(nullable = true)
+    private Boolean hasMsMs;
+
+    /**
+     * Feature matches if its (single) detected adduct is one of the given adducts.
+     */
+    @Schema(nullable = true)
+    private List<String> adducts;
+
+    /**
+     * Accepted overall feature qualities.
+     */
+    @Schema(nullable = true)
+    private List<DataQuality> featureQualities;
+    /**
+     * Accepted qualities per quality report category (e.g. 'Peak Quality'). Categories that are not
+     * available for a feature are not filtered.
+     */
+    @Schema(nullable = true)
+    private Map<String, List<DataQuality>> categoryQualities;
+
+    /**
+     * Minimum number of isotope peaks in the merged MS1 spectrum.
+     */
+    @Schema(nullable = true)
+    private Integer minIsotopePeaks;
+
+    /**
+     * Element constraints (e.g. 'CHNOP[4]S') the formula of the top annotation has to satisfy.
+     */
+    @Schema(nullable = true)
+    private String elementConstraints;
+    /**
+     * Apply element constraints to the molecular formula of the top annotation.
+     */
+    @Schema(nullable = true)
+    private Boolean matchFormula;
+    /**
+     * Apply element constraints to the precursor formula (incl. adduct) of the top annotation.
+     */
+    @Schema(nullable = true)
+    private Boolean matchPrecursorFormula;
+
+    /**
+     * true to keep features with any lipid class detected, false to keep features without lipid class detected.
+     */
+    @Schema(nullable = true)
+    private Boolean lipidDetected;
+
+    /**
+     * Feature matches if one of the top 'numOfDbCandidates' structure candidates is contained in
+     * one of the given databases (by database id). An empty list matches no feature.
+     */
+    @Schema(nullable = true)
+    private List<String> databases;
+    @Schema(nullable = true)
+    private Integer numOfDbCandidates;
+}
@@ -26,6 +26,7 @@ import de.unijena.bioinf.babelms.MsExperimentParser;
 import de.unijena.bioinf.babelms.inputresource.InputResource;
 import de.unijena.bioinf.chemdb.WebWithCustomDatabase;
 import de.unijena.bioinf.chemdb.custom.*;
+import de.unijena.bioinf.ms.frontend.subtools.custom_db.CustomDBImportJob;
 import de.unijena.bioinf.ms.frontend.subtools.custom_db.CustomDBOptions;
 import de.unijena.bioinf.ms.middleware.model.databases.SearchableDatabase;
 import de.unijena.bioinf.ms.middleware.model.databases.SearchableDatabaseParameters;
@@ -94,7 +95,9 @@ public class ChemDbServiceImpl implements ChemDbService {
         Map<Boolean, List<InputResource<?>>> split = inputResources.stream()
                 .collect(Collectors.partitioningBy(p -> MsExperimentParser.isSupportedFileName(p.getFilename())));
 
-        SiriusJobs.runInBackground(CustomDatabaseImporter.makeImportToDatabaseJob(split.get(true), split.get(false), null, (NoSQLCustomDatabase<?, ?>) db, webAPI, bufferSize))
+        // same blocked and (for local files) resumable import as the CLI
+        SiriusJobs.runInBackground(new CustomDBImportJob(split.get(true), split.get(false), (NoSQLCustomDatabase<?, ?>) db,
+                        bufferSize, CustomDBImportJob.DEFAULT_BLOCK_SIZE, Path.of(db.storageLocation() + ".import-checkpoint")))
                 .takeResult();
 
         return SearchableDatabases.of(db);
@@ -20,6 +20,8 @@
 
 package de.unijena.bioinf.ms.middleware.service.events;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import de.unijena.bioinf.ChemistryBase.jobs.SiriusJobs;
 import de.unijena.bioinf.jjobs.TinyBackgroundJJob;
 import de.unijena.bioinf.ms.middleware.model.compute.Job;
@@ -27,32 +29,65 @@ import de.unijena.bioinf.ms.middleware.model.events.ServerEvent;
 import de.unijena.bioinf.ms.middleware.model.events.ServerEvents;
 import io.hypersistence.tsid.TSID;
 import org.jetbrains.annotations.NotNull;
+import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.server.ResponseStatusException;
-import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
-import java.util.Collection;
-import java.util.EnumSet;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.*;
+import java.util.concurrent.*;
 
+/**
+ * Sends {@link ServerEvent}s to the connected SSE clients.
+ * <p>
+ * Job progress events are coalesced: within {@code jobEventWindow} milliseconds only the latest event per job
+ * and project is sent. Every event is serialized once and the result is shared by all emitters. Each emitter has
+ * its own bounded outbox that is drained in the background, so a slow client does neither block other clients
+ * nor the event queue. A job event that is still queued in an outbox is replaced in place by newer events of the
+ * same job, so the latest state of a job (e.g. DONE or FAILED) is never lost. If the outbox of a client is full
+ * nevertheless, the client is disconnected.
+ */
 public class SseEventService implements EventService<SseEmitter> {
 
-    private final Map<ServerEvent.Type, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+    private final Map<ServerEvent.Type, List<EmitterSink>> emitters = new ConcurrentHashMap<>();
     private final BlockingQueue<ServerEvent<?>> events = new LinkedBlockingQueue<>();
+    // latest job event per (project, job) that has not been sent yet. Insertion order = order of first occurrence
+    private final Map<String, ServerEvent<?>> pendingJobEvents = new LinkedHashMap<>();
+    // wakes up the idle event runner when the first job event is pending
+    private static final ServerEvent<?> JOB_EVENTS_PENDING = new ServerEvent<>() {
+        @Override
+        public @NotNull String getProjectId() {
+            return "";
+        }
+
+        @Override
+        public @NotNull Type getEventType() {
+            return Type.JOB;
+        }
+
+        @Override
+        public Object getData() {
+            return null;
+        }
+    };
     private EventRunner eventRunner = null;
 
     private final long emitterTimeout;
+    private final long jobEventWindow;
+    private final int maxQueuedEventsPerEmitter;
+    private final ObjectMapper objectMapper;
 
-    public SseEventService(long emitterTimeout) {
+    public SseEventService(long emitterTimeout, @NotNull ObjectMapper objectMapper) {
+        this(emitterTimeout, 250, 1000, objectMapper);
+    }
+
+    public SseEventService(long emitterTimeout, long jobEventWindow, int maxQueuedEventsPerEmitter, @NotNull ObjectMapper objectMapper) {
         this.emitterTimeout = emitterTimeout;
+        this.jobEventWindow = Math.max(0, jobEventWindow);
+        this.maxQueuedEventsPerEmitter = Math.max(1, maxQueuedEventsPerEmitter);
+        this.objectMapper = objectMapper;
     }
 
     public SseEmitter createEventSender(@NotNull EnumSet<ServerEvent.Type> typesToListenOn) {
@@ -62,25 +97,41 @@ public class SseEventService implements EventService<SseEmitter> {
     }
 
     public void addEventSender(@NotNull SseEmitter emitter, @NotNull EnumSet<ServerEvent.Type> typesToListenOn) {
+        final EmitterSink sink = new EmitterSink(emitter);
         //configure shutdown
         emitter.onCompletion(() -> {
-            emitters.values().forEach(v -> v.remove(emitter));
+            removeSink(sink);
             emitter.complete();
         });
 
         emitter.onTimeout(() -> {
-            emitters.values().forEach(v -> v.remove(emitter));
+            removeSink(sink);
             emitter.complete();
         });
         //add
-        typesToListenOn.forEach(type -> emitters.computeIfAbsent(type, t -> new CopyOnWriteArrayList<>()).add(emitter));
+        typesToListenOn.forEach(type -> emitters.computeIfAbsent(type, t -> new CopyOnWriteArrayList<>()).add(sink));
+    }
+
+    private void removeSink(EmitterSink sink) {
+        sink.closed = true;
+        emitters.values().forEach(v -> v.remove(sink));
     }
 
     public void sendEvent(ServerEvent<?> event) {
         if (eventRunner == null)
             eventRunner = (EventRunner) SiriusJobs.runInBackground(new EventRunner());
-//        System.out.println("Add Event to Queue: " + event); //todo remove debug
-        events.add(event);
+
+        if (event.getEventType() == ServerEvent.Type.JOB && jobEventWindow > 0) {
+            final boolean wasEmpty;
+            synchronized (pendingJobEvents) {
+                wasEmpty = pendingJobEvents.isEmpty();
+                pendingJobEvents.put(event.getProjectId() + "." + ((Job) event.getData()).getId(), event);
+            }
+            if (wasEmpty)
+                events.add(JOB_EVENTS_PENDING);
+        } else {
+            events.add(event);
+        }
     }
 
     @Override
@@ -89,7 +140,19 @@ public class SseEventService implements EventService<SseEmitter> {
             eventRunner.shutdown();
     }
 
+    private static String eventName(ServerEvent<?> eventData) {
+        StringBuilder name = new StringBuilder()
+                .append(eventData.getProjectId()).append(".")
+                .append(eventData.getEventType().name());
+
+        if (eventData.getEventType() == ServerEvent.Type.JOB)
+            name.append(".").append(((Job) eventData.getData()).getId());
+        return name.toString();
+    }
+
     private class EventRunner extends TinyBackgroundJJob<Boolean> {
+        private long nextJobEventFlush = 0;
+
         @Override
         protected Boolean compute() {
             try {
@@ -97,49 +160,185 @@ public class SseEventService implements EventService<SseEmitter> {
                 while (eventData != ServerEvents.EMPTY_EVENT()) {
                     checkForInterruption();
                     try {
-                        eventData = events.take();
+                        // only wake up periodically if there are job events waiting to be flushed
+                        eventData = hasPendingJobEvents()
+                                ? events.poll(Math.max(1, nextJobEventFlush - System.currentTimeMillis()), TimeUnit.MILLISECONDS)
+                                : events.take();
 
-                        if (eventData == ServerEvents.EMPTY_EVENT())
-                            return true;
-//                        System.out.println("Retrieved event from Queue: " + eventData); //todo remove debug
-                        for (SseEmitter emitter : emitters.getOrDefault(eventData.getEventType(), List.of())) {
-                            try {
-                                StringBuilder name = new StringBuilder()
-                                        .append(eventData.getProjectId()).append(".")
-                                        .append(eventData.getEventType().name());
-
-                                if (eventData.getEventType() == ServerEvent.Type.JOB)
-                                    name.append(".").append(((Job) eventData.getData()).getId());
-
-                                emitter.send(SseEmitter.event()
-                                        .data(eventData, MediaType.APPLICATION_JSON)
-                                        .name(name.toString())
-                                        .id(TSID.fast().toString()));
-//                                System.out.println("Send event" + e.build().toString() + " to Client: " + emitter.toString()); //todo remove debug
-                            } catch (IOException e) {
-                                logDebug("Error when sending event to client!", e);
-                                emitter.completeWithError(new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage()));
-                            }
+                        if (eventData == ServerEvents.EMPTY_EVENT()) {
+                            flushJobEvents();
+                            break;
+                        }
+
+                        if (eventData != null && eventData != JOB_EVENTS_PENDING)
+                            dispatch(eventData);
+
+                        if (System.currentTimeMillis() >= nextJobEventFlush) {
+                            flushJobEvents();
+                            nextJobEventFlush = System.currentTimeMillis() + jobEventWindow;
                         }
-//                        System.out.println(); //todo remove debug
-//                        System.out.println(); //todo remove debug
                     } catch (InterruptedException e) {
                         if (eventData == ServerEvents.EMPTY_EVENT())
-                            return true;
+                            break;
                         checkForInterruption();
                     }
                 }
                 // closing all connections to clients.
-                emitters.values().stream().flatMap(Collection::stream).distinct().forEach(ResponseBodyEmitter::complete);
+                emitters.values().stream().flatMap(Collection::stream).distinct().forEach(EmitterSink::completeWhenDrained);
                 return true;
             } catch (InterruptedException e) {
                 return false;
             }
         }
 
+        private boolean hasPendingJobEvents() {
+            synchronized (pendingJobEvents) {
+                return !pendingJobEvents.isEmpty();
+            }
+        }
+
+        private void flushJobEvents() {
+            final List<ServerEvent<?>> toSend;
+            synchronized (pendingJobEvents) {
+                if (pendingJobEvents.isEmpty())
+                    return;
+                toSend = new ArrayList<>(pendingJobEvents.values());
+                pendingJobEvents.clear();
+            }
+            toSend.forEach(this::dispatch);
+        }
+
+        private void dispatch(ServerEvent<?> eventData) {
+            final List<EmitterSink> sinks = emitters.getOrDefault(eventData.getEventType(), List.of());
+            if (sinks.isEmpty())
+                return;
+
+            final SerializedEvent serialized;
+            try {
+                // serialize once for all clients
+                serialized = new SerializedEvent(eventName(eventData), eventData.getEventType(),
+                        objectMapper.writeValueAsString(eventData));
+            } catch (JsonProcessingException e) {
+                logWarn("Could not serialize server event '" + eventData + "'. Skipping!", e);
+                return;
+            }
+
+            for (EmitterSink sink : sinks)
+                sink.offer(serialized);
+        }
+
         public synchronized void shutdown() {
 //        events.clear(); //do we want to clear event bevor shutdown for faster but less clean shutdown?
             events.add(ServerEvents.EMPTY_EVENT());
         }
     }
-}
\ No newline at end of file
+
+    private record SerializedEvent(String name, ServerEvent.Type type, String json) {
+    }
+
+    /**
+     * Outbox slot whose event can be replaced while it is queued.
+     */
+    private static class OutboxEntry {
+        private SerializedEvent event;
+
+        private OutboxEntry(SerializedEvent event) {
+            this.event = event;
+        }
+    }
+
+    /**
+     * Bounded outbox of a single client. Drained by at most one background task at a time.
+     */
+    private class EmitterSink {
+        private final SseEmitter emitter;
+        private final ArrayDeque<OutboxEntry> outbox = new ArrayDeque<>();
+        // queued job events by event name, a newer event of the same job replaces the queued one
+        private final Map<String, OutboxEntry> queuedJobEvents = new HashMap<>();
+        private boolean draining = false;
+        private boolean completeWhenDrained = false;
+        private volatile boolean closed = false;
+
+        private EmitterSink(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        private void offer(SerializedEvent event) {
+            synchronized (this) {
+                if (closed)
+                    return;
+                if (event.type() == ServerEvent.Type.JOB) {
+                    final OutboxEntry queued = queuedJobEvents.get(event.name());
+                    if (queued != null) {
+                        queued.event = event;
+                        return;
+                    }
+                }
+                if (outbox.size() >= maxQueuedEventsPerEmitter) {
+                    closed = true;
+                    clearOutbox();
+                    removeSink(this);
+                    emitter.completeWithError(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                            "Client does not consume server events fast enough. Closing connection."));
+                    return;
+                }
+                final OutboxEntry entry = new OutboxEntry(event);
+                outbox.add(entry);
+                if (event.type() == ServerEvent.Type.JOB)
+                    queuedJobEvents.put(event.name(), entry);
+                if (draining)
+                    return;
+                draining = true;
+            }
+            SiriusJobs.runInBackground(this::drain);
+        }
+
+        private void clearOutbox() {
+            outbox.clear();
+            queuedJobEvents.clear();
+        }
+
+        private void drain() {
+            while (true) {
+                final SerializedEvent next;
+                synchronized (this) {
+                    final OutboxEntry entry = closed ? null : outbox.poll();
+                    if (entry == null) {
+                        draining = false;
+                        if (completeWhenDrained && !closed)
+                            emitter.complete();
+                        return;
+                    }
+                    next = entry.event;
+                    if (next.type() == ServerEvent.Type.JOB)
+                        queuedJobEvents.remove(next.name(), entry);
+                }
+                try {
+                    emitter.send(SseEmitter.event()
+                            .data(next.json(), MediaType.APPLICATION_JSON)
+                            .name(next.name())
+                            .id(TSID.fast().toString()));
+                } catch (IOException | IllegalStateException e) {
+                    LoggerFactory.getLogger(SseEventService.class).debug("Error when sending event to client!", e);
+                    synchronized (this) {
+                        closed = true;
+                        clearOutbox();
+                        draining = false;
+                    }
+                    removeSink(this);
+                    emitter.completeWithError(new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage()));
+                    return;
+                }
+            }
+        }
+
+        private void completeWhenDrained() {
+            synchronized (this) {
+                completeWhenDrained = true;
+                if (draining || closed)
+                    return;
+            }
+            emitter.complete();
+        }
+    }
+}
@@ -20,6 +20,7 @@
 
 package de.unijena.bioinf.ms.middleware.service.projects;
 
+import de.unijena.bioinf.ChemistryBase.chem.FormulaConstraints;
 import de.unijena.bioinf.ChemistryBase.chem.MolecularFormula;
 import de.unijena.bioinf.ChemistryBase.chem.PrecursorIonType;
 import de.unijena.bioinf.ChemistryBase.chem.RetentionTime;
@@ -29,7 +30,9 @@ import de.unijena.bioinf.ChemistryBase.ms.ft.FTree;
 import de.unijena.bioinf.ChemistryBase.ms.utils.SimpleSpectrum;
 import de.unijena.bioinf.babelms.json.FTJsonWriter;
 import de.unijena.bioinf.chemdb.CompoundCandidate;
+import de.unijena.bioinf.chemdb.DBLink;
 import de.unijena.bioinf.chemdb.FingerprintCandidate;
+import de.unijena.bioinf.elgordo.LipidSpecies;
 import de.unijena.bioinf.ms.middleware.model.annotations.CanopusPrediction;
 import de.unijena.bioinf.ms.middleware.model.annotations.FormulaCandidate;
 import de.unijena.bioinf.ms.middleware.model.annotations.*;
@@ -53,6 +56,7 @@ import de.unijena.bioinf.ms.persistence.model.core.trace.SourceTrace;
 import de.unijena.bioinf.ms.persistence.model.core.trace.TraceRef;
 import de.unijena.bioinf.ms.persistence.model.sirius.*;
 import de.unijena.bioinf.ms.persistence.storage.SiriusProjectDocumentDatabase;
+import de.unijena.bioinf.ms.properties.PropertyManager;
 import de.unijena.bioinf.ms.rest.model.canopus.CanopusCfData;
 import de.unijena.bioinf.ms.rest.model.canopus.CanopusNpcData;
 import de.unijena.bioinf.ms.rest.model.fingerid.FingerIdData;
@@ -65,6 +69,7 @@ import it.unimi.dsi.fastutil.doubles.DoubleList;
 import it.unimi.dsi.fastutil.floats.FloatList;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
@@ -101,11 +106,47 @@ public class NoSQLProjectImpl implements Project<NoSQLProjectSpaceManager> {
 
     private final @NotNull BiFunction<Project<?>, String, Boolean> computeStateProvider;
 
+    private static final int ANNOTATED_SPECTRUM_CACHE_SIZE = 256;
+    private static final int SMILES_CACHE_SIZE = 4096;
+
+    private record AnnotatedSpectrumKey(long alignedFeatureId, long formulaId, @Nullable String inchiKey, int specIndex) {
+    }
+
+    // annotating a spectrum requires the experiment, the tree and the candidate, so results are cached until
+    // the underlying data of the feature changes.
+    private final Map<AnnotatedSpectrumKey, AnnotatedSpectrum> annotatedSpectrumCache = lruCache(ANNOTATED_SPECTRUM_CACHE_SIZE);
+    private final Map<AnnotatedSpectrumKey, AnnotatedMsMsData> annotatedMsMsDataCache = lruCache(ANNOTATED_SPECTRUM_CACHE_SIZE);
+    // smiles of a stored structure never change, so they are cached by inchikey without invalidation.
+    // Misses are not cached, since the structure might be added later (e.g. by a structure database search).
+    private final Map<String, String> smilesCache = lruCache(SMILES_CACHE_SIZE);
+
     @SneakyThrows
     public NoSQLProjectImpl(@NotNull String projectId, @NotNull NoSQLProjectSpaceManager projectSpaceManager, @NotNull BiFunction<Project<?>, String, Boolean> computeStateProvider) {
         this.projectId = projectId;
         this.projectSpaceManager = projectSpaceManager;
         this.computeStateProvider = computeStateProvider;
+
+        // invalidate annotated spectra if the data they are based on changes
+        storage().onInsert(FTreeResult.class, (FTreeResult r) -> invalidateAnnotatedSpectra(r.getAlignedFeatureId()));
+        storage().onUpdate(FTreeResult.class, (FTreeResult r) -> invalidateAnnotatedSpectra(r.getAlignedFeatureId()));
+        storage().onRemove(FTreeResult.class, (FTreeResult r) -> invalidateAnnotatedSpectra(r.getAlignedFeatureId()));
+        storage().onUpdate(MSData.class, (MSData d) -> invalidateAnnotatedSpectra(d.getAlignedFeatureId()));
+        storage().onRemove(MSData.class, (MSData d) -> invalidateAnnotatedSpectra(d.getAlignedFeatureId()));
+        storage().onRemove(AlignedFeatures.class, (AlignedFeatures f) -> invalidateAnnotatedSpectra(f.getAlignedFeatureId()));
+    }
+
+    private static <K, V> Map<K, V> lruCache(int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    private void invalidateAnnotatedSpectra(long alignedFeatureId) {
+        annotatedSpectrumCache.keySet().removeIf(k -> k.alignedFeatureId() == alignedFeatureId);
+        annotatedMsMsDataCache.keySet().removeIf(k -> k.alignedFeatureId() == alignedFeatureId);
     }
 
     //using private methods instead of references for easier refactoring or changes.
@@ -758,6 +799,40 @@ public class NoSQLProjectImpl implements Project<NoSQLProjectSpaceManager> {
         return new PageImpl<>(compounds, pageable, total);
     }
 
+    @SneakyThrows
+    @Override
+    public Stream<Compound> streamCompounds(@Nullable String afterCompoundId, int limit,
+                                            @NotNull EnumSet<Compound.OptField> optFields,
+                                            @NotNull EnumSet<AlignedFeature.OptField> optFeatureFields) {
+        Stream<de.unijena.bioinf.ms.persistence.model.core.Compound> stream = keysetStr(
+                de.unijena.bioinf.ms.persistence.model.core.Compound.class, "compoundId", afterCompoundId, limit);
+        stream = stream.peek(project()::fetchAdductFeatures);
+
+        if (optFeatureFields.contains(AlignedFeature.OptField.msData)) {
+            stream = stream.peek(c -> c.getAdductFeatures().ifPresent(features -> features.forEach(project()::fetchMsData)));
+        }
+
+        return stream.map(c -> convertCompound(c, optFields, optFeatureFields));
+    }
+
+    /**
+     * Keyset pagination over the primary key: all entries with an id larger than the given one in ascending id order.
+     * Does not need to skip entries or count the collection, so every chunk has constant cost.
+     */
+    private <T> Stream<T> keysetStr(Class<T> clazz, String idField, @Nullable String afterId, int limit) throws IOException {
+        String[] sortFields = new String[]{idField};
+        Database.SortOrder[] sortOrders = new Database.SortOrder[]{Database.SortOrder.ASCENDING};
+        if (afterId == null || afterId.isBlank()) {
+            return limit > 0
+                    ? storage().findAllStr(clazz, 0, limit, sortFields, sortOrders)
+                    : storage().findAllStr(clazz, sortFields, sortOrders);
+        }
+        Filter filter = Filter.where(idField).gte(Long.parseLong(afterId) + 1);
+        return limit > 0
+                ? storage().findStr(filter, clazz, 0, limit, sortFields, sortOrders)
+                : storage().findStr(filter, clazz, sortFields, sortOrders);
+    }
+
     @SneakyThrows
     @Override
     public List<Compound> addCompounds(@NotNull List<CompoundImport> compounds, @NotNull EnumSet<Compound.OptField> optFields, @NotNull EnumSet<AlignedFeature.OptField> optFieldsFeatures) {
@@ -844,6 +919,15 @@ public class NoSQLProjectImpl implements Project<NoSQLProjectSpaceManager> {
         return new PageImpl<>(features, pageable, total);
     }
 
+    @SneakyThrows
+    @Override
+    public Stream<AlignedFeature> streamAlignedFeatures(@Nullable String afterAlignedFeatureId, int limit, @NotNull EnumSet<AlignedFeature.OptField> optFields) {
+        Stream<AlignedFeatures> stream = keysetStr(AlignedFeatures.class, "alignedFeatureId", afterAlignedFeatureId, limit);
+        if (optFields.contains(AlignedFeature.OptField.msData))
+            stream = stream.peek(project()::fetchMsData);
+        return stream.map(alf -> convertToApiFeature(alf, optFields));
+    }
+
     @Override
     public List<AlignedFeature> addAlignedFeatures(@NotNull List<FeatureImport> features, @NotNull EnumSet<AlignedFeature.OptField> optFields) {
         LongestCommonSubsequence lcs = new LongestCommonSubsequence();
@@ -871,6 +955,151 @@ public class NoSQLProjectImpl implements Project<NoSQLProjectSpaceManager> {
                 }).orElseThrow(() -> new ResponseStatusException(NOT_FOUND, "There is no aligned feature '" + alignedFeatureId + "' in project " + projectId + "."));
     }
 
+    @SneakyThrows
+    @Override
+    public List<AlignedFeature> findAlignedFeaturesByIds(@NotNull List<String> alignedFeatureIds, @NotNull EnumSet<AlignedFeature.OptField> optFields) {
+        List<AlignedFeature> features = new ArrayList<>(alignedFeatureIds.size());
+        for (String alignedFeatureId : alignedFeatureIds) {
+            Optional<AlignedFeatures> feature = storage().getByPrimaryKey(Long.parseLong(alignedFeatureId), AlignedFeatures.class);
+            if (feature.isEmpty())
+                continue;
+            if (optFields.contains(AlignedFeature.OptField.msData))
+                project().fetchMsData(feature.get());
+            features.add(convertToApiFeature(feature.get(), optFields));
+        }
+        return features;
+    }
+
+    @SneakyThrows
+    @Override
+    public List<String> findAlignedFeatureIdsByFilter(@NotNull AlignedFeatureFilter filter) {
+        // cheap criteria on the feature itself, the minimum mass is evaluated by the database
+        Stream<AlignedFeatures> stream = filter.getMinMz() != null
+                ? storage().findStr(Filter.where("averageMass").gte(filter.getMinMz()), AlignedFeatures.class,
+                new String[]{"averageMass"}, new Database.SortOrder[]{Database.SortOrder.ASCENDING})
+                : storage().findAllStr(AlignedFeatures.class);
+
+        final Set<PrecursorIonType> adducts = filter.getAdducts() == null || filter.getAdducts().isEmpty() ? null
+                : filter.getAdducts().stream().map(PrecursorIonType::fromString).collect(Collectors.toSet());
+
+        List<AlignedFeatures> candidates = stream.filter(f -> {
+            if (filter.getMaxMz() != null && f.getAverageMass() > filter.getMaxMz())
+                return false;
+            RetentionTime rt = f.getRetentionTime();
+            if (rt != null && Double.isFinite(rt.getMiddleTime())) { //never filter features without RT
+                if (filter.getMinRtSeconds() != null && rt.getMiddleTime() < filter.getMinRtSeconds())
+                    return false;
+                if (filter.getMaxRtSeconds() != null && rt.getMiddleTime() > filter.getMaxRtSeconds())
+                    return false;
+            }
+            if (Boolean.TRUE.equals(filter.getHasMs1()) && !f.isHasMs1())
+                return false;
+            if (Boolean.TRUE.equals(filter.getHasMsMs()) && !f.isHasMsMs())
+                return false;
+            if (filter.getFeatureQualities() != null && !filter.getFeatureQualities().contains(f.getDataQuality()))
+                return false;
+            if (adducts != null) {
+                Set<PrecursorIonType> detected = f.getDetectedAdducts().getAllAdducts();
+                PrecursorIonType ionType = detected.size() == 1 ? detected.iterator().next() : PrecursorIonType.unknown(f.getCharge());
+                return adducts.contains(ionType);
+            }
+            return true;
+        }).toList();
+
+        // criteria that need additional documents, evaluated only for remaining features
+        if (filter.getMinConfidence() != null || filter.getMaxConfidence() != null) {
+            final boolean approx = Boolean.TRUE.equals(filter.getApproximateConfidence());
+            candidates = candidates.stream().filter(f -> {
+                Double conf = project().findByFeatureIdStr(f.getAlignedFeatureId(), CsiStructureSearchResult.class)
+                        .findFirst().map(r -> approx ? r.getConfidenceApprox() : r.getConfidenceExact())
+                        .filter(c -> !c.isNaN() && !c.isInfinite()).orElse(null);
+                if (conf == null) //features without confidence are removed only by min filter
+                    return filter.getMinConfidence() == null;
+                return (filter.getMinConfidence() == null || conf >= filter.getMinConfidence())
+                        && (filter.getMaxConfidence() == null || conf <= filter.getMaxConfidence());
+            }).toList();
+        }
+
+        if (filter.getCategoryQualities() != null && !filter.getCategoryQualities().isEmpty()) {
+            candidates = candidates.stream().filter(f -> {
+                Optional<QualityReport> report = getQualityReport(f.getAlignedFeatureId());
+                if (report.isEmpty())
+                    return true;
+                Map<String, QualityReport.Category> categories = report.get().getCategories();
+                return filter.getCategoryQualities().entrySet().stream().allMatch(e -> {
+                    QualityReport.Category q = categories.get(e.getKey());
+                    return q == null || e.getValue().contains(q.getOverallQuality());
+                });
+            }).toList();
+        }
+
+        if (filter.getElementConstraints() != null && !filter.getElementConstraints().isBlank()) {
+            final FormulaConstraints constraints = FormulaConstraints.fromString(filter.getElementConstraints());
+            final boolean matchFormula = !Boolean.FALSE.equals(filter.getMatchFormula());
+            final boolean matchPrecursor = !Boolean.FALSE.equals(filter.getMatchPrecursorFormula());
+            candidates = candidates.stream().filter(f -> findTopFormulaCandidate(f.getAlignedFeatureId()).map(fc ->
+                    (matchFormula && constraints.isSatisfied(fc.getMolecularFormula(), fc.getAdduct().getIonization()))
+                            || (matchPrecursor && constraints.isSatisfied(fc.getAdduct().neutralMoleculeToMeasuredNeutralMolecule(fc.getMolecularFormula()), fc.getAdduct().getIonization()))
+            ).orElse(false)).toList();
+        }
+
+        if (filter.getMinIsotopePeaks() != null) {
+            final MS1MassDeviation dev = PropertyManager.DEFAULTS.createInstanceWithDefaults(MS1MassDeviation.class);
+            candidates = candidates.stream().filter(f -> {
+                project().fetchMsData(f);
+                return f.getMSData().map(MSData::getMergedMs1Spectrum)
+                        .map(ms1 -> de.unijena.bioinf.ChemistryBase.ms.utils.Spectrums.extractIsotopePattern(ms1, dev, f.getAverageMass(), f.getCharge(), true))
+                        .map(pattern -> pattern.size() >= filter.getMinIsotopePeaks())
+                        .orElse(false);
+            }).toList();
+        }
+
+        if (filter.getLipidDetected() != null) {
+            candidates = candidates.stream().filter(f -> {
+                boolean lipid = project().findByFeatureIdStr(f.getAlignedFeatureId(), FTreeResult.class)
+                        .map(FTreeResult::getFTree).filter(Objects::nonNull)
+                        .anyMatch(tree -> tree.getAnnotation(LipidSpecies.class).isPresent());
+                return lipid == filter.getLipidDetected();
+            }).toList();
+        }
+
+        if (filter.getDatabases() != null) {
+            final int k = filter.getNumOfDbCandidates() == null ? 1 : filter.getNumOfDbCandidates();
+            final Set<String> dbs = new HashSet<>(filter.getDatabases());
+            candidates = candidates.stream().filter(f -> k > 0 && project()
+                    .findByFeatureIdStr(f.getAlignedFeatureId(), CsiStructureMatch.class, 0, k, "structureRank", Database.SortOrder.ASCENDING)
+                    .peek(match -> {
+                        if (match.getCandidate() == null)
+                            project().fetchFingerprintCandidate(match, false);
+                    })
+                    .map(match -> match.getCandidate().getLinks())
+                    .filter(Objects::nonNull).flatMap(List::stream)
+                    .map(DBLink::getName).filter(Objects::nonNull)
+                    .anyMatch(dbs::contains)
+            ).toList();
+        }
+
+        return candidates.stream().map(AlignedFeatures::getAlignedFeatureId).map(String::valueOf).toList();
+    }
+
+    @SneakyThrows
+    private Optional<QualityReport> getQualityReport(long alignedFeatureId) {
+        return storage().getByPrimaryKey(alignedFeatureId, QualityReport.class);
+    }
+
+    /**
+     * Formula of the top structure hit if available, top ranked formula candidate otherwise.
+     */
+    private Optional<de.unijena.bioinf.ms.persistence.model.sirius.FormulaCandidate> findTopFormulaCandidate(long alignedFeatureId) {
+        Optional<CsiStructureMatch> topStructure = project().findByFeatureIdStr(alignedFeatureId, CsiStructureMatch.class, "structureRank", Database.SortOrder.ASCENDING)
+                .findFirst();
+        if (topStructure.isPresent())
+            return project().findByFormulaIdStr(topStructure.get().getFormulaId(), de.unijena.bioinf.ms.persistence.model.sirius.FormulaCandidate.class)
+                    .findFirst();
+        return project().findByFeatureIdStr(alignedFeatureId, de.unijena.bioinf.ms.persistence.model.sirius.FormulaCandidate.class, "formulaRank", Database.SortOrder.ASCENDING)
+                .findFirst();
+    }
+
     @SneakyThrows
     @Override
     public void deleteAlignedFeaturesById(String alignedFeatureId) {
@@ -985,6 +1214,27 @@ public class NoSQLProjectImpl implements Project<NoSQLProjectSpaceManager> {
         return new PageImpl<>(candidates, pageable, total);
     }
 
+    @SneakyThrows
+    @Override
+    public Stream<FormulaCandidate> streamFormulaCandidatesByFeatureId(String alignedFeatureId, @Nullable Integer afterRank, int limit, @NotNull EnumSet<FormulaCandidate.OptField> optFields) {
+        long longAFId = Long.parseLong(alignedFeatureId);
+
+        //load ms data only once per formula candidate
+        final MSData msData = Stream.of(/*FormulaCandidate.OptField.annotatedSpectrum,*/ FormulaCandidate.OptField.isotopePattern).anyMatch(optFields::contains)
+                ? project().findByFeatureIdStr(longAFId, MSData.class).findFirst().orElse(null) : null;
+
+        Filter filter = afterRank == null
+                ? Filter.where("alignedFeatureId").eq(longAFId)
+                : Filter.and(Filter.where("alignedFeatureId").eq(longAFId), Filter.where("formulaRank").gte(afterRank + 1));
+        String[] sortFields = new String[]{"formulaRank"};
+        Database.SortOrder[] sortOrders = new Database.SortOrder[]{Database.SortOrder.ASCENDING};
+
+        Stream<de.unijena.bioinf.ms.persistence.model.sirius.FormulaCandidate> stream = limit > 0
+                ? storage().findStr(filter, de.unijena.bioinf.ms.persistence.model.sirius.FormulaCandidate.class, 0, limit, sortFields, sortOrders)
+                : storage().findStr(filter, de.unijena.bioinf.ms.persistence.model.sirius.FormulaCandidate.class, sortFields, sortOrders);
+        return stream.map(fc -> convertFormulaCandidate(msData, fc, optFields));
+    }
+
     @SneakyThrows
     @Override
     public FormulaCandidate findFormulaCandidateByFeatureIdAndId(String formulaId, String alignedFeatureId, @NotNull EnumSet<FormulaCandidate.OptField> optFields) {
@@ -1001,6 +1251,36 @@ public class NoSQLProjectImpl implements Project<NoSQLProjectSpaceManager> {
                 }).map(fc -> convertFormulaCandidate(msData, fc, optFields)).findFirst().orElse(null);
     }
 
+    @SneakyThrows
+    @Override
+    public List<FormulaPredictions> findFormulaPredictionsByFeatureId(String alignedFeatureId, @Nullable Collection<String> formulaIds) {
+        long longAFId = Long.parseLong(alignedFeatureId);
+        @Nullable LongSet requested = formulaIds == null ? null
+                : formulaIds.stream().mapToLong(Long::parseLong).collect(LongOpenHashSet::new, LongSet::add, LongSet::addAll);
+
+        // one query per prediction type for the whole feature instead of one lookup per formula candidate
+        final Long2ObjectMap<FormulaPredictions> predictions = new Long2ObjectLinkedOpenHashMap<>();
+        project().findByFeatureIdStr(longAFId, CsiPrediction.class)
+                .filter(p -> requested == null || requested.contains(p.getFormulaId()))
+                .forEach(p -> predictions.computeIfAbsent(p.getFormulaId(), fid -> FormulaPredictions.builder().formulaId(String.valueOf(fid)).build())
+                        .setFingerprint(FormulaPredictions.toFloatArray(p.getFingerprint())));
+
+        project().findByFeatureIdStr(longAFId, de.unijena.bioinf.ms.persistence.model.sirius.CanopusPrediction.class)
+                .filter(p -> requested == null || requested.contains(p.getFormulaId()))
+                .forEach(p -> {
+                    FormulaPredictions fp = predictions.computeIfAbsent(p.getFormulaId(), fid -> FormulaPredictions.builder().formulaId(String.valueOf(fid)).build());
+                    fp.setClassyFireProbabilities(FormulaPredictions.toFloatArray(p.getCfFingerprint()));
+                    fp.setNpcProbabilities(FormulaPredictions.toFloatArray(p.getNpcFingerprint()));
+                });
+
+        if (formulaIds == null)
+            return new ArrayList<>(predictions.values());
+
+        // keep the requested order, formula candidates without any predictions are skipped
+        return formulaIds.stream().mapToLong(Long::parseLong).distinct()
+                .mapToObj(predictions::get).filter(Objects::nonNull).toList();
+    }
+
     @Override
     public Page<StructureCandidateScored> findStructureCandidatesByFeatureIdAndFormulaId(String formulaId, String alignedFeatureId, Pageable pageable, @NotNull EnumSet<StructureCandidateScored.OptField> optFields) {
         return findStructureCandidatesByFeatureIdAndFormulaId(CsiStructureMatch.class, formulaId, alignedFeatureId, pageable, optFields);
@@ -1134,6 +1414,11 @@ public class NoSQLProjectImpl implements Project<NoSQLProjectSpaceManager> {
 
     @SneakyThrows
     private AnnotatedSpectrum findAnnotatedMsMsSpectrum(int specIndex, @Nullable String inchiKey, long formulaId, long alignedFeatureId) {
+        AnnotatedSpectrumKey key = new AnnotatedSpectrumKey(alignedFeatureId, formulaId, inchiKey, Math.max(-1, specIndex));
+        AnnotatedSpectrum cached = annotatedSpectrumCache.get(key);
+        if (cached != null)
+            return cached;
+
         //todo we want to do this without ms2 experiment
         Ms2Experiment exp = project().findAlignedFeatureAsMsExperiment(alignedFeatureId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Could not load ms data needed to create annotated spectrum for id: " + alignedFeatureId));
@@ -1141,15 +1426,13 @@ public class NoSQLProjectImpl implements Project<NoSQLProjectSpaceManager> {
         FTree ftree = project().findByFormulaIdStr(formulaId, FTreeResult.class).findFirst().map(FTreeResult::getFTree)
                 .orElse(null);
 
-        //todo we retrieve the complete candidate just for the smile. Maybe add smiles to match?
-        String smiles = storage().getByPrimaryKey(inchiKey, FingerprintCandidate.class)
-                .map(CompoundCandidate::getSmiles)
-                .orElse(null);
+        String smiles = findSmilesByInchiKey(inchiKey);
 
-        if (specIndex < 0)
-            return Spectrums.createMergedMsMsWithAnnotations(exp, ftree, smiles);
-        else
-            return Spectrums.createMsMsWithAnnotations(exp.getMs2Spectra().get(specIndex), ftree, smiles);
+        AnnotatedSpectrum spectrum = specIndex < 0
+                ? Spectrums.createMergedMsMsWithAnnotations(exp, ftree, smiles)
+                : Spectrums.createMsMsWithAnnotations(exp.getMs2Spectra().get(specIndex), ftree, smiles);
+        annotatedSpectrumCache.put(key, spectrum);
+        return spectrum;
     }
 
     @SneakyThrows
@@ -1158,6 +1441,11 @@ public class NoSQLProjectImpl implements Project<NoSQLProjectSpaceManager> {
         long longFId = Long.parseLong(formulaId);
         long longAFId = Long.parseLong(alignedFeatureId);
 
+        AnnotatedSpectrumKey key = new AnnotatedSpectrumKey(longAFId, longFId, inchiKey, -1);
+        AnnotatedMsMsData cached = annotatedMsMsDataCache.get(key);
+        if (cached != null)
+            return cached;
+
         //todo we want to do this without ms2 experiment
         Ms2Experiment exp = project().findAlignedFeatureAsMsExperiment(longAFId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Could not load ms data needed to create annotated spectrum for id: " + alignedFeatureId));
@@ -1165,12 +1453,29 @@ public class NoSQLProjectImpl implements Project<NoSQLProjectSpaceManager> {
         FTree ftree = project().findByFormulaIdStr(longFId, FTreeResult.class).findFirst().map(FTreeResult::getFTree)
                 .orElse(null);
 
-        //todo we retrieve the complete candidate just for the smile. Maybe add smiles to match?
-        String smiles = storage().getByPrimaryKey(inchiKey, FingerprintCandidate.class)
-                .map(CompoundCandidate::getSmiles)
-                .orElse(null);
+        String smiles = findSmilesByInchiKey(inchiKey);
 
-        return AnnotatedMsMsData.of(exp, ftree, smiles);
+        AnnotatedMsMsData data = AnnotatedMsMsData.of(exp, ftree, smiles);
+        annotatedMsMsDataCache.put(key, data);
+        return data;
+    }
+
+    /**
+     * Smiles of the structure candidate with the given inchikey. The candidate is only loaded once per inchikey,
+     * since the storage does not support projections to single fields.
+     */
+    @SneakyThrows
+    private @Nullable String findSmilesByInchiKey(@Nullable String inchiKey) {
+        if (inchiKey == null)
+            return null;
+        String smiles = smilesCache.get(inchiKey);
+        if (smiles == null) {
+            smiles = storage().getByPrimaryKey(inchiKey, FingerprintCandidate.class)
+                    .map(CompoundCandidate::getSmiles).orElse(null);
+            if (smiles != null)
+                smilesCache.put(inchiKey, smiles);
+        }
+        return smiles;
     }
 
     @SneakyThrows
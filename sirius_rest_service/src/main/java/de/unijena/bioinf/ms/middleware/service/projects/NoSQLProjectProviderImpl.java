@@ -21,9 +21,6 @@
 package de.unijena.bioinf.ms.middleware.service.projects;
 
 import de.unijena.bioinf.ChemistryBase.utils.FileUtils;
-import de.unijena.bioinf.ms.middleware.model.events.ProjectChangeEvent;
-import de.unijena.bioinf.ms.middleware.model.events.ServerEventImpl;
-import de.unijena.bioinf.ms.middleware.model.events.ServerEvents;
 import de.unijena.bioinf.ms.middleware.model.projects.ProjectInfo;
 import de.unijena.bioinf.ms.middleware.service.compute.ComputeService;
 import de.unijena.bioinf.ms.middleware.service.events.EventService;
@@ -52,6 +49,7 @@ import static de.unijena.bioinf.ms.persistence.storage.SiriusProjectDocumentData
 
 @Slf4j
 public class NoSQLProjectProviderImpl extends ProjectSpaceManagerProvider<NoSQLProjectSpaceManager, NoSQLProjectImpl> {
+    private static final long EVENT_AGGREGATION_WINDOW_MS = 200;
 
     public NoSQLProjectProviderImpl(@NotNull ProjectSpaceManagerFactory<NoSQLProjectSpaceManager> projectSpaceManagerFactory, @NotNull EventService<?> eventService, @NotNull ComputeService computeService) {
         super(projectSpaceManagerFactory, eventService, computeService);
@@ -91,73 +89,37 @@ public class NoSQLProjectProviderImpl extends ProjectSpaceManagerProvider<NoSQLP
     @Override
     protected void registerEventListeners(@NotNull String id, @NotNull NoSQLProjectSpaceManager psm) {
         SiriusProjectDatabaseImpl<? extends Database<?>> project = psm.getProject();
+        // one event per feature and change type instead of one per written document
+        final ProjectChangeEventAggregator events = new ProjectChangeEventAggregator(id, eventService, EVENT_AGGREGATION_WINDOW_MS);
 
-        // TODO project space listeners
-
-        project.getStorage().onInsert(AlignedFeatures.class, (AlignedFeatures features) -> eventService.sendEvent(
-                createEvent(id, features.getCompoundId(), features.getAlignedFeatureId(), FEATURE_CREATED)
-        ));
-        project.getStorage().onUpdate(AlignedFeatures.class, (AlignedFeatures features) -> eventService.sendEvent(
-                createEvent(id, features.getCompoundId(), features.getAlignedFeatureId(), FEATURE_UPDATED)
-        ));
-        project.getStorage().onRemove(AlignedFeatures.class, (AlignedFeatures features) -> eventService.sendEvent(
-                createEvent(id, features.getCompoundId(), features.getAlignedFeatureId(), FEATURE_DELETED)
-        ));
+        project.getStorage().onInsert(AlignedFeatures.class, (AlignedFeatures features) -> events.add(features.getCompoundId(), features.getAlignedFeatureId(), FEATURE_CREATED));
+        project.getStorage().onUpdate(AlignedFeatures.class, (AlignedFeatures features) -> events.add(features.getCompoundId(), features.getAlignedFeatureId(), FEATURE_UPDATED));
+        project.getStorage().onRemove(AlignedFeatures.class, (AlignedFeatures features) -> events.add(features.getCompoundId(), features.getAlignedFeatureId(), FEATURE_DELETED));
 
         // formula and FTree
-        project.getStorage().onInsert(FTreeResult.class, (FTreeResult result) -> eventService.sendEvent(
-                createEvent(id, null, result.getAlignedFeatureId(), RESULT_CREATED)
-        ));
-        project.getStorage().onUpdate(FTreeResult.class, (FTreeResult result) -> eventService.sendEvent(
-                createEvent(id, null, result.getAlignedFeatureId(), RESULT_UPDATED)
-        ));
-//        project.getStorage().onRemove(FTreeResult.class, (FTreeResult result) -> eventService.sendEvent(
-//                createEvent(id, null, result.getAlignedFeatureId(), RESULT_DELETED)
-//        ));
+        project.getStorage().onInsert(FTreeResult.class, (FTreeResult result) -> events.add(null, result.getAlignedFeatureId(), RESULT_CREATED));
+        project.getStorage().onUpdate(FTreeResult.class, (FTreeResult result) -> events.add(null, result.getAlignedFeatureId(), RESULT_UPDATED));
+//        project.getStorage().onRemove(FTreeResult.class, (FTreeResult result) -> events.add(null, result.getAlignedFeatureId(), RESULT_DELETED));
 
         //fingerprint
-        project.getStorage().onInsert(CsiPrediction.class, (CsiPrediction result) -> eventService.sendEvent(
-                createEvent(id, null, result.getAlignedFeatureId(), RESULT_CREATED)
-        ));
-        project.getStorage().onUpdate(CsiPrediction.class, (CsiPrediction result) -> eventService.sendEvent(
-                createEvent(id, null, result.getAlignedFeatureId(), RESULT_UPDATED)
-        ));
-//        project.getStorage().onRemove(CsiPrediction.class, (CsiPrediction result) -> eventService.sendEvent(
-//                createEvent(id, null, result.getAlignedFeatureId(), RESULT_DELETED)
-//        ));
+        project.getStorage().onInsert(CsiPrediction.class, (CsiPrediction result) -> events.add(null, result.getAlignedFeatureId(), RESULT_CREATED));
+        project.getStorage().onUpdate(CsiPrediction.class, (CsiPrediction result) -> events.add(null, result.getAlignedFeatureId(), RESULT_UPDATED));
+//        project.getStorage().onRemove(CsiPrediction.class, (CsiPrediction result) -> events.add(null, result.getAlignedFeatureId(), RESULT_DELETED));
 
         //canopus fingerprints
-        project.getStorage().onInsert(FormulaCandidate.class, (FormulaCandidate candidate) -> eventService.sendEvent(
-                createEvent(id, null, candidate.getAlignedFeatureId(), RESULT_CREATED)
-        ));
-        project.getStorage().onUpdate(FormulaCandidate.class, (FormulaCandidate candidate) -> eventService.sendEvent(
-                createEvent(id, null, candidate.getAlignedFeatureId(), RESULT_UPDATED)
-        ));
-//        project.getStorage().onRemove(FormulaCandidate.class, (FormulaCandidate candidate) -> eventService.sendEvent(
-//                createEvent(id, null, candidate.getAlignedFeatureId(), RESULT_DELETED)
-//        ));
+        project.getStorage().onInsert(FormulaCandidate.class, (FormulaCandidate candidate) -> events.add(null, candidate.getAlignedFeatureId(), RESULT_CREATED));
+        project.getStorage().onUpdate(FormulaCandidate.class, (FormulaCandidate candidate) -> events.add(null, candidate.getAlignedFeatureId(), RESULT_UPDATED));
+//        project.getStorage().onRemove(FormulaCandidate.class, (FormulaCandidate candidate) -> events.add(null, candidate.getAlignedFeatureId(), RESULT_DELETED));
 
         //structure db search
-        project.getStorage().onInsert(CsiStructureSearchResult.class, (CsiStructureSearchResult result) -> eventService.sendEvent(
-                createEvent(id, null, result.getAlignedFeatureId(), RESULT_CREATED)
-        ));
-        project.getStorage().onUpdate(CsiStructureSearchResult.class, (CsiStructureSearchResult result) -> eventService.sendEvent(
-                createEvent(id, null, result.getAlignedFeatureId(), RESULT_UPDATED)
-        ));
-//        project.getStorage().onRemove(CsiStructureSearchResult.class, (CsiStructureSearchResult result) -> eventService.sendEvent(
-//                createEvent(id, null, result.getAlignedFeatureId(), RESULT_DELETED)
-//        ));
+        project.getStorage().onInsert(CsiStructureSearchResult.class, (CsiStructureSearchResult result) -> events.add(null, result.getAlignedFeatureId(), RESULT_CREATED));
+        project.getStorage().onUpdate(CsiStructureSearchResult.class, (CsiStructureSearchResult result) -> events.add(null, result.getAlignedFeatureId(), RESULT_UPDATED));
+//        project.getStorage().onRemove(CsiStructureSearchResult.class, (CsiStructureSearchResult result) -> events.add(null, result.getAlignedFeatureId(), RESULT_DELETED));
 
         //msnovelist //todo this is weird because if might trigger per candide. Need better solution
-//        project.getStorage().onInsert(DenovoStructureMatch.class, (DenovoStructureMatch result) -> eventService.sendEvent(
-//                createEvent(id, null, result.getAlignedFeatureId(), RESULT_CREATED)
-//        ));
-//        project.getStorage().onUpdate(DenovoStructureMatch.class, (DenovoStructureMatch result) -> eventService.sendEvent(
-//                createEvent(id, null, result.getAlignedFeatureId(), RESULT_UPDATED)
-//        ));
-//        project.getStorage().onRemove(DenovoStructureMatch.class, (DenovoStructureMatch result) -> eventService.sendEvent(
-//                createEvent(id, null, result.getAlignedFeatureId(), RESULT_DELETED)
-//        ));
+//        project.getStorage().onInsert(DenovoStructureMatch.class, (DenovoStructureMatch result) -> events.add(null, result.getAlignedFeatureId(), RESULT_CREATED));
+//        project.getStorage().onUpdate(DenovoStructureMatch.class, (DenovoStructureMatch result) -> events.add(null, result.getAlignedFeatureId(), RESULT_UPDATED));
+//        project.getStorage().onRemove(DenovoStructureMatch.class, (DenovoStructureMatch result) -> events.add(null, result.getAlignedFeatureId(), RESULT_DELETED));
     }
 
     @Override
@@ -165,19 +127,4 @@ public class NoSQLProjectProviderImpl extends ProjectSpaceManagerProvider<NoSQLP
         return new NoSQLProjectImpl(projectId, psm, computeService::isInstanceComputing);
     }
 
-    private ServerEventImpl<ProjectChangeEvent> createEvent(
-            String projectId,
-            Long compoundId,
-            Long featureId,
-            ProjectChangeEvent.Type eventType
-    ) {
-        return ServerEvents.newProjectEvent(
-                ProjectChangeEvent.builder().eventType(eventType)
-                        .projectId(projectId)
-                        .compoundId(compoundId != null ? Long.toString(compoundId) : null)
-                        .featuredId(featureId != null ? Long.toString(featureId) : null)
-                        .build()
-        );
-    }
-
 }
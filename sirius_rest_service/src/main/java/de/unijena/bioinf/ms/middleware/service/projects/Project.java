@@ -42,6 +42,7 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static de.unijena.bioinf.ms.middleware.service.annotations.AnnotationUtils.toEnumSet;
 
@@ -102,6 +103,17 @@ public interface Project<PSM extends ProjectSpaceManager> {
                 EnumSet.of(AlignedFeature.OptField.topAnnotations));
     }
 
+    /**
+     * Stream compounds ordered by id, starting after the given compound id (keyset pagination).
+     * The returned stream is backed by the project storage and has to be closed.
+     *
+     * @param afterCompoundId id of the last compound of the previous chunk. Null to start from the beginning.
+     * @param limit           max number of compounds. Values &lt;= 0 mean unlimited.
+     */
+    Stream<Compound> streamCompounds(@Nullable String afterCompoundId, int limit,
+                                     @NotNull EnumSet<Compound.OptField> optFields,
+                                     @NotNull EnumSet<AlignedFeature.OptField> optFeatureFields);
+
     Compound findCompoundById(String compoundId, @NotNull EnumSet<Compound.OptField> optFields,
                               @NotNull EnumSet<AlignedFeature.OptField> optFeatureFields);
 
@@ -118,6 +130,15 @@ public interface Project<PSM extends ProjectSpaceManager> {
 
     Page<AlignedFeature> findAlignedFeatures(Pageable pageable, @NotNull EnumSet<AlignedFeature.OptField> optFields);
 
+    /**
+     * Stream features ordered by id, starting after the given feature id (keyset pagination).
+     * The returned stream is backed by the project storage and has to be closed.
+     *
+     * @param afterAlignedFeatureId id of the last feature of the previous chunk. Null to start from the beginning.
+     * @param limit                 max number of features. Values &lt;= 0 mean unlimited.
+     */
+    Stream<AlignedFeature> streamAlignedFeatures(@Nullable String afterAlignedFeatureId, int limit, @NotNull EnumSet<AlignedFeature.OptField> optFields);
+
     List<AlignedFeature> addAlignedFeatures(@NotNull List<FeatureImport> features,
                                             @NotNull EnumSet<AlignedFeature.OptField> optFields);
 
@@ -131,6 +152,21 @@ public interface Project<PSM extends ProjectSpaceManager> {
         return findAlignedFeaturesById(alignedFeatureId, toEnumSet(AlignedFeature.OptField.class, optFields));
     }
 
+    /**
+     * Bulk version of {@link #findAlignedFeaturesById(String, EnumSet)}. Ids that do not exist are skipped.
+     *
+     * @return features in the order of the given ids
+     */
+    List<AlignedFeature> findAlignedFeaturesByIds(@NotNull List<String> alignedFeatureIds, @NotNull EnumSet<AlignedFeature.OptField> optFields);
+
+    /**
+     * Evaluate the given filter criteria on all features of this project.
+     *
+     * @param filter criteria a feature has to satisfy
+     * @return ids of all features (aligned over runs) that match the filter.
+     */
+    List<String> findAlignedFeatureIdsByFilter(@NotNull AlignedFeatureFilter filter);
+
     void deleteAlignedFeaturesById(String alignedFeatureId);
     void deleteAlignedFeaturesByIds(List<String> alignedFeatureId);
 
@@ -150,12 +186,30 @@ public interface Project<PSM extends ProjectSpaceManager> {
         return findFormulaCandidatesByFeatureId(alignedFeatureId, pageable, toEnumSet(FormulaCandidate.OptField.class, optFields));
     }
 
+    /**
+     * Stream formula candidates of the given feature ordered by rank, starting after the given rank (keyset pagination).
+     * The returned stream is backed by the project storage and has to be closed.
+     *
+     * @param afterRank rank of the last candidate of the previous chunk. Null to start from the beginning.
+     * @param limit     max number of candidates. Values &lt;= 0 mean unlimited.
+     */
+    Stream<FormulaCandidate> streamFormulaCandidatesByFeatureId(String alignedFeatureId, @Nullable Integer afterRank, int limit, @NotNull EnumSet<FormulaCandidate.OptField> optFields);
+
     FormulaCandidate findFormulaCandidateByFeatureIdAndId(String formulaId, String alignedFeatureId, @NotNull EnumSet<FormulaCandidate.OptField> optFields);
 
     default FormulaCandidate findFormulaCandidateByFeatureIdAndId(String formulaId, String alignedFeatureId, FormulaCandidate.OptField... optFields) {
         return findFormulaCandidateByFeatureIdAndId(formulaId, alignedFeatureId, toEnumSet(FormulaCandidate.OptField.class, optFields));
     }
 
+    /**
+     * Predicted fingerprints and compound class probabilities of multiple formula candidates of the given feature.
+     *
+     * @param alignedFeatureId feature the formula candidates belong to
+     * @param formulaIds       formula candidates to retrieve predictions for. Null to retrieve predictions of all formula candidates.
+     * @return predictions in the order of the given formulaIds. Formula candidates without predictions are omitted.
+     */
+    List<FormulaPredictions> findFormulaPredictionsByFeatureId(String alignedFeatureId, @Nullable Collection<String> formulaIds);
+
     Page<StructureCandidateScored> findStructureCandidatesByFeatureIdAndFormulaId(String formulaId, String alignedFeatureId, Pageable pageable, @NotNull EnumSet<StructureCandidateScored.OptField> optFields);
 
     default Page<StructureCandidateScored> findStructureCandidatesByFeatureIdAndFormulaId(String formulaId, String alignedFeatureId, Pageable pageable, StructureCandidateScored.OptField... optFields) {
@@ -0,0 +1,98 @@
+/*
+ *
+ *  This file is part of the SIRIUS library for analyzing MS and MS/MS data
+ *
+ *  Copyright (C) 2023 Bright Giant GmbH
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 3 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along with SIRIUS.
+ *  If not, see <https://www.gnu.org/licenses/lgpl-3.0.txt>
+ */
+package de.unijena.bioinf.ms.middleware.service.projects;
+
+import de.unijena.bioinf.ms.middleware.model.events.ProjectChangeEvent;
+import de.unijena.bioinf.ms.middleware.model.events.ServerEvents;
+import de.unijena.bioinf.ms.middleware.service.events.EventService;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static de.unijena.bioinf.ms.middleware.model.events.ProjectChangeEvent.Type.RESULT_CREATED;
+import static de.unijena.bioinf.ms.middleware.model.events.ProjectChangeEvent.Type.RESULT_UPDATED;
+
+/**
+ * Collects the change events of the storage listeners of one project and publishes one event per feature and change
+ * type for all changes that happened within a short window. A single computation step writes many documents
+ * per feature (formula candidates, trees, predictions...), which would otherwise result in dozens of events
+ * for the same feature.
+ */
+class ProjectChangeEventAggregator {
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ProjectChangeEventAggregator");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final String projectId;
+    private final EventService<?> eventService;
+    private final long windowMs;
+
+    private final Map<String, ProjectChangeEvent> pending = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+
+    ProjectChangeEventAggregator(@NotNull String projectId, @NotNull EventService<?> eventService, long windowMs) {
+        this.projectId = projectId;
+        this.eventService = eventService;
+        this.windowMs = windowMs;
+    }
+
+    void add(@Nullable Long compoundId, @Nullable Long featureId, @NotNull ProjectChangeEvent.Type eventType) {
+        final String fid = featureId != null ? Long.toString(featureId) : null;
+        synchronized (pending) {
+            // a created result already tells the client to reload the results of this feature
+            if (eventType == RESULT_UPDATED && pending.containsKey(key(fid, RESULT_CREATED)))
+                return;
+
+            pending.merge(key(fid, eventType), ProjectChangeEvent.builder().eventType(eventType)
+                    .projectId(projectId)
+                    .compoundId(compoundId != null ? Long.toString(compoundId) : null)
+                    .featuredId(fid)
+                    .build(), (old, neu) -> old.getCompoundId() != null ? old : neu);
+
+            if (!flushScheduled) {
+                flushScheduled = true;
+                FLUSHER.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    void flush() {
+        final List<ProjectChangeEvent> events;
+        synchronized (pending) {
+            events = new ArrayList<>(pending.values());
+            pending.clear();
+            flushScheduled = false;
+        }
+        events.forEach(e -> eventService.sendEvent(ServerEvents.newProjectEvent(e)));
+    }
+
+    private static String key(@Nullable String featureId, @NotNull ProjectChangeEvent.Type eventType) {
+        return featureId + ":" + eventType.name();
+    }
+}
@@ -26,11 +26,14 @@ import de.unijena.bioinf.ChemistryBase.algorithm.scoring.FormulaScore;
 import de.unijena.bioinf.ChemistryBase.algorithm.scoring.SScored;
 import de.unijena.bioinf.ChemistryBase.algorithm.scoring.Scored;
 import de.unijena.bioinf.ChemistryBase.chem.FeatureGroup;
+import de.unijena.bioinf.ChemistryBase.chem.FormulaConstraints;
+import de.unijena.bioinf.ChemistryBase.chem.MolecularFormula;
 import de.unijena.bioinf.ChemistryBase.chem.PrecursorIonType;
 import de.unijena.bioinf.ChemistryBase.chem.RetentionTime;
 import de.unijena.bioinf.ChemistryBase.fp.Fingerprint;
 import de.unijena.bioinf.ChemistryBase.ms.CompoundQuality;
 import de.unijena.bioinf.ChemistryBase.ms.Deviation;
+import de.unijena.bioinf.ChemistryBase.ms.MS1MassDeviation;
 import de.unijena.bioinf.ChemistryBase.ms.Ms2Experiment;
 import de.unijena.bioinf.ChemistryBase.ms.ft.FTree;
 import de.unijena.bioinf.ChemistryBase.ms.lcms.CoelutingTraceSet;
@@ -39,6 +42,8 @@ import de.unijena.bioinf.GibbsSampling.ZodiacScore;
 import de.unijena.bioinf.babelms.json.FTJsonWriter;
 import de.unijena.bioinf.canopus.CanopusResult;
 import de.unijena.bioinf.chemdb.CompoundCandidate;
+import de.unijena.bioinf.chemdb.DBLink;
+import de.unijena.bioinf.elgordo.LipidSpecies;
 import de.unijena.bioinf.fingerid.ConfidenceScore;
 import de.unijena.bioinf.fingerid.ConfidenceScoreApproximate;
 import de.unijena.bioinf.fingerid.FingerprintResult;
@@ -54,6 +59,7 @@ import de.unijena.bioinf.ms.middleware.model.features.*;
 import de.unijena.bioinf.ms.middleware.model.spectra.AnnotatedSpectrum;
 import de.unijena.bioinf.ms.middleware.model.spectra.Spectrums;
 import de.unijena.bioinf.ms.middleware.service.annotations.AnnotationUtils;
+import de.unijena.bioinf.ms.properties.PropertyManager;
 import de.unijena.bioinf.ms.rest.model.canopus.CanopusCfData;
 import de.unijena.bioinf.ms.rest.model.canopus.CanopusNpcData;
 import de.unijena.bioinf.ms.rest.model.fingerid.FingerIdData;
@@ -74,6 +80,7 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
@@ -87,6 +94,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 @Slf4j
@@ -199,6 +207,106 @@ public class SiriusProjectSpaceImpl implements Project<SiriusProjectSpaceManager
        throw new UnsupportedOperationException("Not supported yet.");
     }
 
+    @Override
+    public List<String> findAlignedFeatureIdsByFilter(@NotNull AlignedFeatureFilter filter) {
+        // the legacy project space does not store feature quality reports, categories that are not available are not filtered anyway.
+        if (filter.getFeatureQualities() != null)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Filtering by feature quality is not supported by project '" + projectId + "'.");
+
+        final Set<PrecursorIonType> adducts = filter.getAdducts() == null || filter.getAdducts().isEmpty() ? null
+                : filter.getAdducts().stream().map(PrecursorIonType::fromString).collect(Collectors.toSet());
+
+        // cheap criteria on the compound container id, evaluated without loading any data
+        List<CompoundContainerId> candidates = projectSpaceManager.getProjectSpaceImpl().stream().filter(cid -> {
+            double mz = cid.getIonMass().orElse(0d);
+            if (filter.getMinMz() != null && mz < filter.getMinMz())
+                return false;
+            if (filter.getMaxMz() != null && mz > filter.getMaxMz())
+                return false;
+            RetentionTime rt = cid.getRt().orElse(null);
+            if (rt != null && Double.isFinite(rt.getMiddleTime())) { //never filter features without RT
+                if (filter.getMinRtSeconds() != null && rt.getMiddleTime() < filter.getMinRtSeconds())
+                    return false;
+                if (filter.getMaxRtSeconds() != null && rt.getMiddleTime() > filter.getMaxRtSeconds())
+                    return false;
+            }
+            return adducts == null || cid.getIonType().map(adducts::contains).orElse(false);
+        }).toList();
+
+        // criteria on the input data
+        if (Boolean.TRUE.equals(filter.getHasMs1()) || Boolean.TRUE.equals(filter.getHasMsMs()) || filter.getMinIsotopePeaks() != null) {
+            final MS1MassDeviation dev = PropertyManager.DEFAULTS.createInstanceWithDefaults(MS1MassDeviation.class);
+            candidates = candidates.stream().filter(cid -> {
+                Ms2Experiment exp = loadExperiment(projectSpaceManager.getInstanceFromCompound(cid));
+                if (Boolean.TRUE.equals(filter.getHasMs1()) && exp.getMs1Spectra().isEmpty() && exp.getMergedMs1Spectrum() == null)
+                    return false;
+                if (Boolean.TRUE.equals(filter.getHasMsMs()) && exp.getMs2Spectra().isEmpty())
+                    return false;
+                if (filter.getMinIsotopePeaks() != null) {
+                    return exp.getMergedMs1Spectrum() != null
+                            && de.unijena.bioinf.ChemistryBase.ms.utils.Spectrums.extractIsotopePattern(exp.getMergedMs1Spectrum(), dev,
+                            exp.getIonMass(), exp.getPrecursorIonType().getCharge(), true).size() >= filter.getMinIsotopePeaks();
+                }
+                return true;
+            }).toList();
+        }
+
+        // criteria on the top annotations, same as shown in the feature list
+        final boolean needsConfidence = filter.getMinConfidence() != null || filter.getMaxConfidence() != null;
+        final boolean needsFormula = filter.getElementConstraints() != null && !filter.getElementConstraints().isBlank();
+        if (needsConfidence || needsFormula) {
+            final boolean approx = Boolean.TRUE.equals(filter.getApproximateConfidence());
+            final FormulaConstraints constraints = needsFormula ? FormulaConstraints.fromString(filter.getElementConstraints()) : null;
+            final boolean matchFormula = !Boolean.FALSE.equals(filter.getMatchFormula());
+            final boolean matchPrecursor = !Boolean.FALSE.equals(filter.getMatchPrecursorFormula());
+            candidates = candidates.stream().filter(cid -> {
+                FeatureAnnotations top = extractTopAnnotations(projectSpaceManager.getInstanceFromCompound(cid));
+                if (needsConfidence) {
+                    Double conf = approx ? top.getConfidenceApproxMatch() : top.getConfidenceExactMatch();
+                    if (conf == null || conf.isNaN() || conf.isInfinite()) { //features without confidence are removed only by min filter
+                        if (filter.getMinConfidence() != null)
+                            return false;
+                    } else if ((filter.getMinConfidence() != null && conf < filter.getMinConfidence())
+                            || (filter.getMaxConfidence() != null && conf > filter.getMaxConfidence())) {
+                        return false;
+                    }
+                }
+                if (needsFormula) {
+                    FormulaCandidate fc = top.getFormulaAnnotation();
+                    if (fc == null)
+                        return false;
+                    MolecularFormula formula = MolecularFormula.parseOrThrow(fc.getMolecularFormula());
+                    PrecursorIonType adduct = PrecursorIonType.fromString(fc.getAdduct());
+                    return (matchFormula && constraints.isSatisfied(formula, adduct.getIonization()))
+                            || (matchPrecursor && constraints.isSatisfied(adduct.neutralMoleculeToMeasuredNeutralMolecule(formula), adduct.getIonization()));
+                }
+                return true;
+            }).toList();
+        }
+
+        if (filter.getLipidDetected() != null) {
+            candidates = candidates.stream().filter(cid -> {
+                boolean lipid = projectSpaceManager.getInstanceFromCompound(cid).loadFormulaResults(FTree.class).stream()
+                        .map(SScored::getCandidate).map(fr -> fr.getAnnotation(FTree.class)).flatMap(Optional::stream)
+                        .anyMatch(tree -> tree.getAnnotation(LipidSpecies.class).isPresent());
+                return lipid == filter.getLipidDetected();
+            }).toList();
+        }
+
+        if (filter.getDatabases() != null) {
+            final int k = filter.getNumOfDbCandidates() == null ? 1 : filter.getNumOfDbCandidates();
+            final Set<String> dbs = new HashSet<>(filter.getDatabases());
+            candidates = candidates.stream().filter(cid -> k > 0 && findStructureCandidatesByFeatureId(cid.getDirectoryName(),
+                    PageRequest.of(0, k), EnumSet.of(StructureCandidateScored.OptField.dbLinks)).stream()
+                    .map(StructureCandidate::getDbLinks).filter(Objects::nonNull).flatMap(List::stream)
+                    .map(DBLink::getName).filter(Objects::nonNull)
+                    .anyMatch(dbs::contains)
+            ).toList();
+        }
+
+        return candidates.stream().map(CompoundContainerId::getDirectoryName).toList();
+    }
+
     @Override
     public Page<AlignedFeature> findAlignedFeatures(Pageable pageable, @NotNull EnumSet<AlignedFeature.OptField> optFields) {
         LoggerFactory.getLogger(AlignedFeatureController.class).info("Started collecting aligned features...");
@@ -226,6 +334,58 @@ public class SiriusProjectSpaceImpl implements Project<SiriusProjectSpaceManager
         return asAlignedFeature(ccid, optFields);
     }
 
+    @Override
+    public Stream<AlignedFeature> streamAlignedFeatures(@Nullable String afterAlignedFeatureId, int limit, @NotNull EnumSet<AlignedFeature.OptField> optFields) {
+        Stream<CompoundContainerId> stream = projectSpaceManager.getProjectSpaceImpl().stream()
+                .sorted(Comparator.comparing(CompoundContainerId::getDirectoryName));
+        if (afterAlignedFeatureId != null && !afterAlignedFeatureId.isBlank())
+            stream = stream.filter(cid -> cid.getDirectoryName().compareTo(afterAlignedFeatureId) > 0);
+        if (limit > 0)
+            stream = stream.limit(limit);
+        return stream.map(cid -> asAlignedFeature(cid, optFields));
+    }
+
+    @Override
+    public Stream<Compound> streamCompounds(@Nullable String afterCompoundId, int limit, @NotNull EnumSet<Compound.OptField> optFields, @NotNull EnumSet<AlignedFeature.OptField> optFeatureFields) {
+        // compounds are not stored explicitly but are groups of features, so the grouping is needed before the first compound is known
+        Map<String, List<CompoundContainerId>> featureGroups = projectSpaceManager.getProjectSpaceImpl()
+                .stream().filter(c -> c.getGroupId().isPresent())
+                .collect(Collectors.groupingBy(c -> c.getGroupId().get(), TreeMap::new, Collectors.toList()));
+
+        Stream<Map.Entry<String, List<CompoundContainerId>>> stream = featureGroups.entrySet().stream();
+        if (afterCompoundId != null && !afterCompoundId.isBlank())
+            stream = stream.filter(e -> e.getKey().compareTo(afterCompoundId) > 0);
+        if (limit > 0)
+            stream = stream.limit(limit);
+        return stream.map(e -> asCompound(e.getValue(), optFields, optFeatureFields));
+    }
+
+    @Override
+    public Stream<FormulaCandidate> streamFormulaCandidatesByFeatureId(String alignedFeatureId, @Nullable Integer afterRank, int limit, @NotNull EnumSet<FormulaCandidate.OptField> optFields) {
+        Class<? extends DataAnnotation>[] annotations = resolveFormulaCandidateAnnotations(optFields);
+        SiriusProjectSpaceInstance instance = loadInstance(alignedFeatureId);
+        List<? extends SScored<FormulaResult, ? extends FormulaScore>> ranked = instance.loadFormulaResults();
+
+        // ranks are the (1-based) positions in the score ordered list of formula results
+        IntStream ranks = IntStream.rangeClosed(afterRank == null ? 1 : Math.max(1, afterRank + 1), ranked.size());
+        if (limit > 0)
+            ranks = ranks.limit(limit);
+        return ranks.mapToObj(rank -> {
+            FormulaResult fr = ranked.get(rank - 1).getCandidate();
+            instance.loadFormulaResult(fr.getId(), annotations).ifPresent(fr::setAnnotationsFrom);
+            return makeFormulaCandidate(instance, fr, optFields).rank(rank).build();
+        });
+    }
+
+    @Override
+    public List<AlignedFeature> findAlignedFeaturesByIds(@NotNull List<String> alignedFeatureIds, @NotNull EnumSet<AlignedFeature.OptField> optFields) {
+        return alignedFeatureIds.stream()
+                .map(id -> projectSpaceManager.getProjectSpaceImpl().findCompound(id))
+                .flatMap(Optional::stream)
+                .map(ccid -> asAlignedFeature(ccid, optFields))
+                .toList();
+    }
+
     @Override
     public void deleteAlignedFeaturesById(String alignedFeatureId) {
         CompoundContainerId compound = projectSpaceManager.getProjectSpaceImpl().findCompound(alignedFeatureId)
@@ -349,6 +509,36 @@ public class SiriusProjectSpaceImpl implements Project<SiriusProjectSpaceManager
                 .orElse(null);
     }
 
+    @Override
+    public List<FormulaPredictions> findFormulaPredictionsByFeatureId(String alignedFeatureId, @Nullable Collection<String> formulaIds) {
+        SiriusProjectSpaceInstance instance = loadInstance(alignedFeatureId);
+        @Nullable Set<String> requested = formulaIds == null ? null : new HashSet<>(formulaIds);
+
+        // load only the prediction annotations of the formula results
+        final Map<String, FormulaPredictions> predictions = new LinkedHashMap<>();
+        instance.loadFormulaResults(FingerprintResult.class, CanopusResult.class).stream().map(SScored::getCandidate)
+                .filter(fr -> requested == null || requested.contains(fr.getId().fileName()))
+                .forEach(fr -> {
+                    Optional<FingerprintResult> fpResult = fr.getAnnotation(FingerprintResult.class);
+                    Optional<CanopusResult> canopusResult = fr.getAnnotation(CanopusResult.class);
+                    if (fpResult.isEmpty() && canopusResult.isEmpty())
+                        return;
+                    FormulaPredictions fp = FormulaPredictions.builder().formulaId(fr.getId().fileName()).build();
+                    fpResult.ifPresent(r -> fp.setFingerprint(FormulaPredictions.toFloatArray(r.fingerprint)));
+                    canopusResult.ifPresent(r -> {
+                        fp.setClassyFireProbabilities(FormulaPredictions.toFloatArray(r.getCanopusFingerprint()));
+                        fp.setNpcProbabilities(FormulaPredictions.toFloatArray(r.getNpcFingerprint().orElse(null)));
+                    });
+                    predictions.put(fp.getFormulaId(), fp);
+                });
+
+        if (formulaIds == null)
+            return new ArrayList<>(predictions.values());
+
+        // keep the requested order, formula candidates without any predictions are skipped
+        return formulaIds.stream().distinct().map(predictions::get).filter(Objects::nonNull).toList();
+    }
+
     @Override
     public Page<StructureCandidateScored> findStructureCandidatesByFeatureIdAndFormulaId(String formulaId, String alignedFeatureId, Pageable pageable, @NotNull EnumSet<StructureCandidateScored.OptField> optFields) {
         List<Class<? extends DataAnnotation>> para = (optFields.contains(StructureCandidateScored.OptField.fingerprint)
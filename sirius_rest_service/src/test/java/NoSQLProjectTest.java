@@ -18,18 +18,31 @@
  *  If not, see <https://www.gnu.org/licenses/lgpl-3.0.txt>
  */
 
+import de.unijena.bioinf.ChemistryBase.chem.InChI;
+import de.unijena.bioinf.ChemistryBase.chem.MolecularFormula;
+import de.unijena.bioinf.ChemistryBase.chem.PrecursorIonType;
 import de.unijena.bioinf.ChemistryBase.ms.CollisionEnergy;
+import de.unijena.bioinf.ChemistryBase.ms.ft.FTree;
+import de.unijena.bioinf.ChemistryBase.utils.DataQuality;
 import de.unijena.bioinf.ChemistryBase.utils.FileUtils;
+import de.unijena.bioinf.chemdb.DBLink;
+import de.unijena.bioinf.chemdb.FingerprintCandidate;
 import de.unijena.bioinf.ms.middleware.model.compounds.Compound;
 import de.unijena.bioinf.ms.middleware.model.compounds.CompoundImport;
 import de.unijena.bioinf.ms.middleware.model.features.AlignedFeature;
+import de.unijena.bioinf.ms.middleware.model.features.AlignedFeatureFilter;
 import de.unijena.bioinf.ms.middleware.model.features.FeatureImport;
 import de.unijena.bioinf.ms.middleware.model.features.MsData;
 import de.unijena.bioinf.ms.middleware.model.spectra.BasicSpectrum;
 import de.unijena.bioinf.ms.middleware.service.projects.NoSQLProjectImpl;
+import de.unijena.bioinf.ms.persistence.model.core.feature.AlignedFeatures;
+import de.unijena.bioinf.ms.persistence.model.sirius.CsiStructureMatch;
+import de.unijena.bioinf.ms.persistence.model.sirius.FTreeResult;
+import de.unijena.bioinf.ms.persistence.model.sirius.FormulaCandidate;
 import de.unijena.bioinf.ms.persistence.storage.SiriusProjectDocumentDatabase;
 import de.unijena.bioinf.ms.persistence.storage.nitrite.NitriteSirirusProject;
 import de.unijena.bioinf.projectspace.NoSQLProjectSpaceManager;
+import de.unijena.bioinf.storage.db.nosql.Database;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.junit.Assert;
 import org.junit.Test;
@@ -39,6 +52,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 
 public class NoSQLProjectTest {
 
@@ -107,4 +121,100 @@ public class NoSQLProjectTest {
         }
     }
 
+    @Test
+    public void testFilterAlignedFeatureIds() throws IOException {
+        Path location = FileUtils.createTmpProjectSpaceLocation(SiriusProjectDocumentDatabase.SIRIUS_PROJECT_SUFFIX);
+        try (NitriteSirirusProject ps = new NitriteSirirusProject(location)) {
+            NoSQLProjectSpaceManager psm = new NoSQLProjectSpaceManager(ps);
+            NoSQLProjectImpl project = new NoSQLProjectImpl("test", psm, (a,b) -> false);
+
+            List<Compound> compounds = project.addCompounds(List.of(
+                    CompoundImport.builder().name("good").features(List.of(makeFeatureImport("good", 181.07))).build(),
+                    CompoundImport.builder().name("bad").features(List.of(makeFeatureImport("bad", 136.06))).build()
+            ), EnumSet.of(Compound.OptField.none), EnumSet.of(AlignedFeature.OptField.none));
+            String goodId = compounds.get(0).getFeatures().get(0).getAlignedFeatureId();
+            String badId = compounds.get(1).getFeatures().get(0).getAlignedFeatureId();
+
+            Database<?> storage = ps.getStorage();
+            PrecursorIonType adduct = PrecursorIonType.fromString("[M+H]+");
+
+            // good: high quality, CHO formula with tree and a structure hit in PUBCHEM
+            AlignedFeatures good = storage.getByPrimaryKey(Long.parseLong(goodId), AlignedFeatures.class).orElseThrow();
+            good.setDataQuality(DataQuality.GOOD);
+            storage.upsert(good);
+
+            FormulaCandidate goodFormula = FormulaCandidate.builder().alignedFeatureId(good.getAlignedFeatureId())
+                    .adduct(adduct).molecularFormula(MolecularFormula.parseOrThrow("C6H12O6"))
+                    .formulaRank(1).siriusScore(10d).build();
+            storage.insertAll(List.of(goodFormula));
+            storage.insertAll(List.of(FTreeResult.builder().alignedFeatureId(good.getAlignedFeatureId())
+                    .formulaId(goodFormula.getFormulaId())
+                    .fTree(new FTree(goodFormula.getMolecularFormula(), adduct.getIonization())).build()));
+
+            FingerprintCandidate candidate = new FingerprintCandidate(new InChI("WQZGKKKJIJFFOK-GASJEMHNSA-N", "InChI=1S/C6H12O6/c7-1-2-3(8)4(9)5(10)6(11)12-2/h2-11H,1H2/t2-,3-,4+,5-,6?/m1/s1"), null);
+            candidate.setLinks(List.of(new DBLink("PUBCHEM", "5793")));
+            storage.insertAll(List.of(CsiStructureMatch.builder().alignedFeatureId(good.getAlignedFeatureId())
+                    .formulaId(goodFormula.getFormulaId()).structureRank(1).csiScore(-10d)
+                    .candidateInChiKey(candidate.getInchiKey2D()).build()));
+            storage.upsertAll(List.of(candidate));
+
+            // bad: low quality, formula containing nitrogen, no tree and no structure hits
+            AlignedFeatures bad = storage.getByPrimaryKey(Long.parseLong(badId), AlignedFeatures.class).orElseThrow();
+            bad.setDataQuality(DataQuality.BAD);
+            storage.upsert(bad);
+            storage.insertAll(List.of(FormulaCandidate.builder().alignedFeatureId(bad.getAlignedFeatureId())
+                    .adduct(adduct).molecularFormula(MolecularFormula.parseOrThrow("C5H5N5"))
+                    .formulaRank(1).siriusScore(5d).build()));
+
+            // quality
+            Assert.assertEquals(List.of(goodId), project.findAlignedFeatureIdsByFilter(AlignedFeatureFilter.builder()
+                    .featureQualities(List.of(DataQuality.GOOD)).build()));
+            Assert.assertEquals(List.of(goodId, badId), sorted(project.findAlignedFeatureIdsByFilter(AlignedFeatureFilter.builder()
+                    .categoryQualities(Map.of("Peak Quality", List.of(DataQuality.GOOD))).build()), goodId)); //features without report are kept
+
+            // elements
+            Assert.assertEquals(List.of(goodId), project.findAlignedFeatureIdsByFilter(AlignedFeatureFilter.builder()
+                    .elementConstraints("CHO").matchFormula(true).matchPrecursorFormula(false).build()));
+            Assert.assertEquals(List.of(goodId, badId), sorted(project.findAlignedFeatureIdsByFilter(AlignedFeatureFilter.builder()
+                    .elementConstraints("CHNO").build()), goodId));
+
+            // databases
+            Assert.assertEquals(List.of(goodId), project.findAlignedFeatureIdsByFilter(AlignedFeatureFilter.builder()
+                    .databases(List.of("PUBCHEM")).numOfDbCandidates(1).build()));
+            Assert.assertTrue(project.findAlignedFeatureIdsByFilter(AlignedFeatureFilter.builder()
+                    .databases(List.of("KEGG")).build()).isEmpty());
+            Assert.assertTrue(project.findAlignedFeatureIdsByFilter(AlignedFeatureFilter.builder()
+                    .databases(List.of()).build()).isEmpty());
+
+            // lipids
+            Assert.assertTrue(project.findAlignedFeatureIdsByFilter(AlignedFeatureFilter.builder()
+                    .lipidDetected(true).build()).isEmpty());
+            Assert.assertEquals(List.of(goodId, badId), sorted(project.findAlignedFeatureIdsByFilter(AlignedFeatureFilter.builder()
+                    .lipidDetected(false).build()), goodId));
+
+            // criteria are combined
+            Assert.assertTrue(project.findAlignedFeatureIdsByFilter(AlignedFeatureFilter.builder()
+                    .featureQualities(List.of(DataQuality.BAD)).databases(List.of("PUBCHEM")).build()).isEmpty());
+        }
+    }
+
+    private static FeatureImport makeFeatureImport(String name, double ionMass) {
+        BasicSpectrum ms1 = new BasicSpectrum(new double[]{ionMass, ionMass + 1.003}, new double[]{100, 10}, 1d);
+        return FeatureImport.builder()
+                .name(name)
+                .featureId(name)
+                .ionMass(ionMass)
+                .adduct("[M+H]+")
+                .mergedMs1(ms1)
+                .ms1Spectra(List.of(ms1))
+                .build();
+    }
+
+    /**
+     * Result order of the filter is not specified, move the given first id to the front.
+     */
+    private static List<String> sorted(List<String> ids, String first) {
+        return ids.stream().sorted((a, b) -> a.equals(first) ? -1 : b.equals(first) ? 1 : a.compareTo(b)).toList();
+    }
+
 }
@@ -0,0 +1,110 @@
+/*
+ *
+ *  This file is part of the SIRIUS library for analyzing MS and MS/MS data
+ *
+ *  Copyright (C) 2013-2020 Kai Dührkop, Markus Fleischauer, Marcus Ludwig, Martin A. Hoffman, Fleming Kretschmer and Sebastian Böcker,
+ *  Chair of Bioinformatics, Friedrich-Schiller University.
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 3 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License along with SIRIUS. If not, see <https://www.gnu.org/licenses/lgpl-3.0.txt>
+ */
+
+package de.unijena.bioinf.ms.middleware.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.unijena.bioinf.ms.middleware.model.annotations.FormulaPredictions;
+import de.unijena.bioinf.ms.middleware.service.projects.Project;
+import de.unijena.bioinf.ms.middleware.service.projects.ProjectsProvider;
+import de.unijena.bioinf.ms.nightsky.sdk.BinaryFormulaPredictions;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+public class FormulaPredictionsBinaryTest {
+
+    private static List<FormulaPredictions> predictions() {
+        return List.of(
+                new FormulaPredictions("f1", new float[]{0f, 0.25f, Float.NaN, 1f}, new float[]{0.5f}, null),
+                new FormulaPredictions("f2", new float[0], null, new float[]{Float.NaN, Float.MIN_VALUE}),
+                new FormulaPredictions("", null, null, null)
+        );
+    }
+
+    private static void assertRoundTrip(List<FormulaPredictions> expected, List<BinaryFormulaPredictions> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).getFormulaId(), actual.get(i).getFormulaId());
+            // assertArrayEquals on floats compares via Float.compare, so NaN has to survive the round trip
+            Assert.assertArrayEquals(expected.get(i).getFingerprint(), actual.get(i).getFingerprint(), 0f);
+            Assert.assertArrayEquals(expected.get(i).getClassyFireProbabilities(), actual.get(i).getClassyFireProbabilities(), 0f);
+            Assert.assertArrayEquals(expected.get(i).getNpcProbabilities(), actual.get(i).getNpcProbabilities(), 0f);
+        }
+    }
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        final List<FormulaPredictions> expected = predictions();
+        assertRoundTrip(expected, BinaryFormulaPredictions.decode(FormulaPredictionsBinary.encode(expected)));
+    }
+
+    @Test
+    public void testEncodeDecodeEmpty() throws Exception {
+        Assert.assertTrue(BinaryFormulaPredictions.decode(FormulaPredictionsBinary.encode(List.of())).isEmpty());
+    }
+
+    @Test(expected = java.io.UncheckedIOException.class)
+    public void testDecodeTruncated() throws Exception {
+        final byte[] body = FormulaPredictionsBinary.encode(predictions());
+        BinaryFormulaPredictions.decode(java.util.Arrays.copyOf(body, body.length - 3));
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void testContentNegotiation() throws Exception {
+        final Project project = mock(Project.class);
+        when(project.findFormulaPredictionsByFeatureId(eq("af1"), any())).thenReturn(predictions());
+        final ProjectsProvider provider = mock(ProjectsProvider.class);
+        when(provider.getProjectOrThrow("p1")).thenReturn(project);
+
+        final MockMvc mvc = MockMvcBuilders.standaloneSetup(
+                new AlignedFeatureController(provider, null, null, new ObjectMapper())).build();
+        final String url = "/api/projects/p1/aligned-features/af1/formulas/predictions";
+
+        final byte[] body = mvc.perform(post(url).contentType(MediaType.APPLICATION_JSON).content("[\"f1\",\"f2\",\"\"]")
+                        .accept(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_OCTET_STREAM))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertRoundTrip(predictions(), BinaryFormulaPredictions.decode(body));
+
+        mvc.perform(post(url).contentType(MediaType.APPLICATION_JSON).content("[]")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].formulaId").value("f1"))
+                .andExpect(jsonPath("$[0].classyFireProbabilities[0]").value(0.5))
+                .andExpect(jsonPath("$[1].fingerprint.length()").value(0))
+                .andExpect(jsonPath("$[2].fingerprint").doesNotExist());
+    }
+}
@@ -0,0 +1,322 @@
+package de.unijena.bioinf.ms.utils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntPredicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Pull based mzML reader that streams the spectra of a run one by one instead of unmarshalling the whole document.
+ * Only a small window of spectra is held in memory. Base64 decoding and zlib decompression of the peak data is done
+ * by a small worker pool while the next spectra are parsed. Spectra are returned in file order.
+ * <p>
+ * Only the parameters needed for the utils are read: ms level, m/z and intensity arrays.
+ * Parameters defined via referenceableParamGroups are not resolved.
+ */
+public class MzMLSpectrumIterator implements Iterator<MzMLSpectrumIterator.MzMLSpectrum>, Closeable {
+
+    private static final String MS_LEVEL = "MS:1000511";
+    private static final String MZ_ARRAY = "MS:1000514";
+    private static final String INTENSITY_ARRAY = "MS:1000515";
+    private static final String INT_32 = "MS:1000519";
+    private static final String FLOAT_32 = "MS:1000521";
+    private static final String INT_64 = "MS:1000522";
+    private static final String FLOAT_64 = "MS:1000523";
+    private static final String ZLIB = "MS:1000574";
+
+    private final InputStream stream;
+    private final XMLStreamReader reader;
+    private final IntPredicate msLevelFilter;
+    private final ExecutorService decoder;
+    private final int lookahead;
+    private final Deque<Future<MzMLSpectrum>> pending = new ArrayDeque<>();
+    private boolean endOfSpectra = false;
+
+    public MzMLSpectrumIterator(Path mzMLPath) throws IOException {
+        this(mzMLPath, msLevel -> true);
+    }
+
+    public MzMLSpectrumIterator(Path mzMLPath, IntPredicate msLevelFilter) throws IOException {
+        this(mzMLPath, msLevelFilter, Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)));
+    }
+
+    /**
+     * @param msLevelFilter  only spectra with an accepted ms level are decoded and returned
+     * @param decoderThreads number of threads used to decode the peak data
+     */
+    public MzMLSpectrumIterator(Path mzMLPath, IntPredicate msLevelFilter, int decoderThreads) throws IOException {
+        this.msLevelFilter = msLevelFilter;
+        this.stream = new BufferedInputStream(Files.newInputStream(mzMLPath), 1 << 16);
+        try {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            this.reader = factory.createXMLStreamReader(stream);
+        } catch (XMLStreamException e) {
+            stream.close();
+            throw new IOException("Could not read mzML: " + mzMLPath, e);
+        }
+        this.decoder = Executors.newFixedThreadPool(decoderThreads, r -> {
+            Thread t = new Thread(r, "mzml-decoder");
+            t.setDaemon(true);
+            return t;
+        });
+        // enough spectra in flight to keep all decoders busy, but memory stays bounded.
+        this.lookahead = 2 * decoderThreads;
+    }
+
+    @Override
+    public boolean hasNext() {
+        fill();
+        return !pending.isEmpty();
+    }
+
+    @Override
+    public MzMLSpectrum next() {
+        fill();
+        Future<MzMLSpectrum> next = pending.poll();
+        if (next == null)
+            throw new NoSuchElementException();
+        try {
+            return next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while decoding mzML spectrum.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not decode mzML spectrum.", e.getCause());
+        }
+    }
+
+    private void fill() {
+        try {
+            while (!endOfSpectra && pending.size() < lookahead) {
+                final RawSpectrum raw = readNextSpectrum();
+                if (raw == null) {
+                    endOfSpectra = true;
+                } else if (msLevelFilter.test(raw.msLevel)) {
+                    pending.add(decoder.submit(raw::decode));
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Error parsing mzML.", e);
+        }
+    }
+
+    private RawSpectrum readNextSpectrum() throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT && "spectrum".equals(reader.getLocalName()))
+                return readSpectrum();
+            if (event == XMLStreamConstants.END_ELEMENT && "spectrumList".equals(reader.getLocalName()))
+                return null; // do not parse chromatograms
+        }
+        return null;
+    }
+
+    private RawSpectrum readSpectrum() throws XMLStreamException {
+        final RawSpectrum spec = new RawSpectrum(reader.getAttributeValue(null, "id"));
+        int depth = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if (depth == 0 && "cvParam".equals(name) && MS_LEVEL.equals(reader.getAttributeValue(null, "accession"))) {
+                    spec.msLevel = Integer.parseInt(reader.getAttributeValue(null, "value"));
+                } else if ("binaryDataArray".equals(name)) {
+                    readBinaryDataArray(spec);
+                    continue;
+                }
+                ++depth;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == 0)
+                    return spec; // end of spectrum
+                --depth;
+            }
+        }
+        return spec;
+    }
+
+    private void readBinaryDataArray(RawSpectrum spec) throws XMLStreamException {
+        String arrayType = null;
+        String numberType = FLOAT_64;
+        boolean zlib = false;
+        String binary = null;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if ("cvParam".equals(name)) {
+                    String accession = reader.getAttributeValue(null, "accession");
+                    if (MZ_ARRAY.equals(accession) || INTENSITY_ARRAY.equals(accession))
+                        arrayType = accession;
+                    else if (FLOAT_32.equals(accession) || FLOAT_64.equals(accession) || INT_32.equals(accession) || INT_64.equals(accession))
+                        numberType = accession;
+                    else if (ZLIB.equals(accession))
+                        zlib = true;
+                } else if ("binary".equals(name)) {
+                    binary = reader.getElementText();
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && "binaryDataArray".equals(reader.getLocalName())) {
+                break;
+            }
+        }
+        if (binary == null || arrayType == null)
+            return;
+        EncodedArray array = new EncodedArray(binary, numberType, zlib);
+        if (MZ_ARRAY.equals(arrayType))
+            spec.mz = array;
+        else
+            spec.intensities = array;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pending.forEach(f -> f.cancel(true));
+        pending.clear();
+        decoder.shutdownNow();
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            stream.close();
+        }
+    }
+
+
+    public static class MzMLSpectrum {
+        private final String id;
+        private final int msLevel;
+        private final double[] mzValues;
+        private final double[] intensityValues;
+
+        public MzMLSpectrum(String id, int msLevel, double[] mzValues, double[] intensityValues) {
+            this.id = id;
+            this.msLevel = msLevel;
+            this.mzValues = mzValues;
+            this.intensityValues = intensityValues;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return ms level or -1 if not specified
+         */
+        public int getMsLevel() {
+            return msLevel;
+        }
+
+        /**
+         * @return m/z values or null if the spectrum contains no m/z array
+         */
+        public double[] getMzValues() {
+            return mzValues;
+        }
+
+        /**
+         * @return intensity values or null if the spectrum contains no intensity array
+         */
+        public double[] getIntensityValues() {
+            return intensityValues;
+        }
+    }
+
+    private static class RawSpectrum {
+        private final String id;
+        private int msLevel = -1;
+        private EncodedArray mz;
+        private EncodedArray intensities;
+
+        private RawSpectrum(String id) {
+            this.id = id;
+        }
+
+        private MzMLSpectrum decode() throws DataFormatException {
+            return new MzMLSpectrum(id, msLevel,
+                    mz == null ? null : mz.decode(),
+                    intensities == null ? null : intensities.decode());
+        }
+    }
+
+    private static class EncodedArray {
+        private final String base64;
+        private final String numberType;
+        private final boolean zlib;
+
+        private EncodedArray(String base64, String numberType, boolean zlib) {
+            this.base64 = base64;
+            this.numberType = numberType;
+            this.zlib = zlib;
+        }
+
+        private double[] decode() throws DataFormatException {
+            byte[] bytes = Base64.getMimeDecoder().decode(base64);
+            if (zlib)
+                bytes = inflate(bytes);
+
+            final int valueSize = FLOAT_32.equals(numberType) || INT_32.equals(numberType) ? 4 : 8;
+            if (bytes.length % valueSize != 0)
+                throw new DataFormatException("Binary data array of " + bytes.length + " bytes is not a multiple of the value size " + valueSize + ".");
+
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            final double[] values;
+            switch (numberType) {
+                case FLOAT_32:
+                    values = new double[bytes.length / 4];
+                    for (int i = 0; i < values.length; i++)
+                        values[i] = buffer.getFloat();
+                    break;
+                case INT_32:
+                    values = new double[bytes.length / 4];
+                    for (int i = 0; i < values.length; i++)
+                        values[i] = buffer.getInt();
+                    break;
+                case INT_64:
+                    values = new double[bytes.length / 8];
+                    for (int i = 0; i < values.length; i++)
+                        values[i] = buffer.getLong();
+                    break;
+                default:
+                    values = new double[bytes.length / 8];
+                    for (int i = 0; i < values.length; i++)
+                        values[i] = buffer.getDouble();
+            }
+            return values;
+        }
+
+        private static byte[] inflate(byte[] compressed) throws DataFormatException {
+            final Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                final ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+                final byte[] chunk = new byte[8192];
+                while (!inflater.finished()) {
+                    int n = inflater.inflate(chunk);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        // the stream ended before the end of the compressed data, do not return a truncated array
+                        throw new DataFormatException("Truncated zlib data after " + out.size() + " bytes.");
+                    out.write(chunk, 0, n);
+                }
+                return out.toByteArray();
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
@@ -7,40 +7,46 @@ import de.unijena.bioinf.ChemistryBase.ms.utils.SimpleSpectrum;
 import de.unijena.bioinf.ChemistryBase.ms.utils.Spectrums;
 import gnu.trove.list.array.TDoubleArrayList;
 import org.slf4j.LoggerFactory;
-import uk.ac.ebi.jmzml.model.mzml.BinaryDataArray;
-import uk.ac.ebi.jmzml.model.mzml.CVParam;
-import uk.ac.ebi.jmzml.model.mzml.MzML;
-import uk.ac.ebi.jmzml.model.mzml.Spectrum;
-import uk.ac.ebi.jmzml.xml.io.MzMLUnmarshaller;
 
-import java.net.MalformedURLException;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.List;
 
+/**
+ * Utils working on the spectra of an mzML file. Spectra are streamed via {@link MzMLSpectrumIterator},
+ * so memory consumption does not depend on the size of the file.
+ */
 public class MzMLUtils {
 
-    private final MzML mz;
+    private final Path mzMLPath;
 
-    public MzMLUtils(MzML mz) {
-        this.mz = mz;
+    public MzMLUtils(Path mzMLPath) {
+        this.mzMLPath = mzMLPath;
     }
 
 
-    public static MzMLUtils getInstance(Path mzMLPath) throws MalformedURLException {
-        MzMLUnmarshaller um = new MzMLUnmarshaller(mzMLPath.toUri().toURL());
-        MzML mz = um.unmarshall();
-        return new MzMLUtils(mz);
+    public static MzMLUtils getInstance(Path mzMLPath) throws IOException {
+        if (!Files.isReadable(mzMLPath))
+            throw new IOException("Cannot read mzML file: " + mzMLPath);
+        return new MzMLUtils(mzMLPath);
     }
 
-    public double[] getTooFrequentMasses(double mzBinSize, double minRelIntensity, double minOccurrenceRate) throws InvalidInputData {
-        List<Spectrum> spectrumList = mz.getRun().getSpectrumList().getSpectrum();
-
+    public double[] getTooFrequentMasses(double mzBinSize, double minRelIntensity, double minOccurrenceRate) throws InvalidInputData, IOException {
+        try {
+            return tooFrequentMasses(mzBinSize, minRelIntensity, minOccurrenceRate);
+        } catch (IllegalStateException e) {
+            // the spectrum iterator reports corrupt spectra unchecked, they are invalid input here.
+            String reason = e.getCause() != null && e.getCause().getMessage() != null ? e.getCause().getMessage() : e.getMessage();
+            throw new InvalidInputData("Invalid mzML file " + mzMLPath + ": " + reason);
+        }
+    }
 
+    private double[] tooFrequentMasses(double mzBinSize, double minRelIntensity, double minOccurrenceRate) throws InvalidInputData, IOException {
         //find min and max mz and create bins
-        double[] minMax = minMaxMS1Mz(spectrumList);
+        double[] minMax = minMaxMS1Mz();
         if (minMax==null){
             LoggerFactory.getLogger(MzMLUtils.class).error("No spectra available or empty");
+            throw new InvalidInputData("No MS1 spectra with m/z data available in " + mzMLPath);
         }
         final double min = minMax[0];
         final double max = minMax[1];
@@ -48,10 +54,10 @@ public class MzMLUtils {
 
         //add peak counts to bins
         int numberOfMs1 = 0;
-        for (Spectrum spectrum : spectrumList) {
-            if (getMsLevel(spectrum)==1){
+        try (MzMLSpectrumIterator spectra = ms1Spectra()) {
+            while (spectra.hasNext()) {
                 ++numberOfMs1;
-                addPeaksToBins(spectrum, countingBins, minRelIntensity);
+                addPeaksToBins(spectra.next(), countingBins, minRelIntensity);
             }
         }
 
@@ -65,16 +71,21 @@ public class MzMLUtils {
         return frequentMasses.toArray();
     }
 
+    private MzMLSpectrumIterator ms1Spectra() throws IOException {
+        return new MzMLSpectrumIterator(mzMLPath, msLevel -> msLevel == 1);
+    }
+
     /**
      * //todo find better way than relative intensity of current spectrum
      * @param spectrum
      * @param minRelIntensity only count peaks greater equal this value. [0,1]
      */
-    private void addPeaksToBins(Spectrum spectrum, CountingBins countingBins, double minRelIntensity){
-        double[] masses = getMzValues(spectrum);
-        double[] intensities = getIntensityValues(spectrum);
+    private void addPeaksToBins(MzMLSpectrumIterator.MzMLSpectrum spectrum, CountingBins countingBins, double minRelIntensity){
+        double[] masses = spectrum.getMzValues();
+        double[] intensities = spectrum.getIntensityValues();
         if (masses==null || intensities==null){
             LoggerFactory.getLogger(MzMLUtils.class).warn("Could not parse peak data for spectrum id "+spectrum.getId());
+            return;
         }
         SimpleMutableSpectrum spec = new SimpleMutableSpectrum(new SimpleSpectrum(masses, intensities));
         Spectrums.normalizeToMax(spec, 1d);
@@ -85,12 +96,13 @@ public class MzMLUtils {
         }
     }
 
-    private double[] minMaxMS1Mz(List<Spectrum> spectrumList){
+    private double[] minMaxMS1Mz() throws IOException {
         double min = Double.POSITIVE_INFINITY;
         double max = Double.NEGATIVE_INFINITY;
-        for (Spectrum spectrum : spectrumList) {
-            if (getMsLevel(spectrum)==1){
-                double[] doubles = getMzValues(spectrum);
+        try (MzMLSpectrumIterator spectra = ms1Spectra()) {
+            while (spectra.hasNext()) {
+                MzMLSpectrumIterator.MzMLSpectrum spectrum = spectra.next();
+                double[] doubles = spectrum.getMzValues();
                 if (doubles==null){
                     LoggerFactory.getLogger(MzMLUtils.class).warn("Could not find m/z data for spectrum id "+spectrum.getId());
                 } else {
@@ -109,39 +121,6 @@ public class MzMLUtils {
         return new double[]{min, max};
     }
 
-    private double[] getMzValues(Spectrum spectrum){
-        List<BinaryDataArray> dataArrays = spectrum.getBinaryDataArrayList().getBinaryDataArray();
-        for (BinaryDataArray dataArray : dataArrays) {
-            if (dataArray.getDataType()==BinaryDataArray.DataType.MZ_VALUES){
-                Number[] numbers = dataArray.getBinaryDataAsNumberArray();
-                double[] doubles = Arrays.stream(numbers).mapToDouble(Number::doubleValue).toArray();
-                return doubles;
-            }
-        }
-        return null;
-    }
-
-    private double[] getIntensityValues(Spectrum spectrum){
-        List<BinaryDataArray> dataArrays = spectrum.getBinaryDataArrayList().getBinaryDataArray();
-        for (BinaryDataArray dataArray : dataArrays) {
-            if (dataArray.getDataType()==BinaryDataArray.DataType.INTENSITY){
-                Number[] numbers = dataArray.getBinaryDataAsNumberArray();
-                double[] doubles = Arrays.stream(numbers).mapToDouble(Number::doubleValue).toArray();
-                return doubles;
-            }
-        }
-        return null;
-    }
-
-    private int getMsLevel(Spectrum s){
-        for (CVParam cvParam : s.getCvParam()) {
-            if (cvParam.getAccession().equalsIgnoreCase("MS:1000511")){
-                return Integer.parseInt(cvParam.getValue());
-            }
-        }
-        return -1;
-    }
-
 
     protected class CountingBins {
         private double minValue;
@@ -23,7 +23,6 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -417,7 +416,7 @@ public class UtilsCLI {
             double binSize = new Deviation(options.getBinSizePPM()).absoluteFor(200);
             frequentMasses = mzMLUtils.getTooFrequentMasses(binSize, 0.01, 0.2);
 
-        } catch (MalformedURLException | InvalidInputData e) {
+        } catch (IOException | InvalidInputData e) {
             Log.error("Error reading input mzML: " + options.getInput());
             Log.error(e.getMessage());
             System.exit(-1);
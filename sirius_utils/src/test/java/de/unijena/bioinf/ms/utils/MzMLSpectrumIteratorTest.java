@@ -0,0 +1,187 @@
+package de.unijena.bioinf.ms.utils;
+
+import de.unijena.bioinf.ChemistryBase.exceptions.InvalidInputData;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+public class MzMLSpectrumIteratorTest {
+    private static final String FLOAT_32 = "MS:1000521";
+    private static final String FLOAT_64 = "MS:1000523";
+    private static final String INT_32 = "MS:1000519";
+    private static final String INT_64 = "MS:1000522";
+
+    private static final double[] MZ = {100.5, 200.25, 301.125, 1234.0625};
+    private static final double[] INTENSITIES = {1, 20, 300, 4000};
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] encode(double[] values, String numberType) {
+        final boolean wide = FLOAT_64.equals(numberType) || INT_64.equals(numberType);
+        final ByteBuffer buffer = ByteBuffer.allocate(values.length * (wide ? 8 : 4)).order(ByteOrder.LITTLE_ENDIAN);
+        for (double v : values) {
+            switch (numberType) {
+                case FLOAT_32 -> buffer.putFloat((float) v);
+                case INT_32 -> buffer.putInt((int) v);
+                case INT_64 -> buffer.putLong((long) v);
+                default -> buffer.putDouble(v);
+            }
+        }
+        return buffer.array();
+    }
+
+    private static byte[] deflate(byte[] data) {
+        final Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        final byte[] out = new byte[data.length * 2 + 64];
+        final int n = deflater.deflate(out);
+        deflater.end();
+        return Arrays.copyOf(out, n);
+    }
+
+    private static String binaryDataArray(String arrayType, String numberType, boolean zlib, byte[] data) {
+        return "<binaryDataArray encodedLength=\"0\">"
+                + "<cvParam cvRef=\"MS\" accession=\"" + numberType + "\" name=\"\"/>"
+                + (zlib ? "<cvParam cvRef=\"MS\" accession=\"MS:1000574\" name=\"zlib compression\"/>" : "<cvParam cvRef=\"MS\" accession=\"MS:1000576\" name=\"no compression\"/>")
+                + "<cvParam cvRef=\"MS\" accession=\"" + arrayType + "\" name=\"\"/>"
+                // MIME line breaks have to be tolerated
+                + "<binary>" + Base64.getMimeEncoder().encodeToString(data) + "</binary>"
+                + "</binaryDataArray>";
+    }
+
+    private static String spectrum(String id, int msLevel, String mzArray, String intensityArray) {
+        return "<spectrum id=\"" + id + "\" index=\"0\" defaultArrayLength=\"" + MZ.length + "\">"
+                + "<cvParam cvRef=\"MS\" accession=\"MS:1000511\" name=\"ms level\" value=\"" + msLevel + "\"/>"
+                + "<binaryDataArrayList count=\"2\">" + mzArray + intensityArray + "</binaryDataArrayList>"
+                + "</spectrum>";
+    }
+
+    private Path writeMzML(String... spectra) throws IOException {
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>")
+                .append("<mzML xmlns=\"http://psi.hupo.org/ms/mzml\"><run id=\"run\">")
+                .append("<spectrumList count=\"").append(spectra.length).append("\">");
+        for (String s : spectra)
+            xml.append(s);
+        xml.append("</spectrumList></run></mzML>");
+        final Path file = tmp.newFile("test.mzML").toPath();
+        Files.writeString(file, xml, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static List<MzMLSpectrumIterator.MzMLSpectrum> readAll(Path file) throws IOException {
+        final List<MzMLSpectrumIterator.MzMLSpectrum> spectra = new ArrayList<>();
+        try (MzMLSpectrumIterator it = new MzMLSpectrumIterator(file, l -> true, 2)) {
+            it.forEachRemaining(spectra::add);
+        }
+        return spectra;
+    }
+
+    @Test
+    public void testDecodeNumberTypesAndCompression() throws IOException {
+        final String[] numberTypes = {FLOAT_32, FLOAT_64, INT_32, INT_64};
+        final List<String> spectra = new ArrayList<>();
+        for (String numberType : numberTypes) {
+            for (boolean zlib : new boolean[]{false, true}) {
+                byte[] mz = encode(MZ, FLOAT_64), ints = encode(INTENSITIES, numberType);
+                if (zlib) {
+                    mz = deflate(mz);
+                    ints = deflate(ints);
+                }
+                spectra.add(spectrum(numberType + "_" + zlib, 2,
+                        binaryDataArray("MS:1000514", FLOAT_64, zlib, mz),
+                        binaryDataArray("MS:1000515", numberType, zlib, ints)));
+            }
+        }
+
+        final List<MzMLSpectrumIterator.MzMLSpectrum> decoded = readAll(writeMzML(spectra.toArray(String[]::new)));
+        Assert.assertEquals(spectra.size(), decoded.size());
+        int i = 0;
+        for (String numberType : numberTypes) {
+            for (boolean zlib : new boolean[]{false, true}) {
+                final MzMLSpectrumIterator.MzMLSpectrum spec = decoded.get(i++);
+                Assert.assertEquals(numberType + "_" + zlib, spec.getId());
+                Assert.assertEquals(2, spec.getMsLevel());
+                Assert.assertArrayEquals(MZ, spec.getMzValues(), 0d);
+                Assert.assertArrayEquals(INTENSITIES, spec.getIntensityValues(), 0d);
+            }
+        }
+    }
+
+    @Test
+    public void testFloat32Precision() throws IOException {
+        final Path file = writeMzML(spectrum("s", 1,
+                binaryDataArray("MS:1000514", FLOAT_32, true, deflate(encode(MZ, FLOAT_32))),
+                binaryDataArray("MS:1000515", FLOAT_32, false, encode(INTENSITIES, FLOAT_32))));
+        final MzMLSpectrumIterator.MzMLSpectrum spec = readAll(file).get(0);
+        for (int i = 0; i < MZ.length; i++)
+            Assert.assertEquals((float) MZ[i], spec.getMzValues()[i], 0d);
+    }
+
+    @Test
+    public void testTruncatedZlibData() throws IOException {
+        final byte[] compressed = deflate(encode(MZ, FLOAT_64));
+        final Path file = writeMzML(spectrum("s", 1,
+                binaryDataArray("MS:1000514", FLOAT_64, true, Arrays.copyOf(compressed, compressed.length / 2)),
+                binaryDataArray("MS:1000515", FLOAT_64, false, encode(INTENSITIES, FLOAT_64))));
+        assertDecodingFails(file);
+    }
+
+    @Test
+    public void testCorruptZlibData() throws IOException {
+        final byte[] compressed = deflate(encode(MZ, FLOAT_64));
+        Arrays.fill(compressed, 2, compressed.length, (byte) 0xFF);
+        final Path file = writeMzML(spectrum("s", 1,
+                binaryDataArray("MS:1000514", FLOAT_64, true, compressed),
+                binaryDataArray("MS:1000515", FLOAT_64, false, encode(INTENSITIES, FLOAT_64))));
+        assertDecodingFails(file);
+    }
+
+    @Test
+    public void testIncompleteValue() throws IOException {
+        final byte[] mz = encode(MZ, FLOAT_64);
+        final Path file = writeMzML(spectrum("s", 1,
+                binaryDataArray("MS:1000514", FLOAT_64, false, Arrays.copyOf(mz, mz.length - 3)),
+                binaryDataArray("MS:1000515", FLOAT_64, false, encode(INTENSITIES, FLOAT_64))));
+        assertDecodingFails(file);
+    }
+
+    @Test
+    public void testCorruptDataIsInvalidInput() throws IOException {
+        final byte[] compressed = deflate(encode(MZ, FLOAT_64));
+        final Path file = writeMzML(spectrum("s", 1,
+                binaryDataArray("MS:1000514", FLOAT_64, true, Arrays.copyOf(compressed, compressed.length / 2)),
+                binaryDataArray("MS:1000515", FLOAT_64, false, encode(INTENSITIES, FLOAT_64))));
+        try {
+            MzMLUtils.getInstance(file).getTooFrequentMasses(0.01, 0.01, 0.2);
+            Assert.fail("Corrupt mzML must be reported as invalid input.");
+        } catch (InvalidInputData e) {
+            Assert.assertTrue(e.getMessage().contains(file.toString()));
+        }
+    }
+
+    private static void assertDecodingFails(Path file) throws IOException {
+        try (MzMLSpectrumIterator it = new MzMLSpectrumIterator(file, l -> true, 1)) {
+            Assert.assertTrue(it.hasNext());
+            it.next();
+            Assert.fail("Corrupt binary data must not be decoded.");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getCause() instanceof DataFormatException);
+        }
+    }
+}